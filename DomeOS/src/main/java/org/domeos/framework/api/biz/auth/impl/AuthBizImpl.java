@@ -6,6 +6,7 @@ import org.domeos.framework.api.mapper.auth.AdminRolesMapper;
 import org.domeos.framework.api.mapper.auth.UserMapper;
 import org.domeos.framework.api.model.auth.AdminRole;
 import org.domeos.framework.api.model.auth.User;
+import org.domeos.framework.engine.AuthUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -64,6 +65,7 @@ public class AuthBizImpl extends BaseBizImpl implements AuthBiz {
     @Override
     public void addUser(User user) {
         userMapper.addUser(user);
+        AuthUtil.userChanged(user.getId(), user.getUsername());
     }
 
     @Override
@@ -74,6 +76,7 @@ public class AuthBizImpl extends BaseBizImpl implements AuthBiz {
     @Override
     public void deleteUser(User user) {
         userMapper.deleteUser(user);
+        AuthUtil.userChanged(user.getId(), user.getUsername());
     }
 
     @Override
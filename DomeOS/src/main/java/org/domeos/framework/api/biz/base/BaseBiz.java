@@ -5,6 +5,7 @@ import org.domeos.framework.engine.exception.DaoException;
 import org.domeos.framework.engine.model.RowModelBase;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by sparkchen on 16/4/5.
@@ -32,6 +33,8 @@ public interface BaseBiz {
 
     String getState(String tableName, int id);
 
+    Map<Integer, String> getStateByIdList(String tableName, List<Integer> idList);
+
     String getNameById(String tableName, int id);
 
     @Deprecated
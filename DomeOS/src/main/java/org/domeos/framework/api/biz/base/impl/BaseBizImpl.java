@@ -7,11 +7,17 @@ import org.domeos.framework.engine.exception.DaoException;
 import org.domeos.framework.engine.mapper.RowMapper;
 import org.domeos.framework.engine.model.RowMapperDao;
 import org.domeos.framework.engine.model.RowModelBase;
+import org.domeos.framework.engine.model.RowModelCache;
+import org.domeos.global.GlobalConstant;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Created by sparkchen on 16/4/5.
@@ -20,9 +26,22 @@ import java.util.List;
 @Service("baseBiz")
 public class BaseBizImpl implements BaseBiz {
 
+    // only tables whose every write goes through a biz that invalidates the cache
+    static {
+        RowModelCache.enable(GlobalConstant.CLUSTER_TABLE_NAME);
+        RowModelCache.enable(GlobalConstant.DEPLOY_TABLE_NAME);
+    }
+
     @Autowired
     RowMapper mapper;
 
+    protected void invalidateCache(String tableName, int id) {
+        RowModelCache cache = RowModelCache.getCache(tableName);
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+
     public <T extends RowModelBase> T checkResult(RowMapperDao dao, Class<T> clazz) {
         if (dao == null) {
             return null;
@@ -40,6 +59,15 @@ public class BaseBizImpl implements BaseBiz {
 
     @Override
     public <T extends RowModelBase> T getById(String tableName, int id, Class<T> clazz) {
+        RowModelCache cache = RowModelCache.getCache(tableName);
+        long generation = 0;
+        if (cache != null) {
+            T cached = cache.get(id, clazz);
+            if (cached != null) {
+                return cached;
+            }
+            generation = cache.generation();
+        }
         RowMapperDao dao = null;
         try {
             dao = mapper.getById(tableName, id);
@@ -54,7 +82,9 @@ public class BaseBizImpl implements BaseBiz {
                 throw new DaoConvertingException("Get MySQL Data failed! tableName=" + tableName
                         + ", getContent=" + dao);
             }
-
+            if (cache != null) {
+                cache.put(result, generation);
+            }
             return result;
         } catch (Exception e) {
             throw new DaoConvertingException("Get MySQL Data failed! tableName=" + tableName
@@ -66,6 +96,15 @@ public class BaseBizImpl implements BaseBiz {
 
     @Override
     public <T extends RowModelBase> T getByName(String tableName, String name, Class<T> clazz) {
+        RowModelCache cache = RowModelCache.getCache(tableName);
+        long generation = 0;
+        if (cache != null) {
+            T cached = cache.getByName(name, clazz);
+            if (cached != null) {
+                return cached;
+            }
+            generation = cache.generation();
+        }
         RowMapperDao dao = null;
         try {
             dao = mapper.getByName(tableName, name);
@@ -80,6 +119,9 @@ public class BaseBizImpl implements BaseBiz {
                 throw new DaoConvertingException("Get MySQL Data failed! tableName=" + tableName
                         + ", getContent=" + dao);
             }
+            if (cache != null) {
+                cache.put(result, generation);
+            }
             return result;
         } catch (Exception e) {
             throw new DaoConvertingException("Get MySQL Data failed! tableName=" + tableName
@@ -122,21 +164,44 @@ public class BaseBizImpl implements BaseBiz {
             if (idList == null || idList.size() == 0) {
                 return new ArrayList<>();
             }
-            StringBuilder builder = new StringBuilder();
-            builder.append(" ( ");
-            for (int i = 0; i < idList.size(); i++) {
-                builder.append(idList.get(i));
-                if (i != idList.size() - 1) {
-                    builder.append(" , ");
+            RowModelCache cache = RowModelCache.getCache(tableName);
+            long generation = 0;
+            // keep the id order "where id in" returns rows with
+            Map<Integer, T> found = new TreeMap<>();
+            List<Integer> toLoad = new ArrayList<>();
+            if (cache != null) {
+                generation = cache.generation();
+                for (Integer id : idList) {
+                    if (id == null || found.containsKey(id)) {
+                        continue;
+                    }
+                    T cached = cache.get(id, clazz);
+                    if (cached != null) {
+                        found.put(id, cached);
+                    } else {
+                        toLoad.add(id);
+                    }
                 }
+                if (toLoad.isEmpty()) {
+                    return new ArrayList<>(found.values());
+                }
+            } else {
+                toLoad = idList;
             }
-            builder.append(") ");
-            List<RowMapperDao> list = mapper.getByIdList(tableName, builder.toString());
-            List<T> result = new ArrayList<>();
-            for (RowMapperDao dao: list) {
-                result.add(dao.toModel(clazz));
+            List<RowMapperDao> list = mapper.getByIdList(tableName, toIdListSql(toLoad));
+            if (cache == null) {
+                List<T> result = new ArrayList<>();
+                for (RowMapperDao dao : list) {
+                    result.add(dao.toModel(clazz));
+                }
+                return result;
             }
-            return result;
+            for (RowMapperDao dao : list) {
+                T model = dao.toModel(clazz);
+                cache.put(model, generation);
+                found.put(model.getId(), model);
+            }
+            return new ArrayList<>(found.values());
         }catch (Exception e) {
             throw new DaoConvertingException("Get MySQL Data failed! tableName=" + tableName
                     + ", resourceList=" + idList, e );
@@ -187,6 +252,7 @@ public class BaseBizImpl implements BaseBiz {
     @Override
     public void removeById(String tableName, int id) {
         mapper.removeRowById(tableName, id, System.currentTimeMillis());
+        invalidateCache(tableName, id);
     }
 
     @Override
@@ -195,6 +261,8 @@ public class BaseBizImpl implements BaseBiz {
             mapper.updateRow(tableName, new RowMapperDao(rowModelBase));
         } catch (Exception e) {
             throw new DaoException(e);
+        } finally {
+            invalidateCache(tableName, rowModelBase.getId());
         }
 
     }
@@ -213,6 +281,7 @@ public class BaseBizImpl implements BaseBiz {
             RowMapperDao dao = new RowMapperDao(rowModelBase);
             mapper.insertRow(tableName, dao);
             rowModelBase.setId(dao.getId());
+            invalidateCache(tableName, dao.getId());
         } catch (Exception e) {
             throw new DaoException(e);
         }
@@ -221,6 +290,7 @@ public class BaseBizImpl implements BaseBiz {
     @Override
     public void updateState(String tableName, String state, int id) {
         mapper.updateState(tableName, state, id);
+        invalidateCache(tableName, id);
     }
 
     @Override
@@ -228,6 +298,39 @@ public class BaseBizImpl implements BaseBiz {
         return mapper.getStateById(tableName, id);
     }
 
+    @Override
+    public Map<Integer, String> getStateByIdList(String tableName, List<Integer> idList) {
+        Map<Integer, String> states = new HashMap<>();
+        if (idList == null || idList.isEmpty()) {
+            return states;
+        }
+        for (RowMapperDao dao : mapper.getStateByIdList(tableName, toIdListSql(idList))) {
+            states.put(dao.getId(), dao.getState());
+        }
+        return states;
+    }
+
+    /**
+     * @return ids as " ( 1 , 2 ) " for a "where id in" clause
+     */
+    protected static String toIdListSql(Collection<Integer> idList) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(" ( ");
+        boolean first = true;
+        for (Integer id : idList) {
+            if (id == null) {
+                continue;
+            }
+            if (!first) {
+                builder.append(" , ");
+            }
+            builder.append(id.intValue());
+            first = false;
+        }
+        builder.append(") ");
+        return builder.toString();
+    }
+
     @Override
     public String getNameById(String tableName, int id) {
         return mapper.getNameById(tableName, id);
@@ -48,5 +48,6 @@ public class ClusterBizImpl extends BaseBizImpl implements ClusterBiz {
     @Override
     public void updateCluster(Cluster cluster) throws DaoException {
         clusterMapper.updateCluster(cluster, cluster.toString());
+        super.invalidateCache(GlobalConstant.CLUSTER_TABLE_NAME, cluster.getId());
     }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import org.domeos.framework.api.model.collection.CollectionAuthorityMap;
 import org.domeos.framework.api.model.collection.CollectionResourceMap;
 import org.domeos.framework.api.model.collection.related.CollectionInfo;
 import org.domeos.framework.api.model.collection.related.ResourceType;
+import org.domeos.framework.engine.AuthUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -30,22 +31,26 @@ public class CollectionBizImpl implements CollectionBiz {
     public void addResource(CollectionResourceMap collectionResourceMap) {
         collectionResourceMap.setUpdateTime(System.currentTimeMillis());
         collectionResourceMapMapper.insertCollectionResourceMap(collectionResourceMap);
+        AuthUtil.resourceChanged(collectionResourceMap.getResourceId(), collectionResourceMap.getResourceType());
     }
 
     @Override
     public void addAuthority(CollectionAuthorityMap collectionAuthorityMap) {
         collectionAuthorityMap.setUpdateTime(System.currentTimeMillis());
         collectionAuthorityMapMapper.insertCollectionAuthorityMap(collectionAuthorityMap);
+        AuthUtil.authorityChanged(collectionAuthorityMap.getUserId(), collectionAuthorityMap.getResourceType());
     }
 
     @Override
     public void deleteResourcesByCollectionIdAndResourceType(int collectionId, ResourceType resourceType) {
         collectionResourceMapMapper.deleteResourceMapsByCollectionIdAndResourceType(collectionId, resourceType);
+        AuthUtil.collectionResourcesChanged(collectionId, resourceType);
     }
 
     @Override
     public void deleteResourceByResourceIdAndResourceType(int resourceId, ResourceType resourceType) {
         collectionResourceMapMapper.deleteResourceMapByResourceIdAndResourceType(resourceId, resourceType);
+        AuthUtil.resourceChanged(resourceId, resourceType);
     }
 
     @Override
@@ -61,11 +66,13 @@ public class CollectionBizImpl implements CollectionBiz {
     @Override
     public void deleteAuthoritiesByCollectionIdAndResourceType(int collectionId, ResourceType resourceType) {
         collectionAuthorityMapMapper.deleteAuthorityMapsByCollectionIdAndResourceType(collectionId, resourceType);
+        AuthUtil.collectionAuthoritiesChanged(resourceType);
     }
 
     @Override
     public void deleteAuthorityMap(CollectionAuthorityMap collectionAuthorityMap) {
         collectionAuthorityMapMapper.deleteAuthorityMap(collectionAuthorityMap);
+        AuthUtil.authorityChanged(collectionAuthorityMap.getUserId(), collectionAuthorityMap.getResourceType());
     }
 
     @Override
@@ -101,11 +108,13 @@ public class CollectionBizImpl implements CollectionBiz {
     @Override
     public void modifyCollectionAuthorityMap(CollectionAuthorityMap authorityMap) {
         collectionAuthorityMapMapper.modifyCollectionAuthorityMap(authorityMap);
+        AuthUtil.authorityChanged(authorityMap.getUserId(), authorityMap.getResourceType());
     }
 
     @Override
     public void modifyCollectionResourceMap(CollectionResourceMap resourceMap) {
         collectionResourceMapMapper.modifyCollectionResourceMap(resourceMap);
+        AuthUtil.resourceChanged(resourceMap.getResourceId(), resourceMap.getResourceType());
     }
 
     @Override
@@ -2,6 +2,9 @@ package org.domeos.framework.api.biz.deployment;
 
 import org.domeos.framework.api.model.deployment.related.DeploymentStatus;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  */
 
@@ -9,6 +12,11 @@ public interface DeploymentStatusBiz {
 
     DeploymentStatus getDeploymentStatus(int deployId);
 
+    /**
+     * @return status by deploy id, ids not found are absent
+     */
+    Map<Integer, DeploymentStatus> getDeploymentStatus(List<Integer> deployIds);
+
     void setDeploymentStatus(int deployId,  DeploymentStatus status);
 
 }
@@ -35,6 +35,7 @@ public class DeploymentBizImpl extends BaseBizImpl implements DeploymentBiz {
     @Override
     public void update(Deployment deployment) throws DaoException {
         mapper.updateDeploy(new RowMapperDao(deployment));
+        super.invalidateCache(GlobalConstant.DEPLOY_TABLE_NAME, deployment.getId());
     }
 
     @Override
@@ -6,6 +6,10 @@ import org.domeos.framework.api.model.deployment.related.DeploymentStatus;
 import org.domeos.global.GlobalConstant;
 import org.springframework.stereotype.Repository;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Created by sparkchen on 16/4/6.
  */
@@ -18,6 +22,15 @@ public class DeploymentStatusBizImpl extends BaseBizImpl implements DeploymentSt
         return DeploymentStatus.valueOf(super.getState(GlobalConstant.DEPLOY_TABLE_NAME, deployId));
     }
 
+    @Override
+    public Map<Integer, DeploymentStatus> getDeploymentStatus(List<Integer> deployIds) {
+        Map<Integer, DeploymentStatus> statuses = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : super.getStateByIdList(GlobalConstant.DEPLOY_TABLE_NAME, deployIds).entrySet()) {
+            statuses.put(entry.getKey(), DeploymentStatus.valueOf(entry.getValue()));
+        }
+        return statuses;
+    }
+
     @Override
     public void setDeploymentStatus(int deployId, DeploymentStatus status) {
         super.updateState(GlobalConstant.DEPLOY_TABLE_NAME, status.name(), deployId);
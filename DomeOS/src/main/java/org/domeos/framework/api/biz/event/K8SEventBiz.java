@@ -3,6 +3,7 @@ package org.domeos.framework.api.biz.event;
 import io.fabric8.kubernetes.api.model.Event;
 import org.domeos.framework.api.consolemodel.event.EventInfo;
 import org.domeos.framework.api.model.event.EventKind;
+import org.domeos.framework.engine.event.k8sEvent.K8sEventDetail;
 
 import java.io.IOException;
 import java.util.List;
@@ -14,6 +15,11 @@ public interface K8SEventBiz {
 
     void createEvent(int clusterId, int deployId, Event event) throws IOException;
 
+    /**
+     * insert events with one multi-row statement, in the order of the list
+     */
+    void createEvents(List<K8sEventDetail> details) throws IOException;
+
     String getLatestResourceVersion(int clusterId);
 
     List<Event> getEventsByHost(String host) throws IOException;
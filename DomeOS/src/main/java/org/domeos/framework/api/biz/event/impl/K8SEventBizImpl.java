@@ -8,12 +8,14 @@ import org.domeos.framework.api.consolemodel.event.EventInfo;
 import org.domeos.framework.api.mapper.event.EventMapper;
 import org.domeos.framework.api.model.event.EventKind;
 import org.domeos.framework.api.model.event.releated.EventDBProto;
+import org.domeos.framework.engine.event.k8sEvent.K8sEventDetail;
 import org.domeos.framework.engine.model.CustomObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.validation.constraints.NotNull;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -36,6 +38,18 @@ public class K8SEventBizImpl implements K8SEventBiz {
         eventMapper.createEvent(proto);
     }
 
+    @Override
+    public void createEvents(List<K8sEventDetail> details) throws IOException {
+        if (details == null || details.isEmpty()) {
+            return;
+        }
+        List<EventDBProto> protos = new ArrayList<>(details.size());
+        for (K8sEventDetail detail : details) {
+            protos.add(toProto(detail.getEvent(), detail.getClusterId(), detail.getDeployId()));
+        }
+        eventMapper.createEvents(protos);
+    }
+
     @Override
     public String getLatestResourceVersion(int clusterId) {
         return eventMapper.getNewestResourceVersion(clusterId);
@@ -16,62 +16,89 @@ import org.domeos.framework.api.model.global.Server;
 import org.domeos.framework.api.model.global.WebSsh;
 import org.domeos.framework.api.model.image.BuildImage;
 import org.domeos.framework.api.model.token.related.RegistryTokenInfo;
+import org.domeos.util.EnvUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Created by feiliu206363 on 2016/4/8.
  */
 @Service("globalServie")
 public class GlobalBizImpl implements GlobalBiz {
+
+    private static Logger logger = LoggerFactory.getLogger(GlobalBizImpl.class);
+
     @Autowired
     GlobalMapper globalMapper;
 
     @Autowired
     ClusterBiz clusterBiz;
 
+    // every getter is served from one snapshot of all global rows; a write here replaces it at once,
+    // a write of another replica is seen when the version in global_version is polled
+    private volatile GlobalSnapshot snapshot;
+    private final AtomicLong nextPoll = new AtomicLong();
+    long pollInterval = EnvUtil.envLong("DOMEOS_GLOBAL_POLL_INTERVAL", 5000);
+
     @Override
     public int addGlobalInfo(GlobalInfo globalInfo) {
         globalInfo.setCreateTime(System.currentTimeMillis());
         globalInfo.setLastUpdate(System.currentTimeMillis());
-        return globalMapper.addGlobalInfo(globalInfo);
+        int result = globalMapper.addGlobalInfo(globalInfo);
+        changed();
+        return result;
     }
 
     @Override
     public GlobalInfo getGlobalInfoByType(GlobalType globalType) {
-        return globalMapper.getGlobalInfoByType(globalType);
+        return copy(infoByType(globalType));
     }
 
     @Override
     public GlobalInfo getGlobalInfoById(int id) {
-        return globalMapper.getGlobalInfoById(id);
+        return copy(infoById(id));
     }
 
     @Override
     public int deleteGlobalInfoByType(GlobalType globalType) {
-        return globalMapper.deleteGlobalInfoByType(globalType);
+        int result = globalMapper.deleteGlobalInfoByType(globalType);
+        changed();
+        return result;
     }
 
     @Override
     public int deleteGlobalInfoById(int id) {
-        return globalMapper.deleteGlobalInfoById(id);
+        int result = globalMapper.deleteGlobalInfoById(id);
+        changed();
+        return result;
     }
 
     @Override
     public int updateGlobalInfoById(GlobalInfo globalInfo) {
         globalInfo.setLastUpdate(System.currentTimeMillis());
-        return globalMapper.updateGlobalInfoById(globalInfo);
+        int result = globalMapper.updateGlobalInfoById(globalInfo);
+        changed();
+        return result;
     }
 
     @Override
     public int updateGlobalInfoByType(GlobalInfo globalInfo) {
         globalInfo.setLastUpdate(System.currentTimeMillis());
-        return globalMapper.updateGlobalInfoByType(globalInfo);
+        int result = globalMapper.updateGlobalInfoByType(globalInfo);
+        changed();
+        return result;
     }
 
     @Override
     public Server getServer() {
-        GlobalInfo globalInfo = globalMapper.getGlobalInfoByType(GlobalType.SERVER);
+        GlobalInfo globalInfo = infoByType(GlobalType.SERVER);
         if (globalInfo != null) {
             return new Server(globalInfo.getId(), globalInfo.getValue(), globalInfo.getCreateTime(), globalInfo.getLastUpdate());
         }
@@ -86,6 +113,7 @@ public class GlobalBizImpl implements GlobalBiz {
         GlobalInfo globalServer = new GlobalInfo(GlobalType.SERVER, server.getUrl(), time, time);
         globalMapper.addGlobalInfo(globalServer);
         server.setId(globalServer.getId());
+        changed();
     }
 
     @Override
@@ -94,16 +122,18 @@ public class GlobalBizImpl implements GlobalBiz {
         server.setLastUpdate(time);
         GlobalInfo globalInfo = new GlobalInfo(server.getId(), GlobalType.SERVER, server.getUrl(), server.getCreateTime(), time);
         globalMapper.updateGlobalInfoById(globalInfo);
+        changed();
     }
 
     @Override
     public void deleteServer() {
         globalMapper.deleteGlobalInfoByType(GlobalType.SERVER);
+        changed();
     }
 
     @Override
     public Registry getPublicRegistry() {
-        GlobalInfo url = globalMapper.getGlobalInfoByType(GlobalType.PUBLIC_REGISTRY_URL);
+        GlobalInfo url = infoByType(GlobalType.PUBLIC_REGISTRY_URL);
         Registry registry = null;
         if (url != null) {
             registry = new Registry();
@@ -114,13 +144,13 @@ public class GlobalBizImpl implements GlobalBiz {
 
     @Override
     public Registry getRegistry() {
-        GlobalInfo url = globalMapper.getGlobalInfoByType(GlobalType.REGISTRY_URL);
-        GlobalInfo description = globalMapper.getGlobalInfoByType(GlobalType.REGISTRY_DESCRIPTION);
-        GlobalInfo status = globalMapper.getGlobalInfoByType(GlobalType.REGISTRY_STATUS);
-        GlobalInfo certification = globalMapper.getGlobalInfoByType(GlobalType.REGISTRY_CERTIFICATION);
-        GlobalInfo issuer = globalMapper.getGlobalInfoByType(GlobalType.REGISTRY_ISSUER);
-        GlobalInfo service = globalMapper.getGlobalInfoByType(GlobalType.REGISTRY_SERVICE);
-        GlobalInfo private_key = globalMapper.getGlobalInfoByType(GlobalType.REGISTRY_AUTH_PRIVATE_KEY);
+        GlobalInfo url = infoByType(GlobalType.REGISTRY_URL);
+        GlobalInfo description = infoByType(GlobalType.REGISTRY_DESCRIPTION);
+        GlobalInfo status = infoByType(GlobalType.REGISTRY_STATUS);
+        GlobalInfo certification = infoByType(GlobalType.REGISTRY_CERTIFICATION);
+        GlobalInfo issuer = infoByType(GlobalType.REGISTRY_ISSUER);
+        GlobalInfo service = infoByType(GlobalType.REGISTRY_SERVICE);
+        GlobalInfo private_key = infoByType(GlobalType.REGISTRY_AUTH_PRIVATE_KEY);
 
         Registry registry = null;
         if (url != null) {
@@ -154,6 +184,7 @@ public class GlobalBizImpl implements GlobalBiz {
         globalMapper.deleteGlobalInfoByType(GlobalType.REGISTRY_AUTH_PRIVATE_KEY);
         globalMapper.deleteGlobalInfoByType(GlobalType.REGISTRY_ISSUER);
         globalMapper.deleteGlobalInfoByType(GlobalType.REGISTRY_SERVICE);
+        changed();
     }
 
     @Override
@@ -184,11 +215,12 @@ public class GlobalBizImpl implements GlobalBiz {
             GlobalInfo private_key = new GlobalInfo(GlobalType.REGISTRY_AUTH_PRIVATE_KEY, tokenInfo.getPrivate_key(), create, update);
             globalMapper.addGlobalInfo(private_key);
         }
+        changed();
     }
 
     @Override
     public String getCertification() {
-        GlobalInfo globalInfo = globalMapper.getGlobalInfoByType(GlobalType.REGISTRY_CERTIFICATION);
+        GlobalInfo globalInfo = infoByType(GlobalType.REGISTRY_CERTIFICATION);
         if (globalInfo != null) {
             return globalInfo.getValue();
         }
@@ -197,7 +229,7 @@ public class GlobalBizImpl implements GlobalBiz {
 
     @Override
     public WebSsh getWebSsh() {
-        GlobalInfo globalInfo = globalMapper.getGlobalInfoByType(GlobalType.WEBSSH);
+        GlobalInfo globalInfo = infoByType(GlobalType.WEBSSH);
         if (globalInfo != null) {
             return new WebSsh(globalInfo.getId(), globalInfo.getValue(), globalInfo.getCreateTime(), globalInfo.getLastUpdate());
         }
@@ -207,6 +239,7 @@ public class GlobalBizImpl implements GlobalBiz {
     @Override
     public void deleteWebSsh() {
         globalMapper.deleteGlobalInfoByType(GlobalType.WEBSSH);
+        changed();
     }
 
     @Override
@@ -215,6 +248,7 @@ public class GlobalBizImpl implements GlobalBiz {
         GlobalInfo globalInfo = new GlobalInfo(GlobalType.WEBSSH, webSsh.getUrl(), time, time);
         globalMapper.addGlobalInfo(globalInfo);
         webSsh.setId(globalInfo.getId());
+        changed();
     }
 
     @Override
@@ -223,53 +257,54 @@ public class GlobalBizImpl implements GlobalBiz {
         GlobalInfo globalInfo = new GlobalInfo(webSsh.getId(), GlobalType.WEBSSH, webSsh.getUrl(), webSsh.getCreateTime(), time);
         globalMapper.updateGlobalInfoById(globalInfo);
         webSsh.setLastUpdate(time);
+        changed();
     }
 
     @Override
     public ClusterMonitor getMonitor() {
         ClusterMonitor clusterMonitor = null;
         clusterMonitor = new ClusterMonitor();
-        GlobalInfo transfer = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_TRANSFER);
+        GlobalInfo transfer = infoByType(GlobalType.MONITOR_TRANSFER);
         if (transfer != null) {
             clusterMonitor.setTransfer(transfer.getValue());
         }
-        GlobalInfo graph = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_GRAPH);
+        GlobalInfo graph = infoByType(GlobalType.MONITOR_GRAPH);
         if (graph != null) {
             clusterMonitor.setGraph(graph.getValue());
         }
-        GlobalInfo query = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_QUERY);
+        GlobalInfo query = infoByType(GlobalType.MONITOR_QUERY);
         if (query != null) {
             clusterMonitor.setQuery(query.getValue());
         }
-        GlobalInfo hbs = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_HBS);
+        GlobalInfo hbs = infoByType(GlobalType.MONITOR_HBS);
         if (hbs != null) {
             clusterMonitor.setHbs(hbs.getValue());
         }
-        GlobalInfo judge = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_JUDGE);
+        GlobalInfo judge = infoByType(GlobalType.MONITOR_JUDGE);
         if (judge != null) {
             clusterMonitor.setJudge(judge.getValue());
         }
-        GlobalInfo alarm = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_ALARM);
+        GlobalInfo alarm = infoByType(GlobalType.MONITOR_ALARM);
         if (alarm != null) {
             clusterMonitor.setAlarm(alarm.getValue());
         }
-        GlobalInfo sender = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_SENDER);
+        GlobalInfo sender = infoByType(GlobalType.MONITOR_SENDER);
         if (sender != null) {
             clusterMonitor.setSender(sender.getValue());
         }
-        GlobalInfo nodata = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_NODATA);
+        GlobalInfo nodata = infoByType(GlobalType.MONITOR_NODATA);
         if (nodata != null) {
             clusterMonitor.setNodata(nodata.getValue());
         }
-        GlobalInfo redis = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_REDIS);
+        GlobalInfo redis = infoByType(GlobalType.MONITOR_REDIS);
         if (redis != null) {
             clusterMonitor.setRedis(redis.getValue());
         }
-        GlobalInfo apiSms = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_API_SMS);
+        GlobalInfo apiSms = infoByType(GlobalType.MONITOR_API_SMS);
         if (apiSms != null) {
             clusterMonitor.setApiSms(apiSms.getValue());
         }
-        GlobalInfo apiMail = globalMapper.getGlobalInfoByType(GlobalType.MONITOR_API_MAIL);
+        GlobalInfo apiMail = infoByType(GlobalType.MONITOR_API_MAIL);
         if (apiMail != null) {
             clusterMonitor.setApiMail(apiMail.getValue());
         }
@@ -289,6 +324,7 @@ public class GlobalBizImpl implements GlobalBiz {
         globalMapper.deleteGlobalInfoByType(GlobalType.MONITOR_REDIS);
         globalMapper.deleteGlobalInfoByType(GlobalType.MONITOR_API_SMS);
         globalMapper.deleteGlobalInfoByType(GlobalType.MONITOR_API_MAIL);
+        changed();
     }
 
     @Override
@@ -338,6 +374,7 @@ public class GlobalBizImpl implements GlobalBiz {
             GlobalInfo apiMail = new GlobalInfo(GlobalType.MONITOR_API_MAIL, clusterMonitor.getApiMail(), time, time);
             globalMapper.addGlobalInfo(apiMail);
         }
+        changed();
     }
 
     @Override
@@ -398,11 +435,12 @@ public class GlobalBizImpl implements GlobalBiz {
             GlobalInfo apiMail = new GlobalInfo(GlobalType.MONITOR_API_MAIL, clusterMonitor.getApiMail(), clusterMonitor.getCreateTime(), time);
             globalMapper.addGlobalInfo(apiMail);
         }
+        changed();
     }
 
     @Override
     public GitConfig getGitConfigById(int id) {
-        GlobalInfo globalInfo = globalMapper.getGlobalInfoById(id);
+        GlobalInfo globalInfo = infoById(id);
         if (globalInfo != null) {
             return new GitConfig(globalInfo.getId(), globalInfo.getType(), globalInfo.getValue(), globalInfo.getCreateTime(), globalInfo.getLastUpdate());
         }
@@ -411,8 +449,8 @@ public class GlobalBizImpl implements GlobalBiz {
 
     @Override
     public LdapInfo getLdapInfo() {
-        GlobalInfo ldapServer = globalMapper.getGlobalInfoByType(GlobalType.LDAP_SERVER);
-        GlobalInfo ldapPrefix = globalMapper.getGlobalInfoByType(GlobalType.LDAP_PREFIX);
+        GlobalInfo ldapServer = infoByType(GlobalType.LDAP_SERVER);
+        GlobalInfo ldapPrefix = infoByType(GlobalType.LDAP_PREFIX);
         LdapInfo ldapInfo = null;
         if (ldapServer != null) {
             ldapInfo = new LdapInfo();
@@ -431,6 +469,7 @@ public class GlobalBizImpl implements GlobalBiz {
     public void deleteLdapInfo() {
         globalMapper.deleteGlobalInfoByType(GlobalType.LDAP_SERVER);
         globalMapper.deleteGlobalInfoByType(GlobalType.LDAP_PREFIX);
+        changed();
     }
 
     @Override
@@ -446,6 +485,7 @@ public class GlobalBizImpl implements GlobalBiz {
         }
         GlobalInfo ldapPrefix = new GlobalInfo(GlobalType.LDAP_PREFIX, ldapInfo.getEmailSuffix(), ldapInfo.getCreateTime(), ldapInfo.getLastUpdate());
         globalMapper.addGlobalInfo(ldapPrefix);
+        changed();
     }
 
     @Override
@@ -457,14 +497,15 @@ public class GlobalBizImpl implements GlobalBiz {
         }
         GlobalInfo ldapPrefix = new GlobalInfo(GlobalType.LDAP_PREFIX, ldapInfo.getEmailSuffix(), ldapInfo.getCreateTime(), System.currentTimeMillis());
         globalMapper.updateGlobalInfoByType(ldapPrefix);
+        changed();
     }
 
 
     @Override
     public CiCluster getCiCluster() {
 //        GlobalInfo host = globalMapper.getGlobalInfoByType(GlobalType.CI_CLUSTER_HOST);
-        GlobalInfo namespace = globalMapper.getGlobalInfoByType(GlobalType.CI_CLUSTER_NAMESPACE);
-        GlobalInfo clusterId = globalMapper.getGlobalInfoByType(GlobalType.CI_CLUSTER_ID);
+        GlobalInfo namespace = infoByType(GlobalType.CI_CLUSTER_NAMESPACE);
+        GlobalInfo clusterId = infoByType(GlobalType.CI_CLUSTER_ID);
         if (clusterId == null) {
             return null;
         }
@@ -522,6 +563,7 @@ public class GlobalBizImpl implements GlobalBiz {
 //        globalMapper.addGlobalInfo(password);
 //        GlobalInfo oauthToken = new GlobalInfo(GlobalType.CI_CLUSTER_OAUTHTOKEN, ciCluster.getOauthToken(), time, time);
 //        globalMapper.addGlobalInfo(oauthToken);
+        changed();
     }
 
     @Override
@@ -530,6 +572,7 @@ public class GlobalBizImpl implements GlobalBiz {
         globalMapper.deleteGlobalInfoByType(GlobalType.CI_CLUSTER_NAMESPACE);
         globalMapper.deleteGlobalInfoByType(GlobalType.CI_CLUSTER_ID);
         globalMapper.deleteGlobalInfoByType(GlobalType.CI_CLUSTER_NAME);
+        changed();
     }
 
     @Override
@@ -543,11 +586,12 @@ public class GlobalBizImpl implements GlobalBiz {
         globalMapper.updateGlobalInfoByType(clusterId);
         GlobalInfo clusterName = new GlobalInfo(GlobalType.CI_CLUSTER_NAME, ciCluster.getClusterName(), ciCluster.getCreateTime(), time);
         globalMapper.updateGlobalInfoByType(clusterName);
+        changed();
     }
 
     @Override
     public BuildImage getBuildImage() {
-        GlobalInfo globalInfo = globalMapper.getGlobalInfoByType(GlobalType.BUILD_IMAGE);
+        GlobalInfo globalInfo = infoByType(GlobalType.BUILD_IMAGE);
         if (globalInfo != null) {
             return new BuildImage(globalInfo.getId(), globalInfo.getValue(), globalInfo.getCreateTime(), globalInfo.getLastUpdate());
         }
@@ -557,6 +601,7 @@ public class GlobalBizImpl implements GlobalBiz {
     @Override
     public void deleteBuildImage() {
         globalMapper.deleteGlobalInfoByType(GlobalType.BUILD_IMAGE);
+        changed();
     }
 
     @Override
@@ -567,6 +612,84 @@ public class GlobalBizImpl implements GlobalBiz {
         GlobalInfo globalInfo = new GlobalInfo(GlobalType.BUILD_IMAGE, buildImage.getName(), time, time);
         globalMapper.addGlobalInfo(globalInfo);
         buildImage.setId(globalInfo.getId());
+        changed();
+    }
+
+    private GlobalInfo infoByType(GlobalType globalType) {
+        return snapshot().byType.get(globalType);
+    }
+
+    private GlobalInfo infoById(int id) {
+        return snapshot().byId.get(id);
     }
 
+    // the snapshot is shared, callers get their own copy to modify
+    private static GlobalInfo copy(GlobalInfo globalInfo) {
+        if (globalInfo == null) {
+            return null;
+        }
+        return new GlobalInfo(globalInfo.getId(), globalInfo.getType(), globalInfo.getValue(), globalInfo.getCreateTime(),
+                globalInfo.getLastUpdate());
+    }
+
+    private GlobalSnapshot snapshot() {
+        GlobalSnapshot current = snapshot;
+        if (current == null) {
+            return reload();
+        }
+        long now = System.currentTimeMillis();
+        long next = nextPoll.get();
+        if (now >= next && nextPoll.compareAndSet(next, now + pollInterval)) {
+            try {
+                if (version(globalMapper.getVersion()) != current.version) {
+                    return reload();
+                }
+            } catch (RuntimeException e) {
+                logger.warn("poll global version failed, keep the current snapshot: " + e.getMessage());
+            }
+        }
+        return current;
+    }
+
+    private synchronized GlobalSnapshot reload() {
+        // the version is read first, a change after it is seen by the next poll
+        long version = version(globalMapper.getVersion());
+        GlobalSnapshot loaded = new GlobalSnapshot(version, globalMapper.listGlobalInfo());
+        snapshot = loaded;
+        nextPoll.set(System.currentTimeMillis() + pollInterval);
+        return loaded;
+    }
+
+    private void changed() {
+        if (globalMapper.increaseVersion() == 0) {
+            try {
+                globalMapper.insertVersion();
+            } catch (RuntimeException e) {
+                // inserted by another replica meanwhile
+                globalMapper.increaseVersion();
+            }
+        }
+        reload();
+    }
+
+    private static long version(Long version) {
+        return version == null ? 0 : version;
+    }
+
+    private static final class GlobalSnapshot {
+        final long version;
+        final Map<GlobalType, GlobalInfo> byType = new HashMap<>();
+        final Map<Integer, GlobalInfo> byId = new HashMap<>();
+
+        GlobalSnapshot(long version, List<GlobalInfo> globalInfos) {
+            this.version = version;
+            for (GlobalInfo globalInfo : globalInfos) {
+                // a type stored more than once resolves to its first row
+                if (!byType.containsKey(globalInfo.getType())) {
+                    byType.put(globalInfo.getType(), globalInfo);
+                }
+                byId.put(globalInfo.getId(), globalInfo);
+            }
+        }
+    }
 }
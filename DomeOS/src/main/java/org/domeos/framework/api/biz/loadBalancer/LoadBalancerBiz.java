@@ -5,6 +5,7 @@ import org.domeos.framework.api.model.LoadBalancer.LoadBalancer;
 import org.domeos.framework.engine.exception.DaoException;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by xupeng on 16-4-7.
@@ -13,6 +14,11 @@ public interface LoadBalancerBiz extends BaseBiz{
 
     List<LoadBalancer> getLBSByDeploy(int deployId);
 
+    /**
+     * @return load balancers by deploy id, deploys without load balancer are absent
+     */
+    Map<Integer, List<LoadBalancer>> getLBSByDeploys(List<Integer> deployIds);
+
     void insertLoadBalancers(int deployId, List<LoadBalancer> loadBalancers) throws DaoException;
 
     void deleteLBSByDeploy(int deployId);
@@ -16,8 +16,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by xupeng on 16-4-7.
@@ -36,15 +38,48 @@ public class LoadBalancerBizImpl extends BaseBizImpl implements LoadBalancerBiz{
         List<LoadBalancer> result = new ArrayList<>();
         List<RowMapperDao> daoList = loadBalancerMapper.getLBListByDeploy(deployId);
         for (RowMapperDao dao: daoList) {
-            LoadBalancer loadBalancer = checkResult(dao, LoadBalancer.class);
-            if (loadBalancer.getDnsName() == null && !StringUtils.isBlank(loadBalancer.getName())) {
-                loadBalancer.setDnsName(loadBalancer.getName().substring(4));
+            result.add(toLoadBalancer(dao));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Integer, List<LoadBalancer>> getLBSByDeploys(List<Integer> deployIds) {
+        Map<Integer, List<LoadBalancer>> result = new HashMap<>();
+        if (deployIds == null || deployIds.isEmpty()) {
+            return result;
+        }
+        String idList = toIdListSql(deployIds);
+        Map<Integer, LoadBalancer> loadBalancers = new HashMap<>();
+        for (RowMapperDao dao : loadBalancerMapper.getLBListByDeploys(idList)) {
+            LoadBalancer loadBalancer = toLoadBalancer(dao);
+            if (loadBalancer != null) {
+                loadBalancers.put(dao.getId(), loadBalancer);
             }
-            result.add(loadBalancer);
+        }
+        for (DeployLoadBalancerPair pair : loadBalancerMapper.getIndexPairsByDeploys(idList)) {
+            LoadBalancer loadBalancer = loadBalancers.get(pair.getLoadBalancerId());
+            if (loadBalancer == null) {
+                continue;
+            }
+            List<LoadBalancer> list = result.get(pair.getDeployId());
+            if (list == null) {
+                list = new ArrayList<>();
+                result.put(pair.getDeployId(), list);
+            }
+            list.add(loadBalancer);
         }
         return result;
     }
 
+    private LoadBalancer toLoadBalancer(RowMapperDao dao) {
+        LoadBalancer loadBalancer = checkResult(dao, LoadBalancer.class);
+        if (loadBalancer != null && loadBalancer.getDnsName() == null && !StringUtils.isBlank(loadBalancer.getName())) {
+            loadBalancer.setDnsName(loadBalancer.getName().substring(4));
+        }
+        return loadBalancer;
+    }
+
     @Override
     public void insertLoadBalancers(int deployId, List<LoadBalancer> loadBalancers) throws DaoException {
         List<LoadBalancer> externalLBs = new LinkedList<>();
@@ -4,7 +4,7 @@ import org.domeos.framework.api.biz.monitor.MonitorBiz;
 import org.domeos.framework.api.mapper.monitor.GraphMapper;
 import org.domeos.framework.api.mapper.monitor.MonitorTargetMapper;
 import org.domeos.framework.api.model.monitor.MonitorTarget;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -33,7 +33,7 @@ public class MonitorBizImpl implements MonitorBiz {
         Set<String> rawCounter = new HashSet<>();
         List<Future<List<String>>> futures = new ArrayList<>();
         for (String endpoint : endpoints) {
-            Future<List<String>> future = ClientConfigure.executorService.submit(new GetNodeCounterTask(endpoint));
+            Future<List<String>> future = ExecutorRegistry.get(ExecutorRegistry.MONITOR).submit(new GetNodeCounterTask(endpoint));
             futures.add(future);
         }
         for (Future<List<String>> future : futures) {
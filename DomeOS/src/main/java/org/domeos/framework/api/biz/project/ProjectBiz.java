@@ -5,10 +5,16 @@ import org.domeos.framework.api.model.ci.BuildHistory;
 import org.domeos.framework.api.model.ci.related.BuildState;
 import org.domeos.framework.api.model.ci.related.ProjectRsakeyMap;
 import org.domeos.framework.api.model.ci.related.RSAKeyPair;
+import org.domeos.framework.api.model.project.GitlabIndexState;
+import org.domeos.framework.api.model.project.GitlabProjectEntry;
 import org.domeos.framework.api.model.project.GitlabUser;
 import org.domeos.framework.api.model.project.Project;
 import org.domeos.framework.api.model.project.SubversionUser;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -62,7 +68,19 @@ public interface ProjectBiz extends BaseBiz {
 
     void setTaskNameAndStatus(BuildHistory buildInfo);
 
-    void insertBuildLogById(int id, byte[] bytes);
+    /**
+     * store the build log read from inputStream, replacing any log stored before
+     *
+     * @return length of the log
+     */
+    long insertBuildLogById(int id, InputStream inputStream) throws IOException;
+
+    long getBuildLogLengthById(int buildId);
+
+    /**
+     * write length bytes of the build log starting at offset to outputStream
+     */
+    void writeBuildLogById(int buildId, long offset, long length, OutputStream outputStream) throws IOException;
 
     String getBuildLogById(int buildId);
 
@@ -78,6 +96,26 @@ public interface ProjectBiz extends BaseBiz {
 
     GitlabUser getGitlabIserById(int id);
 
+    List<GitlabProjectEntry> listGitlabProjectEntries(int gitlabId);
+
+    GitlabIndexState getGitlabIndexState(int gitlabId);
+
+    /**
+     * write the entries of the projects refreshed, remove the entries of removedIds and record the
+     * refresh time of the project index of the gitlab token
+     */
+    void updateGitlabProjectIndex(GitlabIndexState state, List<GitlabProjectEntry> entries, Collection<Integer> removedIds);
+
+    /**
+     * remove the gitlab token with its project index
+     */
+    void deleteGitlabInfo(int id);
+
+    /**
+     * @return ids of the gitlab tokens whose project index has the project
+     */
+    List<Integer> listGitlabIdsByProject(int projectId);
+
 //    RSAKeyPair getRSAKeyPairByKeyId(int deployId);
 
     String getBuildTaskNameById(int buildId);
@@ -4,25 +4,43 @@ import org.domeos.framework.api.biz.base.impl.BaseBizImpl;
 import org.domeos.framework.api.biz.project.ProjectBiz;
 import org.domeos.framework.api.mapper.project.*;
 import org.domeos.framework.api.model.ci.BuildHistory;
+import org.domeos.framework.api.model.ci.related.BuildLogSegment;
 import org.domeos.framework.api.model.ci.related.BuildState;
 import org.domeos.framework.api.model.ci.related.ProjectRsakeyMap;
 import org.domeos.framework.api.model.ci.related.RSAKeyPair;
+import org.domeos.framework.api.model.project.GitlabIndexState;
+import org.domeos.framework.api.model.project.GitlabProjectEntry;
 import org.domeos.framework.api.model.project.GitlabUser;
 import org.domeos.framework.api.model.project.Project;
 import org.domeos.framework.api.model.project.SubversionUser;
 import org.domeos.framework.engine.model.RowMapperDao;
 import org.domeos.global.GlobalConstant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Created by feiliu206363 on 2016/4/5.
  */
 @Service("projectBiz")
 public class ProjectBizImpl extends BaseBizImpl implements ProjectBiz {
+
+    private static Logger logger = LoggerFactory.getLogger(ProjectBizImpl.class);
+
     @Autowired
     ProjectMapper projectMapper;
     @Autowired
@@ -33,6 +51,12 @@ public class ProjectBizImpl extends BaseBizImpl implements ProjectBiz {
     SubversionUserMapper subversionUserMapper;
     @Autowired
     ProjectRsakeyMapMapper projectRsakeyMapMapper;
+    @Autowired
+    BuildLogSegmentMapper buildLogSegmentMapper;
+    @Autowired
+    GitlabProjectIndexMapper gitlabProjectIndexMapper;
+
+    private static final int LOG_SEGMENT_SIZE = 1024 * 1024;
 
     @Override
     public void insertRowForRsaKeypair(RSAKeyPair item) {
@@ -167,14 +191,143 @@ public class ProjectBizImpl extends BaseBizImpl implements ProjectBiz {
         buildHistoryMapper.addTaskNameAndStatus(buildInfo, buildInfo.toString());
     }
 
+    // the log is cut into segments of LOG_SEGMENT_SIZE bytes, each one deflated and stored as a row,
+    // so neither upload nor download holds more than one segment in memory.
+    // A new upload is stored after the segments of the old log, which are deleted once it is complete,
+    // so a failed upload leaves the old log in place; readers use the first log, see currentSegments()
+    @Override
+    public long insertBuildLogById(int id, InputStream inputStream) throws IOException {
+        Integer maxSeq = buildLogSegmentMapper.getMaxSeq(id);
+        int firstSeq = maxSeq == null ? 0 : maxSeq + 1;
+        byte[] buffer = new byte[LOG_SEGMENT_SIZE];
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        long offset = 0;
+        int seq = firstSeq;
+        boolean complete = false;
+        try {
+            int length;
+            while ((length = readFully(inputStream, buffer)) > 0) {
+                compressed.reset();
+                deflater.reset();
+                try (DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(compressed, deflater)) {
+                    deflaterOutputStream.write(buffer, 0, length);
+                }
+                buildLogSegmentMapper.insertSegment(new BuildLogSegment(id, seq++, offset, length, compressed.toByteArray()));
+                offset += length;
+            }
+            complete = true;
+        } finally {
+            deflater.end();
+            if (!complete) {
+                try {
+                    buildLogSegmentMapper.deleteSegmentsFrom(id, firstSeq);
+                } catch (RuntimeException e) {
+                    // left after the old log, readers skip it and the next upload deletes it
+                    logger.warn("delete partial build log of " + id + " error, message is " + e.getMessage());
+                }
+            }
+        }
+        buildLogSegmentMapper.deleteSegmentsBefore(id, firstSeq);
+        buildHistoryMapper.insertLogById(id, null);
+        return offset;
+    }
+
+    /**
+     * @return segments of the first log stored for the build; while a new upload is stored after it,
+     * or when a failed one was left there, those follow starting again at offset 0
+     */
+    private List<BuildLogSegment> currentSegments(int buildId) {
+        List<BuildLogSegment> segments = buildLogSegmentMapper.listSegments(buildId);
+        if (segments == null) {
+            return null;
+        }
+        for (int i = 1; i < segments.size(); i++) {
+            if (segments.get(i).getRawOffset() == 0) {
+                return segments.subList(0, i);
+            }
+        }
+        return segments;
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int count = inputStream.read(buffer, total, buffer.length - total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
     @Override
-    public void insertBuildLogById(int id, byte[] bytes) {
-        buildHistoryMapper.insertLogById(id, bytes);
+    public long getBuildLogLengthById(int buildId) {
+        List<BuildLogSegment> segments = currentSegments(buildId);
+        if (segments == null || segments.isEmpty()) {
+            String log = buildHistoryMapper.getLogById(buildId);
+            return log == null ? 0 : log.getBytes(StandardCharsets.UTF_8).length;
+        }
+        BuildLogSegment last = segments.get(segments.size() - 1);
+        return last.getRawOffset() + last.getRawLength();
+    }
+
+    @Override
+    public void writeBuildLogById(int buildId, long offset, long length, OutputStream outputStream) throws IOException {
+        long end = offset + length;
+        List<BuildLogSegment> segments = currentSegments(buildId);
+        if (segments == null || segments.isEmpty()) {
+            // logs uploaded before segments were introduced
+            String legacyLog = buildHistoryMapper.getLogById(buildId);
+            byte[] log = legacyLog == null ? null : legacyLog.getBytes(StandardCharsets.UTF_8);
+            if (log != null && offset < log.length) {
+                outputStream.write(log, (int) offset, (int) (Math.min(end, log.length) - offset));
+            }
+            return;
+        }
+        byte[] buffer = new byte[8192];
+        for (BuildLogSegment segment : segments) {
+            long segmentEnd = segment.getRawOffset() + segment.getRawLength();
+            if (segmentEnd <= offset || segment.getRawOffset() >= end) {
+                continue;
+            }
+            BuildLogSegment stored = buildLogSegmentMapper.getSegment(buildId, segment.getSeq());
+            byte[] data = stored == null ? null : stored.getData();
+            if (data == null) {
+                throw new IOException("segment " + segment.getSeq() + " of build " + buildId + " is missing");
+            }
+            long skip = Math.max(0, offset - segment.getRawOffset());
+            long remaining = Math.min(end, segmentEnd) - segment.getRawOffset() - skip;
+            try (InputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(data))) {
+                while (skip > 0) {
+                    long skipped = inputStream.skip(skip);
+                    if (skipped <= 0) {
+                        throw new IOException("segment " + segment.getSeq() + " of build " + buildId + " is truncated");
+                    }
+                    skip -= skipped;
+                }
+                while (remaining > 0) {
+                    int count = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (count < 0) {
+                        throw new IOException("segment " + segment.getSeq() + " of build " + buildId + " is truncated");
+                    }
+                    outputStream.write(buffer, 0, count);
+                    remaining -= count;
+                }
+            }
+        }
     }
 
     @Override
     public String getBuildLogById(int buildId) {
-        return buildHistoryMapper.getLogById(buildId);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            writeBuildLogById(buildId, 0, getBuildLogLengthById(buildId), outputStream);
+        } catch (IOException e) {
+            logger.warn("read build log of " + buildId + " error, message is " + e.getMessage());
+        }
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
     }
 
     @Override
@@ -230,6 +383,47 @@ public class ProjectBizImpl extends BaseBizImpl implements ProjectBiz {
         return gitlabUserMapper.getGitlabInfoById(id);
     }
 
+    @Override
+    public List<GitlabProjectEntry> listGitlabProjectEntries(int gitlabId) {
+        return gitlabProjectIndexMapper.listEntries(gitlabId);
+    }
+
+    @Override
+    public GitlabIndexState getGitlabIndexState(int gitlabId) {
+        return gitlabProjectIndexMapper.getState(gitlabId);
+    }
+
+    @Override
+    public void updateGitlabProjectIndex(GitlabIndexState state, List<GitlabProjectEntry> entries, Collection<Integer> removedIds) {
+        // written in place, a failure leaves the rows of the previous refresh and not a hole in the index
+        int gitlabId = state.getGitlabId();
+        for (GitlabProjectEntry entry : entries) {
+            entry.setGitlabId(gitlabId);
+            if (gitlabProjectIndexMapper.updateEntry(entry) == 0) {
+                gitlabProjectIndexMapper.insertEntry(entry);
+            }
+        }
+        if (!removedIds.isEmpty()) {
+            gitlabProjectIndexMapper.deleteEntries(gitlabId, toIdListSql(removedIds));
+        }
+        if (gitlabProjectIndexMapper.updateState(state) == 0) {
+            gitlabProjectIndexMapper.insertState(state);
+        }
+    }
+
+    @Override
+    public void deleteGitlabInfo(int id) {
+        // the token first, a refresh starting after it finds no token and writes nothing
+        gitlabUserMapper.deleteGitlabInfoById(id);
+        gitlabProjectIndexMapper.deleteAllEntries(id);
+        gitlabProjectIndexMapper.deleteState(id);
+    }
+
+    @Override
+    public List<Integer> listGitlabIdsByProject(int projectId) {
+        return gitlabProjectIndexMapper.listGitlabIdsByProject(projectId);
+    }
+
 //    @Override
 //    public RSAKeyPair getRSAKeyPairByKeyId(int deployId) {
 //
@@ -51,6 +51,7 @@ public class ProjectCollectionBizImpl extends BaseBizImpl implements ProjectColl
     @Override
     public void addProjectCollection(ProjectCollection projectCollection) {
         projectCollectionMapper.addProjectCollection(projectCollection, projectCollection.toString());
+        AuthUtil.projectCollectionChanged(projectCollection.getId());
     }
 
     @Override
@@ -62,11 +63,13 @@ public class ProjectCollectionBizImpl extends BaseBizImpl implements ProjectColl
     @Override
     public void updateProjectCollection(ProjectCollection projectCollection) {
         projectCollectionMapper.updateProjectCollection(projectCollection, projectCollection.toString());
+        AuthUtil.projectCollectionChanged(projectCollection.getId());
     }
 
     @Override
     public void deleteProjectCollection(int id) {
         removeById(PROJECT_COLLECTION, id);
+        AuthUtil.projectCollectionChanged(id);
     }
 
     @Override
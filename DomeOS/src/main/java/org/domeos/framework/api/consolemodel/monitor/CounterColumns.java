@@ -0,0 +1,72 @@
+package org.domeos.framework.api.consolemodel.monitor;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Data of one counter in columns: the timestamps, and one value array per target aligned with them.
+ * A missing value is NaN in memory and null in json.
+ */
+public class CounterColumns {
+
+    private int interval;
+    private long[] timeStamps;
+    private Map<String, double[]> values = new LinkedHashMap<>();
+
+    public CounterColumns() {
+    }
+
+    public CounterColumns(int interval, long[] timeStamps) {
+        this.interval = interval;
+        this.timeStamps = timeStamps;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * @return timestamps in milliseconds
+     */
+    public long[] getTimeStamps() {
+        return timeStamps;
+    }
+
+    public void setTimeStamps(long[] timeStamps) {
+        this.timeStamps = timeStamps;
+    }
+
+    @JsonSerialize(contentUsing = NanAsNullSerializer.class)
+    public Map<String, double[]> getValues() {
+        return values;
+    }
+
+    public void setValues(Map<String, double[]> values) {
+        this.values = values;
+    }
+
+    public static class NanAsNullSerializer extends JsonSerializer<double[]> {
+        @Override
+        public void serialize(double[] value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartArray();
+            for (double item : value) {
+                if (Double.isNaN(item)) {
+                    gen.writeNull();
+                } else {
+                    gen.writeNumber(item);
+                }
+            }
+            gen.writeEndArray();
+        }
+    }
+}
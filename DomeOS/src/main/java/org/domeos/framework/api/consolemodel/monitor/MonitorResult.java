@@ -1,5 +1,7 @@
 package org.domeos.framework.api.consolemodel.monitor;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -13,6 +15,8 @@ public class MonitorResult {
     private int interval;
     private String dataSpec;
     private Map<String, List<Map<String, Double>>> counterResults;
+    // set instead of counterResults when the columnar format is asked for
+    private Map<String, CounterColumns> counterColumns;
 
     public MonitorResult() {
         counterResults = new TreeMap<>();
@@ -57,4 +61,13 @@ public class MonitorResult {
     public void setCounterResults(Map<String, List<Map<String, Double>>> counterResults) {
         this.counterResults = counterResults;
     }
-}
\ No newline at end of file
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Map<String, CounterColumns> getCounterColumns() {
+        return counterColumns;
+    }
+
+    public void setCounterColumns(Map<String, CounterColumns> counterColumns) {
+        this.counterColumns = counterColumns;
+    }
+}
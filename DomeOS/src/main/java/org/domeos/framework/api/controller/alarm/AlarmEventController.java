@@ -8,6 +8,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 /**
@@ -22,8 +23,9 @@ public class AlarmEventController extends ApiController {
 
     @ResponseBody
     @RequestMapping(value = "/alarm/event", method = RequestMethod.GET)
-    public HttpResponseTemp<?> listAlarmEventInfo() {
-        return alarmEventService.listAlarmEventInfo();
+    public HttpResponseTemp<?> listAlarmEventInfo(@RequestParam(value = "offset", required = false, defaultValue = "0") int offset,
+                                                  @RequestParam(value = "limit", required = false, defaultValue = "0") int limit) {
+        return alarmEventService.listAlarmEventInfo(offset, limit);
     }
 
     @ResponseBody
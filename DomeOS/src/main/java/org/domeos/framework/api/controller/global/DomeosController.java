@@ -3,7 +3,29 @@ package org.domeos.framework.api.controller.global;
 import org.domeos.basemodel.HttpResponseTemp;
 import org.domeos.basemodel.ResultStat;
 import org.domeos.framework.api.controller.ApiController;
+import org.domeos.framework.api.service.alarm.impl.AlarmEventListAssembler;
+import org.domeos.framework.api.service.deployment.impl.DeploymentListAssembler;
+import org.domeos.framework.api.service.image.impl.PrivateRegistry;
+import org.domeos.framework.api.service.token.impl.TokenServiceImpl;
+import org.domeos.framework.engine.AuthUtil;
+import org.domeos.framework.engine.coderepo.GitlabProjectIndex;
+import org.domeos.framework.engine.event.DMEventDispatcher;
+import org.domeos.framework.engine.k8s.cache.ClusterResourceCache;
+import org.domeos.framework.engine.k8s.updater.DeployStatusReconciler;
+import org.domeos.framework.engine.k8s.updater.EventUpdater;
+import org.domeos.framework.engine.k8s.updater.RolloutScheduler;
+import org.domeos.framework.engine.k8s.util.KubeClientRegistry;
+import org.domeos.framework.engine.model.RowModelCache;
+import org.domeos.framework.engine.runtime.DeployResourceStatusManager;
+import org.domeos.framework.engine.runtime.FalconQueryCache;
+import org.domeos.framework.engine.runtime.FalconQueryClient;
+import org.domeos.framework.engine.websocket.LogStreamHub;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.GlobalConstant;
+import org.domeos.util.HttpsClient;
+import org.domeos.util.MysqlPooledDataSource;
+import org.gitlab.api.http.GitlabResponseCache;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -15,6 +37,9 @@ import org.springframework.web.bind.annotation.ResponseBody;
 @Controller
 @RequestMapping("/api/global")
 public class DomeosController extends ApiController {
+    @Autowired(required = false)
+    MysqlPooledDataSource mysqlDataSource;
+
     @ResponseBody
     @RequestMapping(value = "/version", method = RequestMethod.GET)
     HttpResponseTemp<?> version() {
@@ -26,4 +51,133 @@ public class DomeosController extends ApiController {
     HttpResponseTemp<?> database() {
         return ResultStat.OK.wrap(GlobalConstant.DATABASETYPE);
     }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/rowcache", method = RequestMethod.GET)
+    HttpResponseTemp<?> rowCacheMetrics() {
+        return ResultStat.OK.wrap(RowModelCache.listStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/datasource", method = RequestMethod.GET)
+    HttpResponseTemp<?> dataSourceMetrics() {
+        if (mysqlDataSource == null) {
+            return ResultStat.OK.wrap(null);
+        }
+        return ResultStat.OK.wrap(mysqlDataSource.getStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/eventingest", method = RequestMethod.GET)
+    HttpResponseTemp<?> eventIngestMetrics() {
+        return ResultStat.OK.wrap(EventUpdater.listIngestStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/dmevent", method = RequestMethod.GET)
+    HttpResponseTemp<?> dmEventMetrics() {
+        return ResultStat.OK.wrap(DMEventDispatcher.getInstance().stats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/kubeclient", method = RequestMethod.GET)
+    HttpResponseTemp<?> kubeClientMetrics() {
+        return ResultStat.OK.wrap(KubeClientRegistry.listStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/resourcecache", method = RequestMethod.GET)
+    HttpResponseTemp<?> resourceCacheMetrics() {
+        return ResultStat.OK.wrap(ClusterResourceCache.listStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/resourcestatus", method = RequestMethod.GET)
+    HttpResponseTemp<?> resourceStatusMetrics() {
+        return ResultStat.OK.wrap(DeployResourceStatusManager.getStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/logstream", method = RequestMethod.GET)
+    HttpResponseTemp<?> logStreamMetrics() {
+        return ResultStat.OK.wrap(LogStreamHub.getInstance().stats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/https", method = RequestMethod.GET)
+    HttpResponseTemp<?> httpsClientMetrics() {
+        return ResultStat.OK.wrap(HttpsClient.getInstance().stats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/registrymeta", method = RequestMethod.GET)
+    HttpResponseTemp<?> registryMetadataMetrics() {
+        return ResultStat.OK.wrap(PrivateRegistry.getMetadataCacheStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/executors", method = RequestMethod.GET)
+    HttpResponseTemp<?> executorMetrics() {
+        return ResultStat.OK.wrap(ExecutorRegistry.listStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/deploymentlist", method = RequestMethod.GET)
+    HttpResponseTemp<?> deploymentListMetrics() {
+        return ResultStat.OK.wrap(DeploymentListAssembler.getStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/deploystatus", method = RequestMethod.GET)
+    HttpResponseTemp<?> deployStatusMetrics() {
+        return ResultStat.OK.wrap(DeployStatusReconciler.getInstance().stats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/rollouts", method = RequestMethod.GET)
+    HttpResponseTemp<?> rolloutMetrics() {
+        return ResultStat.OK.wrap(RolloutScheduler.getInstance().stats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/gitlab", method = RequestMethod.GET)
+    HttpResponseTemp<?> gitlabMetrics() {
+        return ResultStat.OK.wrap(GitlabResponseCache.getInstance().stats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/gitlabindex", method = RequestMethod.GET)
+    HttpResponseTemp<?> gitlabIndexMetrics() {
+        return ResultStat.OK.wrap(GitlabProjectIndex.getStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/alarmevents", method = RequestMethod.GET)
+    HttpResponseTemp<?> alarmEventMetrics() {
+        return ResultStat.OK.wrap(AlarmEventListAssembler.getStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/monitorquery", method = RequestMethod.GET)
+    HttpResponseTemp<?> monitorQueryMetrics() {
+        return ResultStat.OK.wrap(FalconQueryCache.getInstance().stats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/monitorclient", method = RequestMethod.GET)
+    HttpResponseTemp<?> monitorClientMetrics() {
+        return ResultStat.OK.wrap(FalconQueryClient.getInteractive().stats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/registrytoken", method = RequestMethod.GET)
+    HttpResponseTemp<?> registryTokenMetrics() {
+        return ResultStat.OK.wrap(TokenServiceImpl.getStats());
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/metrics/authindex", method = RequestMethod.GET)
+    HttpResponseTemp<?> authIndexMetrics() {
+        return ResultStat.OK.wrap(AuthUtil.getIndexStats());
+    }
 }
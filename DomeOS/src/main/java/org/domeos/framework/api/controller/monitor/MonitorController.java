@@ -44,7 +44,9 @@ public class MonitorController extends ApiController {
                                               @RequestParam(value = "start", required = true) long start,
                                               @RequestParam(value = "end", required = true) long end,
                                               @RequestParam(value = "dataSpec", defaultValue = "AVERAGE") String dataSpec,
+                                              @RequestParam(value = "format", defaultValue = "row") String format,
+                                              @RequestParam(value = "points", defaultValue = "0") int points,
                                               @RequestParam(value = "cid", required = true) int cid) {
-        return monitorService.getMonitorData(targetId, start, end, dataSpec, cid);
+        return monitorService.getMonitorData(targetId, start, end, dataSpec, "columnar".equals(format), points, cid);
     }
 }
\ No newline at end of file
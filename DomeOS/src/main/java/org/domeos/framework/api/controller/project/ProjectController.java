@@ -20,6 +20,8 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
 
@@ -228,6 +230,14 @@ public class ProjectController extends ApiController {
         return buildService.downloadLogFile(projectId, buildId);
     }
 
+    @RequestMapping(value = "/ci/build/download/{projectId}/{buildId}/log", method = RequestMethod.GET)
+    public void streamLogFile(@PathVariable int projectId, @PathVariable int buildId,
+                              @RequestParam(value = "offset", required = false) Long offset,
+                              @RequestParam(value = "tail", required = false) Long tail,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        buildService.streamLogFile(projectId, buildId, offset, tail, request, response);
+    }
+
     @ResponseBody
     @RequestMapping(value = "/ci/build/download/{projectId}/{buildId}/uploadfile", method = RequestMethod.GET)
     public String downloadUploadFile(@PathVariable int projectId, @PathVariable int buildId,
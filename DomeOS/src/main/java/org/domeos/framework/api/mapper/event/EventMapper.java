@@ -20,6 +20,12 @@ public interface EventMapper {
             "VALUES (#{version}, #{clusterId}, #{namespace}, #{eventKind}, #{deployId}, #{name}, #{host}, #{content})")
     void createEvent(EventDBProto proto);
 
+    @Insert("<script>INSERT INTO k8s_events (version, clusterId, namespace, eventKind, deployId, name, host, content) VALUES " +
+            "<foreach collection='protos' item='p' separator=','>" +
+            "(#{p.version}, #{p.clusterId}, #{p.namespace}, #{p.eventKind}, #{p.deployId}, #{p.name}, #{p.host}, #{p.content})" +
+            "</foreach></script>")
+    void createEvents(@Param("protos") List<EventDBProto> protos);
+
     // get by max id
     // 根据前面insert on duplicate key update的策略,这样可能在事件重复出现的时候可能会拿不到最新的version,不过无所谓,
     // 结果是把一些事件再重复插入一遍
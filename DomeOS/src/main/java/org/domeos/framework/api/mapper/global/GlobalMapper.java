@@ -5,6 +5,8 @@ import org.domeos.framework.api.model.global.GlobalType;
 import org.domeos.framework.api.model.global.GlobalInfo;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 /**
  * Created by feiliu206363 on 2016/1/20.
  */
@@ -32,4 +34,16 @@ public interface GlobalMapper {
 
     @Update("UPDATE global SET value=#{value}, lastUpdate=#{lastUpdate} WHERE type=#{type}")
     int updateGlobalInfoByType(GlobalInfo globalInfo);
+
+    @Select("SELECT * FROM global ORDER BY id")
+    List<GlobalInfo> listGlobalInfo();
+
+    @Select("SELECT version FROM global_version WHERE id=1")
+    Long getVersion();
+
+    @Update("UPDATE global_version SET version=version+1 WHERE id=1")
+    int increaseVersion();
+
+    @Insert("INSERT INTO global_version (id, version) VALUES (1, 1)")
+    int insertVersion();
 }
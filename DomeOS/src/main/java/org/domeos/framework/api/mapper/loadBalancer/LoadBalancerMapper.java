@@ -21,6 +21,15 @@ public interface LoadBalancerMapper {
             " where deployId = #{deployId} and removed = 0)")
     List<RowMapperDao> getLBListByDeploy(@Param("deployId") int deployId);
 
+    @Select("select " + RowMapper.BASIC_COLUMNS + " from " + GlobalConstant.LOADBALANCER_TABLE_NAME +
+            "  where id in (select loadBalancerId from " + GlobalConstant.LOADBALANCERDEPLOYMAP_TABLE_NAME +
+            " where deployId in ${deployIds} and removed = 0)")
+    List<RowMapperDao> getLBListByDeploys(@Param("deployIds") String deployIds);
+
+    @Select("select deployId, loadBalancerId from " + GlobalConstant.LOADBALANCERDEPLOYMAP_TABLE_NAME +
+            " where deployId in ${deployIds} and removed = 0")
+    List<DeployLoadBalancerPair> getIndexPairsByDeploys(@Param("deployIds") String deployIds);
+
     @Insert("INSERT INTO " + GlobalConstant.LOADBALANCER_TABLE_NAME +
             " (name, description, state, createTime, removeTime, removed, data) values (" +
             " #{item.name}, #{item.description}, #{item.state}, #{item.createTime}, #{item.removeTime}," +
@@ -0,0 +1,35 @@
+package org.domeos.framework.api.mapper.project;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.domeos.framework.api.model.ci.related.BuildLogSegment;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * segments of build logs, see ProjectBizImpl.insertBuildLogById
+ */
+@Repository
+public interface BuildLogSegmentMapper {
+    @Insert("INSERT INTO build_log_segment (buildId, seq, rawOffset, rawLength, data) VALUES (" +
+            " #{item.buildId}, #{item.seq}, #{item.rawOffset}, #{item.rawLength}, #{item.data})")
+    int insertSegment(@Param("item") BuildLogSegment item);
+
+    @Select("SELECT buildId, seq, rawOffset, rawLength FROM build_log_segment WHERE buildId=#{buildId} ORDER BY seq")
+    List<BuildLogSegment> listSegments(@Param("buildId") int buildId);
+
+    @Select("SELECT * FROM build_log_segment WHERE buildId=#{buildId} AND seq=#{seq}")
+    BuildLogSegment getSegment(@Param("buildId") int buildId, @Param("seq") int seq);
+
+    @Select("SELECT MAX(seq) FROM build_log_segment WHERE buildId=#{buildId}")
+    Integer getMaxSeq(@Param("buildId") int buildId);
+
+    @Delete("DELETE FROM build_log_segment WHERE buildId=#{buildId} AND seq<#{seq}")
+    int deleteSegmentsBefore(@Param("buildId") int buildId, @Param("seq") int seq);
+
+    @Delete("DELETE FROM build_log_segment WHERE buildId=#{buildId} AND seq>=#{seq}")
+    int deleteSegmentsFrom(@Param("buildId") int buildId, @Param("seq") int seq);
+}
@@ -0,0 +1,56 @@
+package org.domeos.framework.api.mapper.project;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.domeos.framework.api.model.project.GitlabIndexState;
+import org.domeos.framework.api.model.project.GitlabProjectEntry;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * project index of gitlab tokens, see GitlabProjectIndex
+ */
+@Repository
+public interface GitlabProjectIndexMapper {
+    @Select("SELECT * FROM gitlab_project_index WHERE gitlabId=#{gitlabId}")
+    List<GitlabProjectEntry> listEntries(@Param("gitlabId") int gitlabId);
+
+    @Insert("INSERT INTO gitlab_project_index (gitlabId, projectId, nameWithNamespace, sshUrl, httpUrl, description," +
+            " accessLevel, createTime, lastActivityAt) VALUES (#{item.gitlabId}, #{item.projectId}," +
+            " #{item.nameWithNamespace}, #{item.sshUrl}, #{item.httpUrl}, #{item.description}, #{item.accessLevel}," +
+            " #{item.createTime}, #{item.lastActivityAt})")
+    int insertEntry(@Param("item") GitlabProjectEntry item);
+
+    @Update("UPDATE gitlab_project_index SET nameWithNamespace=#{item.nameWithNamespace}, sshUrl=#{item.sshUrl}," +
+            " httpUrl=#{item.httpUrl}, description=#{item.description}, accessLevel=#{item.accessLevel}," +
+            " createTime=#{item.createTime}, lastActivityAt=#{item.lastActivityAt}" +
+            " WHERE gitlabId=#{item.gitlabId} AND projectId=#{item.projectId}")
+    int updateEntry(@Param("item") GitlabProjectEntry item);
+
+    @Delete("DELETE FROM gitlab_project_index WHERE gitlabId=#{gitlabId} AND projectId IN ${projectIds}")
+    int deleteEntries(@Param("gitlabId") int gitlabId, @Param("projectIds") String projectIds);
+
+    @Delete("DELETE FROM gitlab_project_index WHERE gitlabId=#{gitlabId}")
+    int deleteAllEntries(@Param("gitlabId") int gitlabId);
+
+    @Select("SELECT DISTINCT gitlabId FROM gitlab_project_index WHERE projectId=#{projectId}")
+    List<Integer> listGitlabIdsByProject(@Param("projectId") int projectId);
+
+    @Select("SELECT * FROM gitlab_project_index_state WHERE gitlabId=#{gitlabId}")
+    GitlabIndexState getState(@Param("gitlabId") int gitlabId);
+
+    @Delete("DELETE FROM gitlab_project_index_state WHERE gitlabId=#{gitlabId}")
+    int deleteState(@Param("gitlabId") int gitlabId);
+
+    @Insert("INSERT INTO gitlab_project_index_state (gitlabId, refreshTime, fullRefreshTime) VALUES (" +
+            " #{item.gitlabId}, #{item.refreshTime}, #{item.fullRefreshTime})")
+    int insertState(@Param("item") GitlabIndexState item);
+
+    @Update("UPDATE gitlab_project_index_state SET refreshTime=#{item.refreshTime}," +
+            " fullRefreshTime=#{item.fullRefreshTime} WHERE gitlabId=#{item.gitlabId}")
+    int updateState(@Param("item") GitlabIndexState item);
+}
@@ -1,28 +1,21 @@
 package org.domeos.framework.api.model.ci;
 
 import io.fabric8.kubernetes.client.dsl.LogWatch;
-import org.domeos.exception.JobLogException;
-import org.domeos.exception.JobNotFoundException;
 import org.domeos.framework.engine.k8s.JobWrapper;
 import org.domeos.framework.engine.model.JobType;
 import org.domeos.framework.engine.websocket.Connection;
-import org.domeos.global.ClientConfigure;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.domeos.framework.engine.websocket.LogStreamHub;
+import org.domeos.framework.engine.websocket.LogSubscriber;
 
 import javax.websocket.Session;
-import java.io.IOException;
-import java.io.PipedInputStream;
-import java.util.concurrent.Callable;
 
 /**
  * Created by feiliu206363 on 2015/12/4.
  */
 public class BuildConnection implements Connection {
-    private WatchBuildLog watchBuildLog;
+    private LogSubscriber subscriber;
     private int buildId;
     private Session session;
-    private Logger logger = LoggerFactory.getLogger(BuildConnection.class);
     private JobType jobType;
 
     public int getBuildId() {
@@ -49,77 +42,26 @@ public class BuildConnection implements Connection {
         this.jobType = jobType;
     }
 
-    @Override
-    public void sendMessage() throws Exception {
-        watchBuildLog = new WatchBuildLog();
-        ClientConfigure.executorService.submit(new WatchBuildLogTask(watchBuildLog));
+    private String streamKey() {
+        return "build/" + jobType + "/" + buildId;
     }
 
+    // a viewer that falls behind is closed, the whole log can be downloaded once the build is over
     @Override
-    public void stopMessage() {
-        watchBuildLog.stopRun();
-    }
-
-    private class WatchBuildLog {
-        private JobWrapper jobWrapper;
-        private LogWatch logWatch;
-        private PipedInputStream pipedInputStream;
-
-        public WatchBuildLog() throws Exception {
-            this.jobWrapper = new JobWrapper().init();
-        }
-
-        private void startRun() {
-            try {
-                logWatch = jobWrapper.fetchJobLogs(buildId, jobType);
-                pipedInputStream = (PipedInputStream) logWatch.getOutput();
-                readMessageContinued();
-            } catch (JobNotFoundException | JobLogException e) {
-                logger.warn("get exception when get container log, message is " + e.getMessage());
-            }
-        }
-
-        private void stopRun() {
-            try {
-                pipedInputStream.close();
-                logWatch.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-
-        private void readMessageContinued() {
-            try {
-                while (true) {
-                    byte[] buf = new byte[1024];
-                    int len = pipedInputStream.read(buf);
-                    session.getBasicRemote().sendText(new String(buf, 0, len));
-                    if (len == 0) {
-                        stopRun();
-                    }
-                }
-            } catch (IOException e) {
-                logger.warn("get exception when send container log, message is " + e.getMessage());
-                stopRun();
+    public void sendMessage() throws Exception {
+        subscriber = LogSubscriber.forSession(session, LogSubscriber.OverflowPolicy.CLOSE, LogStreamHub.DEFAULT_MAX_BUFFERED);
+        LogStreamHub.getInstance().subscribe(streamKey(), new LogStreamHub.LogSource() {
+            @Override
+            public LogWatch open() throws Exception {
+                return new JobWrapper().init().fetchJobLogs(buildId, jobType);
             }
-
-        }
+        }, subscriber);
     }
 
-    private class WatchBuildLogTask implements Callable<WatchBuildLog> {
-        private WatchBuildLog watchBuildLog;
-
-        public WatchBuildLogTask(WatchBuildLog watchBuildLog) {
-            this.watchBuildLog = watchBuildLog;
-        }
-
-
-        public WatchBuildLog call() throws Exception {
-            watchBuildLog.startRun();
-            return null;
+    @Override
+    public void stopMessage() {
+        if (subscriber != null) {
+            LogStreamHub.getInstance().unsubscribe(streamKey(), subscriber);
         }
-
     }
-
-
 }
@@ -0,0 +1,64 @@
+package org.domeos.framework.api.model.ci.related;
+
+/**
+ * One piece of a build log, covering [rawOffset, rawOffset + rawLength) of the raw log.
+ * data is the deflated piece, it is only loaded when the segment is read.
+ */
+public class BuildLogSegment {
+    private int buildId;
+    private int seq;
+    private long rawOffset;
+    private int rawLength;
+    private byte[] data;
+
+    public BuildLogSegment() {
+    }
+
+    public BuildLogSegment(int buildId, int seq, long rawOffset, int rawLength, byte[] data) {
+        this.buildId = buildId;
+        this.seq = seq;
+        this.rawOffset = rawOffset;
+        this.rawLength = rawLength;
+        this.data = data;
+    }
+
+    public int getBuildId() {
+        return buildId;
+    }
+
+    public void setBuildId(int buildId) {
+        this.buildId = buildId;
+    }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public void setSeq(int seq) {
+        this.seq = seq;
+    }
+
+    public long getRawOffset() {
+        return rawOffset;
+    }
+
+    public void setRawOffset(long rawOffset) {
+        this.rawOffset = rawOffset;
+    }
+
+    public int getRawLength() {
+        return rawLength;
+    }
+
+    public void setRawLength(int rawLength) {
+        this.rawLength = rawLength;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
@@ -1,20 +1,12 @@
 package org.domeos.framework.api.model.deployment;
 
 import io.fabric8.kubernetes.client.dsl.LogWatch;
-import org.domeos.exception.JobLogException;
 import org.domeos.framework.engine.k8s.NodeWrapper;
 import org.domeos.framework.engine.websocket.Connection;
-import org.domeos.global.ClientConfigure;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.domeos.framework.engine.websocket.LogStreamHub;
+import org.domeos.framework.engine.websocket.LogSubscriber;
 
 import javax.websocket.Session;
-import java.io.IOException;
-import java.io.PipedInputStream;
-import java.nio.ByteBuffer;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Created by feiliu206363 on 2015/12/21.
@@ -25,9 +17,7 @@ public class InstanceConnection implements Connection {
     private String podName;
     private String containerName;
     private Session session;
-    private Logger logger = LoggerFactory.getLogger(InstanceConnection.class);
-
-    private WatchContainerLog watchContainerLog;
+    private LogSubscriber subscriber;
 
     public int getClusterId() {
         return clusterId;
@@ -69,86 +59,25 @@ public class InstanceConnection implements Connection {
         this.session = session;
     }
 
-    @Override
-    public void sendMessage() throws Exception {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        watchContainerLog = new WatchContainerLog(clusterId, namespace, podName, containerName);
-        ClientConfigure.executorService.submit(new WatchContainerLogTask(watchContainerLog));
+    private String streamKey() {
+        return "instance/" + clusterId + "/" + namespace + "/" + podName + "/" + containerName;
     }
 
     @Override
-    public void stopMessage() {
-        watchContainerLog.stopRun();
-    }
-
-
-    private class WatchContainerLog {
-        private NodeWrapper nodeWrapper;
-        private LogWatch logWatch;
-        private PipedInputStream pipedInputStream;
-        private String podName;
-        private String containerName;
-
-        public WatchContainerLog(int clusterId, String namespace, String podName, String containerName) throws Exception {
-            this.podName = podName;
-            this.containerName = containerName;
-            this.nodeWrapper = new NodeWrapper().init(clusterId, namespace);
-        }
-
-        private void startRun() {
-            try {
-                logWatch = nodeWrapper.fetchContainerLogs(podName, containerName);
-                pipedInputStream = (PipedInputStream) logWatch.getOutput();
-                readMessageContinued();
-            } catch (JobLogException e) {
-                logger.warn("get exception when get container log, message is " + e.getMessage());
-            }
-        }
-
-        private void stopRun() {
-            try {
-                pipedInputStream.close();
-                logWatch.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-
-        private void readMessageContinued() {
-            try {
-                while (true) {
-                    byte[] buf = new byte[1024];
-                    int len = pipedInputStream.read(buf);
-                    session.getBasicRemote().sendText(new String(buf, 0, len));
-                    String pingString = "hello pings";
-                    ByteBuffer pingData = ByteBuffer.allocate(pingString.getBytes().length);
-                    pingData.put(pingString.getBytes()).flip();
-                    session.getBasicRemote().sendPing(pingData);
-                    if (len == 0) {
-                        stopRun();
-                    }
-                }
-            } catch (IOException e) {
-                logger.warn("get exception when send container log, message is " + e.getMessage());
-                stopRun();
+    public void sendMessage() throws Exception {
+        subscriber = LogSubscriber.forSession(session, LogSubscriber.OverflowPolicy.DROP, LogStreamHub.DEFAULT_MAX_BUFFERED);
+        LogStreamHub.getInstance().subscribe(streamKey(), new LogStreamHub.LogSource() {
+            @Override
+            public LogWatch open() throws Exception {
+                return new NodeWrapper().init(clusterId, namespace).fetchContainerLogs(podName, containerName);
             }
-
-        }
+        }, subscriber);
     }
 
-    private class WatchContainerLogTask implements Callable<WatchContainerLog> {
-        private WatchContainerLog watchContainerLog;
-
-        public WatchContainerLogTask(WatchContainerLog watchContainerLog) {
-            this.watchContainerLog = watchContainerLog;
-        }
-
-
-        public WatchContainerLog call() throws Exception {
-            watchContainerLog.startRun();
-            return null;
+    @Override
+    public void stopMessage() {
+        if (subscriber != null) {
+            LogStreamHub.getInstance().unsubscribe(streamKey(), subscriber);
         }
-
     }
-
 }
@@ -0,0 +1,44 @@
+package org.domeos.framework.api.model.project;
+
+/**
+ * When the project index of a gitlab token was refreshed, row of gitlab_project_index_state.
+ * A full refresh fetches the access of every project again, others only of changed projects.
+ */
+public class GitlabIndexState {
+    private int gitlabId;
+    private long refreshTime;
+    private long fullRefreshTime;
+
+    public GitlabIndexState() {
+    }
+
+    public GitlabIndexState(int gitlabId, long refreshTime, long fullRefreshTime) {
+        this.gitlabId = gitlabId;
+        this.refreshTime = refreshTime;
+        this.fullRefreshTime = fullRefreshTime;
+    }
+
+    public int getGitlabId() {
+        return gitlabId;
+    }
+
+    public void setGitlabId(int gitlabId) {
+        this.gitlabId = gitlabId;
+    }
+
+    public long getRefreshTime() {
+        return refreshTime;
+    }
+
+    public void setRefreshTime(long refreshTime) {
+        this.refreshTime = refreshTime;
+    }
+
+    public long getFullRefreshTime() {
+        return fullRefreshTime;
+    }
+
+    public void setFullRefreshTime(long fullRefreshTime) {
+        this.fullRefreshTime = fullRefreshTime;
+    }
+}
@@ -0,0 +1,92 @@
+package org.domeos.framework.api.model.project;
+
+/**
+ * A gitlab project visible to a gitlab token, row of gitlab_project_index.
+ * accessLevel is null when the token can not use the project.
+ */
+public class GitlabProjectEntry {
+    private int gitlabId;
+    private int projectId;
+    private String nameWithNamespace;
+    private String sshUrl;
+    private String httpUrl;
+    private String description;
+    private String accessLevel;
+    private long createTime;
+    private long lastActivityAt;
+
+    public GitlabProjectEntry() {
+    }
+
+    public int getGitlabId() {
+        return gitlabId;
+    }
+
+    public void setGitlabId(int gitlabId) {
+        this.gitlabId = gitlabId;
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(int projectId) {
+        this.projectId = projectId;
+    }
+
+    public String getNameWithNamespace() {
+        return nameWithNamespace;
+    }
+
+    public void setNameWithNamespace(String nameWithNamespace) {
+        this.nameWithNamespace = nameWithNamespace;
+    }
+
+    public String getSshUrl() {
+        return sshUrl;
+    }
+
+    public void setSshUrl(String sshUrl) {
+        this.sshUrl = sshUrl;
+    }
+
+    public String getHttpUrl() {
+        return httpUrl;
+    }
+
+    public void setHttpUrl(String httpUrl) {
+        this.httpUrl = httpUrl;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getAccessLevel() {
+        return accessLevel;
+    }
+
+    public void setAccessLevel(String accessLevel) {
+        this.accessLevel = accessLevel;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(long createTime) {
+        this.createTime = createTime;
+    }
+
+    public long getLastActivityAt() {
+        return lastActivityAt;
+    }
+
+    public void setLastActivityAt(long lastActivityAt) {
+        this.lastActivityAt = lastActivityAt;
+    }
+}
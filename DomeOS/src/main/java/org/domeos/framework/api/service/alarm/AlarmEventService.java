@@ -9,9 +9,11 @@ public interface AlarmEventService {
 
     /**
      *
+     * @param offset alarm events skipped, newest first
+     * @param limit max alarm events returned, all when not positive
      * @return
      */
-    HttpResponseTemp<?> listAlarmEventInfo();
+    HttpResponseTemp<?> listAlarmEventInfo(int offset, int limit);
 
     /**
      *
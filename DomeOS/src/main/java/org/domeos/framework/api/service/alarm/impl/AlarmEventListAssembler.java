@@ -0,0 +1,292 @@
+package org.domeos.framework.api.service.alarm.impl;
+
+import org.domeos.framework.api.biz.alarm.AlarmBiz;
+import org.domeos.framework.api.biz.cluster.ClusterBiz;
+import org.domeos.framework.api.consolemodel.alarm.AlarmEventInfo;
+import org.domeos.framework.api.consolemodel.alarm.AlarmEventInfoDraft;
+import org.domeos.framework.api.consolemodel.alarm.DeploymentAlarmInfo;
+import org.domeos.framework.api.model.alarm.HostInfo;
+import org.domeos.framework.api.model.alarm.TemplateType;
+import org.domeos.framework.api.model.cluster.Cluster;
+import org.domeos.framework.api.model.deployment.Deployment;
+import org.domeos.framework.api.model.deployment.related.Container;
+import org.domeos.framework.api.model.deployment.related.Instance;
+import org.domeos.framework.api.service.deployment.InstanceService;
+import org.domeos.global.ExecutorRegistry;
+import org.domeos.global.GlobalConstant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the alarm event list from the drafts of one page. Templates and hosts are looked up once
+ * each, clusters with one query, and the instances of a deployment are listed once and indexed by
+ * container id, instead of a pod list per container alarm.
+ */
+@Component
+public class AlarmEventListAssembler {
+
+    private static Logger logger = LoggerFactory.getLogger(AlarmEventListAssembler.class);
+
+    private static final ListStats STATS = new ListStats();
+
+    @Autowired
+    AlarmBiz alarmBiz;
+
+    @Autowired
+    ClusterBiz clusterBiz;
+
+    @Autowired
+    InstanceService instanceService;
+
+    public static ListStats getStats() {
+        return STATS;
+    }
+
+    /**
+     * @param offset events skipped, newest first
+     * @param limit  max events returned, all when not positive
+     * @return alarm events of the page, newest first; drafts of unknown metrics are left out
+     */
+    public List<AlarmEventInfo> assemble(List<AlarmEventInfoDraft> drafts, int offset, int limit) {
+        long start = System.nanoTime();
+        List<AlarmEventInfo> alarmEventInfos = new ArrayList<>();
+        if (drafts == null || drafts.isEmpty()) {
+            return alarmEventInfos;
+        }
+        List<AlarmEventInfoDraft> page = page(drafts, offset, limit);
+
+        Map<String, HostInfo> hostInfos = new HashMap<>();
+        Map<Integer, Deployment> deployments = new HashMap<>();
+        Map<Integer, Deployment> deploymentsById = new LinkedHashMap<>();
+        for (AlarmEventInfoDraft draft : page) {
+            if (isDeployAlarm(draft)) {
+                if (!deployments.containsKey(draft.getTemplate_id())) {
+                    Deployment deployment = alarmBiz.getDeploymentByTemplateId(draft.getTemplate_id());
+                    deployments.put(draft.getTemplate_id(), deployment);
+                    if (deployment != null) {
+                        deploymentsById.put(deployment.getId(), deployment);
+                    }
+                }
+            } else if (!hostInfos.containsKey(draft.getEndpoint())) {
+                hostInfos.put(draft.getEndpoint(), alarmBiz.getHostInfoByHostname(draft.getEndpoint()));
+            }
+        }
+        Map<Integer, Cluster> clusters = listClusters(deploymentsById.values());
+        Map<Integer, Map<String, Instance>> containers = listContainers(deploymentsById.values());
+
+        for (AlarmEventInfoDraft draft : page) {
+            AlarmEventInfo alarmEventInfo = new AlarmEventInfo();
+            alarmEventInfo.setId(draft.getId());
+            if (isDeployAlarm(draft)) {
+                alarmEventInfo.setTemplateType(TemplateType.deploy.name());
+                alarmEventInfo.setDeploymentAlarmInfo(deploymentAlarmInfo(draft, deployments.get(draft.getTemplate_id()),
+                        clusters, containers));
+            } else {
+                alarmEventInfo.setTemplateType(TemplateType.host.name());
+                alarmEventInfo.setHostInfo(hostInfos.get(draft.getEndpoint()));
+            }
+            alarmEventInfo.setMetric(AlarmEventServiceImpl.convertMetricByCounter(draft.getCounter()));
+            alarmEventInfo.setTag(AlarmEventServiceImpl.convertTagByCounter(draft.getCounter()));
+            alarmEventInfo.setLeftValue(Double.valueOf(draft.getLeft_value()));
+            alarmEventInfo.setOperator(draft.getOperator());
+            alarmEventInfo.setRightValue(Double.valueOf(draft.getRight_value()));
+            alarmEventInfo.setNote(draft.getNote());
+            alarmEventInfo.setCurrentStep(draft.getCurrent_step());
+            alarmEventInfo.setMaxStep(draft.getMax_step());
+            alarmEventInfo.setTimeStamp(draft.getTimestamp() * 1000);
+            alarmEventInfos.add(alarmEventInfo);
+        }
+        STATS.record(drafts.size(), alarmEventInfos.size(), deploymentsById.size(), System.nanoTime() - start);
+        return alarmEventInfos;
+    }
+
+    /**
+     * @return drafts of known metrics in the page, newest first
+     */
+    static List<AlarmEventInfoDraft> page(List<AlarmEventInfoDraft> drafts, int offset, int limit) {
+        List<AlarmEventInfoDraft> known = new ArrayList<>(drafts.size());
+        for (AlarmEventInfoDraft draft : drafts) {
+            if (AlarmEventServiceImpl.convertMetricByCounter(draft.getCounter()) != null) {
+                known.add(draft);
+            }
+        }
+        Collections.sort(known, new Comparator<AlarmEventInfoDraft>() {
+            @Override
+            public int compare(AlarmEventInfoDraft o1, AlarmEventInfoDraft o2) {
+                return Long.compare(o2.getTimestamp(), o1.getTimestamp());
+            }
+        });
+        int from = Math.min(Math.max(offset, 0), known.size());
+        int to = limit > 0 ? (int) Math.min((long) from + limit, known.size()) : known.size();
+        return known.subList(from, to);
+    }
+
+    private static boolean isDeployAlarm(AlarmEventInfoDraft draft) {
+        return draft.getMetric() != null && draft.getMetric().startsWith("container");
+    }
+
+    // notice: template or host group can be deleted while alarm event still reserved
+    private static DeploymentAlarmInfo deploymentAlarmInfo(AlarmEventInfoDraft draft, Deployment deployment,
+                                                           Map<Integer, Cluster> clusters,
+                                                           Map<Integer, Map<String, Instance>> containers) {
+        DeploymentAlarmInfo deploymentAlarmInfo = new DeploymentAlarmInfo();
+        deploymentAlarmInfo.setContainerId(AlarmEventServiceImpl.convertContainerIdByCounter(draft.getCounter()));
+        if (deployment == null) {
+            deploymentAlarmInfo.setId(0);
+            deploymentAlarmInfo.setDeploymentName("non-existed deployment");
+            return deploymentAlarmInfo;
+        }
+        deploymentAlarmInfo.setId(deployment.getId());
+        Cluster cluster = clusters.get(deployment.getClusterId());
+        if (cluster == null) {
+            deploymentAlarmInfo.setClusterName("non-existed cluster");
+        } else {
+            deploymentAlarmInfo.setClusterName(cluster.getName());
+        }
+        deploymentAlarmInfo.setDeploymentName(deployment.getName());
+        deploymentAlarmInfo.setNamespace(deployment.getNamespace());
+        deploymentAlarmInfo.setHostEnv(deployment.getHostEnv());
+        Map<String, Instance> instances = containers.get(deployment.getId());
+        Instance instance = instances == null || deploymentAlarmInfo.getContainerId() == null ? null
+                : instances.get(deploymentAlarmInfo.getContainerId());
+        if (instance != null) {
+            deploymentAlarmInfo.setInstanceName(instance.getInstanceName());
+            deploymentAlarmInfo.setInstanceHostIp(instance.getHostIp());
+            deploymentAlarmInfo.setInstanceCreateTime(instance.getStartTime());
+        }
+        return deploymentAlarmInfo;
+    }
+
+    private Map<Integer, Cluster> listClusters(Iterable<Deployment> deployments) {
+        Map<Integer, Cluster> clusters = new HashMap<>();
+        List<Integer> clusterIds = new ArrayList<>();
+        for (Deployment deployment : deployments) {
+            if (!clusterIds.contains(deployment.getClusterId())) {
+                clusterIds.add(deployment.getClusterId());
+            }
+        }
+        if (clusterIds.isEmpty()) {
+            return clusters;
+        }
+        List<Cluster> found = clusterBiz.getListByIdList(GlobalConstant.CLUSTER_TABLE_NAME, clusterIds, Cluster.class);
+        if (found != null) {
+            for (Cluster cluster : found) {
+                clusters.put(cluster.getId(), cluster);
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * @return deployment id -> container id -> instance, deployments whose instances can not be listed
+     * are left out
+     */
+    private Map<Integer, Map<String, Instance>> listContainers(Iterable<Deployment> deployments) {
+        Map<Integer, Future<List<Instance>>> futures = new LinkedHashMap<>();
+        for (final Deployment deployment : deployments) {
+            futures.put(deployment.getId(), ExecutorRegistry.get(ExecutorRegistry.ALARM).submit(new Callable<List<Instance>>() {
+                @Override
+                public List<Instance> call() throws Exception {
+                    return instanceService.getInstances(deployment.getId());
+                }
+            }));
+        }
+        Map<Integer, Map<String, Instance>> containers = new HashMap<>();
+        for (Map.Entry<Integer, Future<List<Instance>>> entry : futures.entrySet()) {
+            List<Instance> instances;
+            try {
+                instances = entry.getValue().get();
+            } catch (InterruptedException | ExecutionException e) {
+                logger.warn("get instances for deployment " + entry.getKey() + " error: " + e.getMessage());
+                continue;
+            }
+            Map<String, Instance> byContainer = new HashMap<>();
+            if (instances != null) {
+                for (Instance instance : instances) {
+                    if (instance.getContainers() == null) {
+                        continue;
+                    }
+                    for (Container container : instance.getContainers()) {
+                        if (container.getContainerId() != null && !byContainer.containsKey(container.getContainerId())) {
+                            byContainer.put(container.getContainerId(), instance);
+                        }
+                    }
+                }
+            }
+            containers.put(entry.getKey(), byContainer);
+        }
+        STATS.instanceLists.addAndGet(futures.size());
+        return containers;
+    }
+
+    public static class ListStats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong instanceLists = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private volatile long maxNanos;
+        private volatile int lastDrafts;
+        private volatile int lastSize;
+        private volatile int lastDeployments;
+        private volatile long lastNanos;
+
+        void record(int drafts, int size, int deployments, long nanos) {
+            requests.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+            lastDrafts = drafts;
+            lastSize = size;
+            lastDeployments = deployments;
+            lastNanos = nanos;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getInstanceLists() {
+            return instanceLists.get();
+        }
+
+        public int getLastDrafts() {
+            return lastDrafts;
+        }
+
+        public int getLastSize() {
+            return lastSize;
+        }
+
+        public int getLastDeployments() {
+            return lastDeployments;
+        }
+
+        public long getLastMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(lastNanos);
+        }
+
+        public long getAvgMillis() {
+            long count = requests.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / count);
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+        }
+    }
+}
@@ -15,7 +15,7 @@ import org.domeos.framework.api.model.alarm.TemplateInfoBasic;
 import org.domeos.framework.api.model.operation.OperationType;
 import org.domeos.framework.api.service.alarm.HostGroupService;
 import org.domeos.framework.engine.AuthUtil;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.CurrentThreadInfo;
 import org.domeos.global.GlobalConstant;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -57,7 +57,7 @@ public class HostGroupServiceImpl implements HostGroupService {
         List<Future<HostGroupInfo>> futures = new LinkedList<>();
 
         for (HostGroupInfoBasic hostGroupInfoBasic : hostGroupInfoBasics) {
-            Future<HostGroupInfo> future = ClientConfigure.executorService.submit(new HostGroupInfoTask(hostGroupInfoBasic));
+            Future<HostGroupInfo> future = ExecutorRegistry.get(ExecutorRegistry.ALARM).submit(new HostGroupInfoTask(hostGroupInfoBasic));
             futures.add(future);
         }
         for (Future<HostGroupInfo> future : futures) {
@@ -13,7 +13,7 @@ import org.domeos.framework.api.model.operation.OperationType;
 import org.domeos.framework.api.model.collection.related.ResourceType;
 import org.domeos.framework.api.service.alarm.UserGroupService;
 import org.domeos.framework.engine.AuthUtil;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.CurrentThreadInfo;
 import org.domeos.global.GlobalConstant;
 import org.slf4j.Logger;
@@ -58,7 +58,7 @@ public class UserGroupServiceImpl implements UserGroupService {
         List<Future<UserGroupDetail>> futures = new LinkedList<>();
 
         for (UserGroupBasic userGroupBasic : userGroupBasics) {
-            Future<UserGroupDetail> future = ClientConfigure.executorService.submit(new UserGroupDetailTask(userGroupBasic));
+            Future<UserGroupDetail> future = ExecutorRegistry.get(ExecutorRegistry.ALARM).submit(new UserGroupDetailTask(userGroupBasic));
             futures.add(future);
         }
         for (Future<UserGroupDetail> future : futures) {
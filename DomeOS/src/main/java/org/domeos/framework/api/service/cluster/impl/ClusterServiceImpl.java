@@ -41,7 +41,7 @@ import org.domeos.framework.engine.k8s.NodeWrapper;
 import org.domeos.framework.engine.k8s.util.Fabric8KubeUtils;
 import org.domeos.framework.engine.k8s.util.KubeUtils;
 import org.domeos.framework.engine.model.CustomObjectMapper;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.CurrentThreadInfo;
 import org.domeos.global.GlobalConstant;
 import org.slf4j.Logger;
@@ -372,7 +372,7 @@ public class ClusterServiceImpl implements ClusterService {
             List<Future<ClusterListInfo>> futures = new LinkedList<>();
             CiCluster ciCluster = globalBiz.getCiCluster();
             for (CollectionAuthorityMap collectionAuthority : collectionAuthoritys) {
-                Future<ClusterListInfo> future = ClientConfigure.executorService.submit(
+                Future<ClusterListInfo> future = ExecutorRegistry.get(ExecutorRegistry.CLUSTER).submit(
                         new ClusterListInfoTask(userId, collectionAuthority.getCollectionId(), ciCluster)
                 );
                 futures.add(future);
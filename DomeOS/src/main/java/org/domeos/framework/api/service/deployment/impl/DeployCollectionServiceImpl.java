@@ -17,7 +17,7 @@ import org.domeos.framework.api.model.operation.OperationType;
 import org.domeos.framework.api.model.collection.related.ResourceType;
 import org.domeos.framework.api.service.deployment.DeployCollectionService;
 import org.domeos.framework.engine.AuthUtil;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.CurrentThreadInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -120,7 +120,7 @@ public class DeployCollectionServiceImpl implements DeployCollectionService {
         List<Future<DeployCollectionInfo>> futures = new LinkedList<>();
 
         for (DeployCollection deployCollection : deployCollectionList) {
-            Future<DeployCollectionInfo> future = ClientConfigure.executorService.submit(
+            Future<DeployCollectionInfo> future = ExecutorRegistry.get(ExecutorRegistry.DEPLOYMENT).submit(
                     new GetDeployCollectionInfoTask(deployCollection, userId));
             futures.add(future);
         }
@@ -0,0 +1,187 @@
+package org.domeos.framework.api.service.deployment.impl;
+
+import org.domeos.framework.api.biz.cluster.ClusterBiz;
+import org.domeos.framework.api.biz.deployment.DeploymentBiz;
+import org.domeos.framework.api.biz.deployment.DeploymentStatusBiz;
+import org.domeos.framework.api.biz.loadBalancer.LoadBalancerBiz;
+import org.domeos.framework.api.consolemodel.deployment.DeploymentInfo;
+import org.domeos.framework.api.model.LoadBalancer.LoadBalancer;
+import org.domeos.framework.api.model.cluster.Cluster;
+import org.domeos.framework.api.model.collection.CollectionResourceMap;
+import org.domeos.framework.api.model.deployment.Deployment;
+import org.domeos.framework.api.model.deployment.related.DeployResourceStatus;
+import org.domeos.framework.api.model.deployment.related.DeploymentStatus;
+import org.domeos.framework.api.model.deployment.related.VersionType;
+import org.domeos.framework.engine.runtime.IResourceStatus;
+import org.domeos.global.GlobalConstant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the deployment list of a request with one query per table (deployments, states, load
+ * balancers, clusters) and joins the rows in memory, instead of a few queries per deployment.
+ */
+@Component
+public class DeploymentListAssembler {
+
+    private static Logger logger = LoggerFactory.getLogger(DeploymentListAssembler.class);
+
+    private static final ListStats STATS = new ListStats();
+
+    @Autowired
+    DeploymentBiz deploymentBiz;
+
+    @Autowired
+    DeploymentStatusBiz deploymentStatusBiz;
+
+    @Autowired
+    LoadBalancerBiz loadBalancerBiz;
+
+    @Autowired
+    ClusterBiz clusterBiz;
+
+    @Autowired
+    @Qualifier("deployResourceStatusManager")
+    IResourceStatus resourceStatus;
+
+    public static ListStats getStats() {
+        return STATS;
+    }
+
+    /**
+     * @return deployment info of the resources, newest first; resources whose deployment or cluster
+     * does not exist any more are left out
+     */
+    public List<DeploymentInfo> assemble(List<CollectionResourceMap> resources, Map<Integer, Boolean> deletableMap, int userId) {
+        long start = System.nanoTime();
+        List<DeploymentInfo> deploymentInfos = new ArrayList<>();
+        if (resources == null || resources.isEmpty()) {
+            return deploymentInfos;
+        }
+        Set<Integer> idSet = new LinkedHashSet<>();
+        for (CollectionResourceMap resourceMap : resources) {
+            idSet.add(resourceMap.getResourceId());
+        }
+        List<Integer> deployIds = new ArrayList<>(idSet);
+
+        Map<Integer, Deployment> deployments = new HashMap<>();
+        Set<Integer> clusterIdSet = new LinkedHashSet<>();
+        for (Deployment deployment : deploymentBiz.getListByIdList(GlobalConstant.DEPLOY_TABLE_NAME, deployIds, Deployment.class)) {
+            deployments.put(deployment.getId(), deployment);
+            clusterIdSet.add(deployment.getClusterId());
+        }
+        if (deployments.isEmpty()) {
+            STATS.record(0, System.nanoTime() - start);
+            return deploymentInfos;
+        }
+        List<Integer> foundIds = new ArrayList<>(deployments.keySet());
+        Map<Integer, DeploymentStatus> statuses = deploymentStatusBiz.getDeploymentStatus(foundIds);
+        Map<Integer, List<LoadBalancer>> loadBalancers = loadBalancerBiz.getLBSByDeploys(foundIds);
+        Map<Integer, Cluster> clusters = new HashMap<>();
+        for (Cluster cluster : clusterBiz.getListByIdList(GlobalConstant.CLUSTER_TABLE_NAME,
+                new ArrayList<>(clusterIdSet), Cluster.class)) {
+            clusters.put(cluster.getId(), cluster);
+        }
+
+        for (CollectionResourceMap resourceMap : resources) {
+            Deployment deployment = deployments.get(resourceMap.getResourceId());
+            if (deployment == null) {
+                logger.warn("deployment {} in collection {} not exists", resourceMap.getResourceId(),
+                        resourceMap.getCollectionId());
+                continue;
+            }
+            Cluster cluster = clusters.get(deployment.getClusterId());
+            if (cluster == null) {
+                logger.warn("deployment {} requires the cluster (clusterId: {}) information", deployment.getName(),
+                        deployment.getClusterId());
+                continue;
+            }
+            DeploymentInfo deploymentInfo = new DeploymentInfo(deployment);
+            deploymentInfo.setDeploymentStatus(statuses.get(deployment.getId()));
+            boolean deletable = Boolean.TRUE.equals(deletableMap.get(resourceMap.getCollectionId()))
+                    || userId == resourceMap.getCreatorId();
+            deploymentInfo.setDeletable(deletable);
+            DeployResourceStatus deployResourceStatus = resourceStatus.getDeployResourceStatusById(deployment.getId());
+            if (deployResourceStatus != null) {
+                deploymentInfo.setCpuTotal(deployResourceStatus.getCpuTotal());
+                deploymentInfo.setCpuUsed(deployResourceStatus.getCpuUsed());
+                deploymentInfo.setMemoryTotal(deployResourceStatus.getMemTotal());
+                deploymentInfo.setMemoryUsed(deployResourceStatus.getMemUsed());
+            }
+            deploymentInfo.setClusterName(cluster.getName());
+            String serviceDnsName = "";
+            List<LoadBalancer> deployLoadBalancers = loadBalancers.get(deployment.getId());
+            if (deployLoadBalancers != null && deployLoadBalancers.size() > 0) {
+                serviceDnsName = DeploymentServiceImpl.buildServiceDnsName(deployment, cluster);
+            }
+            deploymentInfo.setServiceDnsName(serviceDnsName);
+            VersionType versionType = deployment.getVersionType() == null ? VersionType.CUSTOM : deployment.getVersionType();
+            deploymentInfo.setVersionType(versionType);
+            deploymentInfo.setCreateTime(deployment.getCreateTime());
+            deploymentInfos.add(deploymentInfo);
+        }
+
+        // sort by createTime
+        Collections.sort(deploymentInfos, new Comparator<DeploymentInfo>() {
+            @Override
+            public int compare(DeploymentInfo o1, DeploymentInfo o2) {
+                return ((Long) o2.getCreateTime()).compareTo(o1.getCreateTime());
+            }
+        });
+        STATS.record(deploymentInfos.size(), System.nanoTime() - start);
+        return deploymentInfos;
+    }
+
+    public static class ListStats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private volatile long maxNanos;
+        private volatile int lastSize;
+        private volatile long lastNanos;
+
+        void record(int size, long nanos) {
+            requests.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+            lastSize = size;
+            lastNanos = nanos;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public int getLastSize() {
+            return lastSize;
+        }
+
+        public long getLastMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(lastNanos);
+        }
+
+        public long getAvgMillis() {
+            long count = requests.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / count);
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+        }
+    }
+}
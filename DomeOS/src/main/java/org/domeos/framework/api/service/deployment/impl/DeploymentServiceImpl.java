@@ -44,21 +44,15 @@ import org.domeos.framework.engine.event.AutoDeploy.AutoUpdateInfo;
 import org.domeos.framework.engine.exception.DaoException;
 import org.domeos.framework.engine.exception.DriverException;
 import org.domeos.framework.engine.k8s.RcBuilder;
-import org.domeos.framework.engine.runtime.IResourceStatus;
-import org.domeos.global.ClientConfigure;
 import org.domeos.global.CurrentThreadInfo;
 import org.domeos.global.GlobalConstant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 /**
  */
@@ -81,8 +75,7 @@ public class DeploymentServiceImpl implements DeploymentService {
     DeploymentStatusManager deploymentStatusManager;
 
     @Autowired
-    @Qualifier("deployResourceStatusManager")
-    IResourceStatus resourceStatus;
+    DeploymentListAssembler deploymentListAssembler;
 
     @Autowired
     ClusterBiz clusterBiz;
@@ -361,89 +354,7 @@ public class DeploymentServiceImpl implements DeploymentService {
     }
 
     private List<DeploymentInfo> listDeployment(List<CollectionResourceMap> resources, Map<Integer, Boolean> deletableMap) throws IOException {
-        List<DeploymentInfo> deploymentInfos = new ArrayList<>();
-        if (resources == null || resources.size() == 0) {
-            return deploymentInfos;
-        }
-        int userId = AuthUtil.getUserId();
-        List<Future<DeploymentInfo>> futures = new LinkedList<>();
-        for (CollectionResourceMap resourceMap : resources) {
-            Future<DeploymentInfo> future = ClientConfigure.executorService.submit(new GetDeploymentInfoTask(resourceMap, deletableMap, userId));
-            futures.add(future);
-        }
-        for (Future<DeploymentInfo> future : futures) {
-            try {
-                DeploymentInfo info = future.get();
-                if (info != null) {
-                    deploymentInfos.add(info);
-                }
-            } catch (InterruptedException | ExecutionException e) {
-                logger.warn("get deployment info error, message is " + e.getMessage());
-            }
-        }
-
-        // sort by createTime
-        Collections.sort(deploymentInfos, new Comparator<DeploymentInfo>() {
-            @Override
-            public int compare(DeploymentInfo o1, DeploymentInfo o2) {
-                return ((Long) o2.getCreateTime()).compareTo(o1.getCreateTime());
-            }
-        });
-        return deploymentInfos;
-    }
-
-
-    private class GetDeploymentInfoTask implements Callable<DeploymentInfo> {
-        CollectionResourceMap collectionResourceMap;
-        Map<Integer, Boolean> deletableMap;
-        int userId;
-
-        private GetDeploymentInfoTask(CollectionResourceMap collectionResourceMap, Map<Integer, Boolean> deletableMap, int userId) {
-            this.collectionResourceMap = collectionResourceMap;
-            this.deletableMap = deletableMap;
-            this.userId = userId;
-        }
-
-        @Override
-        public DeploymentInfo call() throws Exception {
-            Deployment deployment = deploymentBiz.getDeployment(collectionResourceMap.getResourceId());
-            DeploymentInfo deploymentInfo = new DeploymentInfo(deployment);
-            deploymentInfo.setDeploymentStatus(deploymentStatusBiz.getDeploymentStatus(deployment.getId()));
-            DeployResourceStatus deployResourceStatus = resourceStatus.getDeployResourceStatusById(deployment.getId());
-            boolean deletable = deletableMap.get(collectionResourceMap.getCollectionId()) || userId == collectionResourceMap.getCreatorId();
-            deploymentInfo.setDeletable(deletable);
-            if (deployResourceStatus != null) {
-                deploymentInfo.setCpuTotal(deployResourceStatus.getCpuTotal());
-                deploymentInfo.setCpuUsed(deployResourceStatus.getCpuUsed());
-                deploymentInfo.setMemoryTotal(deployResourceStatus.getMemTotal());
-                deploymentInfo.setMemoryUsed(deployResourceStatus.getMemUsed());
-            }
-            String serviceDnsName = "";
-            List<LoadBalancer> loadBalancers = loadBalancerBiz.getLBSByDeploy(deployment.getId());
-            if (loadBalancers != null) {
-                for (LoadBalancer lb : loadBalancers) {
-                    serviceDnsName += lb.getDnsName() + " ";
-                }
-            }
-            // set cluster name
-            Cluster cluster = clusterBiz.getById(GlobalConstant.CLUSTER_TABLE_NAME, deployment.getClusterId(), Cluster.class);
-            if (cluster == null) {
-                throw ApiException.wrapMessage(ResultStat.CLUSTER_NOT_EXIST,
-                        "deployment " + deployment.getName() + " requires the cluster (clusterId: " + deployment.getClusterId() + ") information");
-            }
-            deploymentInfo.setClusterName(cluster.getName());
-            // set service DNS names
-            // start TODO(openxxs) need to set real loadBalancer serviceDnsName
-            if (loadBalancers != null && loadBalancers.size() > 0) {
-                serviceDnsName = buildServiceDnsName(deployment);
-            }
-            VersionType versionType = deployment.getVersionType() == null ? VersionType.CUSTOM : deployment.getVersionType();
-            deploymentInfo.setVersionType(versionType);
-            // end TODO
-            deploymentInfo.setServiceDnsName(serviceDnsName);
-            deploymentInfo.setCreateTime(deployment.getCreateTime());
-            return deploymentInfo;
-        }
+        return deploymentListAssembler.assemble(resources, deletableMap, AuthUtil.getUserId());
     }
 
     @Override
@@ -506,7 +417,7 @@ public class DeploymentServiceImpl implements DeploymentService {
             // set service DNS names
             // start TODO(openxxs) need to set real loadBalancer serviceDnsName
             if (loadBalancers != null) {
-                serviceDnsName = buildServiceDnsName(deployment);
+                serviceDnsName = buildServiceDnsName(deployment, cluster);
             }
             // end TODO
             deploymentDetail.setServiceDnsName(serviceDnsName);
@@ -938,10 +849,9 @@ public class DeploymentServiceImpl implements DeploymentService {
         return deployEvent;
     }
 
-    private String buildServiceDnsName(Deployment deployment) {
+    static String buildServiceDnsName(Deployment deployment, Cluster cluster) {
         String serviceDnsName = null;
-        if (deployment != null) {
-            Cluster cluster = clusterBiz.getById(GlobalConstant.CLUSTER_TABLE_NAME, deployment.getClusterId(), Cluster.class);
+        if (deployment != null && cluster != null) {
             String dnsSuffix = "." + deployment.getNamespace() + ".svc." + cluster.getDomain();
             String deployName = deployment.getName();
             if (deployment.isStateful()) {
@@ -13,6 +13,7 @@ import org.domeos.framework.api.model.deployment.related.DeployOperation;
 import org.domeos.framework.api.model.deployment.related.DeploymentSnapshot;
 import org.domeos.framework.api.model.deployment.related.DeploymentStatus;
 import org.domeos.framework.api.service.deployment.DeploymentStatusManager;
+import org.domeos.framework.engine.k8s.updater.DeployStatusReconciler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -74,7 +75,9 @@ public class DeploymentStatusManagerImpl implements DeploymentStatusManager {
 
         event = buildEvent(deployId, user, srcSnapshot, currentSnapshot, dstSnapshot);
         event.setOperation(operation);
-        return eventBiz.createEvent(event);
+        long eid = eventBiz.createEvent(event);
+        DeployStatusReconciler.getInstance().markDirty(deployId);
+        return eid;
     }
 
     @Override
@@ -113,7 +116,9 @@ public class DeploymentStatusManagerImpl implements DeploymentStatusManager {
         }
         currentEvent.setEventStatus(DeployEventStatus.ABORTED);
         eventBiz.updateEvent(currentEvent);
-        return eventBiz.createEvent(abortEvent);
+        long eid = eventBiz.createEvent(abortEvent);
+        DeployStatusReconciler.getInstance().markDirty(deployId);
+        return eid;
     }
 
     @Override
@@ -166,6 +171,7 @@ public class DeploymentStatusManagerImpl implements DeploymentStatusManager {
                     throw new DeploymentEventException("event(id=" + event.getEid() + ") operation(" + event.getOperation()
                             + ") can not match any deployment status");
             }
+            DeployStatusReconciler.getInstance().markDirty(event.getDeployId());
         }
     }
 
@@ -213,6 +219,7 @@ public class DeploymentStatusManagerImpl implements DeploymentStatusManager {
             default:
                 throw new DeploymentEventException("Can not update deployment status according to " + event.getOperation() + " event");
         }
+        DeployStatusReconciler.getInstance().markDirty(event.getDeployId());
     }
 
     @Override
@@ -237,6 +244,7 @@ public class DeploymentStatusManagerImpl implements DeploymentStatusManager {
         eventBiz.updateEvent(event);
         // update deployment status
         deploymentStatusBiz.setDeploymentStatus(event.getDeployId(), DeploymentStatus.ERROR);
+        DeployStatusReconciler.getInstance().markDirty(event.getDeployId());
     }
 
     @Override
@@ -21,7 +21,7 @@ import org.domeos.framework.api.model.project.related.ExclusiveBuildType;
 import org.domeos.framework.api.service.image.ImageService;
 import org.domeos.framework.api.service.token.TokenService;
 import org.domeos.framework.engine.AuthUtil;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.CurrentThreadInfo;
 import org.domeos.util.CommonUtil;
 import org.slf4j.Logger;
@@ -134,7 +134,7 @@ public class ImageServiceImpl implements ImageService {
 //        while (iterator.hasNext()) {
 //            BaseImage image = iterator.next();
 //            String token = getToken(image.getRegistry(), image.getImageName());
-//            Future<BaseImage> future = ClientConfigure.executorService.submit(new GetBaseImageTask(image, token));
+//            Future<BaseImage> future = ExecutorRegistry.get(ExecutorRegistry.IMAGE).submit(new GetBaseImageTask(image, token));
 //            futures.add(future);
 //        }
 //
@@ -195,7 +195,7 @@ public class ImageServiceImpl implements ImageService {
         if (images != null && images.size() > 0) {
             List<Future<DockerImage>> futures = new LinkedList<>();
             for (String image : images) {
-                Future<DockerImage> future = ClientConfigure.executorService.submit(new GetProjectImageTask(image, user.getId(), registry.fullRegistry()));
+                Future<DockerImage> future = ExecutorRegistry.get(ExecutorRegistry.IMAGE).submit(new GetProjectImageTask(image, user.getId(), registry.fullRegistry()));
                 futures.add(future);
             }
             for (Future<DockerImage> future : futures) {
@@ -273,7 +273,7 @@ public class ImageServiceImpl implements ImageService {
             List<Future<DockerImage>> futures = new LinkedList<>();
             String token = tokenService.getCatalogToken();
             for (BaseImage baseImage : baseImages) {
-                Future<DockerImage> future = ClientConfigure.executorService.submit(new GetDockerImageTask(baseImage, token));
+                Future<DockerImage> future = ExecutorRegistry.get(ExecutorRegistry.IMAGE).submit(new GetDockerImageTask(baseImage, token));
                 futures.add(future);
             }
             for (Future<DockerImage> future : futures) {
@@ -494,7 +494,7 @@ public class ImageServiceImpl implements ImageService {
         List<Future<ImageNameDetail>> futures = new ArrayList<>();
         boolean useToken = registry.equals(privateRegistry.fullRegistry());
         for (String image : images) {
-            Future<ImageNameDetail> future = ClientConfigure.executorService.submit(new GetImageDetailTask(registry, image, useToken));
+            Future<ImageNameDetail> future = ExecutorRegistry.get(ExecutorRegistry.IMAGE).submit(new GetImageDetailTask(registry, image, useToken));
             futures.add(future);
         }
 
@@ -534,7 +534,7 @@ public class ImageServiceImpl implements ImageService {
         String name = imageTagDetailRequest.getName();
         Set<ImageTagDetail> imageTagDetails = new HashSet<>();
         for (String tag : imageTagDetailRequest.getTags()) {
-            Future<ImageTagDetail> future = ClientConfigure.executorService.submit(new GetImageTagDetailTask(registry, name, tag, token));
+            Future<ImageTagDetail> future = ExecutorRegistry.get(ExecutorRegistry.IMAGE).submit(new GetImageTagDetailTask(registry, name, tag, token));
             futures.add(future);
         }
         for (Future<ImageTagDetail> future : futures) {
@@ -680,7 +680,7 @@ public class ImageServiceImpl implements ImageService {
             Collections.sort(dockerImages, new DockerImage.DockerImageComparator());
             List<Future<ExclusiveImage>> futureExclusiveImages = new LinkedList<>();
             for (DockerImage image : dockerImages) {
-                Future<ExclusiveImage> future = ClientConfigure.executorService.submit(new PublicExclusiveImageTask(image, isPublic));
+                Future<ExclusiveImage> future = ExecutorRegistry.get(ExecutorRegistry.IMAGE).submit(new PublicExclusiveImageTask(image, isPublic));
                 futureExclusiveImages.add(future);
             }
             for (Future<ExclusiveImage> futureImage : futureExclusiveImages) {
@@ -699,7 +699,7 @@ public class ImageServiceImpl implements ImageService {
                     if (baseImage.getRegistry().equals(CommonUtil.fullUrl(registryUrl))) {
                         continue;
                     }
-                    Future<BaseImage> future = ClientConfigure.executorService.submit(new BaseImageTask(baseImage, token));
+                    Future<BaseImage> future = ExecutorRegistry.get(ExecutorRegistry.IMAGE).submit(new BaseImageTask(baseImage, token));
                     futureImages.add(future);
                 }
                 for (Future<BaseImage> future : futureImages) {
@@ -4,7 +4,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
@@ -15,10 +15,11 @@ import org.domeos.framework.api.consolemodel.image.ImageTagDetail;
 import org.domeos.framework.api.model.image.BaseImage;
 import org.domeos.framework.api.model.image.DockerImage;
 import org.domeos.framework.engine.model.CustomObjectMapper;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.GlobalConstant;
 import org.domeos.util.CommonUtil;
 import org.domeos.util.DateUtil;
+import org.domeos.util.EnvUtil;
 import org.domeos.util.HttpsClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,43 +36,37 @@ import java.util.concurrent.Future;
 public class PrivateRegistry {
     private static CustomObjectMapper mapper = new CustomObjectMapper();
     private static Logger logger = LoggerFactory.getLogger(PrivateRegistry.class);
+    private static final RegistryMetadataCache METADATA_CACHE = new RegistryMetadataCache(new RegistryHttpFetcher(),
+            EnvUtil.envInt("DOMEOS_REGISTRY_META_REFRESH", RegistryMetadataCache.DEFAULT_REFRESH_MILLIS),
+            EnvUtil.envInt("DOMEOS_REGISTRY_META_TAGS", RegistryMetadataCache.DEFAULT_MAX_TAGS),
+            EnvUtil.envInt("DOMEOS_REGISTRY_META_BLOBS", RegistryMetadataCache.DEFAULT_MAX_BLOBS));
+
+    public static RegistryMetadataCache.CacheStats getMetadataCacheStats() {
+        return METADATA_CACHE.stats();
+    }
 
     public static long getCreateTime(BaseImage baseImage, String token) {
-        String imageInfo = getHttpResposeBody(generateUrl(baseImage), token);
-        if (StringUtils.isBlank(imageInfo)) {
+        RegistryMetadataCache.TagMetadata tagMetadata = METADATA_CACHE.getTag(generateUrl(baseImage), token);
+        if (tagMetadata == null) {
+            return 0;
+        }
+        if (!tagMetadata.hasHistory()) {
+            return -1;
+        }
+        if (tagMetadata.getLatestCreated() == null) {
             return 0;
         }
         try {
-            JsonNode manifests = mapper.readTree(imageInfo);
-            JsonNode histories = manifests.get(GlobalConstant.REGISTRY_HISTORY);
-            if (histories == null) {
-                return -1;
-            }
-            long createTime = 0;
-            Iterator<JsonNode> element = histories.elements();
-            while (element.hasNext()) {
-                JsonNode history = element.next();
-                JsonNode v1Compatibility = mapper.readTree(history.get(GlobalConstant.REGISTRY_HISTORY_V1COMPATIBILITY).asText());
-                String created = v1Compatibility.get(GlobalConstant.REGISTRY_HISTORY_V1COMPATIBILITY_CREATED).asText();
-                try {
-                    long tmpTime = DateUtil.string2timestamp(created);
-                    if (tmpTime > createTime) {
-                        createTime = tmpTime;
-                    }
-                } catch (Exception e) {
-                    logger.warn("change date format error, message: " + e.getMessage());
-                }
-            }
-            return createTime;
-        } catch (IOException e) {
-            logger.warn("get json error, " + e.getMessage());
+            return DateUtil.string2timestamp(tagMetadata.getLatestCreated());
+        } catch (Exception e) {
+            logger.warn("change date format error, message: " + e.getMessage());
         }
         return 0;
     }
 
     public static double getImageSize(BaseImage baseImage, String token) {
-        String imageInfo = getHttpResposeBody(generateUrl(baseImage), token);
-        return getImageSize(imageInfo, CommonUtil.fullUrl(baseImage.getRegistry()), baseImage.getImageName(), token);
+        RegistryMetadataCache.TagMetadata tagMetadata = METADATA_CACHE.getTag(generateUrl(baseImage), token);
+        return getImageSize(tagMetadata, CommonUtil.fullUrl(baseImage.getRegistry()), baseImage.getImageName(), token);
     }
 
     /**
@@ -119,7 +114,7 @@ public class PrivateRegistry {
             while (element.hasNext()) {
                 JsonNode tag = element.next();
                 tagList.add(tag.asText());
-                Future<TagDetail> future = ClientConfigure.executorService.submit(new GetTagDetail(registry, imageName, tag.asText(), token));
+                Future<TagDetail> future = ExecutorRegistry.get(ExecutorRegistry.REGISTRY).submit(new GetTagDetail(registry, imageName, tag.asText(), token));
                 futures.add(future);
             }
             for (Future<TagDetail> future : futures) {
@@ -142,8 +137,7 @@ public class PrivateRegistry {
 
     public static ImageTagDetail getImageTagDetail(String registry, String name, String tag, String token) {
         String tagUrl = generateGetImageManifestsUrl(registry, name, tag);
-        String tagInfo = getHttpResposeBody(tagUrl, token);
-        long createTime = getCreateTime(tagInfo);
+        long createTime = getCreateTime(tagUrl, token);
         // TODO: remove size from image tag detail
 //        double size = getImageSize(tagInfo, registry, name);
         ImageTagDetail tagDetail = new ImageTagDetail();
@@ -171,9 +165,9 @@ public class PrivateRegistry {
         @Override
         public TagDetail call() throws Exception {
             String url = generateGetImageManifestsUrl(registry, image, tag);
-            String imageDetail = getHttpResposeBody(url, token);
-            long createTime = getCreateTime(imageDetail);
-            double imageSize = getImageSize(imageDetail, registry, image, token);
+            RegistryMetadataCache.TagMetadata tagMetadata = METADATA_CACHE.getTag(url, token);
+            long createTime = tagMetadata == null ? 0 : tagMetadata.getCreateTime();
+            double imageSize = getImageSize(tagMetadata, registry, image, token);
 
             TagDetail tagDetail = new TagDetail();
             tagDetail.setCreateTime(createTime);
@@ -227,55 +221,13 @@ public class PrivateRegistry {
         }
     }
 
-    private static long getCreateTime(String imageDetail) {
-        long createTime = 0;
-        try {
-            JsonNode manifests = mapper.readTree(imageDetail);
-            JsonNode histories = manifests.get(GlobalConstant.REGISTRY_HISTORY);
-            if (histories != null) {
-                Iterator<JsonNode> element = histories.elements();
-                while (element.hasNext()) {
-                    JsonNode history = element.next();
-                    if (history.has(GlobalConstant.REGISTRY_HISTORY_V1COMPATIBILITY)) {
-                        JsonNode v1Compatibility = mapper.readTree(history.get(GlobalConstant.REGISTRY_HISTORY_V1COMPATIBILITY).asText());
-                        String created = v1Compatibility.get(GlobalConstant.REGISTRY_HISTORY_V1COMPATIBILITY_CREATED).asText();
-                        try {
-                            long tmpTime = DateUtil.string2timestamp(created, TimeZone.getTimeZone(GlobalConstant.UTC_TIME));
-                            if (tmpTime > createTime) {
-                                createTime = tmpTime;
-                            }
-                        } catch (Exception e) {
-                            logger.warn("change date format error, message: " + e.getMessage());
-                        }
-                    }
-                }
-            }
-        } catch (IOException e) {
-            logger.warn("get json error, " + e.getMessage());
-        }
-        return createTime;
-    }
-
-    private static double getImageSize(String imageDetail, String registry, String image, String token) {
-        long imageSize = 0;
-        try {
-            JsonNode manifests = mapper.readTree(imageDetail);
-            JsonNode fsLayers = manifests.get(GlobalConstant.REGISTRY_FSLAYERS);
-            if (fsLayers != null) {
-                Iterator<JsonNode> element = fsLayers.elements();
-                String urlPrefix = registry + GlobalConstant.REGISTRY_VERSION + image + GlobalConstant.REGISTRY_BLOBS;
-                while (element.hasNext()) {
-                    JsonNode layers = element.next();
-                    if (layers.has(GlobalConstant.REGISTRY_BLOBSUM)) {
-                        String blobSum = layers.get(GlobalConstant.REGISTRY_BLOBSUM).asText();
-                        long tmpSize = getBlobSize(urlPrefix + blobSum, token);
-                        imageSize += tmpSize;
-                    }
-                }
-            }
-        } catch (IOException e) {
-            logger.warn("get json error, " + e.getMessage());
+    private static double getImageSize(RegistryMetadataCache.TagMetadata tagMetadata, String registry, String image,
+                                       String token) {
+        if (tagMetadata == null) {
+            return 0;
         }
+        String urlPrefix = registry + GlobalConstant.REGISTRY_VERSION + image + GlobalConstant.REGISTRY_BLOBS;
+        long imageSize = METADATA_CACHE.getImageSize(tagMetadata, urlPrefix, token);
         return (imageSize * 1.0 / 1000000);
     }
 
@@ -287,16 +239,11 @@ public class PrivateRegistry {
             if (token != null) {
                 httpGet.setHeader(new BasicHeader("authorization", "Bearer " + token));
             }
-            RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(HttpsClient.SocketTimeout)
-                    .setConnectTimeout(HttpsClient.ConnectTimeout).build();
-            httpGet.setConfig(requestConfig);
-            CloseableHttpResponse response = HttpsClient.getHttpClient().execute(httpGet);
-            if (response != null) {
+            try (CloseableHttpResponse response = HttpsClient.getInstance().execute(httpGet)) {
                 HttpEntity entity = response.getEntity();
                 if (entity != null) {
                     value = EntityUtils.toString(entity);
                 }
-                response.close();
             }
         } catch (IOException e) {
             logger.warn("get response error, url is " + url + ", message is" + e.getMessage());
@@ -309,25 +256,26 @@ public class PrivateRegistry {
     }
 
     private static String headHttpResponseBody(String url, String token) {
+        //the head must be this, or we will get wrong digest
+        return headManifestDigest(url, token, "application/vnd.docker.distribution.manifest.v2+json");
+    }
+
+    private static String headManifestDigest(String url, String token, String accept) {
         HttpHead httpHead = null;
         String value = null;
         try {
             httpHead = new HttpHead(url);
-            RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(HttpsClient.SocketTimeout)
-                    .setConnectTimeout(HttpsClient.ConnectTimeout).build();
-            httpHead.setConfig(requestConfig);
             if (token != null) {
                 httpHead.setHeader(new BasicHeader("authorization", "Bearer " + token));
             }
-            //the head must be this, or we will get wrong digest
-            httpHead.setHeader("Accept", "application/vnd.docker.distribution.manifest.v2+json");
-            CloseableHttpResponse response = HttpsClient.getHttpClient().execute(httpHead);
-            if (response != null) {
+            if (accept != null) {
+                httpHead.setHeader("Accept", accept);
+            }
+            try (CloseableHttpResponse response = HttpsClient.getInstance().execute(httpHead)) {
                 Header header = response.getLastHeader("Docker-Content-Digest");
-                if (header != null) {
+                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK && header != null) {
                     value = header.getValue();
                 }
-                response.close();
             }
         } catch (IOException e) {
             logger.warn("get response error, url is " + url + ", message is" + e.getMessage());
@@ -343,30 +291,69 @@ public class PrivateRegistry {
         HttpHead httpHead = null;
         try {
             httpHead = new HttpHead(url);
-            RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(HttpsClient.SocketTimeout)
-                    .setConnectTimeout(HttpsClient.ConnectTimeout).build();
-            httpHead.setConfig(requestConfig);
             if (token != null) {
                 httpHead.setHeader(new BasicHeader("authorization", "Bearer " + token));
             }
             //the head must be this, or we will get wrong digest
             httpHead.setHeader("Accept", "application/vnd.docker.distribution.manifest.v2+json");
-            CloseableHttpResponse response = HttpsClient.getHttpClient().execute(httpHead);
-            if (response != null) {
+            try (CloseableHttpResponse response = HttpsClient.getInstance().execute(httpHead)) {
                 Header header = response.getFirstHeader(GlobalConstant.HTTP_CONTENTLENGTH);
-                if (header != null) {
+                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK && header != null) {
                     return Long.valueOf(header.getValue());
                 }
-                response.close();
             }
-        } catch (IOException e) {
+        } catch (IOException | NumberFormatException e) {
             logger.warn("get response error, url is " + url + ", message is" + e.getMessage());
         } finally {
             if (httpHead != null) {
                 httpHead.completed();
             }
         }
-        return 0;
+        return -1;
+    }
+
+    private static RegistryMetadataCache.Manifest getManifest(String url, String token) {
+        HttpGet httpGet = null;
+        try {
+            httpGet = new HttpGet(url);
+            if (token != null) {
+                httpGet.setHeader(new BasicHeader("authorization", "Bearer " + token));
+            }
+            try (CloseableHttpResponse response = HttpsClient.getInstance().execute(httpGet)) {
+                HttpEntity entity = response.getEntity();
+                String body = entity == null ? null : EntityUtils.toString(entity);
+                if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                    return null;
+                }
+                Header digest = response.getLastHeader("Docker-Content-Digest");
+                return new RegistryMetadataCache.Manifest(body, digest == null ? null : digest.getValue());
+            }
+        } catch (IOException e) {
+            logger.warn("get response error, url is " + url + ", message is" + e.getMessage());
+        } finally {
+            if (httpGet != null) {
+                httpGet.completed();
+            }
+        }
+        return null;
+    }
+
+    private static class RegistryHttpFetcher implements RegistryMetadataCache.RegistryFetcher {
+        @Override
+        public RegistryMetadataCache.Manifest getManifest(String url, String token) {
+            return PrivateRegistry.getManifest(url, token);
+        }
+
+        @Override
+        public String getManifestDigest(String url, String token) {
+            // the same manifest schema as a GET without Accept header returns
+            return headManifestDigest(url, token, null);
+        }
+
+        @Override
+        public long getBlobSize(String url, String token) {
+            return PrivateRegistry.getBlobSize(url, token);
+        }
     }
 
     private static String generateUrl(BaseImage baseImage) {
@@ -439,7 +426,7 @@ public class PrivateRegistry {
             List<Future<DockerImage>> futures = new LinkedList<>();
             while (element.hasNext()) {
                 JsonNode tag = element.next();
-                Future<DockerImage> future = ClientConfigure.executorService.submit(new DockerImageInfoTask(url, name, tag.asText(), token));
+                Future<DockerImage> future = ExecutorRegistry.get(ExecutorRegistry.REGISTRY).submit(new DockerImageInfoTask(url, name, tag.asText(), token));
                 futures.add(future);
             }
             for (Future<DockerImage> future : futures) {
@@ -481,8 +468,8 @@ public class PrivateRegistry {
     }
 
     public static long getCreateTime(String url, String token) {
-        String imageInfo = getHttpResposeBody(url, token);
-        return getCreateTime(imageInfo);
+        RegistryMetadataCache.TagMetadata tagMetadata = METADATA_CACHE.getTag(url, token);
+        return tagMetadata == null ? 0 : tagMetadata.getCreateTime();
     }
 
     public static String deleteDockerImage(String url, String name, String tag, String token) {
@@ -491,6 +478,7 @@ public class PrivateRegistry {
         if (digest == null) {
             return null;
         }
+        METADATA_CACHE.invalidate(deleteUrl);
         deleteUrl = generateGetImageManifestsUrl(url, name, digest);
         return deleteHttpResponseBody(deleteUrl, token);
     }
@@ -500,19 +488,14 @@ public class PrivateRegistry {
         String value = null;
         try {
             httpDelete = new HttpDelete(url);
-            RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(HttpsClient.SocketTimeout)
-                    .setConnectTimeout(HttpsClient.ConnectTimeout).build();
-            httpDelete.setConfig(requestConfig);
             if (token != null) {
                 httpDelete.setHeader(new BasicHeader("authorization", "Bearer " + token));
             }
-            CloseableHttpResponse response = HttpsClient.getHttpClient().execute(httpDelete);
-            if (response != null) {
+            try (CloseableHttpResponse response = HttpsClient.getInstance().execute(httpDelete)) {
                 HttpEntity entity = response.getEntity();
                 if (entity != null) {
                     value = EntityUtils.toString(entity);
                 }
-                response.close();
             }
         } catch (IOException e) {
             logger.warn("get response error, url is " + url + ", message is" + e.getMessage());
@@ -0,0 +1,461 @@
+package org.domeos.framework.api.service.image.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang3.StringUtils;
+import org.domeos.framework.engine.model.CustomObjectMapper;
+import org.domeos.global.GlobalConstant;
+import org.domeos.util.DateUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metadata of registry tags, derived from their manifests, and sizes of blobs.
+ * Blobs are content addressed so a blob size never changes and is kept until evicted by newer ones.
+ * Tags are bounded the same way, the least recently read tag is evicted first.
+ * A tag is kept with the digest of its manifest; once it is older than refreshMillis it is still
+ * served while a background check compares the digest with the registry and reloads the tag only
+ * if the tag was pushed again. Concurrent loads of the same tag or blob share one request.
+ */
+public class RegistryMetadataCache {
+
+    private static Logger logger = LoggerFactory.getLogger(RegistryMetadataCache.class);
+
+    public static final int DEFAULT_REFRESH_MILLIS = 60000;
+    public static final int DEFAULT_MAX_TAGS = 10000;
+    public static final int DEFAULT_MAX_BLOBS = 50000;
+    private static final int REFRESH_QUEUE = 1000;
+
+    /**
+     * requests made to the registry
+     */
+    interface RegistryFetcher {
+        /**
+         * @return the manifest, null if it can not be fetched
+         */
+        Manifest getManifest(String url, String token);
+
+        /**
+         * @return digest of the manifest the tag points to, null if unknown
+         */
+        String getManifestDigest(String url, String token);
+
+        /**
+         * @return size of the blob, negative if it can not be fetched
+         */
+        long getBlobSize(String url, String token);
+    }
+
+    static class Manifest {
+        private final String body;
+        private final String digest;
+
+        Manifest(String body, String digest) {
+            this.body = body;
+            this.digest = digest;
+        }
+    }
+
+    private final CustomObjectMapper mapper = new CustomObjectMapper();
+    private final RegistryFetcher fetcher;
+    private final long refreshMillis;
+    private final Map<String, TagMetadata> tags;
+    private final ConcurrentHashMap<String, FutureTask<TagMetadata>> tagLoads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FutureTask<Long>> blobLoads = new ConcurrentHashMap<>();
+    private final Map<String, Long> blobSizes;
+    private final ThreadPoolExecutor refresher;
+
+    private final AtomicLong tagHits = new AtomicLong();
+    private final AtomicLong tagEvictions = new AtomicLong();
+    private final AtomicLong tagLoadCount = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong digestChanges = new AtomicLong();
+    private final AtomicLong blobHits = new AtomicLong();
+    private final AtomicLong blobLoadCount = new AtomicLong();
+
+    public RegistryMetadataCache(RegistryFetcher fetcher, long refreshMillis, final int maxTags, final int maxBlobs) {
+        this.fetcher = fetcher;
+        this.refreshMillis = refreshMillis;
+        this.tags = Collections.synchronizedMap(new LinkedHashMap<String, TagMetadata>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TagMetadata> eldest) {
+                if (size() > maxTags) {
+                    tagEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        });
+        this.blobSizes = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxBlobs;
+            }
+        });
+        this.refresher = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(REFRESH_QUEUE),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "registry-meta-refresh-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.refresher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param manifestUrl url of the tag manifest
+     * @param token       registry token, also used to refresh the tag in background
+     * @return metadata of the tag, null if its manifest can not be fetched
+     */
+    public TagMetadata getTag(String manifestUrl, String token) {
+        TagMetadata cached = tags.get(manifestUrl);
+        if (cached != null) {
+            tagHits.incrementAndGet();
+            if (System.currentTimeMillis() - cached.checkedAt > refreshMillis) {
+                scheduleRefresh(manifestUrl, token);
+            }
+            return cached;
+        }
+        return loadTag(manifestUrl, token, null);
+    }
+
+    /**
+     * @param blobUrlPrefix url of the image blobs, a blob url is the prefix followed by the blob digest
+     * @return size of all layers of the tag in bytes
+     */
+    public long getImageSize(TagMetadata tag, String blobUrlPrefix, String token) {
+        long size = tag.size;
+        if (size >= 0) {
+            return size;
+        }
+        size = 0;
+        boolean complete = true;
+        for (String blobSum : tag.blobSums) {
+            long blobSize = getBlobSize(blobUrlPrefix, blobSum, token);
+            if (blobSize < 0) {
+                complete = false;
+            } else {
+                size += blobSize;
+            }
+        }
+        if (complete) {
+            tag.size = size;
+        }
+        return size;
+    }
+
+    public void invalidate(String manifestUrl) {
+        tags.remove(manifestUrl);
+    }
+
+    private TagMetadata loadTag(final String manifestUrl, final String token, final TagMetadata previous) {
+        FutureTask<TagMetadata> task = new FutureTask<>(new Callable<TagMetadata>() {
+            @Override
+            public TagMetadata call() throws Exception {
+                if (previous != null && previous.digest != null) {
+                    String digest = fetcher.getManifestDigest(manifestUrl, token);
+                    if (digest == null) {
+                        // registry not reachable or token expired, keep what we have and retry later
+                        return previous;
+                    }
+                    if (digest.equals(previous.digest)) {
+                        TagMetadata checked = previous.checked();
+                        synchronized (tags) {
+                            // not put back if invalidated or evicted meanwhile
+                            if (tags.get(manifestUrl) == previous) {
+                                tags.put(manifestUrl, checked);
+                            }
+                        }
+                        return checked;
+                    }
+                    digestChanges.incrementAndGet();
+                }
+                tagLoadCount.incrementAndGet();
+                Manifest manifest = fetcher.getManifest(manifestUrl, token);
+                if (manifest == null || StringUtils.isBlank(manifest.body)) {
+                    return previous;
+                }
+                TagMetadata loaded = parse(manifest);
+                if (loaded != null) {
+                    tags.put(manifestUrl, loaded);
+                }
+                return loaded;
+            }
+        });
+        FutureTask<TagMetadata> running = tagLoads.putIfAbsent(manifestUrl, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                tagLoads.remove(manifestUrl, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return previous;
+        } catch (ExecutionException e) {
+            logger.warn("load registry manifest " + manifestUrl + " error, message is " + e.getCause().getMessage());
+            return previous;
+        }
+    }
+
+    private void scheduleRefresh(final String manifestUrl, final String token) {
+        if (tagLoads.containsKey(manifestUrl)) {
+            return;
+        }
+        try {
+            refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    TagMetadata cached = tags.get(manifestUrl);
+                    if (cached == null || System.currentTimeMillis() - cached.checkedAt <= refreshMillis) {
+                        return;
+                    }
+                    refreshes.incrementAndGet();
+                    loadTag(manifestUrl, token, cached);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("too many registry tags to refresh, skip " + manifestUrl);
+        }
+    }
+
+    private long getBlobSize(final String blobUrlPrefix, final String blobSum, final String token) {
+        Long size = blobSizes.get(blobSum);
+        if (size != null) {
+            blobHits.incrementAndGet();
+            return size;
+        }
+        FutureTask<Long> task = new FutureTask<>(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                blobLoadCount.incrementAndGet();
+                long loaded = fetcher.getBlobSize(blobUrlPrefix + blobSum, token);
+                if (loaded >= 0) {
+                    blobSizes.put(blobSum, loaded);
+                }
+                return loaded;
+            }
+        });
+        FutureTask<Long> running = blobLoads.putIfAbsent(blobSum, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                blobLoads.remove(blobSum, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (ExecutionException e) {
+            logger.warn("get size of blob " + blobSum + " error, message is " + e.getCause().getMessage());
+            return -1;
+        }
+    }
+
+    private TagMetadata parse(Manifest manifest) {
+        JsonNode manifests;
+        try {
+            manifests = mapper.readTree(manifest.body);
+        } catch (IOException e) {
+            logger.warn("get json error, " + e.getMessage());
+            return null;
+        }
+        JsonNode histories = manifests.get(GlobalConstant.REGISTRY_HISTORY);
+        String latestCreated = null;
+        long createTime = 0;
+        if (histories != null) {
+            Iterator<JsonNode> element = histories.elements();
+            while (element.hasNext()) {
+                JsonNode history = element.next();
+                if (!history.has(GlobalConstant.REGISTRY_HISTORY_V1COMPATIBILITY)) {
+                    continue;
+                }
+                try {
+                    JsonNode v1Compatibility = mapper.readTree(history.get(GlobalConstant.REGISTRY_HISTORY_V1COMPATIBILITY).asText());
+                    JsonNode created = v1Compatibility.get(GlobalConstant.REGISTRY_HISTORY_V1COMPATIBILITY_CREATED);
+                    if (created == null) {
+                        continue;
+                    }
+                    long tmpTime = DateUtil.string2timestamp(created.asText(), TimeZone.getTimeZone(GlobalConstant.UTC_TIME));
+                    if (tmpTime > createTime) {
+                        createTime = tmpTime;
+                        latestCreated = created.asText();
+                    }
+                } catch (Exception e) {
+                    logger.warn("change date format error, message: " + e.getMessage());
+                }
+            }
+        }
+        List<String> blobSums = new ArrayList<>();
+        JsonNode fsLayers = manifests.get(GlobalConstant.REGISTRY_FSLAYERS);
+        if (fsLayers != null) {
+            Iterator<JsonNode> element = fsLayers.elements();
+            while (element.hasNext()) {
+                JsonNode layers = element.next();
+                if (layers.has(GlobalConstant.REGISTRY_BLOBSUM)) {
+                    blobSums.add(layers.get(GlobalConstant.REGISTRY_BLOBSUM).asText());
+                }
+            }
+        }
+        return new TagMetadata(manifest.digest, histories != null, latestCreated, createTime, blobSums, -1,
+                System.currentTimeMillis());
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(tags.size(), blobSizes.size(), tagHits.get(), tagLoadCount.get(), tagEvictions.get(),
+                refreshes.get(), digestChanges.get(), blobHits.get(), blobLoadCount.get(), refresher.getQueue().size());
+    }
+
+    public static class TagMetadata {
+        private final String digest;
+        private final boolean hasHistory;
+        private final String latestCreated;
+        private final long createTime;
+        private final List<String> blobSums;
+        private final long checkedAt;
+        private volatile long size;
+
+        TagMetadata(String digest, boolean hasHistory, String latestCreated, long createTime, List<String> blobSums,
+                    long size, long checkedAt) {
+            this.digest = digest;
+            this.hasHistory = hasHistory;
+            this.latestCreated = latestCreated;
+            this.createTime = createTime;
+            this.blobSums = Collections.unmodifiableList(blobSums);
+            this.size = size;
+            this.checkedAt = checkedAt;
+        }
+
+        TagMetadata checked() {
+            return new TagMetadata(digest, hasHistory, latestCreated, createTime, blobSums, size,
+                    System.currentTimeMillis());
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return false if the manifest has no history
+         */
+        public boolean hasHistory() {
+            return hasHistory;
+        }
+
+        /**
+         * @return the latest created time of the history as written in the manifest, null if none
+         */
+        public String getLatestCreated() {
+            return latestCreated;
+        }
+
+        /**
+         * @return the latest created time of the history read as UTC, 0 if none
+         */
+        public long getCreateTime() {
+            return createTime;
+        }
+
+        public List<String> getBlobSums() {
+            return blobSums;
+        }
+    }
+
+    public static class CacheStats {
+        private int tags;
+        private int blobs;
+        private long tagHits;
+        private long tagLoads;
+        private long tagEvictions;
+        private long refreshes;
+        private long digestChanges;
+        private long blobHits;
+        private long blobLoads;
+        private int pendingRefreshes;
+
+        public CacheStats(int tags, int blobs, long tagHits, long tagLoads, long tagEvictions, long refreshes,
+                          long digestChanges, long blobHits, long blobLoads, int pendingRefreshes) {
+            this.tags = tags;
+            this.blobs = blobs;
+            this.tagHits = tagHits;
+            this.tagLoads = tagLoads;
+            this.tagEvictions = tagEvictions;
+            this.refreshes = refreshes;
+            this.digestChanges = digestChanges;
+            this.blobHits = blobHits;
+            this.blobLoads = blobLoads;
+            this.pendingRefreshes = pendingRefreshes;
+        }
+
+        public int getTags() {
+            return tags;
+        }
+
+        public int getBlobs() {
+            return blobs;
+        }
+
+        public long getTagHits() {
+            return tagHits;
+        }
+
+        public long getTagLoads() {
+            return tagLoads;
+        }
+
+        public long getTagEvictions() {
+            return tagEvictions;
+        }
+
+        public long getRefreshes() {
+            return refreshes;
+        }
+
+        public long getDigestChanges() {
+            return digestChanges;
+        }
+
+        public long getBlobHits() {
+            return blobHits;
+        }
+
+        public long getBlobLoads() {
+            return blobLoads;
+        }
+
+        public int getPendingRefreshes() {
+            return pendingRefreshes;
+        }
+    }
+}
@@ -42,10 +42,13 @@ public interface MonitorService {
      * @param startTime
      * @param endTime
      * @param dataSpec
+     * @param columnar return counterColumns, one value array per target, instead of counterResults
+     * @param points at most this many points per target, 0 for the server default
      * @param cid
      * @return
      */
-    HttpResponseTemp<?> getMonitorData(long targetId, long startTime, long endTime, String dataSpec, int cid);
+    HttpResponseTemp<?> getMonitorData(long targetId, long startTime, long endTime, String dataSpec, boolean columnar, int points,
+                                   int cid);
 
     /**
      *
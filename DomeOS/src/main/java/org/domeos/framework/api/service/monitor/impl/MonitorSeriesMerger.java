@@ -0,0 +1,224 @@
+package org.domeos.framework.api.service.monitor.impl;
+
+import org.domeos.framework.api.consolemodel.monitor.CounterColumns;
+import org.domeos.framework.api.model.monitor.falcon.CounterValue;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the falcon series of each counter into columns aligned on the timestamps of its longest
+ * series. Each series is copied into primitive arrays once and walked with a cursor, so a counter
+ * costs one pass over its samples; values of the containers of a pod are summed in the same pass.
+ */
+class MonitorSeriesMerger {
+
+    static final String MEM_USAGE = "container.mem.usage";
+    static final String MEM_LIMIT = "container.mem.limit";
+    static final String MEM_USAGE_PERCENT = "container.mem.usage.percent";
+
+    private MonitorSeriesMerger() {
+    }
+
+    /**
+     * @param responses       series by counter, see arrangeGraphHistoryResponseList
+     * @param containerPodMap container id -> pod name, for pod targets
+     * @return columns by counter, in the order of the responses
+     */
+    static Map<String, CounterColumns> merge(Map<String, List<GraphHistoryResponse>> responses, String targetType,
+                                             Map<String, String> containerPodMap) {
+        Map<String, CounterColumns> result = new LinkedHashMap<>();
+        boolean pod = "pod".equals(targetType);
+        for (Map.Entry<String, List<GraphHistoryResponse>> entry : responses.entrySet()) {
+            List<GraphHistoryResponse> series = entry.getValue();
+            if (series == null || series.isEmpty()) {
+                continue;
+            }
+            GraphHistoryResponse longest = series.get(0);
+            for (GraphHistoryResponse response : series) {
+                if (response.getValues().size() > longest.getValues().size()) {
+                    longest = response;
+                }
+            }
+            List<CounterValue> reference = longest.getValues();
+            int count = reference.size();
+            long[] seconds = new long[count];
+            long[] timeStamps = new long[count];
+            for (int index = 0; index < count; index++) {
+                seconds[index] = reference.get(index).getTimestamp();
+                timeStamps[index] = seconds[index] * 1000;
+            }
+            int interval = count == 1 ? longest.getStep() : (int) (seconds[1] - seconds[0]);
+            CounterColumns columns = new CounterColumns(interval, timeStamps);
+
+            for (GraphHistoryResponse response : series) {
+                String key = targetKey(response, targetType, containerPodMap);
+                if (key == null) {
+                    continue;
+                }
+                double[] column = columns.getValues().get(key);
+                if (column == null) {
+                    column = new double[count];
+                    Arrays.fill(column, Double.NaN);
+                    columns.getValues().put(key, column);
+                }
+                mergeSeries(response.getValues(), seconds, column, pod);
+            }
+            result.put(entry.getKey(), columns);
+        }
+        if (pod) {
+            derivePodMemoryPercent(result);
+        }
+        return result;
+    }
+
+    /**
+     * a sample is taken by the first reference timestamp not before it; samples are summed when
+     * several series share the column
+     */
+    private static void mergeSeries(List<CounterValue> values, long[] seconds, double[] column, boolean sum) {
+        int size = values.size();
+        long[] sampleSeconds = new long[size];
+        double[] samples = new double[size];
+        int position = 0;
+        for (CounterValue value : values) {
+            sampleSeconds[position] = value.getTimestamp();
+            samples[position] = value.getValue() == null ? Double.NaN : value.getValue();
+            position++;
+        }
+        int cursor = 0;
+        for (int index = 0; index < seconds.length && cursor < size; index++) {
+            if (sampleSeconds[cursor] > seconds[index]) {
+                continue;
+            }
+            double sample = samples[cursor++];
+            if (!sum || Double.isNaN(column[index])) {
+                column[index] = sample;
+            } else if (!Double.isNaN(sample)) {
+                column[index] += sample;
+            }
+        }
+    }
+
+    private static String targetKey(GraphHistoryResponse response, String targetType, Map<String, String> containerPodMap) {
+        switch (targetType) {
+            case "node":
+                return response.getEndpoint();
+            case "pod":
+                return containerPodMap.get(containerId(response));
+            case "container":
+                return containerId(response);
+            default:
+                return null;
+        }
+    }
+
+    private static String containerId(GraphHistoryResponse response) {
+        return response.getCounter().substring(response.getCounter().indexOf("/id=") + 4);
+    }
+
+    /**
+     * memory percent of a pod is its summed usage over its summed limit, not the sum of the percents
+     * of its containers
+     */
+    static void derivePodMemoryPercent(Map<String, CounterColumns> columns) {
+        CounterColumns percent = columns.get(MEM_USAGE_PERCENT);
+        CounterColumns usage = columns.get(MEM_USAGE);
+        CounterColumns limit = columns.get(MEM_LIMIT);
+        if (percent == null || usage == null || limit == null) {
+            return;
+        }
+        int length = Math.min(percent.getTimeStamps().length,
+                Math.min(usage.getTimeStamps().length, limit.getTimeStamps().length));
+        for (Map.Entry<String, double[]> entry : percent.getValues().entrySet()) {
+            double[] percentValues = entry.getValue();
+            double[] usageValues = usage.getValues().get(entry.getKey());
+            double[] limitValues = limit.getValues().get(entry.getKey());
+            for (int index = 0; index < length; index++) {
+                if (usageValues == null || limitValues == null) {
+                    percentValues[index] = Double.NaN;
+                } else {
+                    percentValues[index] = usageValues[index] / limitValues[index] * 100;
+                }
+            }
+        }
+    }
+
+    /**
+     * consolidate the columns into at most maxPoints points: consecutive points are grouped into
+     * buckets of equal width, and each bucket keeps its first timestamp and the average, max or min of
+     * its values as the data spec asks, so peaks survive in max and min charts
+     */
+    static CounterColumns consolidate(CounterColumns columns, int maxPoints, String dataSpec) {
+        long[] timeStamps = columns.getTimeStamps();
+        if (maxPoints <= 0 || timeStamps.length <= maxPoints) {
+            return columns;
+        }
+        int width = (timeStamps.length + maxPoints - 1) / maxPoints;
+        int buckets = (timeStamps.length + width - 1) / width;
+        long[] bucketTimeStamps = new long[buckets];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            bucketTimeStamps[bucket] = timeStamps[bucket * width];
+        }
+        CounterColumns consolidated = new CounterColumns(columns.getInterval() * width, bucketTimeStamps);
+        for (Map.Entry<String, double[]> entry : columns.getValues().entrySet()) {
+            double[] values = entry.getValue();
+            double[] bucketValues = new double[buckets];
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                int from = bucket * width;
+                int to = Math.min(from + width, values.length);
+                bucketValues[bucket] = consolidate(values, from, to, dataSpec);
+            }
+            consolidated.getValues().put(entry.getKey(), bucketValues);
+        }
+        return consolidated;
+    }
+
+    private static double consolidate(double[] values, int from, int to, String dataSpec) {
+        double result = Double.NaN;
+        int count = 0;
+        for (int index = from; index < to; index++) {
+            double value = values[index];
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (count == 0) {
+                result = value;
+            } else if ("MAX".equals(dataSpec)) {
+                result = Math.max(result, value);
+            } else if ("MIN".equals(dataSpec)) {
+                result = Math.min(result, value);
+            } else {
+                result += value;
+            }
+            count++;
+        }
+        if (count > 1 && !"MAX".equals(dataSpec) && !"MIN".equals(dataSpec)) {
+            result /= count;
+        }
+        return result;
+    }
+
+    /**
+     * @return the columns as one map per timestamp, holding "timeStamp" and a value or null per target
+     */
+    static List<Map<String, Double>> toRows(CounterColumns columns) {
+        long[] timeStamps = columns.getTimeStamps();
+        List<Map<String, Double>> rows = new ArrayList<>(timeStamps.length);
+        for (int index = 0; index < timeStamps.length; index++) {
+            Map<String, Double> row = new HashMap<>();
+            row.put("timeStamp", (double) timeStamps[index]);
+            for (Map.Entry<String, double[]> entry : columns.getValues().entrySet()) {
+                double value = entry.getValue()[index];
+                row.put(entry.getKey(), Double.isNaN(value) ? null : value);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
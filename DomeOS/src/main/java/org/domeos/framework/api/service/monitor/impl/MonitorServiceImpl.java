@@ -1,14 +1,15 @@
 package org.domeos.framework.api.service.monitor.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import org.apache.commons.lang3.StringUtils;
+import org.domeos.util.EnvUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.domeos.basemodel.HttpResponseTemp;
 import org.domeos.basemodel.ResultStat;
 import org.domeos.framework.api.biz.global.GlobalBiz;
 import org.domeos.framework.api.biz.monitor.MonitorBiz;
+import org.domeos.framework.api.consolemodel.monitor.CounterColumns;
 import org.domeos.framework.api.consolemodel.monitor.MonitorDataRequest;
 import org.domeos.framework.api.consolemodel.monitor.MonitorResult;
 import org.domeos.framework.api.consolemodel.monitor.TargetRequest;
@@ -27,14 +28,13 @@ import org.domeos.framework.api.model.collection.related.ResourceType;
 import org.domeos.framework.api.service.monitor.MonitorService;
 import org.domeos.framework.engine.AuthUtil;
 import org.domeos.framework.engine.model.CustomObjectMapper;
+import org.domeos.framework.engine.runtime.FalconQueryCache;
+import org.domeos.framework.engine.runtime.FalconQueryClient;
 import org.domeos.global.CurrentThreadInfo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.*;
 
 /**
@@ -45,6 +45,18 @@ public class MonitorServiceImpl implements MonitorService {
 
     private static Logger logger = LoggerFactory.getLogger(MonitorServiceImpl.class);
 
+    // points per target a chart gets back unless it asks for fewer
+    private static final int MAX_POINTS = EnvUtil.envInt("DOMEOS_MONITOR_MAX_POINTS", 720);
+    // query windows are widened to multiples of this many seconds so refreshes within it share a cached query
+    private static final long WINDOW_ALIGN_SECONDS = 60;
+
+    private static final FalconQueryCache.Loader FALCON_LOADER = new FalconQueryCache.Loader() {
+        @Override
+        public List<GraphHistoryResponse> load(String url, GraphHistoryRequest request) throws IOException {
+            return FalconQueryClient.getInteractive().post(url, request);
+        }
+    };
+
     @Autowired
     MonitorBiz monitorBiz;
 
@@ -128,7 +140,8 @@ public class MonitorServiceImpl implements MonitorService {
 
 
     @Override
-    public HttpResponseTemp<?> getMonitorData(long targetId, long startTime, long endTime, String dataSpec, int cid) {
+    public HttpResponseTemp<?> getMonitorData(long targetId, long startTime, long endTime, String dataSpec, boolean columnar, int points,
+                                          int cid) {
 
         AuthUtil.verify(CurrentThreadInfo.getUserId(), cid, ResourceType.CLUSTER, OperationType.GET);
 
@@ -180,7 +193,8 @@ public class MonitorServiceImpl implements MonitorService {
                 monitorDataRequest.getTargetType());
 
         // create MonitorResult
-        createMonitorResult(monitorResult, graphHistoryResponseMap, monitorDataRequest);
+        createMonitorResult(monitorResult, graphHistoryResponseMap, monitorDataRequest, columnar,
+                points > 0 ? Math.min(points, MAX_POINTS) : MAX_POINTS);
 
         return ResultStat.OK.wrap(monitorResult);
     }
@@ -243,12 +257,21 @@ public class MonitorServiceImpl implements MonitorService {
         return result.substring(0, result.length() - delimiter.length());
     }
 
+    /**
+     * the start is rounded down and the end up, so the window holds every second asked for
+     */
+    static void setWindow(GraphHistoryRequest graphHistoryRequest, long startMillis, long endMillis) {
+        long start = startMillis / 1000;
+        long end = (endMillis + 999) / 1000;
+        graphHistoryRequest.setStart(start - start % WINDOW_ALIGN_SECONDS);
+        graphHistoryRequest.setEnd(end % WINDOW_ALIGN_SECONDS == 0 ? end : end - end % WINDOW_ALIGN_SECONDS + WINDOW_ALIGN_SECONDS);
+    }
+
     // create graphHistoryRequest
     private GraphHistoryRequest getGraphHistoryRequest(MonitorDataRequest monitorDataRequest) {
 
         GraphHistoryRequest graphHistoryRequest = new GraphHistoryRequest();
-        graphHistoryRequest.setStart(monitorDataRequest.getStartTime() / 1000);
-        graphHistoryRequest.setEnd(monitorDataRequest.getEndTime() / 1000);
+        setWindow(graphHistoryRequest, monitorDataRequest.getStartTime(), monitorDataRequest.getEndTime());
         graphHistoryRequest.setCf(monitorDataRequest.getDataSpec());
 
         List<String> counters = retrieveCountersByTargetInfoList(monitorDataRequest.getTargetType(), monitorDataRequest.getTargetInfos());
@@ -288,37 +311,12 @@ public class MonitorServiceImpl implements MonitorService {
     @Override
     public List<GraphHistoryResponse> postJson(String requestUrl, GraphHistoryRequest graphHistoryRequest) throws IOException {
 
-        HttpURLConnection conn;
-        List<GraphHistoryResponse> graphHistoryResponses;
         try {
-
-            URL url = new URL(requestUrl);
-
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("accept", "*/*");
-            conn.setRequestProperty("Charsert", "UTF-8");
-            conn.setRequestProperty("Connection", "Keep-Alive");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setDoInput(true);
-
-            mapper.writeValue(conn.getOutputStream(), graphHistoryRequest);
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                logger.error("error response code while post:" + responseCode);
-                return null;
-            }
-            InputStream inputStream = conn.getInputStream();
-            graphHistoryResponses = mapper.readValue(inputStream, new TypeReference<List<GraphHistoryResponse>>() {
-            });
-            inputStream.close();
-        } catch (Exception e) {
-
+            return FalconQueryCache.getInstance().get(requestUrl, graphHistoryRequest, FALCON_LOADER);
+        } catch (IOException e) {
             logger.error("exception in sending post request!", e);
             return null;
         }
-        return graphHistoryResponses;
     }
 
     // re-arrage GraphHistoryResponses
@@ -357,132 +355,22 @@ public class MonitorServiceImpl implements MonitorService {
 
     // create monitorResult by arranged GraphHistoryResponse-Map
     private void createMonitorResult(MonitorResult monitorResult, Map<String, List<GraphHistoryResponse>> graphHistoryResponseMap,
-                                     MonitorDataRequest monitorDataRequest) {
-
-        Map<String, String> containerPodMap = getContainerPodMap(monitorDataRequest);
-
-        for (String counter : graphHistoryResponseMap.keySet()) {
-
-            if (graphHistoryResponseMap.get(counter) == null || graphHistoryResponseMap.get(counter).size() == 0) {
-                continue;
-            }
-
-            // create key : counter
-            monitorResult.getCounterResults().put(counter, new ArrayList<Map<String, Double>>());
-
-            // get timeStampCount for this counter
-            int timeStampCount = 0;
-            int maxCountIndex = 0;
-            for (GraphHistoryResponse graphHistoryResponse : graphHistoryResponseMap.get(counter)) {
-                if (graphHistoryResponse.getValues().size() > timeStampCount) {
-                    timeStampCount = graphHistoryResponse.getValues().size();
-                    maxCountIndex = graphHistoryResponseMap.get(counter).indexOf(graphHistoryResponse);
-                }
-            }
-
-            // set interval
-            if (graphHistoryResponseMap.get(counter).get(maxCountIndex).getValues().size() == 1) {
-                monitorResult.setInterval(graphHistoryResponseMap.get(counter).get(maxCountIndex).getStep());
-            } else {
-                monitorResult.setInterval((int) (graphHistoryResponseMap.get(counter).get(maxCountIndex).getValues().get(1).getTimestamp()
-                        - graphHistoryResponseMap.get(counter).get(maxCountIndex).getValues().get(0).getTimestamp()));
-            }
-
-            // cache targetValueKeys and index offsets
-            List<String> targetValueKeys = new ArrayList<>();
-            List<Integer> offsets = new ArrayList<>();
-            for (GraphHistoryResponse graphHistoryResponse : graphHistoryResponseMap.get(counter)) {
-                offsets.add(0);
-                switch (monitorDataRequest.getTargetType()) {
-                    case "node":
-                        targetValueKeys.add(graphHistoryResponse.getEndpoint());
-                        break;
-                    case "pod":
-                        targetValueKeys.add(containerPodMap.get(graphHistoryResponse.getCounter()
-                                .substring(graphHistoryResponse.getCounter().indexOf("/id=") + 4)));
-                        break;
-                    case "container":
-                        targetValueKeys.add(graphHistoryResponse.getCounter().substring(graphHistoryResponse.getCounter().indexOf("/id=") + 4));
-                }
-            }
-
-            // for every timeStamp: create Map<String,Double>
-            for (int index = 0; index < timeStampCount; index++) {
-
-                Map<String, Double> targetValueMap = new HashMap<>();
-
-                // add key "timeStamp"
-                long currentTimeStamp = graphHistoryResponseMap.get(counter).get(maxCountIndex).getValues().get(index).getTimestamp();
-                targetValueMap.put("timeStamp", (double) currentTimeStamp * 1000.0);
-
-                for (GraphHistoryResponse graphHistoryResponse : graphHistoryResponseMap.get(counter)) {
-
-                    int indexGraphHistoryResponse = graphHistoryResponseMap.get(counter).indexOf(graphHistoryResponse);
-                    int indexActual = index - offsets.get(indexGraphHistoryResponse);
-                    Double insertValue = null;
-
-                    if (graphHistoryResponse.getValues().size() > indexActual) {
-                        long actualTimeStamp = graphHistoryResponse.getValues().get(indexActual).getTimestamp();
-                        if (actualTimeStamp > currentTimeStamp) {
-                            offsets.set(indexGraphHistoryResponse, offsets.get(indexGraphHistoryResponse) + 1);
-                        } else {
-                            switch (monitorDataRequest.getTargetType()) {
-                                case "pod":
-                                    String pod = targetValueKeys.get(indexGraphHistoryResponse);
-                                    if (!targetValueMap.containsKey(pod)) {
-                                        insertValue = graphHistoryResponse.getValues().get(indexActual).getValue();
-                                    } else if (graphHistoryResponse.getValues().get(indexActual).getValue() != null) {
-                                        Double currentValue = targetValueMap.get(pod);
-                                        if (currentValue == null) {
-                                            insertValue = graphHistoryResponse.getValues().get(indexActual).getValue();
-                                        } else {
-                                            insertValue = currentValue + graphHistoryResponse.getValues().get(indexActual).getValue();
-                                        }
-                                    } else {
-                                        insertValue = targetValueMap.get(pod);
-                                    }
-                                    break;
-                                default:
-                                    insertValue = graphHistoryResponse.getValues().get(indexActual).getValue();
-                            }
-                        }
-                    }
-                    String targetValueKey = targetValueKeys.get(indexGraphHistoryResponse);
-                    targetValueMap.put(targetValueKey, insertValue);
-                }
-
-                monitorResult.getCounterResults().get(counter).add(targetValueMap);
-            }
+                                     MonitorDataRequest monitorDataRequest, boolean columnar, int maxPoints) {
+
+        Map<String, CounterColumns> counterColumns = MonitorSeriesMerger.merge(graphHistoryResponseMap,
+                monitorDataRequest.getTargetType(), getContainerPodMap(monitorDataRequest));
+        for (Map.Entry<String, CounterColumns> entry : counterColumns.entrySet()) {
+            CounterColumns columns = MonitorSeriesMerger.consolidate(entry.getValue(), maxPoints,
+                    monitorDataRequest.getDataSpec());
+            entry.setValue(columns);
+            monitorResult.setInterval(columns.getInterval());
         }
-
-        // change pod memory usage percent
-        if (monitorDataRequest.getTargetType().equals("pod")) {
-            int length = monitorResult.getCounterResults().get("container.mem.usage.percent").size();
-            if (monitorResult.getCounterResults().get("container.mem.usage").size() < length) {
-                length = monitorResult.getCounterResults().get("container.mem.usage").size();
-            }
-            if (monitorResult.getCounterResults().get("container.mem.limit").size() < length) {
-                length = monitorResult.getCounterResults().get("container.mem.limit").size();
-            }
-            for (int index = 0; index < length; index++) {
-                Map<String, Double> currentMap = monitorResult.getCounterResults().get("container.mem.usage.percent").get(index);
-                for (String key : currentMap.keySet()) {
-                    if (key.equals("timeStamp")) {
-                        continue;
-                    }
-                    if (monitorResult.getCounterResults().get("container.mem.usage").get(index).containsKey(key) &&
-                            monitorResult.getCounterResults().get("container.mem.usage").get(index).get(key) != null &&
-                            monitorResult.getCounterResults().get("container.mem.limit").get(index).containsKey(key) &&
-                            monitorResult.getCounterResults().get("container.mem.limit").get(index).get(key) != null) {
-                        monitorResult.getCounterResults().get("container.mem.usage.percent").get(index).put(key,
-                                monitorResult.getCounterResults().get("container.mem.usage").get(index).get(key)
-                                        / monitorResult.getCounterResults().get("container.mem.limit").get(index).get(key) * 100
-                        );
-                    } else {
-                        monitorResult.getCounterResults().get("container.mem.usage.percent").get(index).put(key, null);
-                    }
-                }
-            }
+        if (columnar) {
+            monitorResult.setCounterColumns(new TreeMap<>(counterColumns));
+            return;
+        }
+        for (Map.Entry<String, CounterColumns> entry : counterColumns.entrySet()) {
+            monitorResult.getCounterResults().put(entry.getKey(), MonitorSeriesMerger.toRows(entry.getValue()));
         }
     }
 
@@ -519,5 +407,4 @@ public class MonitorServiceImpl implements MonitorService {
 
         return targetRequest;
     }
-
-}
\ No newline at end of file
+}
@@ -7,6 +7,10 @@ import org.domeos.framework.api.model.project.Project;
 import org.domeos.framework.engine.exception.DaoException;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
 /**
  * Created by feiliu206363 on 2015/7/28.
  */
@@ -103,6 +107,16 @@ public interface BuildService {
      */
     HttpResponseTemp<?> downloadLogFile(int projectId, int buildId);
 
+    /**
+     * stream the docker log of a build, part of it can be chosen by a Range header,
+     * by offset (skip offset bytes) or by tail (last tail bytes)
+     *
+     * @param projectId is the project id in database of this build
+     * @param buildId   the build id in database
+     */
+    void streamLogFile(int projectId, int buildId, Long offset, Long tail, HttpServletRequest request,
+                       HttpServletResponse response) throws IOException;
+
     /**
      * get all build infos of a project in database
      *
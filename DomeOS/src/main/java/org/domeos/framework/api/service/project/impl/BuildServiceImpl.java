@@ -30,12 +30,14 @@ import org.domeos.framework.api.service.token.TokenService;
 import org.domeos.framework.engine.AuthUtil;
 import org.domeos.framework.engine.coderepo.CodeApiInterface;
 import org.domeos.framework.engine.coderepo.GitWebHook;
+import org.domeos.framework.engine.coderepo.GitlabProjectIndex;
 import org.domeos.framework.engine.coderepo.ReflectFactory;
 import org.domeos.framework.engine.coderepo.WebHook;
 import org.domeos.framework.engine.exception.DaoException;
 import org.domeos.framework.engine.k8s.JobWrapper;
 import org.domeos.global.CurrentThreadInfo;
 import org.domeos.global.GlobalConstant;
+import org.domeos.util.ByteRange;
 import org.domeos.util.CommonUtil;
 import org.domeos.util.RSAKeyPairGenerator;
 import org.slf4j.Logger;
@@ -44,7 +46,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -192,6 +198,7 @@ public class BuildServiceImpl implements BuildService {
         }
         try {
             WebHook webHook = new GitWebHook(webHookStr);
+            GitlabProjectIndex.projectChanged(webHook.getProject_id());
             List<Project> projects = projectBiz.getAllProjects();
             if (projects == null) {
                 throw ApiException.wrapMessage(ResultStat.PARAM_ERROR, "no project info");
@@ -393,10 +400,8 @@ public class BuildServiceImpl implements BuildService {
             throw ApiException.wrapMessage(ResultStat.PARAM_ERROR, "upload build log error");
         }
 
-        try {
-            byte[] bytes = new byte[(int) body.getSize()];
-            body.getInputStream().read(bytes);
-            projectBiz.insertBuildLogById(buildId, bytes);
+        try (InputStream inputStream = body.getInputStream()) {
+            projectBiz.insertBuildLogById(buildId, inputStream);
         } catch (IOException e) {
             logger.error("save upload build log file error, message is " + e.getMessage());
         }
@@ -410,6 +415,29 @@ public class BuildServiceImpl implements BuildService {
         return ResultStat.OK.wrap(log);
     }
 
+    @Override
+    public void streamLogFile(int projectId, int buildId, Long offset, Long tail, HttpServletRequest request,
+                              HttpServletResponse response) throws IOException {
+        checkGetable(projectId);
+        long total = projectBiz.getBuildLogLengthById(buildId);
+        ByteRange range = ByteRange.resolve(request.getHeader("Range"), offset, tail, total);
+        response.setHeader("Accept-Ranges", "bytes");
+        if (range == null) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + total);
+            return;
+        }
+        if (range.isPartial()) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", range.contentRange(total));
+        }
+        response.setContentType("text/plain; charset=utf-8");
+        response.setHeader("Content-Length", String.valueOf(range.getLength()));
+        OutputStream outputStream = response.getOutputStream();
+        projectBiz.writeBuildLogById(buildId, range.getStart(), range.getLength(), outputStream);
+        outputStream.flush();
+    }
+
     @Override
     public HttpResponseTemp<?> listBuildInfo(int projectId) {
         checkGetable(projectId);
@@ -37,7 +37,7 @@ import org.domeos.framework.api.service.project.ProjectService;
 import org.domeos.framework.engine.AuthUtil;
 import org.domeos.framework.engine.coderepo.CodeApiInterface;
 import org.domeos.framework.engine.coderepo.ReflectFactory;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.CurrentThreadInfo;
 import org.domeos.global.GlobalConstant;
 import org.slf4j.Logger;
@@ -396,7 +396,7 @@ public class ProjectServiceImpl implements ProjectService {
     private void parallzieGenerate(Set<ProjectInfoConsole> set, List<Project> projects) {
         List<Future<ProjectInfoConsole>> futures = new LinkedList<>();
         for (Project project : projects) {
-            Future<ProjectInfoConsole> future = ClientConfigure.executorService.submit(new GetProjectInfoConsoleTask(set, project));
+            Future<ProjectInfoConsole> future = ExecutorRegistry.get(ExecutorRegistry.PROJECT).submit(new GetProjectInfoConsoleTask(set, project));
             futures.add(future);
         }
         for (Future future : futures) {
@@ -0,0 +1,59 @@
+package org.domeos.framework.api.service.token.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Values usable until a deadline. When full, expired values are dropped first and everything if
+ * that is not enough; the values are cheap enough to build again.
+ */
+class ExpiringCache<V> {
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private static class Entry<V> {
+        final V value;
+        final long expireAt;
+
+        Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    ExpiringCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    V get(String key, long now) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt <= now) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    void put(String key, V value, long expireAt, long now) {
+        if (entries.size() >= maxEntries) {
+            for (Iterator<Map.Entry<String, Entry<V>>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+                if (iterator.next().getValue().expireAt <= now) {
+                    iterator.remove();
+                }
+            }
+            if (entries.size() >= maxEntries) {
+                entries.clear();
+            }
+        }
+        entries.put(key, new Entry<>(value, expireAt));
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
@@ -11,10 +11,11 @@ import org.domeos.framework.api.model.collection.CollectionAuthorityMap;
 import org.domeos.framework.api.model.collection.CollectionResourceMap;
 import org.domeos.framework.api.model.collection.related.ResourceType;
 import org.domeos.framework.api.model.operation.OperationType;
-import org.domeos.framework.api.model.project.ProjectCollection;
+import org.domeos.util.EnvUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.util.List;
 
 /**
@@ -23,10 +24,10 @@ import java.util.List;
 @Component
 public class AuthUtil {
 
-
     private static AuthBiz authBiz;
     private static ProjectCollectionBiz projectCollectionBiz;
     private static CollectionBiz collectionBiz;
+    private static volatile AuthorizationIndex index;
 
     @Autowired
     public void setAuthBiz(AuthBiz authBiz) {
@@ -43,13 +44,19 @@ public class AuthUtil {
         AuthUtil.collectionBiz = collectionBiz;
     }
 
+    @PostConstruct
+    public void init() {
+        index = new AuthorizationIndex(authBiz, collectionBiz, projectCollectionBiz,
+                EnvUtil.envLong("DOMEOS_AUTH_INDEX_TTL", 60000));
+    }
+
 //    public static boolean isAdmin() {
 //        Subject subject = SecurityUtils.getSubject();
 //        return subject.hasRole(Role.ADMINISTRATOR.name());
 //    }
 
     public static boolean isAdmin(int userId) {
-        return authBiz.isAdmin(userId);
+        return index.isAdmin(userId);
     }
 
     public static String getCurrentUserName() {
@@ -63,7 +70,7 @@ public class AuthUtil {
      */
     public static int getUserId() {
         String userName = getCurrentUserName();
-        return authBiz.getUserId(userName);
+        return index.userId(userName);
     }
 
     public static User getUser() {
@@ -169,8 +176,7 @@ public class AuthUtil {
         if (isAdmin(userId)) {
             return true;
         }
-        CollectionAuthorityMap authorityMap = collectionBiz.
-                getAuthorityByUserIdAndResourceTypeAndCollectionId(userId, resourceType, collectionId);
+        CollectionAuthorityMap authorityMap = index.authority(userId, resourceType, collectionId);
 
         if (authorityMap == null) {
             throw new PermitException(userId, collectionId, operationType, dstUserId);
@@ -208,12 +214,8 @@ public class AuthUtil {
                 break;
             case GET:
                 result = userRoleType.getAccessLevel() <= Role.REPORTER.getAccessLevel();
-                if (ResourceType.PROJECT_COLLECTION.equals(resourceType)) {
-                    ProjectCollection projectCollection = projectCollectionBiz.getById(ProjectCollectionBiz.PROJECT_COLLECTION,
-                            collectionId, ProjectCollection.class);
-                    if (projectCollection != null && ProjectCollection.ProjectCollectionState.PUBLIC.equals(projectCollection.getProjectCollectionState())) {
-                        result = true;
-                    }
+                if (ResourceType.PROJECT_COLLECTION.equals(resourceType) && index.isPublicProjectCollection(collectionId)) {
+                    result = true;
                 }
                 break;
             case MODIFY:
@@ -242,7 +244,7 @@ public class AuthUtil {
         if (isAdmin(userId)) {
             return collectionBiz.getAllCollectionByType(resourceType);
         }
-        return collectionBiz.getAuthoritiesByUserIdAndResourceType(userId, resourceType);
+        return index.collectionList(userId, resourceType);
     }
 
     private static Role getUserRoleWithResourceId(ResourceType resourceType, int resourceId, int userId) {
@@ -255,11 +257,10 @@ public class AuthUtil {
                     userRoleType = getRoleByCollectionAndResource(userId, resourceId, resourceType, ResourceType.PROJECT_COLLECTION);
                     break;
                 case PROJECT_COLLECTION:
-                    CollectionAuthorityMap projectCollectionAuthorityMap = collectionBiz.
-                            getAuthorityByUserIdAndResourceTypeAndCollectionId(userId, resourceType, resourceId);
+                    CollectionAuthorityMap projectCollectionAuthorityMap = index.authority(userId, resourceType, resourceId);
                     if (projectCollectionAuthorityMap != null) {
                         userRoleType = projectCollectionAuthorityMap.getRole();
-                    } else if (projectCollectionBiz.isAuthorited(resourceId)) {
+                    } else if (index.isPublicProjectCollection(resourceId)) {
                         userRoleType = Role.REPORTER;
                     }
                     break;
@@ -267,8 +268,7 @@ public class AuthUtil {
                     userRoleType = getRoleByCollectionAndResource(userId, resourceId, resourceType, ResourceType.DEPLOY_COLLECTION);
                     break;
                 case DEPLOY_COLLECTION:
-                    CollectionAuthorityMap deployCollectionAuthorityMap = collectionBiz.
-                            getAuthorityByUserIdAndResourceTypeAndCollectionId(userId, resourceType, resourceId);
+                    CollectionAuthorityMap deployCollectionAuthorityMap = index.authority(userId, resourceType, resourceId);
                     if (deployCollectionAuthorityMap != null) {
                         userRoleType = deployCollectionAuthorityMap.getRole();
                     }
@@ -282,18 +282,17 @@ public class AuthUtil {
     }
 
     private static Role getRoleByCollectionAndResource(int userId, int resourceId, ResourceType resourceType, ResourceType collectionType) {
-        CollectionResourceMap resourceMap = collectionBiz.getResourceByResourceIdAndResourceType(resourceId, resourceType);
+        CollectionResourceMap resourceMap = index.resource(resourceId, resourceType);
         Role userRoleType = Role.NOTEXIST;
         if (resourceMap != null) {
             if (resourceMap.getCreatorId() == userId) {
                 userRoleType = Role.OWNER;
             } else {
-                CollectionAuthorityMap authorityMap = collectionBiz.
-                        getAuthorityByUserIdAndResourceTypeAndCollectionId(userId, collectionType, resourceMap.getCollectionId());
+                CollectionAuthorityMap authorityMap = index.authority(userId, collectionType, resourceMap.getCollectionId());
                 if (authorityMap != null) {
                     userRoleType = authorityMap.getRole();
                 } else if (collectionType == ResourceType.PROJECT_COLLECTION &&
-                        projectCollectionBiz.isAuthorited(resourceMap.getCollectionId())) {
+                        index.isPublicProjectCollection(resourceMap.getCollectionId())) {
                     userRoleType = Role.REPORTER;
                 }
             }
@@ -310,4 +309,55 @@ public class AuthUtil {
         }
         return userRoleType;
     }
+
+    // called after the authorities of the user in collections of the type changed
+    public static void authorityChanged(int userId, ResourceType collectionType) {
+        AuthorizationIndex current = index;
+        if (current != null) {
+            current.authorityChanged(userId, collectionType);
+        }
+    }
+
+    // called after authorities of users not known one by one changed, e.g. a collection was dropped
+    public static void collectionAuthoritiesChanged(ResourceType collectionType) {
+        AuthorizationIndex current = index;
+        if (current != null) {
+            current.collectionAuthoritiesChanged(collectionType);
+        }
+    }
+
+    public static void resourceChanged(int resourceId, ResourceType resourceType) {
+        AuthorizationIndex current = index;
+        if (current != null) {
+            current.resourceChanged(resourceId, resourceType);
+        }
+    }
+
+    // called after all resources of the type were removed from the collection
+    public static void collectionResourcesChanged(int collectionId, ResourceType resourceType) {
+        AuthorizationIndex current = index;
+        if (current != null) {
+            current.collectionResourcesChanged(collectionId, resourceType);
+        }
+    }
+
+    // called after the project collection was added, removed or made public or private
+    public static void projectCollectionChanged(int collectionId) {
+        AuthorizationIndex current = index;
+        if (current != null) {
+            current.projectCollectionChanged(collectionId);
+        }
+    }
+
+    public static void userChanged(int userId, String userName) {
+        AuthorizationIndex current = index;
+        if (current != null) {
+            current.userChanged(userId, userName);
+        }
+    }
+
+    public static AuthorizationIndex.IndexStats getIndexStats() {
+        AuthorizationIndex current = index;
+        return current == null ? null : current.stats();
+    }
 }
@@ -0,0 +1,320 @@
+package org.domeos.framework.engine;
+
+import org.domeos.framework.api.biz.auth.AuthBiz;
+import org.domeos.framework.api.biz.collection.CollectionBiz;
+import org.domeos.framework.api.biz.project.ProjectCollectionBiz;
+import org.domeos.framework.api.model.collection.CollectionAuthorityMap;
+import org.domeos.framework.api.model.collection.CollectionResourceMap;
+import org.domeos.framework.api.model.collection.related.ResourceType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What AuthUtil checks permissions against, loaded on first use: the admin flag and the collection
+ * authorities of a user per collection type, the collection of a resource, whether a project collection
+ * is public and the id of a user name. CollectionBiz, ProjectCollectionBiz and AuthBiz drop what they
+ * change through AuthUtil; everything also expires after the ttl, so changes made by another server
+ * or directly in the database are seen in time. A load sweeps the expired entries at most once per ttl,
+ * so users, names and resources asked once are not kept forever.
+ * <p>
+ * A value loaded while something was dropped may be stale and is returned without being kept.
+ */
+public class AuthorizationIndex {
+
+    private final AuthBiz authBiz;
+    private final CollectionBiz collectionBiz;
+    private final ProjectCollectionBiz projectCollectionBiz;
+    private final long ttl;
+
+    private final ConcurrentHashMap<Integer, UserEntry> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Expiring<Integer>> userIds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Expiring<CollectionResourceMap>> resources = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Expiring<Boolean>> publicCollections = new ConcurrentHashMap<>();
+    // increased before anything is dropped
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong nextSweep;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static class Expiring<V> {
+        final V value;
+        final long expireAt;
+
+        Expiring(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class UserEntry {
+        final boolean admin;
+        final long expireAt;
+        // collection type -> collection id -> authority of the user
+        final ConcurrentHashMap<ResourceType, Map<Integer, CollectionAuthorityMap>> authorities = new ConcurrentHashMap<>();
+
+        UserEntry(boolean admin, long expireAt) {
+            this.admin = admin;
+            this.expireAt = expireAt;
+        }
+    }
+
+    AuthorizationIndex(AuthBiz authBiz, CollectionBiz collectionBiz, ProjectCollectionBiz projectCollectionBiz, long ttl) {
+        this.authBiz = authBiz;
+        this.collectionBiz = collectionBiz;
+        this.projectCollectionBiz = projectCollectionBiz;
+        this.ttl = ttl;
+        this.nextSweep = new AtomicLong(System.currentTimeMillis() + ttl);
+    }
+
+    boolean isAdmin(int userId) {
+        return user(userId).admin;
+    }
+
+    /**
+     * @return the authority of the user in the collection, or null if the user is not in it
+     */
+    CollectionAuthorityMap authority(int userId, ResourceType collectionType, int collectionId) {
+        return authorities(userId, collectionType).get(collectionId);
+    }
+
+    /**
+     * @return authorities of the user in collections of the type, shared and not to be modified
+     */
+    List<CollectionAuthorityMap> collectionList(int userId, ResourceType collectionType) {
+        return new ArrayList<>(authorities(userId, collectionType).values());
+    }
+
+    private Map<Integer, CollectionAuthorityMap> authorities(int userId, ResourceType collectionType) {
+        UserEntry entry = user(userId);
+        Map<Integer, CollectionAuthorityMap> authorities = entry.authorities.get(collectionType);
+        if (authorities != null) {
+            hits.incrementAndGet();
+            return authorities;
+        }
+        long before = version.get();
+        loads.incrementAndGet();
+        Map<Integer, CollectionAuthorityMap> loaded = new HashMap<>();
+        List<CollectionAuthorityMap> authorityMaps = collectionBiz.getAuthoritiesByUserIdAndResourceType(userId, collectionType);
+        if (authorityMaps != null) {
+            for (CollectionAuthorityMap authorityMap : authorityMaps) {
+                loaded.put(authorityMap.getCollectionId(), authorityMap);
+            }
+        }
+        loaded = Collections.unmodifiableMap(loaded);
+        if (version.get() == before) {
+            entry.authorities.put(collectionType, loaded);
+        }
+        return loaded;
+    }
+
+    private UserEntry user(int userId) {
+        long now = System.currentTimeMillis();
+        UserEntry entry = users.get(userId);
+        if (entry != null && entry.expireAt > now) {
+            return entry;
+        }
+        sweepExpired(now);
+        long before = version.get();
+        loads.incrementAndGet();
+        UserEntry loaded = new UserEntry(authBiz.isAdmin(userId), now + ttl);
+        if (version.get() == before) {
+            users.put(userId, loaded);
+        } else if (entry != null) {
+            users.remove(userId, entry);
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the collection the resource belongs to, or null if it is in none
+     */
+    CollectionResourceMap resource(int resourceId, ResourceType resourceType) {
+        long now = System.currentTimeMillis();
+        Long key = resourceKey(resourceId, resourceType);
+        Expiring<CollectionResourceMap> entry = resources.get(key);
+        if (entry != null && entry.expireAt > now) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        sweepExpired(now);
+        long before = version.get();
+        loads.incrementAndGet();
+        CollectionResourceMap loaded = collectionBiz.getResourceByResourceIdAndResourceType(resourceId, resourceType);
+        if (version.get() == before) {
+            resources.put(key, new Expiring<>(loaded, now + ttl));
+        } else if (entry != null) {
+            resources.remove(key, entry);
+        }
+        return loaded;
+    }
+
+    boolean isPublicProjectCollection(int collectionId) {
+        long now = System.currentTimeMillis();
+        Expiring<Boolean> entry = publicCollections.get(collectionId);
+        if (entry != null && entry.expireAt > now) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        sweepExpired(now);
+        long before = version.get();
+        loads.incrementAndGet();
+        boolean loaded = projectCollectionBiz.isAuthorited(collectionId);
+        if (version.get() == before) {
+            publicCollections.put(collectionId, new Expiring<>(loaded, now + ttl));
+        } else if (entry != null) {
+            publicCollections.remove(collectionId, entry);
+        }
+        return loaded;
+    }
+
+    int userId(String userName) {
+        if (userName == null) {
+            return authBiz.getUserId(null);
+        }
+        long now = System.currentTimeMillis();
+        Expiring<Integer> entry = userIds.get(userName);
+        if (entry != null && entry.expireAt > now) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        sweepExpired(now);
+        long before = version.get();
+        loads.incrementAndGet();
+        int loaded = authBiz.getUserId(userName);
+        if (version.get() == before) {
+            userIds.put(userName, new Expiring<>(loaded, now + ttl));
+        } else if (entry != null) {
+            userIds.remove(userName, entry);
+        }
+        return loaded;
+    }
+
+    void authorityChanged(int userId, ResourceType collectionType) {
+        changing();
+        UserEntry entry = users.get(userId);
+        if (entry != null) {
+            entry.authorities.remove(collectionType);
+        }
+    }
+
+    void collectionAuthoritiesChanged(ResourceType collectionType) {
+        changing();
+        for (UserEntry entry : users.values()) {
+            entry.authorities.remove(collectionType);
+        }
+    }
+
+    void resourceChanged(int resourceId, ResourceType resourceType) {
+        changing();
+        resources.remove(resourceKey(resourceId, resourceType));
+    }
+
+    void collectionResourcesChanged(int collectionId, ResourceType resourceType) {
+        changing();
+        for (Iterator<Expiring<CollectionResourceMap>> iterator = resources.values().iterator(); iterator.hasNext(); ) {
+            CollectionResourceMap resourceMap = iterator.next().value;
+            if (resourceMap != null && resourceMap.getCollectionId() == collectionId
+                    && resourceMap.getResourceType() == resourceType) {
+                iterator.remove();
+            }
+        }
+    }
+
+    void projectCollectionChanged(int collectionId) {
+        changing();
+        publicCollections.remove(collectionId);
+    }
+
+    void userChanged(int userId, String userName) {
+        changing();
+        users.remove(userId);
+        if (userName != null) {
+            userIds.remove(userName);
+        }
+    }
+
+    /**
+     * drop every expired entry, done by one of the loads once per ttl
+     */
+    private void sweepExpired(long now) {
+        long next = nextSweep.get();
+        if (now < next || !nextSweep.compareAndSet(next, now + ttl)) {
+            return;
+        }
+        for (Iterator<UserEntry> iterator = users.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().expireAt <= now) {
+                iterator.remove();
+            }
+        }
+        removeExpired(userIds.values(), now);
+        removeExpired(resources.values(), now);
+        removeExpired(publicCollections.values(), now);
+    }
+
+    private static void removeExpired(Collection<? extends Expiring<?>> entries, long now) {
+        for (Iterator<? extends Expiring<?>> iterator = entries.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().expireAt <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void changing() {
+        version.incrementAndGet();
+        invalidations.incrementAndGet();
+    }
+
+    private static Long resourceKey(int resourceId, ResourceType resourceType) {
+        return ((long) resourceType.ordinal() << 32) | (resourceId & 0xffffffffL);
+    }
+
+    IndexStats stats() {
+        return new IndexStats(users.size(), resources.size(), hits.get(), loads.get(), invalidations.get());
+    }
+
+    public static class IndexStats {
+        private int users;
+        private int resources;
+        private long hits;
+        private long loads;
+        private long invalidations;
+
+        public IndexStats(int users, int resources, long hits, long loads, long invalidations) {
+            this.users = users;
+            this.resources = resources;
+            this.hits = hits;
+            this.loads = loads;
+            this.invalidations = invalidations;
+        }
+
+        public int getUsers() {
+            return users;
+        }
+
+        public int getResources() {
+            return resources;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getLoads() {
+            return loads;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+    }
+}
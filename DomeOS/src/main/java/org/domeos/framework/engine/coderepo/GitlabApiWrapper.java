@@ -3,7 +3,6 @@ package org.domeos.framework.engine.coderepo;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.http.HttpEntity;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
@@ -15,8 +14,9 @@ import org.domeos.exception.ProjectHookException;
 import org.domeos.framework.api.consolemodel.project.CodeSourceInfo;
 import org.domeos.framework.api.model.ci.related.CommitInformation;
 import org.domeos.framework.engine.model.CustomObjectMapper;
-import org.domeos.global.ClientConfigure;
+import org.domeos.global.ExecutorRegistry;
 import org.domeos.global.GlobalConstant;
+import org.domeos.util.EnvUtil;
 import org.domeos.util.HttpsClient;
 import org.gitlab.api.GitlabAPI;
 import org.gitlab.api.models.*;
@@ -39,6 +39,10 @@ import java.util.concurrent.Future;
 public class GitlabApiWrapper implements CodeApiInterface {
     private static Logger logger = LoggerFactory.getLogger(GitlabApiWrapper.class);
 
+    // pages of a project list fetched at the same time, and the rate of those page requests to the gitlab host
+    private static final int PAGE_CONCURRENCY = EnvUtil.envInt("DOMEOS_GITLAB_PAGE_CONCURRENCY", 4);
+    private static final int REQUESTS_PER_SECOND = EnvUtil.envInt("DOMEOS_GITLAB_REQUESTS_PER_SECOND", 20);
+
     GitlabAPI api;
     String url;
     String token;
@@ -62,7 +66,10 @@ public class GitlabApiWrapper implements CodeApiInterface {
     public void init() {
         mapper = new CustomObjectMapper();
         if (url != null && token != null) {
-            this.api = GitlabAPI.connect(url, token).ignoreCertificateErrors(true);
+            this.api = GitlabAPI.connect(url, token).ignoreCertificateErrors(true)
+                    .setPageConcurrency(PAGE_CONCURRENCY)
+                    .setRequestsPerSecond(REQUESTS_PER_SECOND)
+                    .setConditionalRequests(true);
         }
     }
 
@@ -74,7 +81,7 @@ public class GitlabApiWrapper implements CodeApiInterface {
         Set<CodeSourceInfo> codeSourceInfos = new CopyOnWriteArraySet<>();
         List<Future> futures = new ArrayList<>();
         for (org.domeos.framework.api.model.project.GitlabUser gitlab : gitlabs) {
-            Future future = ClientConfigure.executorService.submit(new CodeSourceTask(codeSourceInfos, gitlab.getId(),
+            Future future = ExecutorRegistry.get(ExecutorRegistry.GITLAB).submit(new CodeSourceTask(codeSourceInfos, gitlab.getId(),
                     gitlab.getName(), gitlab.getToken()));
             futures.add(future);
         }
@@ -104,7 +111,7 @@ public class GitlabApiWrapper implements CodeApiInterface {
         @Override
         public void run() {
             GitlabApiWrapper wrapper = new GitlabApiWrapper(url, token);
-            set.add(new CodeSourceInfo(id, userName, wrapper.getGitlabProjectInfos()));
+            set.add(new CodeSourceInfo(id, userName, GitlabProjectIndex.getProjectInfos(id, wrapper.projectSource())));
         }
     }
 
@@ -137,7 +144,7 @@ public class GitlabApiWrapper implements CodeApiInterface {
             if (projects != null) {
                 List<Future> futures = new ArrayList<>();
                 for (GitlabProject project : projects) {
-                    Future future = ClientConfigure.executorService.submit(new ProjectInfoTask(projectInfos, project, 30));
+                    Future future = ExecutorRegistry.get(ExecutorRegistry.GITLAB).submit(new ProjectInfoTask(projectInfos, project, 30));
                     futures.add(future);
                 }
                 for (Future future : futures) {
@@ -150,8 +157,6 @@ public class GitlabApiWrapper implements CodeApiInterface {
             }
         } catch (IOException ignored) {
             logger.warn("get code info for gitlab error, " + ignored.getMessage());
-        } catch (Error error) {
-            logger.error("get code info for gitlab error, " + error.getMessage());
         }
         return new ArrayList<>(projectInfos);
     }
@@ -359,6 +364,43 @@ public class GitlabApiWrapper implements CodeApiInterface {
         return null;
     }
 
+    GitlabProjectIndex.ProjectSource projectSource() {
+        return new GitlabProjectIndex.ProjectSource() {
+            @Override
+            public List<GitlabProject> listProjects() throws IOException {
+                return api.getProjects();
+            }
+
+            @Override
+            public GitlabAccessLevel getAccessLevel(int projectId) throws IOException {
+                return accessLevel(api.getProject(projectId));
+            }
+        };
+    }
+
+    /**
+     * @return the higher of the project and the group access of the token, null if it has neither
+     */
+    private static GitlabAccessLevel accessLevel(GitlabProject fullInfo) {
+        GitlabAccessLevel accessLevel = null;
+        if (fullInfo != null && fullInfo.getPermissions() != null) {
+            if (fullInfo.getPermissions().getProjectAccess() != null) {
+                GitlabAccessLevel projectLevel = fullInfo.getPermissions().getProjectAccess().getAccessLevel();
+                if (projectLevel != null) {
+                    accessLevel = projectLevel;
+                }
+            }
+            if (fullInfo.getPermissions().getProjectGroupAccess() != null) {
+                GitlabAccessLevel groupLevel = fullInfo.getPermissions().getProjectGroupAccess().getAccessLevel();
+                if (groupLevel != null
+                        && (accessLevel == null || groupLevel.accessValue > accessLevel.accessValue)) {
+                    accessLevel = groupLevel;
+                }
+            }
+        }
+        return accessLevel;
+    }
+
     private class ProjectInfoTask implements Runnable {
         private Set<CodeSourceInfo.ProjectInfo> set;
         private GitlabProject project;
@@ -373,23 +415,7 @@ public class GitlabApiWrapper implements CodeApiInterface {
         @Override
         public void run() {
             try {
-                GitlabProject fullInfo = api.getProject(project.getId());
-                GitlabAccessLevel accessLevel = null;
-                if (fullInfo.getPermissions() != null) {
-                    if (fullInfo.getPermissions().getProjectAccess() != null) {
-                        GitlabAccessLevel projectLevel = fullInfo.getPermissions().getProjectAccess().getAccessLevel();
-                        if (projectLevel != null) {
-                            accessLevel = projectLevel;
-                        }
-                    }
-                    if (fullInfo.getPermissions().getProjectGroupAccess() != null) {
-                        GitlabAccessLevel groupLevel = fullInfo.getPermissions().getProjectGroupAccess().getAccessLevel();
-                        if (groupLevel != null
-                                && (accessLevel == null || groupLevel.accessValue > accessLevel.accessValue)) {
-                            accessLevel = groupLevel;
-                        }
-                    }
-                }
+                GitlabAccessLevel accessLevel = accessLevel(api.getProject(project.getId()));
                 if (accessLevel != null && accessLevel.accessValue > this.accessValue) {
                     set.add(new CodeSourceInfo.ProjectInfo(project.getId(), project.getNameWithNamespace(), project.getSshUrl(),
                             project.getWebUrl(), project.getDescription(), accessLevel.name(), project.getCreatedAt().getTime()));
@@ -404,9 +430,6 @@ public class GitlabApiWrapper implements CodeApiInterface {
     public String getToken(String userName, String password) throws Exception {
         String tokenUrl = url + "/api/v3/session";
         HttpPost post = new HttpPost(tokenUrl);
-        RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(HttpsClient.SocketTimeout)
-                .setConnectTimeout(HttpsClient.ConnectTimeout).build();
-        post.setConfig(requestConfig);
 
         try {
             StringEntity stringEntity = new StringEntity(mapper.writeValueAsString(new UserInfo(userName, password)), "utf-8");
@@ -418,20 +441,16 @@ public class GitlabApiWrapper implements CodeApiInterface {
             throw new Exception(e.getMessage());
         }
 
-        try {
-            CloseableHttpResponse response = HttpsClient.getHttpClient().execute(post);
-            if (response != null) {
-                HttpEntity entity = response.getEntity();
-                if (entity != null) {
-                    String result = EntityUtils.toString(entity);
-                    JsonNode node = mapper.readValue(result, JsonNode.class);
-                    if (node.has("private_token")) {
-                        return node.get("private_token").asText();
-                    } else {
-                        throw new GitlabTokenException("no token info fetched");
-                    }
+        try (CloseableHttpResponse response = HttpsClient.getInstance().execute(post)) {
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                String result = EntityUtils.toString(entity);
+                JsonNode node = mapper.readValue(result, JsonNode.class);
+                if (node.has("private_token")) {
+                    return node.get("private_token").asText();
+                } else {
+                    throw new GitlabTokenException("no token info fetched");
                 }
-                response.close();
             }
         } catch (IOException e) {
             throw new ProjectHookException(e.getMessage());
@@ -472,4 +491,4 @@ public class GitlabApiWrapper implements CodeApiInterface {
             this.password = password;
         }
     }
-}
\ No newline at end of file
+}
@@ -50,6 +50,11 @@ public class GitlabInfo {
         return projectBiz.getGitlabInfoByUserId(userId);
     }
 
+    public static void deleteGitlab(int id) {
+        projectBiz.deleteGitlabInfo(id);
+        GitlabProjectIndex.tokenDeleted(id);
+    }
+
 //    public static RSAKeyPair getRSAKeyPairByDeployId(int deployId) {
 //        return projectBiz.getRSAKeyPairByKeyId(deployId);
 //    }
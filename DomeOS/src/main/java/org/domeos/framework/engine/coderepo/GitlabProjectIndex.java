@@ -0,0 +1,392 @@
+package org.domeos.framework.engine.coderepo;
+
+import org.apache.commons.lang3.StringUtils;
+import org.domeos.framework.api.biz.project.ProjectBiz;
+import org.domeos.framework.api.consolemodel.project.CodeSourceInfo;
+import org.domeos.framework.api.model.project.GitlabIndexState;
+import org.domeos.framework.api.model.project.GitlabProjectEntry;
+import org.domeos.global.ExecutorRegistry;
+import org.domeos.util.EnvUtil;
+import org.gitlab.api.models.GitlabAccessLevel;
+import org.gitlab.api.models.GitlabProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Projects of every gitlab token, kept in gitlab_project_index so the code source list is served
+ * without asking gitlab. A list older than DOMEOS_GITLAB_INDEX_STALE is still served and refreshed in
+ * the background. A refresh lists the projects of the token, and fetches the access of a project only
+ * when it is new, its last_activity_at moved or a push hook named it. Membership changes do not move
+ * last_activity_at, so every DOMEOS_GITLAB_INDEX_FULL_REFRESH the access of every project is fetched.
+ */
+@Component
+public class GitlabProjectIndex {
+
+    private static Logger logger = LoggerFactory.getLogger(GitlabProjectIndex.class);
+
+    // projects are listed when the access of the token is above developer
+    private static final int MIN_ACCESS_VALUE = GitlabAccessLevel.Developer.accessValue;
+
+    private static final long STALE_AFTER = EnvUtil.envLong("DOMEOS_GITLAB_INDEX_STALE", 5 * 60 * 1000L);
+    private static final long FULL_REFRESH_INTERVAL =
+            EnvUtil.envLong("DOMEOS_GITLAB_INDEX_FULL_REFRESH", 24 * 60 * 60 * 1000L);
+
+    private static final Map<Integer, Snapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+    private static final Set<Integer> REFRESHING = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    // gitlab token -> the first build of its index, callers arriving meanwhile wait for it
+    private static final ConcurrentHashMap<Integer, FutureTask<Snapshot>> FIRST_LOADS = new ConcurrentHashMap<>();
+    // gitlab token -> projects named by push hooks since its last refresh
+    private static final ConcurrentHashMap<Integer, Set<Integer>> CHANGED_PROJECTS = new ConcurrentHashMap<>();
+    private static final IndexStats STATS = new IndexStats();
+
+    static ProjectBiz projectBiz;
+
+    @Autowired
+    public void setProjectBiz(ProjectBiz projectBiz) {
+        GitlabProjectIndex.projectBiz = projectBiz;
+    }
+
+    /**
+     * gitlab as seen by one token
+     */
+    interface ProjectSource {
+        List<GitlabProject> listProjects() throws IOException;
+
+        /**
+         * @return access of the token to the project, null if it has none
+         */
+        GitlabAccessLevel getAccessLevel(int projectId) throws IOException;
+    }
+
+    private static class Snapshot {
+        final long refreshTime;
+        final List<CodeSourceInfo.ProjectInfo> projectInfos;
+
+        Snapshot(long refreshTime, List<CodeSourceInfo.ProjectInfo> projectInfos) {
+            this.refreshTime = refreshTime;
+            this.projectInfos = projectInfos;
+        }
+    }
+
+    public static IndexStats getStats() {
+        return STATS;
+    }
+
+    /**
+     * @return projects the token can use, from the index; the first call of a token waits for the
+     * index to be built
+     */
+    static List<CodeSourceInfo.ProjectInfo> getProjectInfos(int gitlabId, ProjectSource source) {
+        return getProjectInfos(gitlabId, source, System.currentTimeMillis());
+    }
+
+    static List<CodeSourceInfo.ProjectInfo> getProjectInfos(int gitlabId, ProjectSource source, long now) {
+        Snapshot snapshot = load(gitlabId);
+        if (snapshot == null) {
+            STATS.misses.incrementAndGet();
+            snapshot = firstLoad(gitlabId, source, now);
+            if (snapshot == null) {
+                return new ArrayList<>();
+            }
+        } else if (now - snapshot.refreshTime >= STALE_AFTER || CHANGED_PROJECTS.containsKey(gitlabId)) {
+            STATS.staleHits.incrementAndGet();
+            refreshInBackground(gitlabId, source);
+        } else {
+            STATS.hits.incrementAndGet();
+        }
+        return new ArrayList<>(snapshot.projectInfos);
+    }
+
+    /**
+     * a push or tag push hook of the project, its access is fetched again by the next refresh of every
+     * token indexing it
+     */
+    public static void projectChanged(int projectId) {
+        if (projectBiz == null) {
+            return;
+        }
+        try {
+            for (Integer gitlabId : projectBiz.listGitlabIdsByProject(projectId)) {
+                markChanged(gitlabId, projectId);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("mark gitlab project " + projectId + " changed error, message is " + e.getMessage());
+        }
+    }
+
+    /**
+     * drop what is kept in memory for a deleted gitlab token, its rows are removed with the token
+     */
+    public static void tokenDeleted(int gitlabId) {
+        SNAPSHOTS.remove(gitlabId);
+        CHANGED_PROJECTS.remove(gitlabId);
+    }
+
+    private static Snapshot load(int gitlabId) {
+        Snapshot snapshot = SNAPSHOTS.get(gitlabId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        GitlabIndexState state = projectBiz.getGitlabIndexState(gitlabId);
+        if (state == null) {
+            return null;
+        }
+        snapshot = new Snapshot(state.getRefreshTime(), toProjectInfos(projectBiz.listGitlabProjectEntries(gitlabId)));
+        SNAPSHOTS.put(gitlabId, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * one build per token at a time, a second would list every project again and race the first on
+     * the rows of the index
+     */
+    private static Snapshot firstLoad(final int gitlabId, final ProjectSource source, final long now) {
+        FutureTask<Snapshot> task = new FutureTask<>(new Callable<Snapshot>() {
+            @Override
+            public Snapshot call() {
+                // built by a load which finished after this caller missed
+                Snapshot loaded = load(gitlabId);
+                return loaded != null ? loaded : refresh(gitlabId, source, now);
+            }
+        });
+        FutureTask<Snapshot> running = FIRST_LOADS.putIfAbsent(gitlabId, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                FIRST_LOADS.remove(gitlabId, task);
+            }
+        } else {
+            STATS.sharedLoads.incrementAndGet();
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SNAPSHOTS.get(gitlabId);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void refreshInBackground(final int gitlabId, final ProjectSource source) {
+        if (!REFRESHING.add(gitlabId)) {
+            return;
+        }
+        try {
+            ExecutorRegistry.get(ExecutorRegistry.GITLAB_INDEX).submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh(gitlabId, source, System.currentTimeMillis());
+                    } finally {
+                        REFRESHING.remove(gitlabId);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            REFRESHING.remove(gitlabId);
+            logger.warn("start refresh of gitlab project index " + gitlabId + " error, message is " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the index after the refresh, the index before if the projects can not be listed
+     */
+    static Snapshot refresh(int gitlabId, final ProjectSource source, long now) {
+        GitlabIndexState state = projectBiz.getGitlabIndexState(gitlabId);
+        boolean full = state == null || now - state.getFullRefreshTime() >= FULL_REFRESH_INTERVAL;
+        Set<Integer> changed = CHANGED_PROJECTS.remove(gitlabId);
+        if (changed == null) {
+            changed = Collections.emptySet();
+        }
+
+        List<GitlabProject> projects;
+        try {
+            projects = source.listProjects();
+        } catch (IOException | RuntimeException e) {
+            STATS.failures.incrementAndGet();
+            logger.warn("list projects of gitlab token " + gitlabId + " error, message is " + e.getMessage());
+            for (Integer projectId : changed) {
+                markChanged(gitlabId, projectId);
+            }
+            return SNAPSHOTS.get(gitlabId);
+        }
+
+        Map<Integer, GitlabProjectEntry> indexed = new HashMap<>();
+        for (GitlabProjectEntry entry : projectBiz.listGitlabProjectEntries(gitlabId)) {
+            indexed.put(entry.getProjectId(), entry);
+        }
+        List<GitlabProjectEntry> entries = new ArrayList<>();
+        List<Future<GitlabProjectEntry>> fetches = new ArrayList<>();
+        if (projects != null) {
+            for (final GitlabProject project : projects) {
+                GitlabProjectEntry old = indexed.remove(project.getId());
+                final GitlabProjectEntry entry = toEntry(project);
+                if (full || old == null || changed.contains(project.getId())
+                        || old.getLastActivityAt() != entry.getLastActivityAt()) {
+                    fetches.add(ExecutorRegistry.get(ExecutorRegistry.GITLAB).submit(new Callable<GitlabProjectEntry>() {
+                        @Override
+                        public GitlabProjectEntry call() throws IOException {
+                            GitlabAccessLevel accessLevel = source.getAccessLevel(project.getId());
+                            entry.setAccessLevel(accessLevel == null ? null : accessLevel.name());
+                            return entry;
+                        }
+                    }));
+                } else if (!sameListing(old, entry)) {
+                    // renamed or moved, the access is the same
+                    entry.setAccessLevel(old.getAccessLevel());
+                    entries.add(entry);
+                }
+            }
+        }
+        for (Future<GitlabProjectEntry> fetch : fetches) {
+            try {
+                entries.add(fetch.get());
+            } catch (InterruptedException | ExecutionException e) {
+                // left as it is, fetched again by the next refresh as its activity differs
+                STATS.failures.incrementAndGet();
+                logger.warn("get project info from gitlab error, message is " + e.getMessage());
+            }
+        }
+
+        projectBiz.updateGitlabProjectIndex(new GitlabIndexState(gitlabId, now, full ? now : state.getFullRefreshTime()),
+                entries, indexed.keySet());
+        Snapshot snapshot = new Snapshot(now, toProjectInfos(projectBiz.listGitlabProjectEntries(gitlabId)));
+        SNAPSHOTS.put(gitlabId, snapshot);
+        STATS.refreshed(full, fetches.size(), entries.size(), indexed.size());
+        return snapshot;
+    }
+
+    private static void markChanged(int gitlabId, int projectId) {
+        Set<Integer> created = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        Set<Integer> changed = CHANGED_PROJECTS.putIfAbsent(gitlabId, created);
+        (changed == null ? created : changed).add(projectId);
+    }
+
+    private static GitlabProjectEntry toEntry(GitlabProject project) {
+        GitlabProjectEntry entry = new GitlabProjectEntry();
+        entry.setProjectId(project.getId());
+        entry.setNameWithNamespace(project.getNameWithNamespace());
+        entry.setSshUrl(project.getSshUrl());
+        entry.setHttpUrl(project.getWebUrl());
+        entry.setDescription(project.getDescription());
+        entry.setCreateTime(project.getCreatedAt() == null ? 0 : project.getCreatedAt().getTime());
+        entry.setLastActivityAt(project.getLastActivityAt() == null ? 0 : project.getLastActivityAt().getTime());
+        return entry;
+    }
+
+    private static boolean sameListing(GitlabProjectEntry old, GitlabProjectEntry entry) {
+        return StringUtils.equals(old.getNameWithNamespace(), entry.getNameWithNamespace())
+                && StringUtils.equals(old.getSshUrl(), entry.getSshUrl())
+                && StringUtils.equals(old.getHttpUrl(), entry.getHttpUrl())
+                && StringUtils.equals(old.getDescription(), entry.getDescription());
+    }
+
+    private static List<CodeSourceInfo.ProjectInfo> toProjectInfos(List<GitlabProjectEntry> entries) {
+        List<CodeSourceInfo.ProjectInfo> projectInfos = new ArrayList<>();
+        for (GitlabProjectEntry entry : entries) {
+            GitlabAccessLevel accessLevel;
+            try {
+                accessLevel = entry.getAccessLevel() == null ? null : GitlabAccessLevel.valueOf(entry.getAccessLevel());
+            } catch (IllegalArgumentException e) {
+                accessLevel = null;
+            }
+            if (accessLevel != null && accessLevel.accessValue > MIN_ACCESS_VALUE) {
+                projectInfos.add(new CodeSourceInfo.ProjectInfo(entry.getProjectId(), entry.getNameWithNamespace(),
+                        entry.getSshUrl(), entry.getHttpUrl(), entry.getDescription(), accessLevel.name(),
+                        entry.getCreateTime()));
+            }
+        }
+        return projectInfos;
+    }
+
+    // for tests
+    static void clearSnapshots() {
+        SNAPSHOTS.clear();
+        CHANGED_PROJECTS.clear();
+    }
+
+    public static class IndexStats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong staleHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong sharedLoads = new AtomicLong();
+        private final AtomicLong refreshes = new AtomicLong();
+        private final AtomicLong fullRefreshes = new AtomicLong();
+        private final AtomicLong accessFetches = new AtomicLong();
+        private final AtomicLong entriesWritten = new AtomicLong();
+        private final AtomicLong entriesRemoved = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        void refreshed(boolean full, int fetched, int written, int removed) {
+            refreshes.incrementAndGet();
+            if (full) {
+                fullRefreshes.incrementAndGet();
+            }
+            accessFetches.addAndGet(fetched);
+            entriesWritten.addAndGet(written);
+            entriesRemoved.addAndGet(removed);
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getStaleHits() {
+            return staleHits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getSharedLoads() {
+            return sharedLoads.get();
+        }
+
+        public long getRefreshes() {
+            return refreshes.get();
+        }
+
+        public long getFullRefreshes() {
+            return fullRefreshes.get();
+        }
+
+        public long getAccessFetches() {
+            return accessFetches.get();
+        }
+
+        public long getEntriesWritten() {
+            return entriesWritten.get();
+        }
+
+        public long getEntriesRemoved() {
+            return entriesRemoved.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+    }
+}
@@ -9,4 +9,9 @@ public class AutoDeploymentUpdate extends DMEvent<AutoUpdateInfo> {
     public AutoDeploymentUpdate(AutoUpdateInfo source) {
         super(source);
     }
+
+    @Override
+    public int partitionKey() {
+        return getSource().getDeployId();
+    }
 }
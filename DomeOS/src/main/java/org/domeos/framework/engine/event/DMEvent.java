@@ -39,6 +39,22 @@ public abstract class DMEvent<T> extends ApplicationEvent {
         return (T) source;
     }
 
+    /**
+     * events with the same partition key are delivered to async listeners in publish order
+     */
+    public int partitionKey() {
+        return System.identityHashCode(source);
+    }
+
+    /**
+     * whether the event may be dropped when the queue of its worker is full, only for events whose
+     * effect the deploy status sweep or a later event rebuilds. The publisher of any other event waits
+     * for room, so such events must not be published from an async listener.
+     */
+    public boolean droppable() {
+        return false;
+    }
+
     @Override
     public String toString() {
         if (logger.isDebugEnabled()) {
@@ -0,0 +1,349 @@
+package org.domeos.framework.engine.event;
+
+import org.domeos.util.EnvUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers DMEvents to SimpleEventListeners.
+ * Async listeners run on a fixed set of worker threads, each owning a bounded queue. An event goes
+ * to the worker chosen by its partitionKey(), so events of one deployment are handled in publish
+ * order while different deployments are handled in parallel. Sync listeners run on the publisher
+ * thread. Publishers of droppable status events never wait: running the listener on the publisher
+ * would let it overtake events still queued for the same deployment, and waiting would stall the k8s
+ * watch threads or deadlock workers publishing to each other. So such an event for a full queue is
+ * dropped and counted, and the overflow handler is told so the state those events carried can be
+ * rebuilt, e.g. by a full sweep. Any other event, like an auto deploy, is never dropped, its publisher
+ * waits for room instead.
+ * Worker count and queue size can be set by DOMEOS_EVENT_WORKERS and DOMEOS_EVENT_QUEUE_SIZE.
+ */
+public class DMEventDispatcher {
+
+    private static Logger logger = LoggerFactory.getLogger(DMEventDispatcher.class);
+
+    public static final int DEFAULT_WORKERS = 4;
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private static final DMEventDispatcher INSTANCE = new DMEventDispatcher(
+            EnvUtil.envInt("DOMEOS_EVENT_WORKERS", DEFAULT_WORKERS),
+            EnvUtil.envInt("DOMEOS_EVENT_QUEUE_SIZE", DEFAULT_QUEUE_SIZE));
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+    private final Worker[] workers;
+    private volatile boolean started = false;
+    private volatile Runnable overflowHandler;
+
+    public DMEventDispatcher(int workerCount, int queueSize) {
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i, queueSize);
+        }
+    }
+
+    public static DMEventDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * called on the publisher thread after an event was dropped, keep it short
+     */
+    public void setOverflowHandler(Runnable overflowHandler) {
+        this.overflowHandler = overflowHandler;
+    }
+
+    public synchronized void register(SimpleEventListener<?> listener) {
+        Class<?> listenerClass = ClassUtils.getUserClass(listener.getClass());
+        Class<?> eventType = GenericTypeResolver.resolveTypeArgument(listenerClass, SimpleEventListener.class);
+        if (eventType == null) {
+            eventType = DMEvent.class;
+        }
+        // root and servlet context both create the listener beans, deliver each event to one of them
+        for (Registration registration : registrations) {
+            if (ClassUtils.getUserClass(registration.listener.getClass()) == listenerClass) {
+                return;
+            }
+        }
+        registrations.add(new Registration(listener, eventType, listenerClass.getSimpleName()));
+        logger.info("register event listener {} for {}, delivery {}", listenerClass.getName(), eventType.getSimpleName(),
+                listener.deliveryMode());
+    }
+
+    public void unregister(SimpleEventListener<?> listener) {
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) {
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    /**
+     * @return false if the event was dropped for an async listener because its queue was full
+     */
+    public boolean publish(DMEvent event) {
+        boolean queued = true;
+        for (Registration registration : registrations) {
+            if (!registration.eventType.isInstance(event)) {
+                continue;
+            }
+            if (registration.listener.deliveryMode() == SimpleEventListener.DeliveryMode.SYNC) {
+                registration.deliver(event, System.currentTimeMillis());
+            } else if (!submit(new Delivery(registration, event))) {
+                queued = false;
+            }
+        }
+        return queued;
+    }
+
+    private boolean submit(Delivery delivery) {
+        startWorkers();
+        Worker worker = workers[(delivery.event.partitionKey() & Integer.MAX_VALUE) % workers.length];
+        delivery.registration.pending.incrementAndGet();
+        if (worker.queue.offer(delivery)) {
+            return true;
+        }
+        if (!delivery.event.droppable()) {
+            try {
+                worker.queue.put(delivery);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("interrupted while waiting to queue {} for {}", delivery.event,
+                        delivery.registration.name);
+            }
+        }
+        delivery.registration.pending.decrementAndGet();
+        delivery.registration.dropped.incrementAndGet();
+        logger.warn("event queue of worker {} is full, drop {} for {}", worker.index,
+                delivery.event.getClass().getSimpleName(), delivery.registration.name);
+        Runnable handler = overflowHandler;
+        if (handler != null) {
+            try {
+                handler.run();
+            } catch (RuntimeException e) {
+                logger.warn("event overflow handler failed: " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void startWorkers() {
+        if (started) {
+            return;
+        }
+        synchronized (this) {
+            if (!started) {
+                for (Worker worker : workers) {
+                    worker.thread.start();
+                }
+                started = true;
+            }
+        }
+    }
+
+    public DispatcherStats stats() {
+        List<Integer> queueDepths = new ArrayList<>(workers.length);
+        for (Worker worker : workers) {
+            queueDepths.add(worker.queue.size());
+        }
+        List<ListenerStats> listenerStats = new ArrayList<>();
+        for (Registration registration : registrations) {
+            listenerStats.add(registration.stats());
+        }
+        return new DispatcherStats(workers.length, queueDepths, listenerStats);
+    }
+
+    private static class Registration {
+        private final SimpleEventListener listener;
+        private final Class<?> eventType;
+        private final String name;
+
+        private final AtomicLong pending = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong handleTimeTotal = new AtomicLong();
+        private final AtomicLong waitTimeTotal = new AtomicLong();
+        private volatile long maxHandleTime = 0;
+
+        Registration(SimpleEventListener listener, Class<?> eventType, String name) {
+            this.listener = listener;
+            this.eventType = eventType;
+            this.name = name;
+        }
+
+        @SuppressWarnings("unchecked")
+        void deliver(DMEvent event, long queuedTime) {
+            long start = System.currentTimeMillis();
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                listener.onRuntimeException(e, event);
+            } catch (Error e) {
+                errors.incrementAndGet();
+                logger.error("event listener " + name + " failed on " + event, e);
+            }
+            long end = System.currentTimeMillis();
+            long cost = end - start;
+            delivered.incrementAndGet();
+            handleTimeTotal.addAndGet(cost);
+            waitTimeTotal.addAndGet(start - queuedTime);
+            if (cost > maxHandleTime) {
+                maxHandleTime = cost;
+            }
+        }
+
+        ListenerStats stats() {
+            long count = delivered.get();
+            return new ListenerStats(name, eventType.getSimpleName(), listener.deliveryMode().name(), pending.get(),
+                    count, errors.get(), dropped.get(),
+                    count == 0 ? 0 : handleTimeTotal.get() / count, maxHandleTime,
+                    count == 0 ? 0 : waitTimeTotal.get() / count);
+        }
+    }
+
+    private static class Delivery implements Runnable {
+        private final Registration registration;
+        private final DMEvent event;
+        private final long queuedTime = System.currentTimeMillis();
+
+        Delivery(Registration registration, DMEvent event) {
+            this.registration = registration;
+            this.event = event;
+        }
+
+        @Override
+        public void run() {
+            registration.pending.decrementAndGet();
+            registration.deliver(event, queuedTime);
+        }
+    }
+
+    private static class Worker implements Runnable {
+        private final int index;
+        private final BlockingQueue<Delivery> queue;
+        private final Thread thread;
+
+        Worker(int index, int queueSize) {
+            this.index = index;
+            this.queue = new LinkedBlockingQueue<>(queueSize);
+            this.thread = new Thread(this, "dmevent-worker-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    queue.take().run();
+                } catch (InterruptedException e) {
+                    logger.warn("event worker {} interrupted, {} events left", index, queue.size());
+                    return;
+                } catch (RuntimeException e) {
+                    logger.error("unexpected error in event worker " + index, e);
+                }
+            }
+        }
+    }
+
+    public static class DispatcherStats {
+        private int workers;
+        private List<Integer> queueDepths;
+        private List<ListenerStats> listeners;
+
+        public DispatcherStats(int workers, List<Integer> queueDepths, List<ListenerStats> listeners) {
+            this.workers = workers;
+            this.queueDepths = queueDepths;
+            this.listeners = listeners;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public List<Integer> getQueueDepths() {
+            return queueDepths;
+        }
+
+        public List<ListenerStats> getListeners() {
+            return listeners;
+        }
+    }
+
+    public static class ListenerStats {
+        private String listener;
+        private String eventType;
+        private String deliveryMode;
+        private long pending;
+        private long delivered;
+        private long errors;
+        private long dropped;
+        private long avgHandleMillis;
+        private long maxHandleMillis;
+        private long avgWaitMillis;
+
+        public ListenerStats(String listener, String eventType, String deliveryMode, long pending, long delivered,
+                             long errors, long dropped, long avgHandleMillis, long maxHandleMillis,
+                             long avgWaitMillis) {
+            this.listener = listener;
+            this.eventType = eventType;
+            this.deliveryMode = deliveryMode;
+            this.pending = pending;
+            this.delivered = delivered;
+            this.errors = errors;
+            this.dropped = dropped;
+            this.avgHandleMillis = avgHandleMillis;
+            this.maxHandleMillis = maxHandleMillis;
+            this.avgWaitMillis = avgWaitMillis;
+        }
+
+        public String getListener() {
+            return listener;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public String getDeliveryMode() {
+            return deliveryMode;
+        }
+
+        public long getPending() {
+            return pending;
+        }
+
+        public long getDelivered() {
+            return delivered;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public long getAvgHandleMillis() {
+            return avgHandleMillis;
+        }
+
+        public long getMaxHandleMillis() {
+            return maxHandleMillis;
+        }
+
+        public long getAvgWaitMillis() {
+            return avgWaitMillis;
+        }
+    }
+}
@@ -1,14 +1,15 @@
 package org.domeos.framework.engine.event;
 
-import org.domeos.global.SpringContextManager;
-
 /**
  * Created by xupeng on 16-5-6.
  */
 public class DMEventSender {
 
-    public static void publishEvent(DMEvent event) {
-        SpringContextManager.publishEvent(event);
+    /**
+     * @return false if the event was dropped for a full queue
+     */
+    public static boolean publishEvent(DMEvent event) {
+        return DMEventDispatcher.getInstance().publish(event);
     }
 
 }
@@ -2,27 +2,41 @@ package org.domeos.framework.engine.event;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.ApplicationListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 /**
  * Created by xupeng on 16-5-6.
  */
-public abstract class SimpleEventListener<E extends DMEvent> implements ApplicationListener<E> {
+public abstract class SimpleEventListener<E extends DMEvent> {
 
     private static Logger logger = LoggerFactory.getLogger(SimpleEventListener.class);
 
+    public enum DeliveryMode {
+        // run on the publisher thread
+        SYNC,
+        // run on a dispatcher worker, in order per event partition
+        ASYNC
+    }
+
     abstract public void onEvent(E e);
 
     public void onRuntimeException(RuntimeException ex, E e){
         logger.error("Unexpected runtime Exception, event:" + e.toString() + " message:" + ex.getMessage(), ex);
     }
 
-    @Override
-    public final void onApplicationEvent(E e) {
-        try {
-            onEvent(e);
-        } catch (RuntimeException t) {
-            onRuntimeException(t, e);
-        }
+    public DeliveryMode deliveryMode() {
+        return DeliveryMode.ASYNC;
+    }
+
+    @PostConstruct
+    public void register() {
+        DMEventDispatcher.getInstance().register(this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        DMEventDispatcher.getInstance().unregister(this);
     }
 }
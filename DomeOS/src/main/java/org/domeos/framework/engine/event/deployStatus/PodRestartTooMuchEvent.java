@@ -10,4 +10,15 @@ public class PodRestartTooMuchEvent extends DMEvent<K8sEventDetail>{
     public PodRestartTooMuchEvent(K8sEventDetail source) {
         super(source);
     }
+
+    @Override
+    public int partitionKey() {
+        return getSource().getDeployId();
+    }
+
+    @Override
+    public boolean droppable() {
+        // k8s reports the restart count again with the next restart
+        return true;
+    }
 }
@@ -10,4 +10,14 @@ public class K8SEventReceivedEvent extends DMEvent<K8sEventDetail> {
     public K8SEventReceivedEvent(K8sEventDetail source) {
         super(source);
     }
+
+    @Override
+    public int partitionKey() {
+        return getSource().getDeployId();
+    }
+
+    @Override
+    public boolean droppable() {
+        return true;
+    }
 }
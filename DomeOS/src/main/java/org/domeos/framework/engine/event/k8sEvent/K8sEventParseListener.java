@@ -2,7 +2,7 @@ package org.domeos.framework.engine.event.k8sEvent;
 
 import io.fabric8.kubernetes.api.model.Event;
 import org.domeos.framework.api.model.event.EventKind;
-import org.domeos.framework.engine.event.DMEventSender;
+import org.domeos.framework.engine.event.DMEventDispatcher;
 import org.domeos.framework.engine.event.SimpleEventListener;
 import org.domeos.framework.engine.event.UpdateDeployStatusTask;
 import org.domeos.framework.engine.event.deployStatus.PodRestartTooMuchEvent;
@@ -26,6 +26,15 @@ public class K8sEventParseListener extends SimpleEventListener<K8SEventReceivedE
     private static HashSet<String> podReason = new HashSet<>(Arrays.asList("Created", "Started", "Pulled", "Scheduled", "Failed", "FailedSync", "Killing"));
     private static HashSet<String> rcReason = new HashSet<>(Arrays.asList("SuccessfulCreate", "SuccessfulDelete"));
 
+    private final DMEventDispatcher dispatcher;
+
+    public K8sEventParseListener() {
+        this(DMEventDispatcher.getInstance());
+    }
+
+    K8sEventParseListener(DMEventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
 
     @Override
     public void onEvent(K8SEventReceivedEvent k8SEventReceivedEvent) {
@@ -37,31 +46,27 @@ public class K8sEventParseListener extends SimpleEventListener<K8SEventReceivedE
 
         if (EventKind.ReplicationController.name().equals(event.getInvolvedObject().getKind())) {
             if (rcReason.contains(event.getReason())) {
-                if (UPDATE_DEPLOY_TASK.add(details.getDeployId())) {
-                    DMEventSender.publishEvent(new K8sReplicationControllerEvent(details));
-                }
+                checkDeployStatus(details);
             }
         }
 
         if (EventKind.Pod.name().equals(event.getInvolvedObject().getKind())) {
-            int deployId = details.getDeployId();
             if (event.getCount() > GlobalConstant.K8S_POD_COUNTS) {
-                DMEventSender.publishEvent(new PodRestartTooMuchEvent(details));
+                dispatcher.publish(new PodRestartTooMuchEvent(details));
             } else if (podReason.contains(event.getReason())) {
-                if (UPDATE_DEPLOY_TASK.add(deployId)) {
-                    DMEventSender.publishEvent(new K8sReplicationControllerEvent(details));
-                } else {
-                    // retry once here
-                    try {
-                        Thread.sleep(2000);
-                        if (UPDATE_DEPLOY_TASK.add(deployId)) {
-                            DMEventSender.publishEvent(new K8sReplicationControllerEvent(details));
-                        }
-                    } catch (InterruptedException e) {
-                        logger.warn("thread for k8s event trigger interrupted, message={}" + e.getMessage());
-                    }
-                }
+                // events of one deployment are handled in order, so if a check is already queued
+                // it runs after this event and sees the newest status
+                checkDeployStatus(details);
             }
         }
     }
+
+    private void checkDeployStatus(K8sEventDetail details) {
+        int deployId = details.getDeployId();
+        if (UPDATE_DEPLOY_TASK.add(deployId) && !dispatcher.publish(new K8sReplicationControllerEvent(details))) {
+            // no check is queued, let the next event queue one; the full sweep started for the drop
+            // covers this one
+            UPDATE_DEPLOY_TASK.remove(deployId);
+        }
+    }
 }
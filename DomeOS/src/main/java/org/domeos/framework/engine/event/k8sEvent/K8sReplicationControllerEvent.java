@@ -9,4 +9,14 @@ public class K8sReplicationControllerEvent extends DMEvent<K8sEventDetail> {
     public K8sReplicationControllerEvent(K8sEventDetail source) {
         super(source);
     }
+
+    @Override
+    public int partitionKey() {
+        return getSource().getDeployId();
+    }
+
+    @Override
+    public boolean droppable() {
+        return true;
+    }
 }
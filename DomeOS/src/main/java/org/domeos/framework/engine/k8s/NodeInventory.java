@@ -0,0 +1,83 @@
+package org.domeos.framework.engine.k8s;
+
+import io.fabric8.kubernetes.api.model.Node;
+import io.fabric8.kubernetes.api.model.Pod;
+import org.domeos.framework.engine.k8s.util.PodUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nodes and pods of a cluster taken from one node list and one pod list, with the pods grouped
+ * by spec.nodeName in a single pass.
+ */
+public class NodeInventory {
+
+    private final List<Node> nodes;
+    private final List<Pod> pods;
+    private final Map<String, List<Pod>> podsByNode = new HashMap<>();
+
+    public NodeInventory(List<Node> nodes, List<Pod> pods) {
+        this.nodes = nodes == null ? Collections.<Node>emptyList() : nodes;
+        this.pods = pods == null ? Collections.<Pod>emptyList() : pods;
+        for (Pod pod : this.pods) {
+            if (pod.getSpec() == null || pod.getSpec().getNodeName() == null) {
+                continue;
+            }
+            List<Pod> nodePods = podsByNode.get(pod.getSpec().getNodeName());
+            if (nodePods == null) {
+                nodePods = new ArrayList<>();
+                podsByNode.put(pod.getSpec().getNodeName(), nodePods);
+            }
+            nodePods.add(pod);
+        }
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public Node getNode(String name) {
+        for (Node node : nodes) {
+            if (node.getMetadata() != null && name.equals(node.getMetadata().getName())) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return nodes having all labels, the same nodes a label selector would return
+     */
+    public List<Node> getNodesByLabels(Map<String, String> labels) {
+        List<Node> matched = new ArrayList<>();
+        for (Node node : nodes) {
+            Map<String, String> nodeLabels = node.getMetadata() == null ? null : node.getMetadata().getLabels();
+            if (labels == null || labels.isEmpty()
+                    || (nodeLabels != null && nodeLabels.entrySet().containsAll(labels.entrySet()))) {
+                matched.add(node);
+            }
+        }
+        return matched;
+    }
+
+    public List<Pod> getPods() {
+        return pods;
+    }
+
+    public List<Pod> getPodsByNode(String nodeName) {
+        List<Pod> nodePods = podsByNode.get(nodeName);
+        return nodePods == null ? Collections.<Pod>emptyList() : nodePods;
+    }
+
+    public int getReadyPodCount(String nodeName) {
+        return PodUtils.getPodReadyNumber(getPodsByNode(nodeName));
+    }
+
+    public int getReadyPodCount() {
+        return PodUtils.getPodReadyNumber(pods);
+    }
+}
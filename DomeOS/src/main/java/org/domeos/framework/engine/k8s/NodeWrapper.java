@@ -21,9 +21,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.domeos.exception.JobLogException;
@@ -40,7 +37,6 @@ import org.domeos.framework.engine.k8s.util.Fabric8KubeUtils;
 import org.domeos.framework.engine.k8s.util.KubeUtils;
 import org.domeos.framework.engine.k8s.util.NodeUtils;
 import org.domeos.framework.engine.k8s.util.PodUtils;
-import org.domeos.global.ClientConfigure;
 import org.domeos.global.GlobalConstant;
 import org.domeos.util.CommonUtil;
 import org.domeos.util.DateUtil;
@@ -57,9 +53,18 @@ import org.springframework.stereotype.Component;
 public class NodeWrapper {
     private Logger logger = LoggerFactory.getLogger(NodeWrapper.class);
     private KubeUtils client;
+    private List<Node> nodes;
+    private NodeInventory inventory;
 
     private static DeploymentBiz deploymentBiz;
 
+    public NodeWrapper() {
+    }
+
+    NodeWrapper(KubeUtils client) {
+        this.client = client;
+    }
+
     @Autowired
     public void setProjectBiz(DeploymentBiz deploymentBiz) {
         NodeWrapper.deploymentBiz = deploymentBiz;
@@ -73,147 +78,117 @@ public class NodeWrapper {
 
         // TODO: when we have different cluster type, should add more op here
         client = Fabric8KubeUtils.buildKubeUtils(cluster, namespace);
+        dropNodes();
         return this;
     }
 
     public List<NodeInfo> getNodeListByClusterId() {
-        NodeList nodeList = getNodeList();
+        NodeInventory inventory = getInventory();
         List<NodeInfo> nodeInfo = new LinkedList<>();
-        if (nodeList != null && nodeList.getItems() != null) {
-            List<Future<NodeInfo>> futures = new LinkedList<>();
-            for (Node node : nodeList.getItems()) {
-                Future<NodeInfo> future = ClientConfigure.executorService.submit(new NodeInfoTask(node));
-                futures.add(future);
-            }
-            for (Future<NodeInfo> future : futures) {
-                try {
-                    NodeInfo info = future.get();
-                    if (info != null) {
-                        nodeInfo.add(info);
-                    }
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.warn("get cluster node list error, message is " + e.getMessage());
-                }
+        for (Node node : inventory.getNodes()) {
+            try {
+                nodeInfo.add(generateNodeInfo(node, inventory));
+            } catch (ParseException e) {
+                logger.warn("get cluster node list error, message is " + e.getMessage());
             }
         }
         return nodeInfo;
     }
 
-    private class NodeInfoTask implements Callable<NodeInfo> {
-        Node node;
-
-        NodeInfoTask(Node node) {
-            this.node = node;
-        }
-
-        @Override
-        public NodeInfo call() throws Exception {
-            NodeInfo nodeInfo = generateNodeInfo(node);
-            if (node != null && node.getMetadata() != null
-                    && node.getMetadata().getAnnotations() != null
-                    && node.getMetadata().getAnnotations().containsKey(GlobalConstant.DISK_STR)) {
-                nodeInfo.setDiskInfo(node.getMetadata().getAnnotations().get(GlobalConstant.DISK_STR));
-            }
-            return nodeInfo;
-        }
-    }
-
     public NodeInfo getNodeInfo(String name) {
-        NodeList nodeList = getNodeList();
-        NodeInfo nodeInfo = null;
-        if (nodeList != null && nodeList.getItems() != null) {
-            for (Node node : nodeList.getItems()) {
-                if (node.getMetadata() != null && name.equals(node.getMetadata().getName())) {
-                    try {
-                        nodeInfo = generateNodeInfo(node);
-                    } catch (ParseException e) {
-                        throw ApiException.wrapUnknownException(e);
-                    }
-                    break;
-                }
-            }
+        NodeInventory inventory = getInventory();
+        Node node = inventory.getNode(name);
+        if (node == null) {
+            return null;
+        }
+        try {
+            return generateNodeInfo(node, inventory);
+        } catch (ParseException e) {
+            throw ApiException.wrapUnknownException(e);
         }
-        return nodeInfo;
     }
 
     public List<Instance> getInstance(String nodeName) throws ParseException {
         if (StringUtils.isBlank(nodeName)) {
             return null;
         }
-        PodList podList = getAllPods();
         List<Instance> instances = new ArrayList<>();
-        if (podList != null && podList.getItems() != null) {
-            for (Pod pod : podList.getItems()) {
-                if (!PodUtils.isPodReady(pod) || pod.getSpec() == null || !nodeName.equals(pod.getSpec().getNodeName())) {
-                    continue;
-                }
-                Instance instance = new Instance();
-                instance.setHostName(pod.getSpec().getNodeName());
-                if (pod.getMetadata() != null) {
-                    instance.setInstanceName(pod.getMetadata().getName());
-                    instance.setNamespace(pod.getMetadata().getNamespace());
-                    if (pod.getMetadata().getLabels() != null) {
-                        if (pod.getMetadata().getLabels().containsKey(GlobalConstant.DEPLOY_ID_STR) &&
-                                pod.getMetadata().getLabels().containsKey(GlobalConstant.VERSION_STR)) {
-                            int deployId = Integer.valueOf(pod.getMetadata().getLabels().get(GlobalConstant.DEPLOY_ID_STR));
-                            int versionId = Integer.valueOf(pod.getMetadata().getLabels().get(GlobalConstant.VERSION_STR));
-                            // todo: deployment update
-                            Deployment deployment = deploymentBiz.getDeployment(deployId);
-                            if (deployment != null) {
-                                instance.setDeloyId(deployId);
-                                instance.setDeployName(deployment.getName());
-                                instance.setVersionId(versionId);
-                            }
+        // pods of one node mostly belong to a few deployments
+        Map<Integer, Deployment> deployments = new HashMap<>();
+        for (Pod pod : getInventory().getPodsByNode(nodeName)) {
+            if (!PodUtils.isPodReady(pod)) {
+                continue;
+            }
+            Instance instance = new Instance();
+            instance.setHostName(pod.getSpec().getNodeName());
+            if (pod.getMetadata() != null) {
+                instance.setInstanceName(pod.getMetadata().getName());
+                instance.setNamespace(pod.getMetadata().getNamespace());
+                if (pod.getMetadata().getLabels() != null) {
+                    if (pod.getMetadata().getLabels().containsKey(GlobalConstant.DEPLOY_ID_STR) &&
+                            pod.getMetadata().getLabels().containsKey(GlobalConstant.VERSION_STR)) {
+                        int deployId = Integer.valueOf(pod.getMetadata().getLabels().get(GlobalConstant.DEPLOY_ID_STR));
+                        int versionId = Integer.valueOf(pod.getMetadata().getLabels().get(GlobalConstant.VERSION_STR));
+                        // todo: deployment update
+                        Deployment deployment;
+                        if (deployments.containsKey(deployId)) {
+                            deployment = deployments.get(deployId);
+                        } else {
+                            deployment = deploymentBiz.getDeployment(deployId);
+                            deployments.put(deployId, deployment);
+                        }
+                        if (deployment != null) {
+                            instance.setDeloyId(deployId);
+                            instance.setDeployName(deployment.getName());
+                            instance.setVersionId(versionId);
                         }
                     }
                 }
-                if (pod.getStatus() != null) {
-                    instance.setStartTime(DateUtil.string2timestamp(pod.getStatus().getStartTime(), TimeZone.getTimeZone(GlobalConstant.UTC_TIME)));
-                    instance.setPodIp(pod.getStatus().getPodIP());
-                    instance.setHostIp(pod.getStatus().getHostIP());
-                    if (pod.getStatus().getContainerStatuses() != null) {
-                        for (ContainerStatus containerStatus : pod.getStatus().getContainerStatuses()) {
-                            String containerId = containerStatus.getContainerID().split("docker://")[1];
-                            instance.addContainer(new org.domeos.framework.api.model.deployment.related.Container(containerId,
-                                    containerStatus.getName(), containerStatus.getImage()));
-                        }
+            }
+            if (pod.getStatus() != null) {
+                instance.setStartTime(DateUtil.string2timestamp(pod.getStatus().getStartTime(), TimeZone.getTimeZone(GlobalConstant.UTC_TIME)));
+                instance.setPodIp(pod.getStatus().getPodIP());
+                instance.setHostIp(pod.getStatus().getHostIP());
+                if (pod.getStatus().getContainerStatuses() != null) {
+                    for (ContainerStatus containerStatus : pod.getStatus().getContainerStatuses()) {
+                        String containerId = containerStatus.getContainerID().split("docker://")[1];
+                        instance.addContainer(new org.domeos.framework.api.model.deployment.related.Container(containerId,
+                                containerStatus.getName(), containerStatus.getImage()));
                     }
                 }
-                instances.add(instance);
             }
+            instances.add(instance);
         }
         return instances;
     }
 
     public Map<String, String> getClusterLabels() {
         Map<String, String> labels = new HashMap<>();
-        NodeList nodeList = getNodeList();
-        if (nodeList != null && nodeList.getItems() != null) {
-            for (Node node : nodeList.getItems()) {
-                if (node.getMetadata() != null && node.getMetadata().getLabels() != null) {
-                    labels.putAll(node.getMetadata().getLabels());
-                }
+        for (Node node : getNodes()) {
+            if (node.getMetadata() != null && node.getMetadata().getLabels() != null) {
+                labels.putAll(node.getMetadata().getLabels());
             }
         }
         return labels;
     }
 
     public List<NodeInfo> getNodeListByLabel(Map<String, String> labels) {
-        NodeList nodeList = getNodeListByLabels(labels);
-        if (nodeList != null && nodeList.getItems() != null) {
-            List<NodeInfo> nodeInfos = new ArrayList<>(nodeList.getItems().size());
-            for (Node node : nodeList.getItems()) {
-                NodeInfo nodeInfo = null;
-                try {
-                    nodeInfo = generateNodeInfo(node);
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                }
-                nodeInfos.add(nodeInfo);
+        if (labels == null) {
+            return null;
+        }
+        NodeInventory inventory = getInventory();
+        List<Node> nodes = inventory.getNodesByLabels(labels);
+        List<NodeInfo> nodeInfos = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            NodeInfo nodeInfo = null;
+            try {
+                nodeInfo = generateNodeInfo(node, inventory);
+            } catch (ParseException e) {
+                e.printStackTrace();
             }
-            return nodeInfos;
+            nodeInfos.add(nodeInfo);
         }
-        return null;
+        return nodeInfos;
     }
 
     public List<NamespaceInfo> getAllNamespaces() {
@@ -278,15 +253,6 @@ public class NodeWrapper {
         }
     }
 
-    private PodList getAllPods() {
-        try {
-            return client.listAllPod();
-        } catch (Exception e) {
-            logger.warn("get deployment pod list by labels error, message is " + e.getMessage());
-            return null;
-        }
-    }
-
     public LogWatch fetchContainerLogs(String podName, String containerName) throws JobLogException {
         try {
             return (LogWatch) client.tailfLog(podName, containerName, 10);
@@ -299,6 +265,7 @@ public class NodeWrapper {
     public boolean setNodeLabels(String nodeName, Map<String, String> labels) throws Exception {
         try {
             Node node = client.labelNode(nodeName, labels);
+            dropNodes();
             return node != null;
         } catch (K8sDriverException | IOException e) {
             logger.warn("set node label error, message is " + e.getMessage());
@@ -311,6 +278,7 @@ public class NodeWrapper {
             List<String> labels = new LinkedList<>();
             labels.add(label);
             Node node = client.deleteNodeLabel(nodeName, labels);
+            dropNodes();
             return node != null;
         } catch (K8sDriverException | IOException e) {
             logger.warn("delete node labels error, message is " + e.getMessage());
@@ -324,6 +292,7 @@ public class NodeWrapper {
             Map<String, String> annotation = new HashMap<>();
             annotation.put(GlobalConstant.DISK_STR, diskPath);
             node = client.annotateNode(nodeName, annotation);
+            dropNodes();
         } catch (K8sDriverException e) {
             logger.warn("add node labels error, message is " + e.getMessage());
             throw new Exception("add node disk error, message is " + e.getMessage());
@@ -339,6 +308,7 @@ public class NodeWrapper {
             List<String> diskAnnotation = new LinkedList<>();
             diskAnnotation.add(GlobalConstant.DISK_STR);
             node = client.deleteNodeAnnotation(nodeName, diskAnnotation);
+            dropNodes();
         } catch (K8sDriverException e) {
             logger.warn("delete node disk error, message is " + e.getMessage());
             throw new Exception("delete node disk error, message is " + e.getMessage());
@@ -349,74 +319,66 @@ public class NodeWrapper {
     }
 
     public int getNodeCount() {
-        NodeList nodeList = getNodeList();
-        if (nodeList != null && nodeList.getItems() != null) {
-            return nodeList.getItems().size();
-        }
-        return 0;
+        return getNodes().size();
     }
 
     public int getPodCount() {
-        PodList podList = getAllPods();
-        if (podList != null && podList.getItems() != null) {
-            return getRunningPodNumbers(podList.getItems());
+        return getInventory().getReadyPodCount();
+    }
+
+    /**
+     * Nodes of the cluster, listed once and shared by the queries made through this wrapper,
+     * dropped when a node is changed through it.
+     */
+    private List<Node> getNodes() {
+        if (nodes == null) {
+            NodeList nodeList = getNodeList();
+            nodes = nodeList == null || nodeList.getItems() == null ? new ArrayList<Node>() : nodeList.getItems();
         }
-        return 0;
+        return nodes;
     }
 
-    private NodeList getNodeList() {
-        try {
-            return client.listNode();
-        } catch (K8sDriverException | IOException e) {
-            logger.warn("get node list error, message is " + e.getMessage());
-            return null;
+    /**
+     * The nodes with the pods of the cluster grouped by node, only for the queries counting or
+     * listing pods, the pod list is much larger than the node list.
+     */
+    private NodeInventory getInventory() {
+        if (inventory == null) {
+            PodList podList = getAllPods();
+            inventory = new NodeInventory(getNodes(), podList == null ? null : podList.getItems());
         }
+        return inventory;
     }
 
-    private NodeList getNodeListByLabels(Map<String, String> labels) {
+    private void dropNodes() {
+        nodes = null;
+        inventory = null;
+    }
+
+    private NodeList getNodeList() {
         try {
-            if (labels == null) {
-                return null;
-            }
-            return client.listNode(labels);
+            return client.listNode();
         } catch (K8sDriverException | IOException e) {
-            logger.warn("get node list by labels error, message is " + e.getMessage());
+            logger.warn("get node list error, message is " + e.getMessage());
             return null;
         }
     }
 
-    private List<Pod> getPodListByNode(String nodeName) {
+    private PodList getAllPods() {
         try {
-            PodList podList = client.listAllPod();
-            List<Pod> pods = new LinkedList<>();
-            if (podList != null && podList.getItems() != null) {
-                for (Pod pod : podList.getItems()) {
-                    if (pod.getSpec() != null && nodeName.equals(pod.getSpec().getNodeName())) {
-                        pods.add(pod);
-                    }
-                }
-            }
-            return pods;
+            return client.listAllPod();
         } catch (Exception e) {
             logger.warn("get pod list error, message is " + e.getMessage());
             return null;
         }
     }
 
-    private int getRunningPodNumbers(List<Pod> pods) {
-        if (pods != null) {
-            return PodUtils.getPodReadyNumber(pods);
-        } else {
-            return 0;
-        }
-    }
-
-    private NodeInfo generateNodeInfo(Node node) throws ParseException {
+    private NodeInfo generateNodeInfo(Node node, NodeInventory inventory) throws ParseException {
         NodeInfo nodeInfo = new NodeInfo();
         if (node.getMetadata() != null) {
             nodeInfo.setLabels(node.getMetadata().getLabels());
             nodeInfo.setName(node.getMetadata().getName());
-            nodeInfo.setRunningPods(getRunningPodNumbers(getPodListByNode(nodeInfo.getName())));
+            nodeInfo.setRunningPods(inventory.getReadyPodCount(nodeInfo.getName()));
             if (node.getMetadata().getAnnotations() != null) {
                 nodeInfo.setDiskInfo(node.getMetadata().getAnnotations().get(GlobalConstant.DISK_STR));
             }
@@ -430,6 +392,8 @@ public class NodeWrapper {
             }
             Map<String, Quantity> capacity = node.getStatus().getCapacity();
             if (capacity != null) {
+                // the node is shared by the inventory, do not convert its memory twice
+                capacity = new HashMap<>(capacity);
                 capacity.put("memory", CommonUtil.getMemory(capacity.get("memory")));
             }
             nodeInfo.setCapacity(capacity);
@@ -0,0 +1,411 @@
+package org.domeos.framework.engine.k8s.cache;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import org.domeos.exception.K8sDriverException;
+import org.domeos.framework.api.model.cluster.Cluster;
+import org.domeos.framework.engine.k8s.util.KubeClientRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * List+watch cache of the pods and replication controllers of one cluster.
+ * Each kind is listed once, then kept up to date by a watch started from the list's resourceVersion.
+ * When the watch closes, expires or fails the kind is listed again, and every RESYNC_INTERVAL minutes
+ * it is listed again anyway in case an event was lost. Readers should only use a kind while it is
+ * synced and go to the api server otherwise.
+ */
+public class ClusterResourceCache {
+
+    private static Logger logger = LoggerFactory.getLogger(ClusterResourceCache.class);
+
+    private static final long RESYNC_INTERVAL = 10;
+    private static final long RETRY_DELAY = 5;
+
+    private static final ConcurrentHashMap<Integer, ClusterResourceCache> CACHES = new ConcurrentHashMap<>();
+
+    private static final List<PodListener> POD_LISTENERS = new CopyOnWriteArrayList<>();
+
+    public interface PodListener {
+        /**
+         * called on the watch thread, keep it short
+         *
+         * @param pod the pod added, modified or deleted, null when all pods of the cluster were listed again
+         */
+        void onPodChanged(int clusterId, Pod pod);
+    }
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "k8s-resource-cache");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final int clusterId;
+    private volatile Cluster cluster;
+    private volatile boolean closed = false;
+    private final Informer<Pod> pods;
+    private final Informer<ReplicationController> rcs;
+
+    private ClusterResourceCache(Cluster cluster) {
+        this.clusterId = cluster.getId();
+        this.cluster = cluster;
+        this.pods = new Informer<Pod>("pod", Pod.class) {
+            @Override
+            List<Pod> list(KubernetesClient client, String[] resourceVersion) {
+                PodList podList = listAllPods(client);
+                resourceVersion[0] = podList.getMetadata().getResourceVersion();
+                return podList.getItems();
+            }
+
+            @Override
+            Watch watch(KubernetesClient client, String resourceVersion, Watcher<Pod> watcher) {
+                return watchAllPods(client, resourceVersion, watcher);
+            }
+
+            @Override
+            void changed(Pod pod) {
+                for (PodListener listener : POD_LISTENERS) {
+                    try {
+                        listener.onPodChanged(clusterId, pod);
+                    } catch (RuntimeException e) {
+                        logger.warn("pod listener failed, message:{}", e.getMessage());
+                    }
+                }
+            }
+        };
+        this.rcs = new Informer<ReplicationController>("replication controller", ReplicationController.class) {
+            @Override
+            List<ReplicationController> list(KubernetesClient client, String[] resourceVersion) {
+                ReplicationControllerList rcList = listAllReplicationControllers(client);
+                resourceVersion[0] = rcList.getMetadata().getResourceVersion();
+                return rcList.getItems();
+            }
+
+            @Override
+            Watch watch(KubernetesClient client, String resourceVersion, Watcher<ReplicationController> watcher) {
+                return watchAllReplicationControllers(client, resourceVersion, watcher);
+            }
+        };
+    }
+
+    // explicitly all namespaces, whatever namespace the client was configured with
+    static PodList listAllPods(KubernetesClient client) {
+        return client.pods().inAnyNamespace().list();
+    }
+
+    static Watch watchAllPods(KubernetesClient client, String resourceVersion, Watcher<Pod> watcher) {
+        return client.pods().inAnyNamespace().withResourceVersion(resourceVersion).watch(watcher);
+    }
+
+    static ReplicationControllerList listAllReplicationControllers(KubernetesClient client) {
+        return client.replicationControllers().inAnyNamespace().list();
+    }
+
+    static Watch watchAllReplicationControllers(KubernetesClient client, String resourceVersion,
+                                                Watcher<ReplicationController> watcher) {
+        return client.replicationControllers().inAnyNamespace().withResourceVersion(resourceVersion).watch(watcher);
+    }
+
+    /**
+     * @return cache of cluster, started on first use
+     */
+    public static ClusterResourceCache forCluster(Cluster cluster) {
+        ClusterResourceCache cache = CACHES.get(cluster.getId());
+        if (cache == null) {
+            ClusterResourceCache created = new ClusterResourceCache(cluster);
+            cache = CACHES.putIfAbsent(cluster.getId(), created);
+            if (cache == null) {
+                cache = created;
+                cache.start();
+            }
+        } else {
+            cache.cluster = cluster;
+        }
+        return cache;
+    }
+
+    /**
+     * @return cache of cluster if it is running, null otherwise
+     */
+    public static ClusterResourceCache getCache(int clusterId) {
+        return CACHES.get(clusterId);
+    }
+
+    public static void remove(int clusterId) {
+        ClusterResourceCache cache = CACHES.remove(clusterId);
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    public static void addPodListener(PodListener listener) {
+        POD_LISTENERS.add(listener);
+    }
+
+    public static void removePodListener(PodListener listener) {
+        POD_LISTENERS.remove(listener);
+    }
+
+    public static List<CacheStats> listStats() {
+        List<CacheStats> stats = new ArrayList<>();
+        for (ClusterResourceCache cache : CACHES.values()) {
+            stats.add(cache.pods.stats(cache.clusterId));
+            stats.add(cache.rcs.stats(cache.clusterId));
+        }
+        return stats;
+    }
+
+    private void start() {
+        pods.schedule(0);
+        rcs.schedule(0);
+        SCHEDULER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (closed) {
+                    throw new IllegalStateException("cache of cluster " + clusterId + " closed");
+                }
+                pods.resync();
+                rcs.resync();
+            }
+        }, RESYNC_INTERVAL, RESYNC_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    private void close() {
+        closed = true;
+        pods.stop();
+        rcs.stop();
+    }
+
+    public boolean isPodSynced() {
+        return pods.synced;
+    }
+
+    public boolean isReplicationControllerSynced() {
+        return rcs.synced;
+    }
+
+    public List<Pod> listPods(String namespace, Map<String, String> selector) {
+        return pods.store.list(namespace, selector);
+    }
+
+    public List<ReplicationController> listReplicationControllers(String namespace, Map<String, String> selector) {
+        return rcs.store.list(namespace, selector);
+    }
+
+    /**
+     * apply the result of a write made by DomeOS before its watch event arrives
+     */
+    public void updateReplicationController(ReplicationController rc) {
+        rcs.store.upsert(rc);
+    }
+
+    public void deleteReplicationController(String namespace, String name) {
+        rcs.store.delete(namespace, name);
+    }
+
+    private abstract class Informer<T extends HasMetadata> {
+        private final String kind;
+        private final ResourceStore<T> store;
+        private volatile boolean synced = false;
+        private volatile long generation = 0;
+        private Watch watch;
+
+        private final AtomicLong resyncs = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong events = new AtomicLong();
+        private volatile long lastSyncTime = 0;
+
+        Informer(String kind, Class<T> clazz) {
+            this.kind = kind;
+            this.store = new ResourceStore<>(clazz);
+        }
+
+        abstract List<T> list(KubernetesClient client, String[] resourceVersion);
+
+        abstract Watch watch(KubernetesClient client, String resourceVersion, Watcher<T> watcher);
+
+        /**
+         * the store changed, resource is null after a list
+         */
+        void changed(T resource) {
+        }
+
+        void schedule(long delay) {
+            SCHEDULER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    resync();
+                }
+            }, delay, TimeUnit.SECONDS);
+        }
+
+        synchronized void resync() {
+            if (closed) {
+                return;
+            }
+            closeWatch();
+            synced = false;
+            final long current = ++generation;
+            resyncs.incrementAndGet();
+            try {
+                KubernetesClient client = KubeClientRegistry.getClient(cluster, null);
+                String[] resourceVersion = new String[1];
+                List<T> items = list(client, resourceVersion);
+                store.replace(items);
+                watch = watch(client, resourceVersion[0], new WatchHandler(current));
+                synced = true;
+                lastSyncTime = System.currentTimeMillis();
+                changed(null);
+                logger.debug("{} cache of cluster {} synced, {} items", kind, clusterId, items.size());
+            } catch (K8sDriverException | KubernetesClientException e) {
+                failures.incrementAndGet();
+                logger.warn("sync " + kind + " cache of cluster " + clusterId + " failed, retry in " + RETRY_DELAY
+                        + "s, message:" + e.getMessage());
+                schedule(RETRY_DELAY);
+            }
+        }
+
+        synchronized void stop() {
+            synced = false;
+            generation++;
+            closeWatch();
+        }
+
+        private void closeWatch() {
+            Watch current = watch;
+            watch = null;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (RuntimeException e) {
+                    logger.debug("close {} watch of cluster {} failed, {}", kind, clusterId, e.getMessage());
+                }
+            }
+        }
+
+        private class WatchHandler implements Watcher<T> {
+            private final long watchGeneration;
+
+            WatchHandler(long watchGeneration) {
+                this.watchGeneration = watchGeneration;
+            }
+
+            @Override
+            public void eventReceived(Action action, T resource) {
+                if (watchGeneration != generation) {
+                    return;
+                }
+                events.incrementAndGet();
+                switch (action) {
+                    case ADDED:
+                    case MODIFIED:
+                        store.upsert(resource);
+                        changed(resource);
+                        break;
+                    case DELETED:
+                        store.delete(resource);
+                        changed(resource);
+                        break;
+                    default:
+                        // ERROR, the watch will be closed and the kind listed again
+                        break;
+                }
+            }
+
+            @Override
+            public void onClose(KubernetesClientException e) {
+                // closed by resync or stop
+                if (closed || watchGeneration != generation) {
+                    return;
+                }
+                synced = false;
+                if (e != null) {
+                    logger.info("{} watch of cluster {} closed, resync, message:{}", kind, clusterId, e.getMessage());
+                }
+                schedule(e == null ? 0 : 1);
+            }
+        }
+
+        CacheStats stats(int clusterId) {
+            return new CacheStats(clusterId, kind, store.size(), synced, resyncs.get(), failures.get(), events.get(),
+                    lastSyncTime);
+        }
+    }
+
+    public static class CacheStats {
+        private int clusterId;
+        private String kind;
+        private int size;
+        private boolean synced;
+        private long resyncs;
+        private long failures;
+        private long events;
+        private long lastSyncTime;
+
+        public CacheStats(int clusterId, String kind, int size, boolean synced, long resyncs, long failures,
+                          long events, long lastSyncTime) {
+            this.clusterId = clusterId;
+            this.kind = kind;
+            this.size = size;
+            this.synced = synced;
+            this.resyncs = resyncs;
+            this.failures = failures;
+            this.events = events;
+            this.lastSyncTime = lastSyncTime;
+        }
+
+        public int getClusterId() {
+            return clusterId;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isSynced() {
+            return synced;
+        }
+
+        public long getResyncs() {
+            return resyncs;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        public long getLastSyncTime() {
+            return lastSyncTime;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package org.domeos.framework.engine.k8s.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import org.domeos.global.GlobalConstant;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory copy of one kind of kubernetes resource of a cluster, keyed by namespace/name and
+ * indexed by the deployId and deployId/version labels DomeOS puts on pods and replication controllers.
+ * Objects are copied on the way in and out, so callers may modify what they get.
+ */
+public class ResourceStore<T extends HasMetadata> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Class<T> clazz;
+    private final Map<String, T> items = new HashMap<>();
+    private final Map<String, Set<String>> deployIndex = new HashMap<>();
+    private final Map<String, Set<String>> versionIndex = new HashMap<>();
+
+    public ResourceStore(Class<T> clazz) {
+        this.clazz = clazz;
+    }
+
+    /**
+     * drop everything and load items from a full list
+     */
+    public synchronized void replace(Collection<T> list) {
+        items.clear();
+        deployIndex.clear();
+        versionIndex.clear();
+        for (T item : list) {
+            add(key(item), item);
+        }
+    }
+
+    /**
+     * add or update item, an item older than the stored one is ignored
+     */
+    public synchronized void upsert(T item) {
+        if (item == null || item.getMetadata() == null) {
+            return;
+        }
+        String key = key(item);
+        T old = items.get(key);
+        if (old != null) {
+            if (isOlder(item, old)) {
+                return;
+            }
+            remove(key, old);
+        }
+        add(key, copy(item));
+    }
+
+    public synchronized void delete(T item) {
+        if (item == null || item.getMetadata() == null) {
+            return;
+        }
+        String key = key(item);
+        T old = items.get(key);
+        if (old != null) {
+            remove(key, old);
+        }
+    }
+
+    public synchronized void delete(String namespace, String name) {
+        String key = namespace + "/" + name;
+        T old = items.get(key);
+        if (old != null) {
+            remove(key, old);
+        }
+    }
+
+    public synchronized int size() {
+        return items.size();
+    }
+
+    /**
+     * @param namespace namespace of items, null for all namespaces
+     * @param selector  labels items must have, null or empty for all
+     * @return copies of matched items
+     */
+    public List<T> list(String namespace, Map<String, String> selector) {
+        List<T> matched = new ArrayList<>();
+        synchronized (this) {
+            for (String key : candidates(selector)) {
+                T item = items.get(key);
+                if (item != null && inNamespace(item, namespace) && matches(item, selector)) {
+                    matched.add(item);
+                }
+            }
+        }
+        List<T> result = new ArrayList<>(matched.size());
+        for (T item : matched) {
+            result.add(copy(item));
+        }
+        return result;
+    }
+
+    private Collection<String> candidates(Map<String, String> selector) {
+        if (selector != null) {
+            String deployId = selector.get(GlobalConstant.DEPLOY_ID_STR);
+            if (deployId != null) {
+                String version = selector.get(GlobalConstant.VERSION_STR);
+                Set<String> keys = version == null ? deployIndex.get(deployId) : versionIndex.get(deployId + "/" + version);
+                return keys == null ? Collections.<String>emptySet() : new ArrayList<>(keys);
+            }
+        }
+        return new ArrayList<>(items.keySet());
+    }
+
+    private void add(String key, T item) {
+        items.put(key, item);
+        Map<String, String> labels = item.getMetadata().getLabels();
+        if (labels == null) {
+            return;
+        }
+        String deployId = labels.get(GlobalConstant.DEPLOY_ID_STR);
+        if (deployId != null) {
+            index(deployIndex, deployId, key);
+            String version = labels.get(GlobalConstant.VERSION_STR);
+            if (version != null) {
+                index(versionIndex, deployId + "/" + version, key);
+            }
+        }
+    }
+
+    private void remove(String key, T item) {
+        items.remove(key);
+        Map<String, String> labels = item.getMetadata().getLabels();
+        if (labels == null) {
+            return;
+        }
+        String deployId = labels.get(GlobalConstant.DEPLOY_ID_STR);
+        if (deployId != null) {
+            unindex(deployIndex, deployId, key);
+            String version = labels.get(GlobalConstant.VERSION_STR);
+            if (version != null) {
+                unindex(versionIndex, deployId + "/" + version, key);
+            }
+        }
+    }
+
+    private static void index(Map<String, Set<String>> index, String value, String key) {
+        Set<String> keys = index.get(value);
+        if (keys == null) {
+            keys = new HashSet<>();
+            index.put(value, keys);
+        }
+        keys.add(key);
+    }
+
+    private static void unindex(Map<String, Set<String>> index, String value, String key) {
+        Set<String> keys = index.get(value);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                index.remove(value);
+            }
+        }
+    }
+
+    private static String key(HasMetadata item) {
+        return item.getMetadata().getNamespace() + "/" + item.getMetadata().getName();
+    }
+
+    private static boolean inNamespace(HasMetadata item, String namespace) {
+        return namespace == null || namespace.equals(item.getMetadata().getNamespace());
+    }
+
+    private static boolean matches(HasMetadata item, Map<String, String> selector) {
+        if (selector == null || selector.isEmpty()) {
+            return true;
+        }
+        Map<String, String> labels = item.getMetadata().getLabels();
+        if (labels == null) {
+            return false;
+        }
+        for (Map.Entry<String, String> entry : selector.entrySet()) {
+            if (!entry.getValue().equals(labels.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // resourceVersion is opaque to clients, but is a counter in practice; compare only when both are numbers
+    private static boolean isOlder(HasMetadata item, HasMetadata stored) {
+        ObjectMeta meta = item.getMetadata();
+        ObjectMeta storedMeta = stored.getMetadata();
+        try {
+            return Long.parseLong(meta.getResourceVersion()) < Long.parseLong(storedMeta.getResourceVersion());
+        } catch (NumberFormatException | NullPointerException e) {
+            return false;
+        }
+    }
+
+    private T copy(T item) {
+        try {
+            TokenBuffer buffer = new TokenBuffer(MAPPER, false);
+            MAPPER.writeValue(buffer, item);
+            return MAPPER.readValue(buffer.asParser(), clazz);
+        } catch (IOException e) {
+            throw new IllegalStateException("copy " + clazz.getSimpleName() + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.domeos.framework.engine.k8s.updater;
+
+import org.domeos.util.EnvUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the deployments whose status may have changed: marked by k8s events, by deploy event
+ * transitions, or by a timer while their deploy event is in progress. Each pass checks only those,
+ * and a slow full sweep of every deployment covers anything missed.
+ */
+public class DeployStatusReconciler {
+
+    private static Logger logger = LoggerFactory.getLogger(DeployStatusReconciler.class);
+
+    public static final long DEFAULT_INTERVAL = 5000;
+    public static final long DEFAULT_FULL_SWEEP_INTERVAL = 10 * 60 * 1000;
+    public static final long DEFAULT_IN_PROGRESS_RECHECK = 30000;
+    private static final int BATCH_SIZE = 500;
+
+    private static final DeployStatusReconciler INSTANCE = new DeployStatusReconciler(
+            EnvUtil.envLong("DOMEOS_DEPLOY_STATUS_FULL_SWEEP", DEFAULT_FULL_SWEEP_INTERVAL));
+
+    public interface Handler {
+        /**
+         * @return id of every deployment, for the full sweep
+         */
+        List<Integer> listDeployIds();
+
+        /**
+         * check the status of the deployments, a deployment still in progress should be marked
+         * again with markAt()
+         */
+        void reconcile(List<Integer> deployIds);
+    }
+
+    private final long fullSweepInterval;
+    private volatile Handler handler;
+    private final Set<Integer> dirty = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final ConcurrentHashMap<Integer, Long> timers = new ConcurrentHashMap<>();
+    // the first pass is a full sweep
+    private volatile long lastFullSweep = 0;
+    private volatile boolean fullSweepRequested = false;
+
+    private final AtomicLong marked = new AtomicLong();
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong fullSweeps = new AtomicLong();
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong failedPasses = new AtomicLong();
+    private volatile int lastPassChecked;
+    private volatile long lastPassMillis;
+
+    public DeployStatusReconciler(long fullSweepInterval) {
+        this.fullSweepInterval = fullSweepInterval;
+    }
+
+    public static DeployStatusReconciler getInstance() {
+        return INSTANCE;
+    }
+
+    public void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    public void markDirty(int deployId) {
+        if (deployId > 0 && dirty.add(deployId)) {
+            marked.incrementAndGet();
+        }
+    }
+
+    /**
+     * check the deployment again at the time, an earlier time already set is kept
+     */
+    public void markAt(int deployId, long timeMillis) {
+        if (deployId <= 0) {
+            return;
+        }
+        while (true) {
+            Long current = timers.putIfAbsent(deployId, timeMillis);
+            if (current == null || current <= timeMillis || timers.replace(deployId, current, timeMillis)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * make the next pass a full sweep, when marks may have been lost
+     */
+    public void requestFullSweep() {
+        fullSweepRequested = true;
+    }
+
+    /**
+     * one reconcile pass, called by the scheduler
+     */
+    public synchronized void runOnce(long now) {
+        Handler current = handler;
+        if (current == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Integer> deployIds;
+        boolean fullSweep = fullSweepRequested || lastFullSweep == 0 || now - lastFullSweep >= fullSweepInterval;
+        if (fullSweep) {
+            fullSweepRequested = false;
+            dirty.clear();
+            removeDueTimers(now);
+            try {
+                deployIds = current.listDeployIds();
+            } catch (RuntimeException e) {
+                fullSweepRequested = true;
+                failedPasses.incrementAndGet();
+                logger.warn("list deployments for full sweep failed, message={}", e.getMessage());
+                return;
+            }
+            lastFullSweep = now;
+            fullSweeps.incrementAndGet();
+        } else {
+            Set<Integer> due = new LinkedHashSet<>(removeDueTimers(now));
+            for (Iterator<Integer> iterator = dirty.iterator(); iterator.hasNext(); ) {
+                due.add(iterator.next());
+                iterator.remove();
+            }
+            deployIds = new ArrayList<>(due);
+        }
+        passes.incrementAndGet();
+        int done = 0;
+        for (int from = 0; from < deployIds.size(); from += BATCH_SIZE) {
+            List<Integer> batch = deployIds.subList(from, Math.min(from + BATCH_SIZE, deployIds.size()));
+            try {
+                current.reconcile(batch);
+                done += batch.size();
+            } catch (RuntimeException e) {
+                failedPasses.incrementAndGet();
+                logger.warn("reconcile deployment status failed, retry next pass, message={}", e.getMessage());
+                for (Integer deployId : batch) {
+                    markDirty(deployId);
+                }
+            }
+        }
+        checked.addAndGet(done);
+        lastPassChecked = done;
+        lastPassMillis = System.currentTimeMillis() - start;
+    }
+
+    private List<Integer> removeDueTimers(long now) {
+        List<Integer> due = new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : timers.entrySet()) {
+            if (entry.getValue() <= now && timers.remove(entry.getKey(), entry.getValue())) {
+                due.add(entry.getKey());
+            }
+        }
+        return due;
+    }
+
+    public ReconcileStats stats() {
+        return new ReconcileStats(dirty.size(), timers.size(), marked.get(), passes.get(), fullSweeps.get(),
+                checked.get(), failedPasses.get(), lastPassChecked, lastPassMillis, lastFullSweep);
+    }
+
+    public static class ReconcileStats {
+        private int dirty;
+        private int timers;
+        private long marked;
+        private long passes;
+        private long fullSweeps;
+        private long checked;
+        private long failedPasses;
+        private int lastPassChecked;
+        private long lastPassMillis;
+        private long lastFullSweep;
+
+        public ReconcileStats(int dirty, int timers, long marked, long passes, long fullSweeps, long checked,
+                              long failedPasses, int lastPassChecked, long lastPassMillis, long lastFullSweep) {
+            this.dirty = dirty;
+            this.timers = timers;
+            this.marked = marked;
+            this.passes = passes;
+            this.fullSweeps = fullSweeps;
+            this.checked = checked;
+            this.failedPasses = failedPasses;
+            this.lastPassChecked = lastPassChecked;
+            this.lastPassMillis = lastPassMillis;
+            this.lastFullSweep = lastFullSweep;
+        }
+
+        public int getDirty() {
+            return dirty;
+        }
+
+        public int getTimers() {
+            return timers;
+        }
+
+        public long getMarked() {
+            return marked;
+        }
+
+        public long getPasses() {
+            return passes;
+        }
+
+        public long getFullSweeps() {
+            return fullSweeps;
+        }
+
+        public long getChecked() {
+            return checked;
+        }
+
+        public long getFailedPasses() {
+            return failedPasses;
+        }
+
+        public int getLastPassChecked() {
+            return lastPassChecked;
+        }
+
+        public long getLastPassMillis() {
+            return lastPassMillis;
+        }
+
+        public long getLastFullSweep() {
+            return lastFullSweep;
+        }
+    }
+}
@@ -9,9 +9,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -39,8 +36,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Created by anningluo on 2015/12/16.
+ * The update runs as a state machine on the shared RolloutScheduler, waiting for pods is woken up by
+ * pod changes of the deployment in the cluster resource cache.
  */
-public class  DeploymentUpdater {
+public class  DeploymentUpdater implements RolloutScheduler.Rollout {
     private KubeUtils client;
     private Deployment deployment;
     private Version dstVersion;
@@ -49,15 +48,27 @@ public class  DeploymentUpdater {
     private ReplicationControllerUpdater rcUpdater = ReplicationControllerUpdater.EmptyUpdater();
     private Lock rcUpdaterLock = new ReentrantLock();
     private Map<String, String> rcSelector = null;
-    private Future future;
+    private volatile RolloutScheduler.Handle handle;
     private boolean keepRcQuantity = true; // if replicas not set, keep rc
                                            // replicas the same as old version
     private int replicas;
     private ReplicationController targetRC = null;
-    private static ExecutorService executors = Executors.newCachedThreadPool();
     private static Logger logger = LoggerFactory.getLogger(DeploymentUpdater.class);
     private Policy policy;
 
+    private static final long CHECK_READY_PERIOD = 1000;
+    private static final long WAIT_TARGET_TIMEOUT_PER_POD = 5 * 60 * 1000;
+
+    private enum Step {
+        SETUP, NEXT_RC, RC_UPDATING, SCALE_TARGET, WAIT_TARGET
+    }
+
+    // state of the update, only touched by step()
+    private Step step = Step.SETUP;
+    private ReplicationController updatingRC;
+    private long waitStart;
+    private long waitTimeout;
+
     public DeploymentUpdater(KubeUtils client, Deployment deployment, Version version, List<EnvDraft> extraEnvs) {
         this.client = client;
         this.deployment = deployment;
@@ -113,7 +124,7 @@ public class  DeploymentUpdater {
         }
         rcSelector = new HashMap<>();
         rcSelector.put(GlobalConstant.DEPLOY_ID_STR, String.valueOf(deployment.getId()));
-        future = executors.submit(new UpdateDeployment());
+        handle = RolloutScheduler.getInstance().submit(this);
     }
 
     private ReplicationController selectMaxVersionRC(Map<String, String> rcSelector)
@@ -142,12 +153,10 @@ public class  DeploymentUpdater {
         return maxVersionRC;
     }
 
-    private void startOneStepRCUpdate(ReplicationController srcRC)
-            throws DeploymentEventException {
-        ReplicationControllerUpdater oneStepUpdater = ReplicationControllerUpdater.RollingUpdater(client, srcRC,
-                targetRC, policy);
+    private void startOneStepRCUpdate(ReplicationController srcRC) {
+        ReplicationControllerUpdater oneStepUpdater = ReplicationControllerUpdater.RollingUpdater(client,
+                deployment.getClusterId(), srcRC, targetRC, policy);
         freshUpdater(oneStepUpdater);
-        oneStepUpdater.update();
     }
 
     private void deleteOtherRC()
@@ -181,8 +190,9 @@ public class  DeploymentUpdater {
         } finally {
             rcUpdaterLock.unlock();
         }
-        if (!(future == null || future.isCancelled())) {
-            future.cancel(true);
+        RolloutScheduler.Handle current = handle;
+        if (current != null) {
+            current.cancel();
         }
     }
 
@@ -199,9 +209,9 @@ public class  DeploymentUpdater {
 
     public DeploymentUpdateStatus getStatus() {
         synchronized (status) {
-            if (future != null && future.isDone() && status.getPhase() != DeploymentUpdatePhase.Failed
+            if (handle != null && handle.isDone() && status.getPhase() != DeploymentUpdatePhase.Failed
                     && status.getPhase() != DeploymentUpdatePhase.Succeed) {
-                String message = "executor thread is terminated, but status is not, some unknown exception may happen in update deployment";
+                String message = "update is terminated, but status is not, some unknown exception may happen in update deployment";
                 status.failed(message);
                 logger.error(message);
             }
@@ -254,9 +264,8 @@ public class  DeploymentUpdater {
         }
     }
 
-    private void waitRCSuccess(String rcName, long interBreak, long timeout)
-            throws IOException, K8sDriverException, TimeoutException, DeploymentEventException {
-        long startTimePoint = System.currentTimeMillis();
+    // whether the pods of rc are all ready
+    private boolean isRCReady(String rcName) throws IOException, K8sDriverException, DeploymentEventException {
         ReplicationController rc = client.replicationControllerInfo(rcName);
         if (rc == null || rc.getSpec() == null || rc.getSpec().getSelector() == null) {
             logger.error("get target rc error, no such rc!");
@@ -268,129 +277,181 @@ public class  DeploymentUpdater {
             logger.error("no pod info for rc(name=" + rcName + ")");
             throw new DeploymentEventException("get podList with selector=" + podSelector + ", but return null");
         }
-        while (PodUtils.getPodReadyNumber(podList.getItems()) != replicas || podList.getItems().size() != replicas) {
-            if (System.currentTimeMillis() - startTimePoint > timeout) {
-                throw new TimeoutException("TIMEOUT: wait rc=" + rcName + " for " + timeout + "millisecond.");
-            }
-            try {
-                Thread.sleep(interBreak);
-            } catch (InterruptedException e) {
-                // ignore and continue;
-            }
-            podList = client.listPod(podSelector);
-            if (podList == null || podList.getItems() == null) {
-                logger.error("no pod info for rc(name=" + rcName + ")");
-                throw new DeploymentEventException("get podList with selector=" + podSelector + ", but return null");
-            }
-        }
+        return PodUtils.getPodReadyNumber(podList.getItems()) == replicas && podList.getItems().size() == replicas;
     }
 
+    /**
+     * check once whether the pods of target rc are ready, the update is succeed if they are
+     */
     public boolean checkStatus() {
         if (targetRC.getSpec().getReplicas() > 0) {
             try {
-                waitRCSuccess(RCUtils.getName(targetRC), 1000, 5 * 60 * 1000);
-                succeedPhase();
-                return true;
-            } catch (IOException | K8sDriverException | TimeoutException | DeploymentEventException e) {
-                logger.warn("catch exception wait rc success, message is " + e.getMessage());
+                if (isRCReady(RCUtils.getName(targetRC))) {
+                    succeedPhase();
+                    return true;
+                }
+            } catch (IOException | K8sDriverException | DeploymentEventException e) {
+                logger.warn("catch exception check rc success, message is " + e.getMessage());
             }
         }
         return false;
     }
 
-    private class UpdateDeployment implements Runnable {
-        @Override
-        public void run() {
-            try {
+    @Override
+    public boolean isInterested(int clusterId, Pod pod) {
+        if (clusterId != deployment.getClusterId()) {
+            return false;
+        }
+        if (pod == null) {
+            return true;
+        }
+        Map<String, String> labels = pod.getMetadata() == null ? null : pod.getMetadata().getLabels();
+        return labels != null && String.valueOf(deployment.getId()).equals(labels.get(GlobalConstant.DEPLOY_ID_STR));
+    }
+
+    @Override
+    public long step() {
+        long wait = stepUpdate();
+        if (wait == RolloutScheduler.DONE) {
+            DeployStatusReconciler.getInstance().markDirty(deployment.getId());
+        }
+        return wait;
+    }
+
+    private long stepUpdate() {
+        try {
+            while (true) {
                 ReplicationController currentTargetRC;
                 int currentTargetReplicas;
-
-                // ** check whether target RC exist, create it if not
-                ReplicationControllerList targetRCList = client.listReplicationController(targetRC.getMetadata()
-                        .getLabels());
-                if (targetRCList == null || targetRCList.getItems() == null || targetRCList.getItems().size() == 0) {
-                    // ** ** no target rc exist, create new
-                    // create secret before the create of rc
-                    // judge the registry is belong to domeos or not
-                    if (SecretUtils.haveDomeOSRegistry(dstVersion.getContainerDrafts())) {// domeos
-                                                                                          // registry
+                switch (step) {
+                    case SETUP:
+                        if (!setupTargetRC()) {
+                            return RolloutScheduler.DONE;
+                        }
+                        // ** find first rc to update
+                        updatingRC = selectMaxVersionRC(rcSelector);
+                        step = Step.NEXT_RC;
+                        break;
+                    case NEXT_RC:
+                        if (updatingRC == null) {
+                            step = Step.SCALE_TARGET;
+                            break;
+                        }
+                        // ** get current target rc number
+                        currentTargetRC = client.replicationControllerInfo(RCUtils.getName(targetRC));
+                        currentTargetReplicas = currentTargetRC.getSpec().getReplicas();
+                        if (keepRcQuantity) {
+                            // ** ** in this case, the number pod of dst version
+                            // will be identified with old version
+                            targetRC.getSpec().setReplicas(currentTargetReplicas + updatingRC.getSpec().getReplicas());
+                        } else if (currentTargetReplicas >= replicas) {
+                            // ** ** in this case, just delete old rc and return
+                            deleteOtherRC();
+                            // todo : check rc is really deleted
+                            succeedPhase();
+                            return RolloutScheduler.DONE;
+                        } else {
+                            // ** ** ensure not more than $replicas pod will be
+                            // created
+                            targetRC.getSpec().setReplicas(
+                                    Math.min(replicas, currentTargetReplicas + updatingRC.getSpec().getReplicas()));
+                        }
+                        // ** start rc updater
+                        startOneStepRCUpdate(updatingRC);
+                        step = Step.RC_UPDATING;
+                        break;
+                    case RC_UPDATING:
+                        long wait;
+                        UpdatePhase phase;
+                        String reason;
+                        rcUpdaterLock.lock();
                         try {
-                            if (client.secretInfo(GlobalConstant.SECRET_NAME_PREFIX + deployment.getNamespace()) == null) {
-                                client.createSecret(new DomeOSSecretBuilder(GlobalConstant.SECRET_NAME_PREFIX
-                                        + deployment.getNamespace(), SecretUtils.getDomeOSImageSecretData()).build());
+                            if (rcUpdater == null) {
+                                // stopped
+                                return RolloutScheduler.DONE;
                             }
-                        } catch (K8sDriverException | JSONException e) {
-                            throw new DeploymentEventException("kubernetes exception with message=" + e.getMessage());
+                            wait = rcUpdater.step();
+                            phase = rcUpdater.getStatus().getPhase();
+                            reason = rcUpdater.getStatus().getReason();
+                        } finally {
+                            rcUpdaterLock.unlock();
                         }
-                    }
-                    targetRC.getSpec().setReplicas(0);
-                    client.createReplicationController(targetRC);
-                } else if (targetRCList.getItems().size() != 1) {
-                    // ** ** make sure only one rc for one version in kubernetes
-                    failedPhase("update deployment(id=" + deployment.getId() + ") to version="
-                            + dstVersion.getVersion() + ", but more than one rc exist for that version");
-                    return;
-                } else {
-                    // ** ** attach to exist rc of target version
-                    targetRC = targetRCList.getItems().get(0);
-                    targetRC.getSpec().setReplicas(0);
+                        if (wait != RolloutScheduler.DONE) {
+                            return wait;
+                        }
+                        // ** check update success
+                        if (phase == UpdatePhase.Failed) {
+                            failedPhase(reason);
+                            return RolloutScheduler.DONE;
+                        }
+                        // ** find next rc to update
+                        updatingRC = selectMaxVersionRC(rcSelector);
+                        step = Step.NEXT_RC;
+                        break;
+                    case SCALE_TARGET:
+                        // ** check whether more pod is needed for target rc
+                        currentTargetRC = client.replicationControllerInfo(RCUtils.getName(targetRC));
+                        currentTargetReplicas = currentTargetRC.getSpec().getReplicas();
+                        if (!keepRcQuantity && currentTargetReplicas < replicas) {
+                            client.scaleReplicationController(RCUtils.getName(currentTargetRC), replicas);
+                        }
+                        long timeout = (currentTargetReplicas > 0) ? currentTargetReplicas : 1L;
+                        waitStart = System.currentTimeMillis();
+                        waitTimeout = timeout * WAIT_TARGET_TIMEOUT_PER_POD;
+                        step = Step.WAIT_TARGET;
+                        break;
+                    case WAIT_TARGET:
+                    default:
+                        String rcName = RCUtils.getName(targetRC);
+                        if (isRCReady(rcName)) {
+                            succeedPhase();
+                            return RolloutScheduler.DONE;
+                        }
+                        if (System.currentTimeMillis() - waitStart > waitTimeout) {
+                            throw new TimeoutException("TIMEOUT: wait rc=" + rcName + " for " + waitTimeout + "millisecond.");
+                        }
+                        return RolloutScheduler.readyCheckDelay(deployment.getClusterId(), CHECK_READY_PERIOD);
                 }
+            }
+        } catch (IOException | K8sDriverException e) {
+            failedPhase("kubernetes failed with message=" + e.getMessage());
+        } catch (Exception e) {
+            failedPhase("update deployment(id=" + deployment.getId() + ") failed, exception=" + e);
+        }
+        return RolloutScheduler.DONE;
+    }
 
-                // ** find first rc to update
-                ReplicationController rc = selectMaxVersionRC(rcSelector);
-                // ** start update
-                while (rc != null) {
-                    // ** get current target rc number
-                    currentTargetRC = client.replicationControllerInfo(RCUtils.getName(targetRC));
-                    currentTargetReplicas = currentTargetRC.getSpec().getReplicas();
-                    if (keepRcQuantity) {
-                        // ** ** in this case, the number pod of dst version
-                        // will be identified with old version
-                        targetRC.getSpec().setReplicas(currentTargetReplicas + rc.getSpec().getReplicas());
-                    } else if (currentTargetReplicas >= replicas) {
-                        // ** ** in this case, just delete old rc and return
-                        deleteOtherRC();
-                        // todo : check rc is really deleted
-                        succeedPhase();
-                        return;
-                    } else {
-                        // ** ** ensure not more than $replicas pod will be
-                        // created
-                        targetRC.getSpec().setReplicas(
-                                Math.min(replicas, currentTargetReplicas + rc.getSpec().getReplicas()));
-                    }
-                    // ** start rc updater
-                    startOneStepRCUpdate(rc);
-                    // ** check update success
-                    rcUpdaterLock.lock();
-                    try {
-                        if (rcUpdater.getStatus().getPhase() == UpdatePhase.Failed) {
-                            // in this case, status could not be modified, get
-                            // status
-                            // will moidfy it later.
-                            failedPhase(rcUpdater.getStatus().getReason());
-                            return;
-                        }
-                    } finally {
-                        rcUpdaterLock.unlock();
+    // ** check whether target RC exist, create it if not
+    private boolean setupTargetRC() throws IOException, K8sDriverException, DeploymentEventException {
+        ReplicationControllerList targetRCList = client.listReplicationController(targetRC.getMetadata()
+                .getLabels());
+        if (targetRCList == null || targetRCList.getItems() == null || targetRCList.getItems().size() == 0) {
+            // ** ** no target rc exist, create new
+            // create secret before the create of rc
+            // judge the registry is belong to domeos or not
+            if (SecretUtils.haveDomeOSRegistry(dstVersion.getContainerDrafts())) {// domeos
+                                                                                  // registry
+                try {
+                    if (client.secretInfo(GlobalConstant.SECRET_NAME_PREFIX + deployment.getNamespace()) == null) {
+                        client.createSecret(new DomeOSSecretBuilder(GlobalConstant.SECRET_NAME_PREFIX
+                                + deployment.getNamespace(), SecretUtils.getDomeOSImageSecretData()).build());
                     }
-                    // ** find next rc to update
-                    rc = selectMaxVersionRC(rcSelector);
-                }
-                // ** check whether more pod is needed for target rc
-                currentTargetRC = client.replicationControllerInfo(RCUtils.getName(targetRC));
-                currentTargetReplicas = currentTargetRC.getSpec().getReplicas();
-                if (!keepRcQuantity && currentTargetReplicas < replicas) {
-                    client.scaleReplicationController(RCUtils.getName(currentTargetRC), replicas);
+                } catch (K8sDriverException | JSONException e) {
+                    throw new DeploymentEventException("kubernetes exception with message=" + e.getMessage());
                 }
-                long timeout = (currentTargetReplicas > 0) ? currentTargetReplicas : 1L;
-                waitRCSuccess(RCUtils.getName(targetRC), 1000, timeout * 5 * 60 * 1000);
-                succeedPhase();
-            } catch (IOException | K8sDriverException e) {
-                failedPhase("kubernetes failed with message=" + e.getMessage());
-            } catch (Exception e) {
-                failedPhase("update deployment(id=" + deployment.getId() + ") failed, exception=" + e);
             }
+            targetRC.getSpec().setReplicas(0);
+            client.createReplicationController(targetRC);
+        } else if (targetRCList.getItems().size() != 1) {
+            // ** ** make sure only one rc for one version in kubernetes
+            failedPhase("update deployment(id=" + deployment.getId() + ") to version="
+                    + dstVersion.getVersion() + ", but more than one rc exist for that version");
+            return false;
+        } else {
+            // ** ** attach to exist rc of target version
+            targetRC = targetRCList.getItems().get(0);
+            targetRC.getSpec().setReplicas(0);
         }
+        return true;
     }
 }
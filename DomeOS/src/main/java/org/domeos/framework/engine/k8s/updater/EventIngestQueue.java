@@ -0,0 +1,260 @@
+package org.domeos.framework.engine.k8s.updater;
+
+import org.domeos.framework.engine.event.k8sEvent.K8sEventDetail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue between the event watch of one cluster and the database.
+ * The watch thread blocks in put() while the queue is full, so a slow database slows down
+ * the watch instead of dropping events. A single flusher thread writes events in watch order,
+ * a batch is written once it holds batchSize events or flushInterval milliseconds after
+ * its first event arrived.
+ */
+public class EventIngestQueue {
+
+    private static Logger logger = LoggerFactory.getLogger(EventIngestQueue.class);
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    public static final long DEFAULT_FLUSH_INTERVAL = 500;
+
+    public interface BatchWriter {
+        void write(List<K8sEventDetail> batch) throws IOException;
+    }
+
+    private final int clusterId;
+    private final int batchSize;
+    private final long flushInterval;
+    private final BatchWriter writer;
+    private final BlockingQueue<K8sEventDetail> queue;
+    private final Thread flusher;
+    private volatile boolean closed = false;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong blockedPuts = new AtomicLong();
+    private final AtomicLong flushTimeTotal = new AtomicLong();
+    private volatile long lastFlushTime = 0;
+    private volatile long maxFlushTime = 0;
+
+    public EventIngestQueue(int clusterId, BatchWriter writer) {
+        this(clusterId, writer, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public EventIngestQueue(int clusterId, BatchWriter writer, int capacity, int batchSize, long flushInterval) {
+        this.clusterId = clusterId;
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "event-ingest-" + clusterId);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * queue one event, blocks while the queue is full
+     */
+    public void put(K8sEventDetail detail) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("event ingest queue of cluster " + clusterId + " is closed");
+        }
+        if (!queue.offer(detail)) {
+            blockedPuts.incrementAndGet();
+            queue.put(detail);
+        }
+        enqueued.incrementAndGet();
+    }
+
+    /**
+     * wait until every event queued before this call has been written, or timeout
+     *
+     * @return true if the queue was drained in time
+     */
+    public boolean awaitDrained(long timeout) throws InterruptedException {
+        long target = enqueued.get();
+        long deadline = System.currentTimeMillis() + timeout;
+        while (written.get() + failed.get() < target) {
+            if (System.currentTimeMillis() > deadline || !flusher.isAlive()) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * stop accepting events, the flusher writes what is left in the queue and exits
+     */
+    public void close() {
+        closed = true;
+    }
+
+    private void flushLoop() {
+        List<K8sEventDetail> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                K8sEventDetail first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize && !closed) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    K8sEventDetail next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                flush(batch);
+            } catch (InterruptedException e) {
+                logger.warn("event ingest of cluster {} interrupted, {} events left in queue", clusterId, queue.size());
+                return;
+            } catch (RuntimeException e) {
+                logger.error("unexpected error in event ingest of cluster " + clusterId, e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void flush(List<K8sEventDetail> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            writer.write(batch);
+            written.addAndGet(batch.size());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("batch insert of " + batch.size() + " events failed for cluster " + clusterId
+                    + ", fall back to single inserts, message:" + e.getMessage());
+            writeOneByOne(batch);
+        }
+        long cost = System.currentTimeMillis() - start;
+        batches.incrementAndGet();
+        flushTimeTotal.addAndGet(cost);
+        lastFlushTime = cost;
+        if (cost > maxFlushTime) {
+            maxFlushTime = cost;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("flushed {} events for cluster {} in {}ms", batch.size(), clusterId, cost);
+        }
+    }
+
+    private void writeOneByOne(List<K8sEventDetail> batch) {
+        for (K8sEventDetail detail : batch) {
+            try {
+                writer.write(Collections.singletonList(detail));
+                written.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                logger.warn("exception happened when create k8sevent into database, detail:" + e.getMessage(), e);
+            }
+        }
+    }
+
+    public IngestStats stats() {
+        long batchCount = batches.get();
+        return new IngestStats(clusterId, queue.size(), queue.remainingCapacity(), enqueued.get(), written.get(),
+                failed.get(), batchCount, blockedPuts.get(), lastFlushTime, maxFlushTime,
+                batchCount == 0 ? 0 : flushTimeTotal.get() / batchCount);
+    }
+
+    public static class IngestStats {
+        private int clusterId;
+        private int queueDepth;
+        private int remainingCapacity;
+        private long enqueued;
+        private long written;
+        private long failed;
+        private long batches;
+        private long blockedPuts;
+        private long lastFlushMillis;
+        private long maxFlushMillis;
+        private long avgFlushMillis;
+
+        public IngestStats(int clusterId, int queueDepth, int remainingCapacity, long enqueued, long written,
+                           long failed, long batches, long blockedPuts, long lastFlushMillis, long maxFlushMillis,
+                           long avgFlushMillis) {
+            this.clusterId = clusterId;
+            this.queueDepth = queueDepth;
+            this.remainingCapacity = remainingCapacity;
+            this.enqueued = enqueued;
+            this.written = written;
+            this.failed = failed;
+            this.batches = batches;
+            this.blockedPuts = blockedPuts;
+            this.lastFlushMillis = lastFlushMillis;
+            this.maxFlushMillis = maxFlushMillis;
+            this.avgFlushMillis = avgFlushMillis;
+        }
+
+        public int getClusterId() {
+            return clusterId;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getRemainingCapacity() {
+            return remainingCapacity;
+        }
+
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getBlockedPuts() {
+            return blockedPuts;
+        }
+
+        public long getLastFlushMillis() {
+            return lastFlushMillis;
+        }
+
+        public long getMaxFlushMillis() {
+            return maxFlushMillis;
+        }
+
+        public long getAvgFlushMillis() {
+            return avgFlushMillis;
+        }
+    }
+}
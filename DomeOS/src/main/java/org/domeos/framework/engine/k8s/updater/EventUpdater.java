@@ -18,11 +18,14 @@ import org.domeos.framework.api.model.deployment.Deployment;
 import org.domeos.framework.api.model.deployment.related.DeployOperation;
 import org.domeos.framework.api.model.deployment.related.DeploymentStatus;
 import org.domeos.framework.api.service.event.EventService;
+import org.domeos.framework.engine.event.DMEventDispatcher;
 import org.domeos.framework.engine.event.DMEventSender;
 import org.domeos.framework.engine.event.k8sEvent.K8SEventReceivedEvent;
 import org.domeos.framework.engine.event.k8sEvent.K8sEventDetail;
 import org.domeos.framework.engine.k8s.util.Fabric8KubeUtils;
 import org.domeos.framework.engine.k8s.util.KubeUtils;
+import org.domeos.global.GlobalConstant;
+import org.domeos.util.EnvUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,6 +33,7 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -63,19 +67,40 @@ public class EventUpdater {
 
     private ConcurrentHashMap<Integer, Future> processingClusterMap = new ConcurrentHashMap<>();
 
+    private static ConcurrentHashMap<Integer, EventIngestQueue> ingestQueueMap = new ConcurrentHashMap<>();
+
     private ExecutorService executors = Executors.newCachedThreadPool();
 
-    private ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(1);
+    private ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(2);
 
     private static AtomicBoolean started = new AtomicBoolean(false);
 
     private static Logger logger = LoggerFactory.getLogger(EventUpdater.class);
 
+    private static final long INGEST_DRAIN_TIMEOUT = 30000;
+
+    private static final long RECONCILE_INTERVAL = EnvUtil.envLong("DOMEOS_DEPLOY_STATUS_INTERVAL",
+            DeployStatusReconciler.DEFAULT_INTERVAL);
+
+    private static final long IN_PROGRESS_RECHECK = EnvUtil.envLong("DOMEOS_DEPLOY_STATUS_RECHECK",
+            DeployStatusReconciler.DEFAULT_IN_PROGRESS_RECHECK);
+
+    private final DeployStatusReconciler reconciler = DeployStatusReconciler.getInstance();
+
     @PostConstruct
     public void init() {
         if (started.compareAndSet(false, true)) {
             logger.info("init {}, start scheduled task checker.", EventUpdater.class.toString());
             scheduledExecutor.scheduleWithFixedDelay(new UpdateTask(), 10, 30, TimeUnit.SECONDS);
+            reconciler.setHandler(new DeployStatusHandler());
+            // a dropped k8s or deployment event may have carried a status change
+            DMEventDispatcher.getInstance().setOverflowHandler(new Runnable() {
+                @Override
+                public void run() {
+                    reconciler.requestFullSweep();
+                }
+            });
+            scheduledExecutor.scheduleWithFixedDelay(new ReconcileTask(), 10000, RECONCILE_INTERVAL, TimeUnit.MILLISECONDS);
             scheduledExecutor.scheduleAtFixedRate(new clearLogTask(), 1, 10, TimeUnit.MINUTES);
         }
     }
@@ -93,6 +118,45 @@ public class EventUpdater {
 
     }
 
+    private class ReconcileTask implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                reconciler.runOnce(System.currentTimeMillis());
+            } catch (Exception e) {
+                logger.error("failed when reconcile deployment status", e);
+            }
+        }
+    }
+
+    private class DeployStatusHandler implements DeployStatusReconciler.Handler {
+
+        @Override
+        public List<Integer> listDeployIds() {
+            List<Integer> deployIds = new ArrayList<>();
+            for (Cluster cluster : clusterBiz.listClusters()) {
+                List<Deployment> deployments = deploymentBiz.listDeploymentByClusterId(cluster.getId());
+                if (deployments == null) {
+                    continue;
+                }
+                for (Deployment deployment : deployments) {
+                    deployIds.add(deployment.getId());
+                }
+            }
+            return deployIds;
+        }
+
+        @Override
+        public void reconcile(List<Integer> deployIds) {
+            List<Deployment> deployments = deploymentBiz.getListByIdList(GlobalConstant.DEPLOY_TABLE_NAME,
+                    new ArrayList<>(deployIds), Deployment.class);
+            for (Deployment deployment : deployments) {
+                checkDeployStatus(deployment);
+            }
+        }
+    }
+
     private void checkUpdateTask() {
         List<Cluster> clusters = clusterBiz.listClusters();
         Set<Integer> keys = new TreeSet<>(processingClusterMap.keySet());
@@ -117,12 +181,15 @@ public class EventUpdater {
                 }
             }
             keys.remove(clusterId);
-            checkDeployStatus(cluster);
         }
 
         // cancel deleted cluster
         for (Integer key : keys) {
             logger.info("event updater clear for deleted cluster:{}", key);
+            EventIngestQueue ingestQueue = ingestQueueMap.remove(key);
+            if (ingestQueue != null) {
+                ingestQueue.close();
+            }
             Future future = processingClusterMap.get(key);
             if (future.isDone() || future.cancel(true)) {
                 processingClusterMap.remove(key);
@@ -143,6 +210,11 @@ public class EventUpdater {
         @Override
         public Boolean call() throws Exception {
             try {
+                // events of the last watch must be in database before reading the newest version
+                if (!getIngestQueue(cluster.getId()).awaitDrained(INGEST_DRAIN_TIMEOUT)) {
+                    logger.warn("event ingest of cluster {} not drained in {}ms, some events may be watched again",
+                            cluster.getName(), INGEST_DRAIN_TIMEOUT);
+                }
                 String version = k8SEventBiz.getLatestResourceVersion(cluster.getId());
                 long count = updateCluster(cluster, version);
                 // in case of too old version caused no event watched
@@ -157,6 +229,33 @@ public class EventUpdater {
         }
     }
 
+    private EventIngestQueue getIngestQueue(int clusterId) {
+        EventIngestQueue ingestQueue = ingestQueueMap.get(clusterId);
+        if (ingestQueue == null) {
+            EventIngestQueue created = new EventIngestQueue(clusterId, new EventIngestQueue.BatchWriter() {
+                @Override
+                public void write(List<K8sEventDetail> batch) throws IOException {
+                    k8SEventBiz.createEvents(batch);
+                }
+            });
+            ingestQueue = ingestQueueMap.putIfAbsent(clusterId, created);
+            if (ingestQueue == null) {
+                ingestQueue = created;
+            } else {
+                created.close();
+            }
+        }
+        return ingestQueue;
+    }
+
+    public static List<EventIngestQueue.IngestStats> listIngestStats() {
+        List<EventIngestQueue.IngestStats> stats = new ArrayList<>();
+        for (EventIngestQueue ingestQueue : ingestQueueMap.values()) {
+            stats.add(ingestQueue.stats());
+        }
+        return stats;
+    }
+
     private long updateCluster(Cluster cluster, String version) throws KubernetesClientException, IOException {
         AtomicLong count = new AtomicLong(0);
         KubeUtils kubeUtils = null;
@@ -167,17 +266,18 @@ public class EventUpdater {
         }
         KubernetesClient client = (KubernetesClient) kubeUtils.getClient();
         final int clusterId = cluster.getId();
+        EventIngestQueue ingestQueue = getIngestQueue(clusterId);
 
         logger.info("start to watch event for cluster:{} from resourceVersion:{}", clusterId, version);
         final CountDownLatch closeLatch = new CountDownLatch(1);
         if (version != null) {
-            try (Watch watch = client.events().withResourceVersion(version).watch(new eventWatcher(count, clusterId, closeLatch))) {
+            try (Watch watch = client.events().withResourceVersion(version).watch(new eventWatcher(count, clusterId, ingestQueue, closeLatch))) {
                 closeLatch.await();
             } catch (KubernetesClientException | InterruptedException e) {
                 logger.error("Could not watch resources", e);
             }
         } else {
-            try (Watch watch = client.events().watch(new eventWatcher(count, clusterId, closeLatch))) {
+            try (Watch watch = client.events().watch(new eventWatcher(count, clusterId, ingestQueue, closeLatch))) {
                 closeLatch.await();
             } catch (KubernetesClientException | InterruptedException e) {
                 logger.error("Could not watch resources", e);
@@ -187,62 +287,60 @@ public class EventUpdater {
         return count.get();
     }
 
-    private void checkDeployStatus(Cluster cluster) {
-        List<Deployment> deployments = deploymentBiz.listDeploymentByClusterId(cluster.getId());
-
-        if (deployments == null || deployments.size() == 0) {
+    private void checkDeployStatus(Deployment deployment) {
+        DeployEvent event = null;
+        try {
+            event = eventBiz.getNewestEventByDeployId(deployment.getId());
+        } catch (IOException e) {
+            logger.error("get eventBiz, getNewestEventByDeployId error, deployId=" + deployment.getId());
+        }
+        if (event == null) {
             return;
         }
-
-        for (Deployment deployment : deployments) {
-            DeployEvent event = null;
-            try {
-                event = eventBiz.getNewestEventByDeployId(deployment.getId());
-            } catch (IOException e) {
-                logger.error("get eventBiz, getNewestEventByDeployId error, deployId=" + deployment.getId());
-            }
-            if (event == null) {
-                continue;
-            }
-            if (!deployment.deployTerminated() && event.eventTerminated()) {
-                switch (event.getEventStatus()) {
-                    case FAILED:
-                        deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.ERROR);
-                        logger.info("set deployment to error with id " + deployment.getId());
-                        break;
-                    case ABORTED:
-                        if (DeployOperation.ABORT_UPDATE.equals(event.getOperation())) {
-                            deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.UPDATE_ABORTED);
-                            logger.info("set deployment to update_aborted with id " + deployment.getId());
-                        } else if (DeployOperation.ABORT_ROLLBACK.equals(event.getOperation())) {
-                            deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.BACKROLL_ABORTED);
-                            logger.info("set deployment to rollback_aborted with id " + deployment.getId());
-                        } else if (DeployOperation.ABORT_START.equals(event.getOperation())) {
-                            deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.STOP);
-                            logger.info("set deployment to stop with id " + deployment.getId());
-                        } else {
-                            deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.RUNNING);
-                            logger.info("set deployment to running with id " + deployment.getId());
-                        }
-                        break;
-                    case SUCCESS:
+        if (!deployment.deployTerminated() && event.eventTerminated()) {
+            switch (event.getEventStatus()) {
+                case FAILED:
+                    deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.ERROR);
+                    logger.info("set deployment to error with id " + deployment.getId());
+                    break;
+                case ABORTED:
+                    if (DeployOperation.ABORT_UPDATE.equals(event.getOperation())) {
+                        deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.UPDATE_ABORTED);
+                        logger.info("set deployment to update_aborted with id " + deployment.getId());
+                    } else if (DeployOperation.ABORT_ROLLBACK.equals(event.getOperation())) {
+                        deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.BACKROLL_ABORTED);
+                        logger.info("set deployment to rollback_aborted with id " + deployment.getId());
+                    } else if (DeployOperation.ABORT_START.equals(event.getOperation())) {
+                        deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.STOP);
+                        logger.info("set deployment to stop with id " + deployment.getId());
+                    } else {
                         deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.RUNNING);
                         logger.info("set deployment to running with id " + deployment.getId());
-                        break;
-                    default:
-                        break;
-                }
-            } else {
-                try {
-                    EventChecker eventChecker = new EventChecker(deployment, event);
-                    eventChecker.checkEvent();
-                    if (!event.eventTerminated() && event.getStatusExpire() < System.currentTimeMillis()) {
-                        event.setMessage("deployment expired");
-                        eventChecker.checkExpireEvent();
                     }
-                } catch (DataBaseContentException e) {
-                    logger.warn("catch io exception when create event checker, message={}", e.getMessage());
+                    break;
+                case SUCCESS:
+                    deploymentStatusBiz.setDeploymentStatus(deployment.getId(), DeploymentStatus.RUNNING);
+                    logger.info("set deployment to running with id " + deployment.getId());
+                    break;
+                default:
+                    break;
+            }
+        } else {
+            try {
+                EventChecker eventChecker = new EventChecker(deployment, event);
+                eventChecker.checkEvent();
+                if (!event.eventTerminated() && event.getStatusExpire() < System.currentTimeMillis()) {
+                    event.setMessage("deployment expired");
+                    eventChecker.checkExpireEvent();
                 }
+            } catch (DataBaseContentException e) {
+                logger.warn("catch io exception when create event checker, message={}", e.getMessage());
+            }
+            // an event in progress is checked again, at the latest when it expires
+            if (!event.eventTerminated()) {
+                long now = System.currentTimeMillis();
+                reconciler.markAt(deployment.getId(), Math.max(now, Math.min(now + IN_PROGRESS_RECHECK,
+                        event.getStatusExpire())));
             }
         }
     }
@@ -250,11 +348,13 @@ public class EventUpdater {
     private class eventWatcher implements Watcher<Event> {
         private int clusterId;
         private AtomicLong counter;
+        private EventIngestQueue ingestQueue;
         private CountDownLatch closeLatch;
 
-        private eventWatcher(AtomicLong counter, int clusterId, CountDownLatch closeLatch) {
+        private eventWatcher(AtomicLong counter, int clusterId, EventIngestQueue ingestQueue, CountDownLatch closeLatch) {
             this.counter = counter;
             this.clusterId = clusterId;
+            this.ingestQueue = ingestQueue;
             this.closeLatch = closeLatch;
         }
 
@@ -265,14 +365,21 @@ public class EventUpdater {
                 return;
             }
             DMEventSender.publishEvent(new K8SEventReceivedEvent(details));
+            reconciler.markDirty(details.getDeployId());
             counter.incrementAndGet();
             try {
-                eventService.createEvent(clusterId, event);
-            } catch (IOException e) {
-                logger.warn("exception happened when create k8sevent into database, detail:" + e.getMessage(), e);
+                // blocks the watch while the ingest queue is full
+                ingestQueue.put(details);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closeLatch.countDown();
+                return;
+            } catch (IllegalStateException e) {
+                logger.warn("event dropped for cluster {}, {}", clusterId, e.getMessage());
+                return;
             }
             if (logger.isDebugEnabled()) {
-                logger.debug("insert event name:{}, kind:{}, reason:{}, version:{}",
+                logger.debug("queue event name:{}, kind:{}, reason:{}, version:{}",
                         event.getMetadata().getName(), event.getInvolvedObject().getKind(),
                         event.getReason(), event.getMetadata().getResourceVersion());
             }
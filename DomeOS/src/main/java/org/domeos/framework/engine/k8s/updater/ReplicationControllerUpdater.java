@@ -3,7 +3,6 @@ package org.domeos.framework.engine.k8s.updater;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.api.model.ReplicationController;
-import org.domeos.exception.DeploymentEventException;
 import org.domeos.exception.K8sDriverException;
 import org.domeos.framework.api.model.deployment.Policy;
 import org.domeos.framework.engine.k8s.model.UpdatePhase;
@@ -17,26 +16,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.Map;
 
 /**
  * Created by anningluo on 2015/12/14.
+ * Moves the pods of a deployment from an old rc to a new one step by step. The update is a state
+ * machine advanced by step() from the rollout scheduler of its DeploymentUpdater: instead of sleeping
+ * between checks, step() returns how long to wait and pod changes run it again early.
  */
-public class ReplicationControllerUpdater {
-    private static ExecutorService executor = Executors.newCachedThreadPool();
+public class ReplicationControllerUpdater implements RolloutScheduler.Rollout {
     private KubeUtils client = null;
+    private int clusterId = -1;
     private ReplicationController oldRC;
     private ReplicationController newRC;
     private UpdateStrategy strategy;
     private final UpdateStatus status = new UpdateStatus(UpdatePhase.Unknown, 0, 0);
-    private Future updateFuture = null;
+    private volatile boolean closed = false;
+    // set when the update runs on its own, not stepped by a DeploymentUpdater
+    private volatile RolloutScheduler.Handle handle = null;
     private StatusChangeHandler<UpdateStatus> statusHandler;  // call every time status change
     private static final ReplicationControllerUpdater EMPTY_UPDATER = new ReplicationControllerUpdater();
     private static Logger logger = LoggerFactory.getLogger(ReplicationControllerUpdater.class);
 
+    private enum Step {
+        INIT, SCHEDULE, FIRST_DELAY, FIRST_ACTION, FIRST_WAIT, SECOND_DELAY, SECOND_ACTION, SECOND_WAIT, FINISH
+    }
+
+    // state of the update, only touched by step()
+    private Step step = Step.INIT;
+    private UpdateReplicationCount desireCount;
+    private UpdatePolicy todo;
+    private ReplicationController actionRC;
+    private long delayUntil;
+    private long waitStart;
+
     public static ReplicationControllerUpdater EmptyUpdater() {
         return EMPTY_UPDATER;
     }
@@ -86,57 +99,36 @@ public class ReplicationControllerUpdater {
         return RollingUpdater(client, oldRC, newRC, null, policy);
     }
 
-    private ReplicationControllerUpdater(
+    /**
+     * @param clusterId cluster of the rcs, its pod changes are watched while waiting for pods
+     */
+    static ReplicationControllerUpdater RollingUpdater(
             KubeUtils client,
+            int clusterId,
             ReplicationController oldRC,
             ReplicationController newRC,
-            UpdateStrategy strategy) {
-        ReplicationControllerUpdater updater = new ReplicationControllerUpdater();
-        updater.oldRC = oldRC;
-        updater.oldRC.getMetadata().setResourceVersion(null);
-        updater.newRC = newRC;
-        updater.newRC.getMetadata().setResourceVersion(null);
-        updater.strategy = strategy;
-        updater.client = client;
-        updater.updateStatus(oldRC.getSpec().getReplicas(), newRC.getSpec().getReplicas());
+            Policy policy) {
+        ReplicationControllerUpdater updater = RollingUpdater(client, oldRC, newRC, null, policy);
+        updater.clusterId = clusterId;
+        return updater;
     }
 
     private ReplicationControllerUpdater() {
     }
 
     public void start() {
-        startIn(executor);
-    }
-
-    private void startIn(ExecutorService otherExecutor) {
-        try {
-            updateFuture = otherExecutor.submit(new UpdateReplicationController());
-        } catch (RejectedExecutionException | NullPointerException e) {
-            updateFailed("start executor failed with message=" + e.getMessage());
-        }
+        handle = RolloutScheduler.getInstance().submit(this);
     }
 
     public UpdateStatus getStatus() {
-        UpdateStatus statusNow;
         synchronized (status) {
-            if (updateFuture != null && updateFuture.isDone()
+            if (handle != null && handle.isDone()
                     && status.getPhase() != UpdatePhase.Failed
                     && status.getPhase() != UpdatePhase.Succeed) {
                 status.setPhase(UpdatePhase.Failed);
-                status.setReason("unknown reason for update thread terminated");
+                status.setReason("unknown reason for update terminated");
             }
-            statusNow = new UpdateStatus(status);
-        }
-        return statusNow;
-    }
-
-    private void stop() {
-        if (updateFuture == null || updateFuture.isDone()) {
-            return;
-        }
-        updateFuture.cancel(false);
-        if (!updateFuture.isDone()) {
-            updateFuture.cancel(true);
+            return new UpdateStatus(status);
         }
     }
 
@@ -144,11 +136,31 @@ public class ReplicationControllerUpdater {
 
     }
 
+    /**
+     * stop the update, the next step fails it
+     */
     public void close() {
-        if (updateFuture == null || updateFuture.isDone() || updateFuture.isCancelled()) {
-            return;
+        closed = true;
+        RolloutScheduler.Handle current = handle;
+        if (current != null) {
+            current.cancel();
         }
-        stop();
+    }
+
+    @Override
+    public boolean isInterested(int clusterId, Pod pod) {
+        if (clusterId != this.clusterId) {
+            return false;
+        }
+        if (pod == null) {
+            return true;
+        }
+        Map<String, String> labels = pod.getMetadata() == null ? null : pod.getMetadata().getLabels();
+        return labels != null && (matches(labels, RCUtils.getSelector(oldRC)) || matches(labels, RCUtils.getSelector(newRC)));
+    }
+
+    private static boolean matches(Map<String, String> labels, Map<String, String> selector) {
+        return selector != null && !selector.isEmpty() && labels.entrySet().containsAll(selector.entrySet());
     }
 
     private void handleStatusChange() {
@@ -159,160 +171,194 @@ public class ReplicationControllerUpdater {
 
     // **************************** implement ***************************
 
-    // this function is used for rc update from old version to new version step by step
-    public boolean update() throws DeploymentEventException {
-        if (oldRC == null || RCUtils.getName(oldRC) == null || RCUtils.getSelector(oldRC) == null
-                || newRC == null || RCUtils.getName(newRC) == null || RCUtils.getSelector(newRC) == null) {
-            return false;
-        }
-        // init
-        UpdateReplicationCount desireCount = getDesireCount(oldRC, newRC);
-        UpdatePolicy todo = null;
-        boolean isSuccess = true;
-        String reason = null;
-        synchronized (status) {
-            status.setPhase(UpdatePhase.Running);
-            handleStatusChange();
+    /**
+     * advance the update from the old rc to the new one until it has to wait for pods or a delay
+     *
+     * @return milliseconds to wait before calling again, RolloutScheduler.DONE when the update
+     * succeeded or failed, see getStatus()
+     */
+    @Override
+    public long step() {
+        if (closed) {
+            updateFailed("update closed");
+            return RolloutScheduler.DONE;
         }
-
         try {
-            // check replication controller
-            // make sure old replication controller existed and create new replication controller if not
-            // existed
-            ReplicationController oldTmpRC = client.replicationControllerInfo(RCUtils.getName(oldRC));
-            newRC.getSpec().setReplicas(0);
-            ReplicationController newTmpRC = client.replicationControllerInfo(RCUtils.getName(newRC));
-            if (oldTmpRC == null) {
-                // old deployment not exist
-                isSuccess = false;
-                reason = "old replication controller " + RCUtils.getName(oldRC) + " is not exist";
-            }
-            if (newTmpRC == null && isSuccess) {
-                newTmpRC = client.createReplicationController(newRC);
-                isSuccess = newTmpRC != null;
-                if (!isSuccess) {
-                    reason = "create new replication controller " + RCUtils.getName(newRC) + " failed";
-                }
-            }
-            if (!isSuccess) {
-                updateFailed(reason);
-                return false;
-            }
-
-            // do update
-            do {
-                if (todo != null) {
-                    // update one
-                    isSuccess = updateOneStep(todo, oldRC, newRC);
-                    if (!isSuccess) {
-                        // update failed
-                        // status will change in updateOneStep internal, should here
-                        return false;
-                    }
-                }
-                PodList oldPodList = client.listPod(RCUtils.getSelector(oldRC));
-                PodList newPodList = client.listPod(RCUtils.getSelector(newRC));
-                todo = strategy.scheduleUpdate(desireCount, oldPodList, newPodList);
-                if (logger.isDebugEnabled()) {
-                    logger.debug("update one step further with policy " + todo);
-                }
-            } while (todo != null);
-
-            // delete old replication controller
-            if (desireCount.getOldReplicaCount() == 0) {
-                UpdateReplicationCount readyCountNow = getDesireCount(oldRC, newRC);
-                if (readyCountNow.getOldReplicaCount() != 0) {
-                    updateFailed("desire old pod count is 0, but get " + readyCountNow.getOldReplicaCount()
-                            + ", stop delete and fail update");
-                    return false;
-                }
-                isSuccess = client.deleteReplicationController(RCUtils.getName(oldRC));
-                if (!isSuccess) {
-                    updateFailed("old replication controller delete failed");
-                    return false;
-                }
-                PodList oldPodList = client.listPod(RCUtils.getSelector(oldRC));
-                if (oldPodList != null && oldPodList.getItems() != null) {
-                    for (Pod pod : oldPodList.getItems()) {
-                        client.deletePod(PodUtils.getName(pod));
-                    }
+            while (true) {
+                long wait;
+                switch (step) {
+                    case INIT:
+                        if (!init()) {
+                            return RolloutScheduler.DONE;
+                        }
+                        step = Step.SCHEDULE;
+                        break;
+                    case SCHEDULE:
+                        PodList oldPodList = client.listPod(RCUtils.getSelector(oldRC));
+                        PodList newPodList = client.listPod(RCUtils.getSelector(newRC));
+                        todo = strategy.scheduleUpdate(desireCount, oldPodList, newPodList);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("update one step further with policy " + todo);
+                        }
+                        if (todo == null) {
+                            step = Step.FINISH;
+                            break;
+                        }
+                        if (!checkUpdateStatus(todo, oldRC, newRC)) {
+                            return RolloutScheduler.DONE;
+                        }
+                        if (todo.getFirstActionDelay() > 0) {
+                            delayUntil = System.currentTimeMillis() + todo.getFirstActionDelay();
+                            step = Step.FIRST_DELAY;
+                        } else {
+                            step = Step.FIRST_ACTION;
+                        }
+                        break;
+                    case FIRST_DELAY:
+                        wait = delayUntil - System.currentTimeMillis();
+                        if (wait > 0) {
+                            return wait;
+                        }
+                        if (!checkUpdateStatus(todo, oldRC, newRC)) {
+                            return RolloutScheduler.DONE;
+                        }
+                        step = Step.FIRST_ACTION;
+                        break;
+                    case FIRST_ACTION:
+                        actionRC = scale(todo, todo.isRemoveOldFirst());
+                        waitStart = System.currentTimeMillis();
+                        step = Step.FIRST_WAIT;
+                        break;
+                    case FIRST_WAIT:
+                        wait = waitForReady(todo, actionRC, true);
+                        if (wait != 0) {
+                            return wait;
+                        }
+                        if (todo.getSecondActionDelay() > 0) {
+                            delayUntil = System.currentTimeMillis() + todo.getSecondActionDelay();
+                            step = Step.SECOND_DELAY;
+                        } else {
+                            step = Step.SECOND_ACTION;
+                        }
+                        break;
+                    case SECOND_DELAY:
+                        wait = delayUntil - System.currentTimeMillis();
+                        if (wait > 0) {
+                            return wait;
+                        }
+                        step = Step.SECOND_ACTION;
+                        break;
+                    case SECOND_ACTION:
+                        if (!checkUpdateStatus(todo, oldRC, newRC)) {
+                            return RolloutScheduler.DONE;
+                        }
+                        actionRC = scale(todo, !todo.isRemoveOldFirst());
+                        waitStart = System.currentTimeMillis();
+                        step = Step.SECOND_WAIT;
+                        break;
+                    case SECOND_WAIT:
+                        wait = waitForReady(todo, actionRC, false);
+                        if (wait != 0) {
+                            return wait;
+                        }
+                        if (!checkUpdateStatus(todo, oldRC, newRC)) {
+                            return RolloutScheduler.DONE;
+                        }
+                        step = Step.SCHEDULE;
+                        break;
+                    case FINISH:
+                    default:
+                        if (finish()) {
+                            synchronized (status) {
+                                status.setPhase(UpdatePhase.Succeed);
+                                handleStatusChange();
+                            }
+                        }
+                        return RolloutScheduler.DONE;
                 }
             }
         } catch (IOException | K8sDriverException e) {
             updateFailed("Kubernetes failed with message=" + e.getMessage());
-            // isSuccess = false;
+            return RolloutScheduler.DONE;
+        }
+    }
+
+    // make sure old replication controller existed and create new replication controller if not existed
+    private boolean init() throws IOException, K8sDriverException {
+        if (oldRC == null || RCUtils.getName(oldRC) == null || RCUtils.getSelector(oldRC) == null
+                || newRC == null || RCUtils.getName(newRC) == null || RCUtils.getSelector(newRC) == null) {
+            updateFailed("old or new replication controller is not complete");
             return false;
         }
+        desireCount = getDesireCount(oldRC, newRC);
         synchronized (status) {
-            status.setPhase(UpdatePhase.Succeed);
+            status.setPhase(UpdatePhase.Running);
             handleStatusChange();
         }
-        return true;
-    }
-
-    private boolean updateOneStep(UpdatePolicy policy, ReplicationController oldRC, ReplicationController newRC)
-            throws IOException, K8sDriverException, DeploymentEventException {
-        if (!checkUpdateStatus(policy, oldRC, newRC)) {
+        ReplicationController oldTmpRC = client.replicationControllerInfo(RCUtils.getName(oldRC));
+        newRC.getSpec().setReplicas(0);
+        ReplicationController newTmpRC = client.replicationControllerInfo(RCUtils.getName(newRC));
+        if (oldTmpRC == null) {
+            // old deployment not exist
+            updateFailed("old replication controller " + RCUtils.getName(oldRC) + " is not exist");
             return false;
         }
-        // first step
-        if (policy.getFirstActionDelay() > 0) {
-            try {
-                Thread.sleep(policy.getFirstActionDelay());
-            } catch (InterruptedException e) {
-                // thread is interrupt, return
-                updateFailed("thread is interrupted when before first step in two step update");
-                return false;
-            }
-            if (!checkUpdateStatus(policy, oldRC, newRC)) {
+        if (newTmpRC == null) {
+            newTmpRC = client.createReplicationController(newRC);
+            if (newTmpRC == null) {
+                updateFailed("create new replication controller " + RCUtils.getName(newRC) + " failed");
                 return false;
             }
         }
-        ReplicationController actionTmpRC;
-        int replicas;
-        if (policy.isRemoveOldFirst()) {
-            actionTmpRC = oldRC;
-            actionTmpRC.getSpec().setReplicas(policy.getOldReplicaCount());
-            replicas = policy.getOldReplicaCount();
-        } else {
-            actionTmpRC = newRC;
-            actionTmpRC.getSpec().setReplicas(policy.getNewReplicaCount());
-            replicas = policy.getNewReplicaCount();
+        return true;
+    }
+
+    // delete old replication controller
+    private boolean finish() throws IOException, K8sDriverException {
+        if (desireCount.getOldReplicaCount() != 0) {
+            return true;
         }
-        client.scaleReplicationController(RCUtils.getName(actionTmpRC), replicas);
-        if (!waitForReady(policy, actionTmpRC, true)) {
+        UpdateReplicationCount readyCountNow = getDesireCount(oldRC, newRC);
+        if (readyCountNow.getOldReplicaCount() != 0) {
+            updateFailed("desire old pod count is 0, but get " + readyCountNow.getOldReplicaCount()
+                    + ", stop delete and fail update");
             return false;
         }
-
-        // second step
-        if (policy.getSecondActionDelay() > 0) {
-            try {
-                Thread.sleep(policy.getSecondActionDelay());
-            } catch (InterruptedException e) {
-                // thread is interrupt, continue
-                updateFailed("thread is interrupted when before second step in two step update");
-                return false;
-            }
-        }
-        if (!checkUpdateStatus(policy, oldRC, newRC)) {
+        if (!client.deleteReplicationController(RCUtils.getName(oldRC))) {
+            updateFailed("old replication controller delete failed");
             return false;
         }
-        if (!policy.isRemoveOldFirst()) {
-            actionTmpRC = oldRC;
-            actionTmpRC.getSpec().setReplicas(policy.getOldReplicaCount());
+        PodList oldPodList = client.listPod(RCUtils.getSelector(oldRC));
+        if (oldPodList != null && oldPodList.getItems() != null) {
+            for (Pod pod : oldPodList.getItems()) {
+                client.deletePod(PodUtils.getName(pod));
+            }
+        }
+        return true;
+    }
+
+    // scale the old rc or the new rc to the count of policy
+    private ReplicationController scale(UpdatePolicy policy, boolean old) throws IOException, K8sDriverException {
+        ReplicationController rc;
+        int replicas;
+        if (old) {
+            rc = oldRC;
             replicas = policy.getOldReplicaCount();
         } else {
-            actionTmpRC = newRC;
-            actionTmpRC.getSpec().setReplicas(policy.getNewReplicaCount());
+            rc = newRC;
             replicas = policy.getNewReplicaCount();
         }
-        client.scaleReplicationController(RCUtils.getName(actionTmpRC), replicas);
-
-        return waitForReady(policy, actionTmpRC, false) && checkUpdateStatus(policy, oldRC, newRC);
+        rc.getSpec().setReplicas(replicas);
+        client.scaleReplicationController(RCUtils.getName(rc), replicas);
+        return rc;
     }
 
-    private boolean waitForReady(UpdatePolicy policy, ReplicationController rc, boolean isFirstAction)
-            throws IOException, K8sDriverException, DeploymentEventException {
+    /**
+     * @return 0 when the pods of rc are ready, milliseconds to wait before checking again otherwise,
+     * RolloutScheduler.DONE when the update failed
+     */
+    private long waitForReady(UpdatePolicy policy, ReplicationController rc, boolean isFirstAction)
+            throws IOException, K8sDriverException {
         int desireInt;
         if (isFirstAction ^ policy.isRemoveOldFirst()) {
             // for old
@@ -320,49 +366,29 @@ public class ReplicationControllerUpdater {
         } else {
             desireInt = policy.getOldReplicaCount();
         }
-        long start = System.currentTimeMillis();
         PodList tmpPodList = client.listPod(RCUtils.getSelector(rc));
-        if (tmpPodList == null && desireInt != 0) {
-            return false;
-        }
-        while (tmpPodList != null && (desireInt != PodUtils.getPodReadyNumber(tmpPodList.getItems())
-                || desireInt != tmpPodList.getItems().size())) {
-            client.clearNotRunningPod(tmpPodList);
-            /*
-            try {
-                if (failedJudgment.isAnyFailed(tmpPodList)) {
-                    return false;
-                }
-            } catch (ParseException e) {
-                String message = "parse pod start time failed";
-                logger.error(message);
-                updateFailed(message);
-                return false;
-            }
-            */
-            long waitTime;
-            if (policy.getMaxTimeForReady() < 0) {
-                waitTime = policy.getCheckReadyPeriod();
-            } else {
-                waitTime = Math.min(policy.getCheckReadyPeriod(),
-                        policy.getMaxTimeForReady() - System.currentTimeMillis() + start);
+        if (tmpPodList == null) {
+            if (desireInt == 0) {
+                return 0;
             }
-            if (waitTime < 0) {
+            updateFailed("no pod list for replication controller " + RCUtils.getName(rc));
+            return RolloutScheduler.DONE;
+        }
+        if (desireInt == PodUtils.getPodReadyNumber(tmpPodList.getItems())
+                && desireInt == tmpPodList.getItems().size()) {
+            return 0;
+        }
+        client.clearNotRunningPod(tmpPodList);
+        long waitTime = RolloutScheduler.readyCheckDelay(clusterId, policy.getCheckReadyPeriod());
+        if (policy.getMaxTimeForReady() >= 0) {
+            long left = policy.getMaxTimeForReady() - System.currentTimeMillis() + waitStart;
+            if (left < 0) {
                 updateFailed("wait for once update ready timeout");
-                return false;
-            }
-            try {
-                Thread.sleep(waitTime);
-            } catch (InterruptedException e) {
-                updateFailed("thread is interrupted in waiting for once update ready");
-                return false;
-            }
-            tmpPodList = client.listPod(RCUtils.getSelector(rc));
-            if (tmpPodList == null && desireInt != 0) {
-                return false;
+                return RolloutScheduler.DONE;
             }
+            waitTime = Math.min(waitTime, left);
         }
-        return true;
+        return Math.max(waitTime, 1);
     }
 
     private UpdateReplicationCount getPodReadyCount(ReplicationController oldRC, ReplicationController newRC)
@@ -411,17 +437,6 @@ public class ReplicationControllerUpdater {
         return new UpdateReplicationCount(oldRC.getSpec().getReplicas(), newRC.getSpec().getReplicas());
     }
 
-    private class UpdateReplicationController implements Runnable {
-        @Override
-        public void run() {
-            try {
-                update();
-            } catch (DeploymentEventException e) {
-                // do nothing
-            }
-        }
-    }
-
     private void updateFailed(String reason) {
         logger.error("update failed for reason=" + reason);
         synchronized (status) {
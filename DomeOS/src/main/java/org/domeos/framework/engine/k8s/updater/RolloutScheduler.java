@@ -0,0 +1,264 @@
+package org.domeos.framework.engine.k8s.updater;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import org.domeos.framework.engine.k8s.cache.ClusterResourceCache;
+import org.domeos.util.EnvUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs every active rollout on a few shared threads. A rollout is a state machine advanced by step()
+ * until it has to wait, it then returns how long; a change of one of its pods in the cluster resource
+ * cache runs the next step early, so waiting for pods to become ready needs neither a thread nor a
+ * pod list per poll.
+ */
+public class RolloutScheduler {
+
+    private static Logger logger = LoggerFactory.getLogger(RolloutScheduler.class);
+
+    public static final long DONE = -1;
+
+    // wake ups within this delay are coalesced into one step
+    private static final long WAKE_DELAY = 200;
+    // recheck of a wait while pod changes are watched, in case one is missed
+    private static final long WATCHED_RECHECK = 10000;
+
+    private static final RolloutScheduler INSTANCE = new RolloutScheduler(EnvUtil.envInt("DOMEOS_ROLLOUT_THREADS", 4));
+
+    static {
+        ClusterResourceCache.addPodListener(new ClusterResourceCache.PodListener() {
+            @Override
+            public void onPodChanged(int clusterId, Pod pod) {
+                INSTANCE.podChanged(clusterId, pod);
+            }
+        });
+    }
+
+    public interface Rollout {
+        /**
+         * advance the rollout until it has to wait
+         *
+         * @return milliseconds to wait before the next step, DONE when the rollout is finished
+         */
+        long step();
+
+        /**
+         * @param pod changed pod, null when every pod of the cluster may have changed
+         * @return whether the change may let the rollout go on
+         */
+        boolean isInterested(int clusterId, Pod pod);
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Set<Handle> active = Collections.newSetFromMap(new ConcurrentHashMap<Handle, Boolean>());
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong wakeups = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public RolloutScheduler(int threads) {
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rollout-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool.setRemoveOnCancelPolicy(true);
+        this.executor = pool;
+    }
+
+    public static RolloutScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return how long a rollout waiting for pods of the cluster should sleep: the poll period when pod
+     * changes of the cluster are not watched, a long recheck otherwise as changes wake it up
+     */
+    public static long readyCheckDelay(int clusterId, long pollPeriod) {
+        ClusterResourceCache cache = ClusterResourceCache.getCache(clusterId);
+        if (cache == null || !cache.isPodSynced()) {
+            return pollPeriod;
+        }
+        return Math.max(pollPeriod, WATCHED_RECHECK);
+    }
+
+    public Handle submit(Rollout rollout) {
+        Handle handle = new Handle(rollout);
+        active.add(handle);
+        submitted.incrementAndGet();
+        synchronized (handle) {
+            handle.next = executor.schedule(handle, 0, TimeUnit.MILLISECONDS);
+        }
+        return handle;
+    }
+
+    public void podChanged(int clusterId, Pod pod) {
+        for (Handle handle : active) {
+            if (handle.rollout.isInterested(clusterId, pod)) {
+                handle.wake();
+            }
+        }
+    }
+
+    public SchedulerStats stats() {
+        return new SchedulerStats(active.size(), submitted.get(), finished.get(), steps.get(), wakeups.get(),
+                failures.get());
+    }
+
+    public final class Handle implements Runnable {
+        private final Rollout rollout;
+        // guarded by this
+        private ScheduledFuture<?> next;
+        private boolean running = false;
+        private boolean wakeRequested = false;
+        private boolean cancelled = false;
+        private volatile boolean done = false;
+
+        private Handle(Rollout rollout) {
+            this.rollout = rollout;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (done || cancelled || running) {
+                    return;
+                }
+                running = true;
+                wakeRequested = false;
+                next = null;
+            }
+            long delay;
+            try {
+                steps.incrementAndGet();
+                delay = rollout.step();
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                logger.error("rollout step failed, stop it", e);
+                delay = DONE;
+            }
+            synchronized (this) {
+                running = false;
+                if (delay < 0 || cancelled) {
+                    finish();
+                    return;
+                }
+                if (wakeRequested) {
+                    delay = Math.min(delay, WAKE_DELAY);
+                }
+                try {
+                    next = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+                } catch (RuntimeException e) {
+                    logger.error("schedule rollout step failed, stop it", e);
+                    finish();
+                }
+            }
+        }
+
+        private void finish() {
+            if (!done) {
+                done = true;
+                active.remove(this);
+                finished.incrementAndGet();
+            }
+        }
+
+        /**
+         * run the next step soon
+         */
+        public synchronized void wake() {
+            if (done || cancelled) {
+                return;
+            }
+            wakeups.incrementAndGet();
+            if (running) {
+                wakeRequested = true;
+                return;
+            }
+            if (next != null && next.getDelay(TimeUnit.MILLISECONDS) > WAKE_DELAY && next.cancel(false)) {
+                next = executor.schedule(this, WAKE_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        public synchronized void cancel() {
+            if (done) {
+                return;
+            }
+            cancelled = true;
+            if (next != null) {
+                next.cancel(false);
+                next = null;
+            }
+            if (!running) {
+                finish();
+            }
+        }
+
+        /**
+         * @return whether the rollout finished or was cancelled, no step will run any more
+         */
+        public boolean isDone() {
+            return done;
+        }
+    }
+
+    public static class SchedulerStats {
+        private int active;
+        private long submitted;
+        private long finished;
+        private long steps;
+        private long wakeups;
+        private long failures;
+
+        public SchedulerStats(int active, long submitted, long finished, long steps, long wakeups, long failures) {
+            this.active = active;
+            this.submitted = submitted;
+            this.finished = finished;
+            this.steps = steps;
+            this.wakeups = wakeups;
+            this.failures = failures;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getFinished() {
+            return finished;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        public long getWakeups() {
+            return wakeups;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+    }
+}
@@ -4,14 +4,12 @@ import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.extensions.Job;
 import io.fabric8.kubernetes.api.model.extensions.JobList;
 import io.fabric8.kubernetes.client.Config;
-import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.*;
-import okhttp3.TlsVersion;
 import org.apache.log4j.Logger;
 import org.domeos.exception.K8sDriverException;
 import org.domeos.exception.TimeoutException;
 import org.domeos.framework.api.model.cluster.Cluster;
-import org.domeos.util.CommonUtil;
+import org.domeos.framework.engine.k8s.cache.ClusterResourceCache;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.LinkedList;
@@ -24,6 +22,9 @@ import java.util.Map;
 public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
     private KubernetesClient client;
 
+    // set when built for a cluster, pods and rcs of the cluster are then read from its resource cache
+    private Cluster cluster;
+
     private static Logger logger = Logger.getLogger(Fabric8KubeUtils.class);
 
 
@@ -53,63 +54,43 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
         if (cluster == null) {
             throw new K8sDriverException("cluster is null");
         }
-        try {
-            if (KUBEUTILSMAP.containsKey(Integer.toString(cluster.getId()))) {
-                KUBEUTILSMAP.remove(Integer.toString(cluster.getId()));
-            }
-            NamespaceList namespaceList = listAllNamespace();
-            for (Namespace namespace : namespaceList.getItems()) {
-                String key = cluster.getId() + namespace.getMetadata().getName();
-                KUBEUTILSMAP.remove(key);
-            }
-        } catch (IOException | K8sDriverException e) {
-            logger.error("get namespace list error, message is" + e);
-        }
+        ClusterResourceCache.remove(cluster.getId());
+        KubeClientRegistry.remove(cluster.getId());
     }
 
+    /**
+     * @return utils over the shared client of cluster, do not close the client
+     */
     public static KubeUtils buildKubeUtils(Cluster cluster, String namespace) throws K8sDriverException {
-        if (cluster == null) {
-            throw new K8sDriverException("cluster is null");
-        }
-        String key = (namespace == null) ? Integer.toString(cluster.getId()) : cluster.getId() + namespace;
-        if (KUBEUTILSMAP.containsKey(key)) {
-            return KUBEUTILSMAP.get(key);
-        }
-        String master = cluster.getApi();
-        master = CommonUtil.fullUrl(master);
-        if (StringUtils.isBlank(master)) {
-            throw new K8sDriverException("master api is null, cluster id=" + cluster.getId() + ", cluster name=" + cluster.getName());
-        }
-
-        Config config;
-        if (master.toLowerCase().startsWith("https://")) {
-            config = new ConfigBuilder().withMasterUrl(master)
-                    .withTrustCerts(true)
-                    .withNamespace(namespace)
-                    .withOauthToken(cluster.getOauthToken())
-                    .withUsername(cluster.getUsername())
-                    .withPassword(cluster.getPassword())
-                    .removeFromTlsVersions(TlsVersion.TLS_1_0)
-                    .removeFromTlsVersions(TlsVersion.TLS_1_1)
-                    .removeFromTlsVersions(TlsVersion.TLS_1_2)
-                    .build();
-        } else {
-            config = new ConfigBuilder().withMasterUrl(master)
-                    .withNamespace(namespace)
-                    .withOauthToken(cluster.getOauthToken())
-                    .withUsername(cluster.getUsername())
-                    .withPassword(cluster.getPassword())
-                    .removeFromTlsVersions(TlsVersion.TLS_1_0)
-                    .removeFromTlsVersions(TlsVersion.TLS_1_1)
-                    .removeFromTlsVersions(TlsVersion.TLS_1_2)
-                    .withTrustCerts(true)
-                    .build();
-        }
-        KubeUtils kubeUtils = buildKubeUtils(config);
-        KUBEUTILSMAP.putIfAbsent(key, kubeUtils);
+        Fabric8KubeUtils kubeUtils = new Fabric8KubeUtils(KubeClientRegistry.getClient(cluster, namespace));
+        kubeUtils.cluster = cluster;
         return kubeUtils;
     }
 
+    private ClusterResourceCache resourceCache() {
+        return cluster == null ? null : ClusterResourceCache.forCluster(cluster);
+    }
+
+    private static PodList podList(List<Pod> pods) {
+        PodList podList = new PodList();
+        podList.setItems(pods);
+        return podList;
+    }
+
+    private static ReplicationControllerList rcList(List<ReplicationController> rcs) {
+        ReplicationControllerList rcList = new ReplicationControllerList();
+        rcList.setItems(rcs);
+        return rcList;
+    }
+
+    private ReplicationController cacheRC(ReplicationController rc) {
+        ClusterResourceCache cache = cluster == null ? null : ClusterResourceCache.getCache(cluster.getId());
+        if (cache != null && rc != null) {
+            cache.updateReplicationController(rc);
+        }
+        return rc;
+    }
+
     public static KubeUtils buildKubeUtils(Config config) throws K8sDriverException {
         KubernetesClient client;
         try {
@@ -220,6 +201,10 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
     public PodList listPod(Map<String, String> selectors)
             throws IOException, K8sDriverException {
         logger.debug("list pod with selectors=" + selectors);
+        ClusterResourceCache cache = resourceCache();
+        if (cache != null && cache.isPodSynced()) {
+            return podList(cache.listPods(client.getNamespace(), selectors));
+        }
         return client.pods().withLabels(selectors).list();
     }
 
@@ -227,6 +212,10 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
     public PodList listPod()
             throws IOException, K8sDriverException {
         logger.debug("list pod");
+        ClusterResourceCache cache = resourceCache();
+        if (cache != null && cache.isPodSynced()) {
+            return podList(cache.listPods(client.getNamespace(), null));
+        }
         try {
             return client.pods().list();
         } catch (KubernetesClientException e) {
@@ -238,6 +227,10 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
     public PodList listAllPod(Map<String, String> selector)
             throws IOException, K8sDriverException {
         logger.debug("list pod in all namespace, with selectors=" + selector);
+        ClusterResourceCache cache = resourceCache();
+        if (cache != null && cache.isPodSynced()) {
+            return podList(cache.listPods(null, selector));
+        }
         try {
             return client.pods().inAnyNamespace().withLabels(selector).list();
         } catch (KubernetesClientException e) {
@@ -249,6 +242,10 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
     public PodList listAllPod()
             throws IOException, K8sDriverException {
         logger.debug("list all pod in all namespace.");
+        ClusterResourceCache cache = resourceCache();
+        if (cache != null && cache.isPodSynced()) {
+            return podList(cache.listPods(null, null));
+        }
         try {
             return client.pods().inAnyNamespace().list();
         } catch (KubernetesClientException e) {
@@ -372,6 +369,10 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
     public ReplicationControllerList listReplicationController(Map<String, String> selector)
             throws IOException, K8sDriverException {
         logger.debug("list replication controller with selector=" + selector);
+        ClusterResourceCache cache = resourceCache();
+        if (cache != null && cache.isReplicationControllerSynced()) {
+            return rcList(cache.listReplicationControllers(client.getNamespace(), selector));
+        }
         try {
             return client.replicationControllers().withLabels(selector).list();
         } catch (KubernetesClientException e) {
@@ -390,6 +391,10 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
     public ReplicationControllerList listAllReplicationController(Map<String, String> selector)
             throws IOException, K8sDriverException {
         logger.debug("list all replication controller");
+        ClusterResourceCache cache = resourceCache();
+        if (cache != null && cache.isReplicationControllerSynced()) {
+            return rcList(cache.listReplicationControllers(null, selector));
+        }
         try {
             return client.replicationControllers().inAnyNamespace().withLabels(selector).list();
         } catch (KubernetesClientException e) {
@@ -411,7 +416,7 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
         }
         logger.debug("create replication controller with rc=\n" + rc);
         try {
-            return client.replicationControllers().create(rc);
+            return cacheRC(client.replicationControllers().create(rc));
         } catch (KubernetesClientException e) {
             throw new K8sDriverException(e.getMessage());
         }
@@ -441,7 +446,7 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
         }
         logger.debug("replace replication controller with name=" + name + ", replication controller=\n" + rc);
         try {
-            return client.replicationControllers().withName(name).replace(rc);
+            return cacheRC(client.replicationControllers().withName(name).replace(rc));
         } catch (KubernetesClientException e) {
             throw new K8sDriverException(e.getMessage());
         }
@@ -455,7 +460,7 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
         }
         logger.debug("scale replication controller with name=" + name + ", replicas=\n" + replicas);
         try {
-            return client.replicationControllers().withName(name).scale(replicas);
+            return cacheRC(client.replicationControllers().withName(name).scale(replicas));
         } catch (KubernetesClientException e) {
             throw new K8sDriverException(e.getMessage());
         }
@@ -465,7 +470,12 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
     @Override
     public boolean deleteReplicationController(String rcName)
             throws IOException, K8sDriverException {
-        return client.replicationControllers().withName(rcName).delete();
+        boolean deleted = client.replicationControllers().withName(rcName).delete();
+        ClusterResourceCache cache = cluster == null ? null : ClusterResourceCache.getCache(cluster.getId());
+        if (deleted && cache != null) {
+            cache.deleteReplicationController(client.getNamespace(), rcName);
+        }
+        return deleted;
     }
 
     @Override
@@ -476,7 +486,7 @@ public class Fabric8KubeUtils implements KubeUtils<KubernetesClient> {
         }
         logger.debug("update replication controller rc=" + rc);
         try {
-            return client.replicationControllers().cascading(false).patch(rc);
+            return cacheRC(client.replicationControllers().cascading(false).patch(rc));
         } catch (KubernetesClientException e) {
             throw new K8sDriverException(e.getMessage());
         }
@@ -0,0 +1,278 @@
+package org.domeos.framework.engine.k8s.util;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.utils.HttpClientUtils;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.TlsVersion;
+import org.apache.log4j.Logger;
+import org.domeos.exception.K8sDriverException;
+import org.domeos.framework.api.model.cluster.Cluster;
+import org.domeos.util.CommonUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kubernetes clients shared by cluster.
+ * Every cluster owns one OkHttpClient, so one connection pool and one dispatcher; clients for a
+ * namespace are views created by inNamespace() on top of it and must not be closed by callers.
+ * When the api address or credentials of a cluster change the client is rebuilt, the replaced or
+ * removed client is closed after CLOSE_DELAY seconds so requests already running can finish.
+ */
+public class KubeClientRegistry {
+
+    private static Logger logger = Logger.getLogger(KubeClientRegistry.class);
+
+    private static final long CLOSE_DELAY = 30;
+
+    private static final ConcurrentHashMap<Integer, ClusterClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService CLOSER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "kube-client-closer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * @param cluster   cluster
+     * @param namespace namespace of the client, null for the cluster client
+     * @return shared client of the cluster, scoped to namespace
+     */
+    public static KubernetesClient getClient(Cluster cluster, String namespace) throws K8sDriverException {
+        if (cluster == null) {
+            throw new K8sDriverException("cluster is null");
+        }
+        String fingerprint = fingerprint(cluster);
+        ClusterClient clusterClient = CLIENTS.get(cluster.getId());
+        if (clusterClient == null || !clusterClient.fingerprint.equals(fingerprint)) {
+            clusterClient = rebuild(cluster, fingerprint);
+        }
+        return clusterClient.view(namespace);
+    }
+
+    private static synchronized ClusterClient rebuild(Cluster cluster, String fingerprint) throws K8sDriverException {
+        ClusterClient current = CLIENTS.get(cluster.getId());
+        if (current != null && current.fingerprint.equals(fingerprint)) {
+            return current;
+        }
+        ClusterClient created = new ClusterClient(cluster, fingerprint);
+        CLIENTS.put(cluster.getId(), created);
+        if (current != null) {
+            logger.info("config of cluster " + cluster.getId() + " changed, rebuild kubernetes client");
+            closeLater(current);
+        }
+        return created;
+    }
+
+    /**
+     * drop the client of cluster, it will be closed after running requests finished
+     */
+    public static void remove(int clusterId) {
+        ClusterClient removed = CLIENTS.remove(clusterId);
+        if (removed != null) {
+            closeLater(removed);
+        }
+    }
+
+    private static void closeLater(final ClusterClient clusterClient) {
+        CLOSER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                clusterClient.close();
+            }
+        }, CLOSE_DELAY, TimeUnit.SECONDS);
+    }
+
+    public static List<ClientStats> listStats() {
+        List<ClientStats> stats = new ArrayList<>();
+        for (ClusterClient clusterClient : CLIENTS.values()) {
+            stats.add(clusterClient.stats());
+        }
+        return stats;
+    }
+
+    private static String fingerprint(Cluster cluster) {
+        return cluster.getApi() + ":" + Objects.hash(cluster.getOauthToken(), cluster.getUsername(), cluster.getPassword());
+    }
+
+    private static Config buildConfig(Cluster cluster) throws K8sDriverException {
+        String master = CommonUtil.fullUrl(cluster.getApi());
+        if (StringUtils.isBlank(master)) {
+            throw new K8sDriverException("master api is null, cluster id=" + cluster.getId() + ", cluster name=" + cluster.getName());
+        }
+        // ConfigBuilder picks a namespace up from kubeconfig, the service account or KUBERNETES_NAMESPACE,
+        // the cluster client must not be scoped to it, views set their own through inNamespace()
+        return new ConfigBuilder().withMasterUrl(master)
+                .withNamespace(null)
+                .withTrustCerts(true)
+                .withOauthToken(cluster.getOauthToken())
+                .withUsername(cluster.getUsername())
+                .withPassword(cluster.getPassword())
+                .removeFromTlsVersions(TlsVersion.TLS_1_0)
+                .removeFromTlsVersions(TlsVersion.TLS_1_1)
+                .removeFromTlsVersions(TlsVersion.TLS_1_2)
+                .build();
+    }
+
+    private static class ClusterClient implements Interceptor {
+        private final int clusterId;
+        private final String fingerprint;
+        private final OkHttpClient httpClient;
+        private final DefaultKubernetesClient client;
+        private final ConcurrentHashMap<String, KubernetesClient> views = new ConcurrentHashMap<>();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong latencyTotal = new AtomicLong();
+        private volatile long maxLatency = 0;
+
+        ClusterClient(Cluster cluster, String fingerprint) throws K8sDriverException {
+            this.clusterId = cluster.getId();
+            this.fingerprint = fingerprint;
+            Config config = buildConfig(cluster);
+            try {
+                this.httpClient = HttpClientUtils.createHttpClient(config).newBuilder().addInterceptor(this).build();
+                this.client = new DefaultKubernetesClient(httpClient, config);
+            } catch (Exception e) {
+                throw new K8sDriverException("instantialize kubernetes client error");
+            }
+        }
+
+        KubernetesClient view(String namespace) {
+            if (namespace == null) {
+                return client;
+            }
+            KubernetesClient view = views.get(namespace);
+            if (view == null) {
+                view = client.inNamespace(namespace);
+                KubernetesClient old = views.putIfAbsent(namespace, view);
+                if (old != null) {
+                    view = old;
+                }
+            }
+            return view;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            long start = System.currentTimeMillis();
+            inFlight.incrementAndGet();
+            requests.incrementAndGet();
+            try {
+                Response response = chain.proceed(chain.request());
+                if (response.code() >= 500) {
+                    errors.incrementAndGet();
+                }
+                return response;
+            } catch (IOException | RuntimeException e) {
+                errors.incrementAndGet();
+                throw e;
+            } finally {
+                inFlight.decrementAndGet();
+                long cost = System.currentTimeMillis() - start;
+                latencyTotal.addAndGet(cost);
+                if (cost > maxLatency) {
+                    maxLatency = cost;
+                }
+            }
+        }
+
+        void close() {
+            logger.info("close kubernetes client of cluster " + clusterId + ", in flight requests " + inFlight.get());
+            views.clear();
+            client.close();
+        }
+
+        ClientStats stats() {
+            long count = requests.get();
+            return new ClientStats(clusterId, client.getMasterUrl().toString(), views.size(), inFlight.get(), count,
+                    errors.get(), count == 0 ? 0 : latencyTotal.get() / count, maxLatency,
+                    httpClient.connectionPool().connectionCount(), httpClient.connectionPool().idleConnectionCount());
+        }
+    }
+
+    public static class ClientStats {
+        private int clusterId;
+        private String masterUrl;
+        private int namespaces;
+        private int inFlight;
+        private long requests;
+        private long errors;
+        private long avgLatencyMillis;
+        private long maxLatencyMillis;
+        private int connections;
+        private int idleConnections;
+
+        public ClientStats(int clusterId, String masterUrl, int namespaces, int inFlight, long requests, long errors,
+                           long avgLatencyMillis, long maxLatencyMillis, int connections, int idleConnections) {
+            this.clusterId = clusterId;
+            this.masterUrl = masterUrl;
+            this.namespaces = namespaces;
+            this.inFlight = inFlight;
+            this.requests = requests;
+            this.errors = errors;
+            this.avgLatencyMillis = avgLatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+            this.connections = connections;
+            this.idleConnections = idleConnections;
+        }
+
+        public int getClusterId() {
+            return clusterId;
+        }
+
+        public String getMasterUrl() {
+            return masterUrl;
+        }
+
+        public int getNamespaces() {
+            return namespaces;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getAvgLatencyMillis() {
+            return avgLatencyMillis;
+        }
+
+        public long getMaxLatencyMillis() {
+            return maxLatencyMillis;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+    }
+}
@@ -10,15 +10,12 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by KaiRen on 16/8/24.
  */
 public interface KubeUtils<T> {
 
-    ConcurrentHashMap<String, KubeUtils> KUBEUTILSMAP = new ConcurrentHashMap<>();
-
     T getClient();
 
     void setClient(T t);
@@ -38,6 +38,9 @@ public interface RowMapper extends ISimpleMapper {
     @Select("select state from ${tableName} where id=${id}")
     String getStateById(@Param("tableName") String tableName, @Param("id") int id);
 
+    @Select("select id, state from ${tableName} where id in ${idList}")
+    List<RowMapperDao> getStateByIdList(@Param("tableName") String tableName, @Param("idList") String idList);
+
     @Select("select name from ${tableName} where id=${id}")
     String getNameById(@Param("tableName") String tableName, @Param("id") int id);
 
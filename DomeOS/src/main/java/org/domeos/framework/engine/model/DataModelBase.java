@@ -2,6 +2,10 @@ package org.domeos.framework.engine.model;
 
 
 import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
@@ -9,8 +13,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.domeos.framework.engine.exception.DaoConvertingException;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by sparkchen on 16/4/4.
@@ -27,6 +33,17 @@ public class DataModelBase implements IJsonable {
 
     protected static CustomObjectMapper objectMapper = new CustomObjectMapper();
 
+    // resolved per fqcn/class once, readers and writers are immutable and thread safe
+    private static final ConcurrentHashMap<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, Integer> VERSIONS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    static {
+        // rows written by old versions hold raw line breaks inside strings
+        objectMapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
+    }
+
     private int ver = 1;
     private String fqcn = "";
 
@@ -55,23 +72,73 @@ public class DataModelBase implements IJsonable {
             return null;
         }
         try {
-            String str = inputstr.replaceAll("\r\n", "\\\\r\\\\n").replaceAll("\n", "\\\\n");
-            fqcn = objectMapper.readTree(str).get("fqcn").asText();
-            ver = objectMapper.readTree(str).get("ver").asInt();
-            Class clazz = Class.forName(fqcn);
-            T tmp = (T) clazz.newInstance();
-            int versionNow = tmp.VERSION_NOW();
+            readHeader(inputstr);
+            Class<?> clazz = CLASSES.get(fqcn);
+            if (clazz == null) {
+                clazz = Class.forName(fqcn);
+                CLASSES.putIfAbsent(fqcn, clazz);
+            }
+            IJsonable tmp = null;
+            Integer versionNow = VERSIONS.get(clazz);
+            if (versionNow == null) {
+                tmp = (IJsonable) clazz.newInstance();
+                versionNow = tmp.VERSION_NOW();
+                VERSIONS.putIfAbsent(clazz, versionNow);
+            }
             if (versionNow == ver) {
-                return (T) objectMapper.readValue(str, clazz);
-            } else {
-                return tmp.fromString(str, ver);
+                return (T) jsonReader(clazz).readValue(inputstr);
+            }
+            if (tmp == null) {
+                tmp = (IJsonable) clazz.newInstance();
             }
+            return tmp.fromString(inputstr, ver);
         } catch (Exception e) {
             logger.error("Parse Data from JSON failed, str = " + inputstr);
             throw new DaoConvertingException("Parse Data from JSON failed, str = " + inputstr + e.getMessage(), e);
         }
     }
 
+    /**
+     * Read fqcn and ver with one token pass, toString() writes them as the first two fields
+     */
+    private void readHeader(String str) throws IOException {
+        boolean hasFqcn = false;
+        boolean hasVer = false;
+        JsonParser parser = objectMapper.getFactory().createParser(str);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("json object expected");
+            }
+            while (!(hasFqcn && hasVer) && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("fqcn".equals(field)) {
+                    fqcn = parser.getValueAsString();
+                    hasFqcn = true;
+                } else if ("ver".equals(field)) {
+                    ver = parser.getValueAsInt();
+                    hasVer = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            parser.close();
+        }
+        if (!hasFqcn || !hasVer) {
+            throw new IOException("fqcn or ver not found");
+        }
+    }
+
+    private static ObjectReader jsonReader(Class<?> clazz) {
+        ObjectReader reader = READERS.get(clazz);
+        if (reader == null) {
+            reader = objectMapper.readerFor(clazz);
+            READERS.putIfAbsent(clazz, reader);
+        }
+        return reader;
+    }
+
     public <T extends IJsonable> T fromString(String str, int ver) {
         if (str == null || str.length() == 0) {
             return null;
@@ -83,15 +150,24 @@ public class DataModelBase implements IJsonable {
         }
     }
 
-    public String toString() {
-        try {
-            ver = VERSION_NOW();
-            fqcn = this.getClass().getName();
+    ObjectWriter jsonWriter() {
+        ObjectWriter writer = WRITERS.get(this.getClass());
+        if (writer == null) {
             SimpleBeanPropertyFilter simpleBeanPropertyFilter = SimpleBeanPropertyFilter.serializeAllExcept(
                     this.excludeForJSON());
             FilterProvider filterProvider = new SimpleFilterProvider().setFailOnUnknownId(false)
                     .addFilter("myFilter", simpleBeanPropertyFilter);
-            return objectMapper.writer(filterProvider).writeValueAsString(this);
+            writer = objectMapper.writer(filterProvider);
+            WRITERS.putIfAbsent(this.getClass(), writer);
+        }
+        return writer;
+    }
+
+    public String toString() {
+        try {
+            ver = VERSION_NOW();
+            fqcn = this.getClass().getName();
+            return jsonWriter().writeValueAsString(this);
         } catch (Exception e) {
             logger.error("ObjectMapper to JSON failed for class:" + this.getClass().getName(), e);
             throw new DaoConvertingException("ObjectMapper to JSON failed for class:" + this.getClass().getName() + e.getMessage(), e);
@@ -0,0 +1,260 @@
+package org.domeos.framework.engine.model;
+
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.domeos.framework.engine.exception.DaoConvertingException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-table cache of deserialized RowModelBase instances, keyed by row id.
+ * Entries are dropped in LRU order once a table holds more than maxSize models and
+ * expire ttl milliseconds after they were loaded. Callers always get their own copy,
+ * so a model returned from the cache can be modified freely.
+ * Only tables registered through enable() are cached, every write to such a table
+ * must call invalidate() for the row it touched.
+ */
+public class RowModelCache {
+
+    public static final int DEFAULT_MAX_SIZE = 2048;
+    public static final long DEFAULT_TTL = 60 * 1000;
+
+    private static final ConcurrentHashMap<String, RowModelCache> CACHES = new ConcurrentHashMap<>();
+
+    private final String tableName;
+    private final int maxSize;
+    private final long ttl;
+    private final LinkedHashMap<Integer, Entry> entries;
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private RowModelCache(String tableName, final int maxSize, long ttl) {
+        this.tableName = tableName;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > RowModelCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    String name = eldest.getValue().model.getName();
+                    if (eldest.getKey().equals(nameIndex.get(name))) {
+                        nameIndex.remove(name);
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static RowModelCache enable(String tableName) {
+        return enable(tableName, DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    public static RowModelCache enable(String tableName, int maxSize, long ttl) {
+        RowModelCache cache = new RowModelCache(tableName, maxSize, ttl);
+        RowModelCache old = CACHES.putIfAbsent(tableName, cache);
+        return old == null ? cache : old;
+    }
+
+    /**
+     * @param tableName table name
+     * @return cache of the table, or null if the table is not cached
+     */
+    public static RowModelCache getCache(String tableName) {
+        return CACHES.get(tableName);
+    }
+
+    public static List<CacheStats> listStats() {
+        List<CacheStats> stats = new ArrayList<>();
+        for (RowModelCache cache : CACHES.values()) {
+            stats.add(cache.stats());
+        }
+        return stats;
+    }
+
+    public <T extends RowModelBase> T get(int id, Class<T> clazz) {
+        Entry entry;
+        synchronized (this) {
+            entry = lookup(id, clazz);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copyOf(clazz.cast(entry.model), clazz);
+    }
+
+    public <T extends RowModelBase> T getByName(String name, Class<T> clazz) {
+        Entry entry = null;
+        synchronized (this) {
+            Integer id = nameIndex.get(name);
+            if (id != null) {
+                entry = lookup(id, clazz);
+                if (entry != null && !name.equals(entry.model.getName())) {
+                    entry = null;
+                }
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copyOf(clazz.cast(entry.model), clazz);
+    }
+
+    /**
+     * Read before loading a row from database and pass to put(), so that a row loaded
+     * concurrently with a write is not cached after the write invalidated it.
+     *
+     * @return current invalidation generation of the table
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public <T extends RowModelBase> void put(T model, long loadedGeneration) {
+        if (model == null || model.isRemoved()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Class<T> clazz = (Class<T>) model.getClass();
+        Entry entry = new Entry(copyOf(model, clazz), System.currentTimeMillis());
+        synchronized (this) {
+            if (loadedGeneration != generation) {
+                return;
+            }
+            entries.put(model.getId(), entry);
+            nameIndex.put(model.getName(), model.getId());
+        }
+    }
+
+    public void invalidate(int id) {
+        invalidations.incrementAndGet();
+        synchronized (this) {
+            generation++;
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                nameIndex.remove(entry.model.getName());
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        invalidations.incrementAndGet();
+        generation++;
+        entries.clear();
+        nameIndex.clear();
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(tableName, entries.size(), nameIndex.size(), hits.get(), misses.get(), evictions.get(), invalidations.get());
+    }
+
+    private Entry lookup(int id, Class<?> clazz) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.loadTime > ttl) {
+            entries.remove(id);
+            nameIndex.remove(entry.model.getName());
+            evictions.incrementAndGet();
+            return null;
+        }
+        if (entry.model.getClass() != clazz) {
+            return null;
+        }
+        return entry;
+    }
+
+    private static <T extends RowModelBase> T copyOf(T model, Class<T> clazz) {
+        try {
+            TokenBuffer buffer = new TokenBuffer(DataModelBase.objectMapper, false);
+            model.jsonWriter().writeValue(buffer, model);
+            T copy = DataModelBase.objectMapper.readValue(buffer.asParser(), clazz);
+            copy.setId(model.getId());
+            copy.setName(model.getName());
+            copy.setDescription(model.getDescription());
+            copy.setState(model.getState());
+            copy.setCreateTime(model.getCreateTime());
+            copy.setRemoveTime(model.getRemoveTime());
+            copy.setRemoved(model.isRemoved());
+            return copy;
+        } catch (Exception e) {
+            throw new DaoConvertingException("Copy cached model failed for class:" + clazz.getName(), e);
+        }
+    }
+
+    private static class Entry {
+        private final RowModelBase model;
+        private final long loadTime;
+
+        Entry(RowModelBase model, long loadTime) {
+            this.model = model;
+            this.loadTime = loadTime;
+        }
+    }
+
+    public static class CacheStats {
+        private String tableName;
+        private int size;
+        private int names;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long invalidations;
+
+        public CacheStats(String tableName, int size, int names, long hits, long misses, long evictions,
+                          long invalidations) {
+            this.tableName = tableName;
+            this.size = size;
+            this.names = names;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getNames() {
+            return names;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.domeos.framework.engine.runtime;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import io.fabric8.kubernetes.api.model.ContainerStatus;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodList;
@@ -11,9 +10,7 @@ import org.domeos.framework.api.model.cluster.Cluster;
 import org.domeos.framework.api.model.deployment.related.DeployResourceStatus;
 import org.domeos.framework.api.model.monitor.falcon.CounterValue;
 import org.domeos.framework.api.model.monitor.falcon.EndpointCounter;
-import org.domeos.framework.api.model.monitor.falcon.GraphHistoryRequest;
 import org.domeos.framework.api.model.monitor.falcon.GraphHistoryResponse;
-import org.domeos.framework.api.service.monitor.MonitorService;
 import org.domeos.framework.engine.k8s.util.Fabric8KubeUtils;
 import org.domeos.framework.engine.k8s.util.KubeUtils;
 import org.domeos.framework.engine.k8s.util.filter.Filter;
@@ -24,8 +21,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +30,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by xxs on 16/1/15.
@@ -42,11 +40,13 @@ public class DeployResourceStatusManager implements IResourceStatus {
 
     private static ClusterBiz clusterBiz;
     private static GlobalBiz globalBiz;
-    private static MonitorService monitorSelfService;
 
     private static final long FIRST_RUN_WAIT_SECONDS = 10;
     private static final long RUN_INTERVAL_SECONDS = 300;
     private static boolean resourceStatusManagerIsRunning = false;
+    private static final String CPU_COUNTER_PREFIX = "container.cpu.usage.busy/id=";
+    private static final String MEM_COUNTER_PREFIX = "container.mem.usage/id=";
+    private static final ResourceStatusStats STATS = new ResourceStatusStats();
 
     @PostConstruct
     public void init() {
@@ -74,11 +74,6 @@ public class DeployResourceStatusManager implements IResourceStatus {
         DeployResourceStatusManager.globalBiz = globalBiz;
     }
 
-    @Autowired
-    public void setMonitorSelfService(MonitorService monitorSelfService) {
-        DeployResourceStatusManager.monitorSelfService = monitorSelfService;
-    }
-
     private void startUpdateResourceStatus() {
         executorService.scheduleWithFixedDelay(new UpdateStatusRunnable(), FIRST_RUN_WAIT_SECONDS, RUN_INTERVAL_SECONDS,
                 TimeUnit.SECONDS);
@@ -88,9 +83,14 @@ public class DeployResourceStatusManager implements IResourceStatus {
         return allDeployResourceStatus.get(deploymentId);
     }
 
+    public static ResourceStatusStats getStats() {
+        return STATS;
+    }
+
     private class UpdateStatusRunnable implements Runnable {
         @Override
         public void run() {
+            long start = System.currentTimeMillis();
             try {
                 List<PodList> allPodList = new ArrayList<>();
                 if (globalBiz != null && globalBiz.getMonitor() != null) {
@@ -177,14 +177,15 @@ public class DeployResourceStatusManager implements IResourceStatus {
                     }
 
                     // STEP 03: calculate cpuTotal, cpuUsed, memTotal and memUsed for each deployment
+                    Map<String, QueryData> queryDataMap = queryCpuAndMemory(deployWithContainerIds.values());
+                    STATS.lastContainers = queryDataMap.size();
                     Map<Long, DeployResourceStatus> allDeployResourceStatusTmp = new HashMap<>();
                     for (Map.Entry<Long, DeployRunningContainer> entry : deployWithContainerIds.entrySet()) {
                         DeployResourceStatus deployResourceStatus = new DeployResourceStatus();
                         deployResourceStatus.setDeployId(entry.getKey());
                         if (entry.getValue().getCounterInfo() != null && entry.getValue().getCounterInfo().size() > 0) {
                             for (MonitorCounterInfo counter : entry.getValue().getCounterInfo()) {
-                                QueryData queryData =
-                                        queryCpuAndMemory(counter.getNodeName(), counter.getContainerId());
+                                QueryData queryData = queryDataMap.get(counter.getContainerId());
                                 if (queryData == null || !queryData.getOk()) {
                                     continue;
                                 }
@@ -216,71 +217,85 @@ public class DeployResourceStatusManager implements IResourceStatus {
                     allDeployResourceStatus.clear();
                     allDeployResourceStatus.putAll(allDeployResourceStatusTmp);
                 }
-            } catch (IOException e) {
-                logger.warn("get resource occupation ratio failed: " + e.getMessage());
             } catch (Exception ex) {
+                STATS.failedCycles.incrementAndGet();
                 logger.error("unknown exception when get resource occupation ratio : " + ex.getMessage(), ex);
+            } finally {
+                long cost = System.currentTimeMillis() - start;
+                STATS.cycles.incrementAndGet();
+                STATS.lastCycleStart = start;
+                STATS.lastCycleMillis = cost;
+                if (cost > RUN_INTERVAL_SECONDS * 1000) {
+                    logger.warn("update resource status took {}ms, longer than interval {}s", cost, RUN_INTERVAL_SECONDS);
+                }
             }
         }
     }
 
     // 2016-03-25: fetch info from query instead of dashboard
-    private QueryData queryCpuAndMemory(String node, String containerId) throws IOException {
+    // cpu and memory counters of all containers are queried in batches, result is keyed by containerId
+    private Map<String, QueryData> queryCpuAndMemory(Collection<DeployRunningContainer> containers) {
 
-        GraphHistoryRequest graphHistoryRequest = new GraphHistoryRequest();
-        List<GraphHistoryResponse> graphHistoryResponses = null;
-        try {
-            long currentTime = System.currentTimeMillis() / 1000;
-            graphHistoryRequest.setStart(currentTime - 300);
-            graphHistoryRequest.setEnd(currentTime);
-            graphHistoryRequest.setCf("AVERAGE");
-            List<EndpointCounter> endpointCounters = new ArrayList<>();
-            endpointCounters.add(new EndpointCounter(node, "container.cpu.usage.busy/id=" + containerId));
-            endpointCounters.add(new EndpointCounter(node, "container.mem.usage/id=" + containerId));
-            graphHistoryRequest.setEndpoint_counters(endpointCounters);
-            // TODO test
-            if (globalBiz.getMonitor() != null) {
-                String urlString = "http://" + globalBiz.getMonitor().getQuery() + "/graph/history";
-                graphHistoryResponses = monitorSelfService.postJson(urlString, graphHistoryRequest);
+        Map<String, QueryData> result = new HashMap<>();
+        if (globalBiz.getMonitor() == null) {
+            return result;
+        }
+        List<EndpointCounter> endpointCounters = new ArrayList<>();
+        Map<String, QueryData> responseIndex = new HashMap<>();
+        for (DeployRunningContainer container : containers) {
+            for (MonitorCounterInfo counter : container.getCounterInfo()) {
+                String cpuCounter = CPU_COUNTER_PREFIX + counter.getContainerId();
+                String memCounter = MEM_COUNTER_PREFIX + counter.getContainerId();
+                endpointCounters.add(new EndpointCounter(counter.getNodeName(), cpuCounter));
+                endpointCounters.add(new EndpointCounter(counter.getNodeName(), memCounter));
+                QueryData queryData = new QueryData();
+                queryData.setMsg("no data");
+                queryData.setOk(false);
+                result.put(counter.getContainerId(), queryData);
+                responseIndex.put(counter.getNodeName() + "/" + cpuCounter, queryData);
+                responseIndex.put(counter.getNodeName() + "/" + memCounter, queryData);
             }
-        } catch (JsonProcessingException e) {
-            logger.error("error processing json!", e);
-            return null;
-        } catch (IOException e) {
-            logger.error("io exception!", e);
-            return null;
         }
-
-        if (graphHistoryResponses == null) {
-            logger.warn("query response is null");
-            return null;
+        if (endpointCounters.isEmpty()) {
+            return result;
         }
 
-        QueryData queryData = new QueryData();
-        queryData.setMsg("no data");
-        queryData.setOk(false);
-        for (GraphHistoryResponse graphHistoryResponse : graphHistoryResponses) {
-            if (graphHistoryResponse.getValues() != null) {
-                if (graphHistoryResponse.getCounter().startsWith("container.cpu.usage.busy")) {
-                    for (CounterValue counterValue : graphHistoryResponse.getValues()) {
-                        if (counterValue.getValue() != null) {
-                            queryData.getCpudata().add(counterValue.getValue());
-                        }
-                    }
-                } else if (graphHistoryResponse.getCounter().startsWith("container.mem.usage")) {
-                    for (CounterValue counterValue : graphHistoryResponse.getValues()) {
-                        if (counterValue.getValue() != null) {
-                            queryData.getMemdata().add(counterValue.getValue());
-                        }
-                    }
+        long currentTime = System.currentTimeMillis() / 1000;
+        String urlString = "http://" + globalBiz.getMonitor().getQuery() + "/graph/history";
+        FalconQueryClient.BatchResult batchResult = FalconQueryClient.getInstance().query(urlString,
+                currentTime - 300, currentTime, "AVERAGE", endpointCounters);
+        STATS.lastChunks = batchResult.getChunks();
+        STATS.lastFailedChunks = batchResult.getFailedChunks();
+        STATS.failedChunks.addAndGet(batchResult.getFailedChunks());
+        STATS.lastQueryMillis = batchResult.getDurationMillis();
+
+        for (GraphHistoryResponse graphHistoryResponse : batchResult.getResponses()) {
+            if (graphHistoryResponse.getValues() == null || graphHistoryResponse.getCounter() == null) {
+                continue;
+            }
+            QueryData queryData = responseIndex.get(graphHistoryResponse.getEndpoint() + "/" + graphHistoryResponse.getCounter());
+            if (queryData == null) {
+                continue;
+            }
+            List<Double> data;
+            if (graphHistoryResponse.getCounter().startsWith(CPU_COUNTER_PREFIX)) {
+                data = queryData.getCpudata();
+            } else {
+                data = queryData.getMemdata();
+            }
+            for (CounterValue counterValue : graphHistoryResponse.getValues()) {
+                if (counterValue.getValue() != null) {
+                    data.add(counterValue.getValue());
                 }
             }
         }
-        if (queryData.getCpudata().size() != 0 && queryData.getMemdata().size() != 0) {
-            queryData.setMsg("OK");
-            queryData.setOk(true);
+        for (QueryData queryData : result.values()) {
+            if (queryData.getCpudata().size() != 0 && queryData.getMemdata().size() != 0) {
+                queryData.setMsg("OK");
+                queryData.setOk(true);
+            }
         }
-        return queryData;
+        return result;
     }
 
     private double transferKubeResourceValue(Quantity quantity) {
@@ -332,4 +347,55 @@ public class DeployResourceStatusManager implements IResourceStatus {
         }
     }
 
+    public static class ResourceStatusStats {
+        private final AtomicLong cycles = new AtomicLong();
+        private final AtomicLong failedCycles = new AtomicLong();
+        private final AtomicLong failedChunks = new AtomicLong();
+        private volatile long lastCycleStart;
+        private volatile long lastCycleMillis;
+        private volatile long lastQueryMillis;
+        private volatile int lastContainers;
+        private volatile int lastChunks;
+        private volatile int lastFailedChunks;
+
+        public long getCycles() {
+            return cycles.get();
+        }
+
+        public long getFailedCycles() {
+            return failedCycles.get();
+        }
+
+        public long getFailedChunks() {
+            return failedChunks.get();
+        }
+
+        public long getLastCycleStart() {
+            return lastCycleStart;
+        }
+
+        public long getLastCycleMillis() {
+            return lastCycleMillis;
+        }
+
+        public long getLastQueryMillis() {
+            return lastQueryMillis;
+        }
+
+        public int getLastContainers() {
+            return lastContainers;
+        }
+
+        public int getLastChunks() {
+            return lastChunks;
+        }
+
+        public int getLastFailedChunks() {
+            return lastFailedChunks;
+        }
+
+        public FalconQueryClient.ClientStats getClient() {
+            return FalconQueryClient.getInstance().stats();
+        }
+    }
 }
@@ -0,0 +1,200 @@
+package org.domeos.framework.engine.runtime;
+
+import org.domeos.framework.api.model.monitor.falcon.EndpointCounter;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryRequest;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryResponse;
+import org.domeos.util.EnvUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short lived cache of falcon history queries, keyed by url, consolidation function, time window and
+ * the sorted endpoint counters. Dashboards refreshed by many users ask the same query again and again;
+ * an identical query within the ttl, or one arriving while the first is still running, shares its
+ * result instead of going to falcon. Cached responses are shared and must not be modified.
+ */
+public class FalconQueryCache {
+
+    public static final long DEFAULT_TTL = 30000;
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private static final FalconQueryCache INSTANCE = new FalconQueryCache(
+            EnvUtil.envLong("DOMEOS_MONITOR_QUERY_CACHE_TTL", DEFAULT_TTL), DEFAULT_MAX_ENTRIES);
+
+    public interface Loader {
+        List<GraphHistoryResponse> load(String url, GraphHistoryRequest request) throws IOException;
+    }
+
+    private final long ttl;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong joins = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private static class Entry {
+        final FutureTask<List<GraphHistoryResponse>> task;
+        // set when the load is done
+        volatile long expireAt = Long.MAX_VALUE;
+
+        Entry(FutureTask<List<GraphHistoryResponse>> task) {
+            this.task = task;
+        }
+    }
+
+    public FalconQueryCache(long ttl, int maxEntries) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    public static FalconQueryCache getInstance() {
+        return INSTANCE;
+    }
+
+    public List<GraphHistoryResponse> get(final String url, final GraphHistoryRequest request, final Loader loader)
+            throws IOException {
+        String key = key(url, request);
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expireAt > System.currentTimeMillis()) {
+                if (entry.task.isDone()) {
+                    hits.incrementAndGet();
+                } else {
+                    joins.incrementAndGet();
+                }
+                return await(key, entry);
+            }
+            Entry created = new Entry(new FutureTask<>(new Callable<List<GraphHistoryResponse>>() {
+                @Override
+                public List<GraphHistoryResponse> call() throws IOException {
+                    return loader.load(url, request);
+                }
+            }));
+            // the request putting the entry runs the query, one losing the race waits for it next round
+            if (entry == null ? entries.putIfAbsent(key, created) == null : entries.replace(key, entry, created)) {
+                loads.incrementAndGet();
+                created.task.run();
+                created.expireAt = System.currentTimeMillis() + ttl;
+                if (entries.size() > maxEntries) {
+                    evictExpired();
+                }
+                return await(key, created);
+            }
+        }
+    }
+
+    private List<GraphHistoryResponse> await(String key, Entry entry) throws IOException {
+        try {
+            return entry.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for falcon query");
+        } catch (ExecutionException e) {
+            // a failed query is not kept, the next request tries again
+            if (entries.remove(key, entry)) {
+                failures.incrementAndGet();
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getValue().expireAt <= now) {
+                iterator.remove();
+            }
+        }
+        // all still fresh: drop the ones expiring first
+        if (entries.size() > maxEntries) {
+            List<Map.Entry<String, Entry>> sorted = new ArrayList<>(entries.entrySet());
+            Collections.sort(sorted, new Comparator<Map.Entry<String, Entry>>() {
+                @Override
+                public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+                    return Long.compare(o1.getValue().expireAt, o2.getValue().expireAt);
+                }
+            });
+            for (int index = 0; index < sorted.size() - maxEntries; index++) {
+                entries.remove(sorted.get(index).getKey(), sorted.get(index).getValue());
+            }
+        }
+    }
+
+    static String key(String url, GraphHistoryRequest request) {
+        List<String> counters = new ArrayList<>();
+        if (request.getEndpoint_counters() != null) {
+            for (EndpointCounter endpointCounter : request.getEndpoint_counters()) {
+                counters.add(endpointCounter.getEndpoint() + "\u0001" + endpointCounter.getCounter());
+            }
+        }
+        Collections.sort(counters);
+        StringBuilder key = new StringBuilder(url).append('\u0002').append(request.getCf())
+                .append('\u0002').append(request.getStart()).append('\u0002').append(request.getEnd());
+        for (String counter : counters) {
+            key.append('\u0002').append(counter);
+        }
+        return key.toString();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(entries.size(), ttl, hits.get(), joins.get(), loads.get(), failures.get());
+    }
+
+    public static class CacheStats {
+        private int size;
+        private long ttlMillis;
+        private long hits;
+        private long joins;
+        private long loads;
+        private long failures;
+
+        public CacheStats(int size, long ttlMillis, long hits, long joins, long loads, long failures) {
+            this.size = size;
+            this.ttlMillis = ttlMillis;
+            this.hits = hits;
+            this.joins = joins;
+            this.loads = loads;
+            this.failures = failures;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getJoins() {
+            return joins;
+        }
+
+        public long getLoads() {
+            return loads;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+    }
+}
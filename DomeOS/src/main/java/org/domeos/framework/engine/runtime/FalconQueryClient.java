@@ -0,0 +1,355 @@
+package org.domeos.framework.engine.runtime;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.domeos.framework.api.model.monitor.falcon.EndpointCounter;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryRequest;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryResponse;
+import org.domeos.framework.engine.model.CustomObjectMapper;
+import org.domeos.util.EnvUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client of the falcon query api (/graph/history).
+ * Connections are pooled and kept alive, every request is bounded by the timeout. query() splits the
+ * endpoint counters into requests of at most chunkSize counters and runs them on a fixed pool of
+ * threads; a chunk that fails or times out is counted and left out of the result, the others are kept.
+ * <p>
+ * Charts of the monitor pages post through getInteractive(), a separate small pool with a shorter
+ * timeout, so they neither wait for connections held by the status batch nor for its slow chunks.
+ */
+public class FalconQueryClient {
+
+    private static Logger logger = LoggerFactory.getLogger(FalconQueryClient.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 200;
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_TIMEOUT = 10000;
+    public static final int DEFAULT_INTERACTIVE_THREADS = 2;
+    public static final int DEFAULT_INTERACTIVE_TIMEOUT = 3000;
+    private static final long IDLE_TIMEOUT = 60;
+
+    private static final FalconQueryClient INSTANCE = new FalconQueryClient(
+            EnvUtil.envInt("DOMEOS_FALCON_QUERY_CHUNK", DEFAULT_CHUNK_SIZE),
+            EnvUtil.envInt("DOMEOS_FALCON_QUERY_THREADS", DEFAULT_THREADS),
+            EnvUtil.envInt("DOMEOS_FALCON_QUERY_TIMEOUT", DEFAULT_TIMEOUT));
+
+    // only post() is used on it, its threads are never started
+    private static final FalconQueryClient INTERACTIVE = new FalconQueryClient(
+            DEFAULT_CHUNK_SIZE,
+            EnvUtil.envInt("DOMEOS_FALCON_INTERACTIVE_THREADS", DEFAULT_INTERACTIVE_THREADS),
+            EnvUtil.envInt("DOMEOS_FALCON_INTERACTIVE_TIMEOUT", DEFAULT_INTERACTIVE_TIMEOUT));
+
+    private final ObjectMapper mapper = new CustomObjectMapper();
+    private final int chunkSize;
+    private final int threads;
+    private final int timeout;
+    private final PoolingHttpClientConnectionManager connManager;
+    private final CloseableHttpClient httpClient;
+    private final ExecutorService executor;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong latencyTotal = new AtomicLong();
+    private volatile long maxLatency = 0;
+
+    public FalconQueryClient(int chunkSize, int threads, int timeout) {
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+        this.timeout = timeout;
+        this.connManager = new PoolingHttpClientConnectionManager();
+        connManager.setMaxTotal(threads * 2);
+        connManager.setDefaultMaxPerRoute(threads * 2);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .build();
+        this.httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "falcon-query-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static FalconQueryClient getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the client for queries a user waits on
+     */
+    public static FalconQueryClient getInteractive() {
+        return INTERACTIVE;
+    }
+
+    /**
+     * post one request to the query api
+     *
+     * @throws IOException when the request fails, times out or the response code is not 200
+     */
+    public List<GraphHistoryResponse> post(String url, GraphHistoryRequest request) throws IOException {
+        connManager.closeExpiredConnections();
+        connManager.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS);
+        return execute(new HttpPost(url), request);
+    }
+
+    /**
+     * query counters in chunks concurrently and merge the responses
+     */
+    public BatchResult query(String url, long start, long end, String cf, List<EndpointCounter> counters) {
+        long startTime = System.currentTimeMillis();
+        connManager.closeExpiredConnections();
+        connManager.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS);
+
+        List<ChunkTask> tasks = new ArrayList<>();
+        for (int i = 0; i < counters.size(); i += chunkSize) {
+            List<EndpointCounter> chunk = new ArrayList<>(counters.subList(i, Math.min(i + chunkSize, counters.size())));
+            tasks.add(new ChunkTask(url, new GraphHistoryRequest(start, end, cf, chunk)));
+        }
+        List<Future<List<GraphHistoryResponse>>> futures = new ArrayList<>(tasks.size());
+        for (ChunkTask task : tasks) {
+            futures.add(executor.submit(task));
+        }
+
+        // every request is bounded by timeout, chunks beyond the pool size wait for a free thread
+        long waitMillis = (long) timeout * ((tasks.size() + threads - 1) / threads + 1);
+        long deadline = startTime + waitMillis;
+        List<GraphHistoryResponse> responses = new ArrayList<>();
+        int failedChunks = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<GraphHistoryResponse>> future = futures.get(i);
+            try {
+                List<GraphHistoryResponse> chunkResponses =
+                        future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (chunkResponses != null) {
+                    responses.addAll(chunkResponses);
+                }
+            } catch (TimeoutException e) {
+                failedChunks++;
+                timeouts.incrementAndGet();
+                future.cancel(true);
+                tasks.get(i).abort();
+                logger.warn("falcon query chunk {} of {} timed out", i, url);
+            } catch (ExecutionException e) {
+                failedChunks++;
+                logger.warn("falcon query chunk {} of {} failed, message:{}", i, url, e.getCause().getMessage());
+            } catch (CancellationException e) {
+                failedChunks++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedChunks += futures.size() - i;
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                    tasks.get(j).abort();
+                }
+                break;
+            }
+        }
+        return new BatchResult(responses, tasks.size(), failedChunks, System.currentTimeMillis() - startTime);
+    }
+
+    private List<GraphHistoryResponse> execute(HttpPost post, GraphHistoryRequest request) throws IOException {
+        long start = System.currentTimeMillis();
+        inFlight.incrementAndGet();
+        requests.incrementAndGet();
+        try {
+            post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(request), ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = httpClient.execute(post)) {
+                HttpEntity entity = response.getEntity();
+                int code = response.getStatusLine().getStatusCode();
+                if (code != 200) {
+                    // read the body anyway so the connection goes back to the pool
+                    EntityUtils.consumeQuietly(entity);
+                    throw new IOException("error response code while post: " + code);
+                }
+                if (entity == null) {
+                    return new ArrayList<>();
+                }
+                try (InputStream inputStream = entity.getContent()) {
+                    return mapper.readValue(inputStream, new TypeReference<List<GraphHistoryResponse>>() {
+                    });
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            errors.incrementAndGet();
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            long cost = System.currentTimeMillis() - start;
+            latencyTotal.addAndGet(cost);
+            if (cost > maxLatency) {
+                maxLatency = cost;
+            }
+        }
+    }
+
+    public ClientStats stats() {
+        long count = requests.get();
+        PoolStats poolStats = connManager.getTotalStats();
+        return new ClientStats(chunkSize, threads, timeout, inFlight.get(), count, errors.get(), timeouts.get(),
+                count == 0 ? 0 : latencyTotal.get() / count, maxLatency, poolStats.getLeased(), poolStats.getAvailable());
+    }
+
+    private class ChunkTask implements Callable<List<GraphHistoryResponse>> {
+        private final HttpPost post;
+        private final GraphHistoryRequest request;
+
+        ChunkTask(String url, GraphHistoryRequest request) {
+            this.post = new HttpPost(url);
+            this.request = request;
+        }
+
+        @Override
+        public List<GraphHistoryResponse> call() throws IOException {
+            return execute(post, request);
+        }
+
+        void abort() {
+            post.abort();
+        }
+    }
+
+    public static class BatchResult {
+        private List<GraphHistoryResponse> responses;
+        private int chunks;
+        private int failedChunks;
+        private long durationMillis;
+
+        public BatchResult(List<GraphHistoryResponse> responses, int chunks, int failedChunks, long durationMillis) {
+            this.responses = responses;
+            this.chunks = chunks;
+            this.failedChunks = failedChunks;
+            this.durationMillis = durationMillis;
+        }
+
+        public List<GraphHistoryResponse> getResponses() {
+            return responses;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public int getFailedChunks() {
+            return failedChunks;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+
+    public static class ClientStats {
+        private int chunkSize;
+        private int threads;
+        private int timeoutMillis;
+        private int inFlight;
+        private long requests;
+        private long errors;
+        private long timeouts;
+        private long avgLatencyMillis;
+        private long maxLatencyMillis;
+        private int leasedConnections;
+        private int idleConnections;
+
+        public ClientStats(int chunkSize, int threads, int timeoutMillis, int inFlight, long requests, long errors,
+                           long timeouts, long avgLatencyMillis, long maxLatencyMillis, int leasedConnections,
+                           int idleConnections) {
+            this.chunkSize = chunkSize;
+            this.threads = threads;
+            this.timeoutMillis = timeoutMillis;
+            this.inFlight = inFlight;
+            this.requests = requests;
+            this.errors = errors;
+            this.timeouts = timeouts;
+            this.avgLatencyMillis = avgLatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+            this.leasedConnections = leasedConnections;
+            this.idleConnections = idleConnections;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getAvgLatencyMillis() {
+            return avgLatencyMillis;
+        }
+
+        public long getMaxLatencyMillis() {
+            return maxLatencyMillis;
+        }
+
+        public int getLeasedConnections() {
+            return leasedConnections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package org.domeos.framework.engine.websocket;
+
+import io.fabric8.kubernetes.client.dsl.LogWatch;
+import org.domeos.util.EnvUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.CloseReason;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans log streams out to websocket viewers.
+ * Every stream, a container or a build, is read by one upstream LogWatch however many viewers it has.
+ * The upstream is opened by its first subscriber and closed when the last one leaves; a late subscriber
+ * first gets the last REPLAY_CHARS chars read. Reading takes one thread per upstream from a bounded
+ * pool, sending is asynchronous and buffered per subscriber, see LogSubscriber.
+ */
+public class LogStreamHub {
+
+    private static Logger logger = LoggerFactory.getLogger(LogStreamHub.class);
+
+    public static final int DEFAULT_MAX_UPSTREAMS = 64;
+    public static final int DEFAULT_MAX_BUFFERED = 256 * 1024;
+    private static final int REPLAY_CHARS = 16 * 1024;
+    private static final int READ_BUFFER = 8 * 1024;
+    private static final long PING_INTERVAL = 30;
+
+    private static final LogStreamHub INSTANCE =
+            new LogStreamHub(EnvUtil.envInt("DOMEOS_LOG_UPSTREAMS", DEFAULT_MAX_UPSTREAMS));
+
+    /**
+     * opens the upstream of a stream, called on a reader thread
+     */
+    public interface LogSource {
+        LogWatch open() throws Exception;
+    }
+
+    private final ConcurrentHashMap<String, Upstream> upstreams = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor readers;
+    private final ScheduledExecutorService pinger;
+
+    private final AtomicLong readChars = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public LogStreamHub(int maxUpstreams) {
+        this.readers = new ThreadPoolExecutor(0, maxUpstreams, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                daemonFactory("log-upstream"));
+        this.pinger = Executors.newSingleThreadScheduledExecutor(daemonFactory("log-ping"));
+        pinger.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (Upstream upstream : upstreams.values()) {
+                    for (LogSubscriber subscriber : upstream.subscribers) {
+                        subscriber.ping();
+                    }
+                }
+            }
+        }, PING_INTERVAL, PING_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    public static LogStreamHub getInstance() {
+        return INSTANCE;
+    }
+
+    private static ThreadFactory daemonFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * @param key        identity of the stream, subscribers with the same key share the upstream
+     * @param source     opens the upstream if there is none yet
+     * @param subscriber receiver of the stream
+     * @throws IOException when no more upstreams can be opened
+     */
+    public void subscribe(String key, LogSource source, LogSubscriber subscriber) throws IOException {
+        while (true) {
+            Upstream upstream = upstreams.get(key);
+            if (upstream == null) {
+                Upstream created = new Upstream(key, source);
+                upstream = upstreams.putIfAbsent(key, created);
+                if (upstream == null) {
+                    created.add(subscriber);
+                    try {
+                        readers.execute(created);
+                    } catch (RejectedExecutionException e) {
+                        rejected.incrementAndGet();
+                        upstreams.remove(key, created);
+                        throw new IOException("too many log streams are open, try again later");
+                    }
+                    return;
+                }
+            }
+            if (upstream.add(subscriber)) {
+                return;
+            }
+            // the upstream is closing, it has been or is about to be removed
+            upstreams.remove(key, upstream);
+        }
+    }
+
+    public void unsubscribe(String key, LogSubscriber subscriber) {
+        subscriber.close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "unsubscribe"));
+        Upstream upstream = upstreams.get(key);
+        if (upstream != null && upstream.remove(subscriber)) {
+            upstreams.remove(key, upstream);
+        }
+    }
+
+    public HubStats stats() {
+        List<StreamStats> streams = new ArrayList<>();
+        int subscribers = 0;
+        for (Upstream upstream : upstreams.values()) {
+            streams.add(upstream.stats());
+            subscribers += upstream.subscribers.size();
+        }
+        return new HubStats(upstreams.size(), subscribers, readers.getActiveCount(), readChars.get(), rejected.get(),
+                streams);
+    }
+
+    private class Upstream implements Runnable {
+        private final String key;
+        private final LogSource source;
+        private final List<LogSubscriber> subscribers = new CopyOnWriteArrayList<>();
+        private final StringBuilder replay = new StringBuilder();
+        private boolean closing = false;
+        private LogWatch logWatch;
+        private long chars = 0;
+
+        Upstream(String key, LogSource source) {
+            this.key = key;
+            this.source = source;
+        }
+
+        boolean add(LogSubscriber subscriber) {
+            synchronized (this) {
+                if (closing) {
+                    return false;
+                }
+                if (replay.length() > 0) {
+                    subscriber.buffer(replay.toString());
+                }
+                subscribers.add(subscriber);
+            }
+            subscriber.flush();
+            return true;
+        }
+
+        /**
+         * @return true if it was the last subscriber and the upstream is closed
+         */
+        boolean remove(LogSubscriber subscriber) {
+            LogWatch toClose;
+            synchronized (this) {
+                subscribers.remove(subscriber);
+                if (!subscribers.isEmpty() || closing) {
+                    return false;
+                }
+                closing = true;
+                toClose = logWatch;
+            }
+            if (toClose != null) {
+                closeQuietly(toClose);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            String endMessage = "log end";
+            try {
+                LogWatch opened = source.open();
+                synchronized (this) {
+                    if (closing) {
+                        closeQuietly(opened);
+                        return;
+                    }
+                    logWatch = opened;
+                }
+                pump(opened.getOutput());
+            } catch (Exception e) {
+                synchronized (this) {
+                    if (closing) {
+                        return;
+                    }
+                }
+                logger.warn("read log of {} error, message is {}", key, e.getMessage());
+                endMessage = "read log error";
+                publish("\n" + (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()) + "\n");
+            } finally {
+                LogWatch toClose;
+                synchronized (this) {
+                    closing = true;
+                    toClose = logWatch;
+                    logWatch = null;
+                }
+                upstreams.remove(key, this);
+                if (toClose != null) {
+                    closeQuietly(toClose);
+                }
+                for (LogSubscriber subscriber : subscribers) {
+                    subscriber.finish(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, endMessage));
+                }
+            }
+        }
+
+        private void pump(InputStream inputStream) throws IOException {
+            // the reader keeps multi-byte chars split between two reads together
+            Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+            char[] buffer = new char[READ_BUFFER];
+            int len;
+            while ((len = reader.read(buffer)) >= 0) {
+                if (len > 0) {
+                    publish(new String(buffer, 0, len));
+                }
+            }
+        }
+
+        private void publish(String text) {
+            readChars.addAndGet(text.length());
+            synchronized (this) {
+                chars += text.length();
+                replay.append(text);
+                if (replay.length() > REPLAY_CHARS) {
+                    replay.delete(0, replay.length() - REPLAY_CHARS);
+                }
+                for (LogSubscriber subscriber : subscribers) {
+                    subscriber.buffer(text);
+                }
+            }
+            // subscribers send and close their sessions outside the lock, see LogSubscriber.flush()
+            for (LogSubscriber subscriber : subscribers) {
+                subscriber.flush();
+            }
+        }
+
+        synchronized StreamStats stats() {
+            long pending = 0;
+            long dropped = 0;
+            for (LogSubscriber subscriber : subscribers) {
+                pending += subscriber.getPending();
+                dropped += subscriber.getDroppedChars();
+            }
+            return new StreamStats(key, subscribers.size(), chars, pending, dropped);
+        }
+    }
+
+    private static void closeQuietly(LogWatch logWatch) {
+        try {
+            logWatch.close();
+        } catch (RuntimeException e) {
+            logger.debug("close log watch error, message is " + e.getMessage());
+        }
+    }
+
+    public static class HubStats {
+        private int upstreams;
+        private int subscribers;
+        private int activeReaders;
+        private long readChars;
+        private long rejected;
+        private List<StreamStats> streams;
+
+        public HubStats(int upstreams, int subscribers, int activeReaders, long readChars, long rejected,
+                        List<StreamStats> streams) {
+            this.upstreams = upstreams;
+            this.subscribers = subscribers;
+            this.activeReaders = activeReaders;
+            this.readChars = readChars;
+            this.rejected = rejected;
+            this.streams = streams;
+        }
+
+        public int getUpstreams() {
+            return upstreams;
+        }
+
+        public int getSubscribers() {
+            return subscribers;
+        }
+
+        public int getActiveReaders() {
+            return activeReaders;
+        }
+
+        public long getReadChars() {
+            return readChars;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public List<StreamStats> getStreams() {
+            return streams;
+        }
+    }
+
+    public static class StreamStats {
+        private String key;
+        private int subscribers;
+        private long chars;
+        private long pendingChars;
+        private long droppedChars;
+
+        public StreamStats(String key, int subscribers, long chars, long pendingChars, long droppedChars) {
+            this.key = key;
+            this.subscribers = subscribers;
+            this.chars = chars;
+            this.pendingChars = pendingChars;
+            this.droppedChars = droppedChars;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getSubscribers() {
+            return subscribers;
+        }
+
+        public long getChars() {
+            return chars;
+        }
+
+        public long getPendingChars() {
+            return pendingChars;
+        }
+
+        public long getDroppedChars() {
+            return droppedChars;
+        }
+    }
+}
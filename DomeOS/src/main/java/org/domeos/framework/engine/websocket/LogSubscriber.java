@@ -0,0 +1,252 @@
+package org.domeos.framework.engine.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One viewer of a log stream.
+ * Text is buffered and sent asynchronously, at most one frame in flight; whatever arrives meanwhile is
+ * coalesced into the next frame. When more than maxBuffered chars are waiting the consumer is too slow:
+ * with DROP the waiting text is dropped and replaced by a marker, with CLOSE the session is closed.
+ */
+public class LogSubscriber implements SendHandler {
+
+    private static Logger logger = LoggerFactory.getLogger(LogSubscriber.class);
+
+    public static final int MAX_FRAME = 64 * 1024;
+    private static final byte[] PING_DATA = "hello pings".getBytes(StandardCharsets.UTF_8);
+
+    public enum OverflowPolicy {
+        DROP, CLOSE
+    }
+
+    /**
+     * where the text goes, normally a websocket session
+     */
+    public interface LogSink {
+        void sendText(String text, SendHandler handler);
+
+        void sendPing() throws IOException;
+
+        void close(CloseReason reason);
+    }
+
+    private final LogSink sink;
+    private final OverflowPolicy policy;
+    private final int maxBuffered;
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean sending = false;
+    private boolean closeWhenDrained = false;
+    private CloseReason finishReason;
+    private CloseReason closeToSend;
+    private volatile boolean closed = false;
+
+    private long sentFrames = 0;
+    private long droppedChars = 0;
+
+    public LogSubscriber(LogSink sink, OverflowPolicy policy, int maxBuffered) {
+        this.sink = sink;
+        this.policy = policy;
+        this.maxBuffered = maxBuffered;
+    }
+
+    public static LogSubscriber forSession(Session session, OverflowPolicy policy, int maxBuffered) {
+        return new LogSubscriber(new SessionSink(session), policy, maxBuffered);
+    }
+
+    public void offer(String text) {
+        buffer(text);
+        flush();
+    }
+
+    /**
+     * Appends the text without calling the sink, flush() sends it. The hub buffers under its own lock,
+     * so every subscriber gets the text of an upstream in order, and flushes after releasing it.
+     */
+    synchronized void buffer(String text) {
+        if (closed || closeWhenDrained || text.isEmpty()) {
+            return;
+        }
+        if (pending.length() + text.length() > maxBuffered) {
+            if (policy == OverflowPolicy.CLOSE) {
+                logger.info("log consumer too slow, {} chars waiting, close it", pending.length());
+                markClosed(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "log consumer too slow"));
+                return;
+            }
+            int drop = pending.length();
+            pending.setLength(0);
+            if (text.length() > maxBuffered) {
+                drop += text.length() - maxBuffered;
+                text = text.substring(text.length() - maxBuffered);
+            }
+            droppedChars += drop;
+            pending.append("\n[").append(drop).append(" chars dropped]\n");
+        }
+        pending.append(text);
+    }
+
+    /**
+     * Sends the next frame unless one is in flight, or closes the sink when that is due. The sink is only
+     * called from here and never under a lock: closing a session runs the OnClose of its endpoint, which
+     * unsubscribes from the hub and takes the upstream lock, while the upstream buffers under it.
+     */
+    void flush() {
+        String frame = null;
+        CloseReason closeReason;
+        synchronized (this) {
+            if (!closed && !sending) {
+                frame = takeFrame();
+                if (frame == null && closeWhenDrained) {
+                    markClosed(finishReason);
+                }
+            }
+            closeReason = closeToSend;
+            closeToSend = null;
+        }
+        if (frame != null) {
+            try {
+                sink.sendText(frame, this);
+            } catch (RuntimeException e) {
+                logger.warn("send log message error, message is " + e.getMessage());
+                synchronized (this) {
+                    sending = false;
+                    markClosed(new CloseReason(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "send log message error"));
+                }
+                flush();
+            }
+        } else if (closeReason != null) {
+            sink.close(closeReason);
+        }
+    }
+
+    /**
+     * send what is buffered, then close the sink
+     */
+    public void finish(CloseReason reason) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closeWhenDrained = true;
+            finishReason = reason;
+        }
+        flush();
+    }
+
+    public void ping() {
+        if (closed) {
+            return;
+        }
+        try {
+            sink.sendPing();
+        } catch (IOException | RuntimeException e) {
+            logger.debug("send ping error, message is " + e.getMessage());
+        }
+    }
+
+    public void close(CloseReason reason) {
+        synchronized (this) {
+            markClosed(reason);
+        }
+        flush();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // called with the lock held, flush() closes the sink
+    private void markClosed(CloseReason reason) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending.setLength(0);
+        closeToSend = reason;
+    }
+
+    // called with the lock held, marks the frame in flight
+    private String takeFrame() {
+        if (pending.length() == 0) {
+            return null;
+        }
+        String frame;
+        if (pending.length() <= MAX_FRAME) {
+            frame = pending.toString();
+            pending.setLength(0);
+        } else {
+            int cut = MAX_FRAME;
+            if (Character.isHighSurrogate(pending.charAt(cut - 1))) {
+                cut--;
+            }
+            frame = pending.substring(0, cut);
+            pending.delete(0, cut);
+        }
+        sending = true;
+        sentFrames++;
+        return frame;
+    }
+
+    @Override
+    public void onResult(SendResult result) {
+        synchronized (this) {
+            sending = false;
+            if (!result.isOK()) {
+                logger.debug("send log message error, message is " + result.getException().getMessage());
+                markClosed(new CloseReason(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "send log message error"));
+            }
+        }
+        flush();
+    }
+
+    public synchronized int getPending() {
+        return pending.length();
+    }
+
+    public synchronized long getSentFrames() {
+        return sentFrames;
+    }
+
+    public synchronized long getDroppedChars() {
+        return droppedChars;
+    }
+
+    private static class SessionSink implements LogSink {
+        private final Session session;
+
+        SessionSink(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public void sendText(String text, SendHandler handler) {
+            session.getAsyncRemote().sendText(text, handler);
+        }
+
+        @Override
+        public void sendPing() throws IOException {
+            session.getAsyncRemote().sendPing(ByteBuffer.wrap(PING_DATA));
+        }
+
+        @Override
+        public void close(CloseReason reason) {
+            if (!session.isOpen()) {
+                return;
+            }
+            try {
+                session.close(reason);
+            } catch (IOException e) {
+                logger.debug("close websocket session error, message is " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package org.domeos.framework.engine.websocket;
 
-import org.domeos.framework.engine.websocket.Connection;
-
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by feiliu206363 on 2015/12/4.
@@ -12,15 +11,28 @@ public enum WebSocketConnectPool {
 
     INSTANCE;
 
-    private static List<Connection> connections = new LinkedList<>();
+    // endpoints call removeConnection from both onError and onClose, only the first call stops the connection
+    private static Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
 
     public void addConnection(Connection connection) throws Exception {
-        connections.add(connection);
-        connection.sendMessage();
+        if (!connections.add(connection)) {
+            return;
+        }
+        try {
+            connection.sendMessage();
+        } catch (Exception e) {
+            connections.remove(connection);
+            throw e;
+        }
     }
 
     public void removeConnection(Connection connection) {
-        connection.stopMessage();
-        connections.remove(connection);
+        if (connections.remove(connection)) {
+            connection.stopMessage();
+        }
+    }
+
+    public int size() {
+        return connections.size();
     }
 }
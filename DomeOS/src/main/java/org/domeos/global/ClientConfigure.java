@@ -1,8 +1,5 @@
 package org.domeos.global;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
 public class ClientConfigure {
     /* The default timeout for http connect. */
     public static final int DEFAULT_TIMEOUT = 30 * 1000;
@@ -18,8 +15,4 @@ public class ClientConfigure {
     public void setTimeout(int timeout) {
         this.timeout = timeout;
     }
-
-    public static final int THREAD_NUMBER = 50;
-
-    public static ExecutorService executorService = Executors.newFixedThreadPool(THREAD_NUMBER);
 }
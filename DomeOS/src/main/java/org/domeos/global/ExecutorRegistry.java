@@ -0,0 +1,71 @@
+package org.domeos.global;
+
+import org.domeos.util.EnvUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named executors, one bounded pool per workload so that a slow or busy workload can not starve the
+ * others. Threads and queue size of a pool can be set by DOMEOS_EXECUTOR_{NAME}_THREADS and
+ * DOMEOS_EXECUTOR_{NAME}_QUEUE, with the name in upper case.
+ */
+public class ExecutorRegistry {
+
+    public static final String DEPLOYMENT = "deployment";
+    public static final String CLUSTER = "cluster";
+    public static final String IMAGE = "image";
+    public static final String REGISTRY = "registry";
+    public static final String GITLAB = "gitlab";
+    public static final String GITLAB_INDEX = "gitlab-index";
+    public static final String PROJECT = "project";
+    public static final String ALARM = "alarm";
+    public static final String MONITOR = "monitor";
+
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_QUEUE = 1000;
+
+    private static final Map<String, Integer> DEFAULT_WORKLOAD_THREADS = new HashMap<>();
+
+    static {
+        DEFAULT_WORKLOAD_THREADS.put(DEPLOYMENT, 16);
+        DEFAULT_WORKLOAD_THREADS.put(IMAGE, 16);
+        DEFAULT_WORKLOAD_THREADS.put(REGISTRY, 16);
+        DEFAULT_WORKLOAD_THREADS.put(GITLAB, 16);
+    }
+
+    private static final ConcurrentHashMap<String, WorkloadExecutor> EXECUTORS = new ConcurrentHashMap<>();
+
+    /**
+     * @return the executor of the workload, created on first use; a full executor runs tasks in the
+     * submitting thread
+     */
+    public static WorkloadExecutor get(String name) {
+        WorkloadExecutor executor = EXECUTORS.get(name);
+        if (executor != null) {
+            return executor;
+        }
+        Integer defaultThreads = DEFAULT_WORKLOAD_THREADS.get(name);
+        String envName = "DOMEOS_EXECUTOR_" + name.toUpperCase().replace('-', '_');
+        WorkloadExecutor created = new WorkloadExecutor(name,
+                EnvUtil.envInt(envName + "_THREADS", defaultThreads == null ? DEFAULT_THREADS : defaultThreads),
+                EnvUtil.envInt(envName + "_QUEUE", DEFAULT_QUEUE), WorkloadExecutor.RejectPolicy.CALLER_RUNS);
+        executor = EXECUTORS.putIfAbsent(name, created);
+        if (executor != null) {
+            created.shutdown();
+            return executor;
+        }
+        return created;
+    }
+
+    public static List<WorkloadExecutor.ExecutorStats> listStats() {
+        List<WorkloadExecutor.ExecutorStats> stats = new ArrayList<>(EXECUTORS.size());
+        for (WorkloadExecutor executor : EXECUTORS.values()) {
+            stats.add(executor.stats());
+        }
+        return stats;
+    }
+}
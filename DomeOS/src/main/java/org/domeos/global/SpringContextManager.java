@@ -1,6 +1,5 @@
 package org.domeos.global;
 
-import org.domeos.framework.engine.event.DMEvent;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -27,8 +26,4 @@ public class SpringContextManager implements ApplicationContextAware {
     public static <T> T getBean(Class<T> clazz) {
         return instance.context.getBean(clazz);
     }
-
-    public static void publishEvent(DMEvent event) {
-        instance.context.publishEvent(event);
-    }
 }
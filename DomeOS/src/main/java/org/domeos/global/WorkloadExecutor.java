@@ -0,0 +1,247 @@
+package org.domeos.global;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of one workload, see ExecutorRegistry.
+ * A future returned by submit() runs its task in the thread calling get() if no worker has taken it
+ * yet, so a task that fans out to the pool it runs on and waits for the results helps instead of
+ * blocking a worker, and a full pool can not deadlock on nested tasks.
+ */
+public class WorkloadExecutor extends ThreadPoolExecutor {
+
+    public enum RejectPolicy {
+        /**
+         * run the task in the submitting thread
+         */
+        CALLER_RUNS,
+        /**
+         * throw RejectedExecutionException
+         */
+        ABORT
+    }
+
+    private final String name;
+    private final int queueCapacity;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong helped = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong runNanos = new AtomicLong();
+    private volatile long maxWaitNanos = 0;
+
+    public WorkloadExecutor(final String name, int threads, int queueCapacity, final RejectPolicy policy) {
+        super(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-exec-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                rejected.incrementAndGet();
+                if (policy == RejectPolicy.CALLER_RUNS && !executor.isShutdown()) {
+                    r.run();
+                    return;
+                }
+                throw new RejectedExecutionException(WorkloadExecutor.this.name + " executor is full");
+            }
+        });
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new WorkloadTask<>(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WorkloadTask<>(runnable, value);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!(command instanceof WorkloadTask)) {
+            command = new WorkloadTask<Void>(command, null);
+        }
+        submitted.incrementAndGet();
+        super.execute(command);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ExecutorStats stats() {
+        long done = completed.get();
+        return new ExecutorStats(name, getMaximumPoolSize(), getPoolSize(), getActiveCount(), getQueue().size(),
+                queueCapacity, submitted.get(), done, rejected.get(), helped.get(),
+                done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / done),
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos),
+                done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(runNanos.get() / done));
+    }
+
+    private class WorkloadTask<T> extends FutureTask<T> {
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final long queuedAt = System.nanoTime();
+
+        WorkloadTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        WorkloadTask(Runnable runnable, T value) {
+            super(runnable, value);
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            long start = System.nanoTime();
+            long wait = start - queuedAt;
+            waitNanos.addAndGet(wait);
+            if (wait > maxWaitNanos) {
+                maxWaitNanos = wait;
+            }
+            try {
+                super.run();
+            } finally {
+                runNanos.addAndGet(System.nanoTime() - start);
+                completed.incrementAndGet();
+            }
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            helpIfQueued();
+            return super.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            helpIfQueued();
+            return super.get(timeout, unit);
+        }
+
+        private void helpIfQueued() {
+            if (!started.get() && remove(this)) {
+                helped.incrementAndGet();
+                run();
+            }
+        }
+    }
+
+    public static class ExecutorStats {
+        private String name;
+        private int maxThreads;
+        private int poolSize;
+        private int activeThreads;
+        private int queueDepth;
+        private int queueCapacity;
+        private long submitted;
+        private long completed;
+        private long rejected;
+        private long helped;
+        private long avgWaitMillis;
+        private long maxWaitMillis;
+        private long avgRunMillis;
+
+        public ExecutorStats(String name, int maxThreads, int poolSize, int activeThreads, int queueDepth,
+                             int queueCapacity, long submitted, long completed, long rejected, long helped,
+                             long avgWaitMillis, long maxWaitMillis, long avgRunMillis) {
+            this.name = name;
+            this.maxThreads = maxThreads;
+            this.poolSize = poolSize;
+            this.activeThreads = activeThreads;
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.helped = helped;
+            this.avgWaitMillis = avgWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+            this.avgRunMillis = avgRunMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public int getActiveThreads() {
+            return activeThreads;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return tasks run by the thread waiting for them before a worker took them
+         */
+        public long getHelped() {
+            return helped;
+        }
+
+        public long getAvgWaitMillis() {
+            return avgWaitMillis;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        public long getAvgRunMillis() {
+            return avgRunMillis;
+        }
+    }
+}
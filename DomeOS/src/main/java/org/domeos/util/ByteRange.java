@@ -0,0 +1,103 @@
+package org.domeos.util;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.regex.Pattern;
+
+/**
+ * Part of a resource to send, resolved from a single range "Range: bytes=..." header or
+ * from offset/tail request parameters. Multiple ranges are not supported, the whole resource is sent.
+ */
+public class ByteRange {
+    private static final Pattern RANGE_PATTERN = Pattern.compile("\\d+-\\d*|-\\d+");
+
+    private long start;
+    private long end;
+    private boolean partial;
+
+    public ByteRange(long start, long end, boolean partial) {
+        this.start = start;
+        this.end = end;
+        this.partial = partial;
+    }
+
+    /**
+     * @param rangeHeader value of the Range header, may be null
+     * @param offset      first byte to send, may be null
+     * @param tail        number of bytes to send from the end, may be null
+     * @param total       length of the resource
+     * @return range to send, null if the range can not be satisfied
+     */
+    public static ByteRange resolve(String rangeHeader, Long offset, Long tail, long total) {
+        if (!StringUtils.isBlank(rangeHeader)) {
+            String spec = rangeHeader.trim();
+            // a header that is not a single byte range is ignored
+            if (spec.startsWith("bytes=") && RANGE_PATTERN.matcher(spec.substring("bytes=".length()).trim()).matches()) {
+                return parseRange(spec.substring("bytes=".length()).trim(), total);
+            }
+        }
+        if (tail != null) {
+            if (tail < 0) {
+                return null;
+            }
+            return new ByteRange(Math.max(0, total - tail), total, false);
+        }
+        if (offset != null) {
+            if (offset < 0 || offset > total) {
+                return null;
+            }
+            return new ByteRange(offset, total, false);
+        }
+        return new ByteRange(0, total, false);
+    }
+
+    private static ByteRange parseRange(String spec, long total) {
+        int dash = spec.indexOf('-');
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // bytes=-n, the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || total == 0) {
+                    return null;
+                }
+                return new ByteRange(Math.max(0, total - suffix), total, true);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? total : Math.min(total, Long.parseLong(last) + 1);
+            if (start < 0 || start >= total || end <= start) {
+                return null;
+            }
+            return new ByteRange(start, end, true);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return index after the last byte to send
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start;
+    }
+
+    /**
+     * @return true if resolved from a Range header and should be answered with 206
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public String contentRange(long total) {
+        return "bytes " + start + "-" + (end - 1) + "/" + total;
+    }
+}
@@ -0,0 +1,47 @@
+package org.domeos.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads tuning parameters from environment variables.
+ */
+public class EnvUtil {
+
+    private static Logger logger = LoggerFactory.getLogger(EnvUtil.class);
+
+    /**
+     * @return the positive int in the environment variable, or defaultValue if it is not set or not valid
+     */
+    public static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            return parsed > 0 ? parsed : defaultValue;
+        } catch (NumberFormatException e) {
+            logger.warn("illegal value {} for {}, use default {}", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return the positive long in the environment variable, or defaultValue if it is not set or not valid
+     */
+    public static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            return parsed > 0 ? parsed : defaultValue;
+        } catch (NumberFormatException e) {
+            logger.warn("illegal value {} for {}, use default {}", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package org.domeos.util;
 
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
@@ -9,25 +16,110 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
+import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by feiliu206363 on 2015/12/8.
  */
 public class HttpsClient {
-    public static int SocketTimeout = 20000;
-    public static int ConnectTimeout = 20000;
+    private static Logger logger = LoggerFactory.getLogger(HttpsClient.class);
 
+    public static int SocketTimeout = EnvUtil.envInt("DOMEOS_HTTPS_SOCKET_TIMEOUT", 20000);
+    public static int ConnectTimeout = EnvUtil.envInt("DOMEOS_HTTPS_CONNECT_TIMEOUT", 20000);
+
+    public static final int DEFAULT_MAX_TOTAL = 100;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final int DEFAULT_KEEP_ALIVE = 30000;
+    private static final long EVICT_INTERVAL = 10;
+
+    private static final HttpsClient INSTANCE = new HttpsClient(
+            EnvUtil.envInt("DOMEOS_HTTPS_MAX_TOTAL", DEFAULT_MAX_TOTAL),
+            EnvUtil.envInt("DOMEOS_HTTPS_MAX_PER_ROUTE", DEFAULT_MAX_PER_ROUTE),
+            ConnectTimeout, SocketTimeout,
+            EnvUtil.envInt("DOMEOS_HTTPS_KEEP_ALIVE", DEFAULT_KEEP_ALIVE));
+
+    private final PoolingHttpClientConnectionManager connManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService evictor;
+    private final ConcurrentHashMap<String, HostStats> hostStats = new ConcurrentHashMap<>();
+
+    /**
+     * one client for all calls, connections are pooled per route and kept alive for at most keepAlive
+     * millis, connections idle for keepAlive millis are closed in the background
+     */
+    public HttpsClient(int maxTotal, int maxPerRoute, int connectTimeout, int socketTimeout, final int keepAlive) {
+        connManager = new PoolingHttpClientConnectionManager(buildRegistry());
+        connManager.setMaxTotal(maxTotal);
+        connManager.setDefaultMaxPerRoute(maxPerRoute);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .build();
+        ConnectionKeepAliveStrategy keepAliveStrategy = new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = super.getKeepAliveDuration(response, context);
+                return duration > 0 && duration < keepAlive ? duration : keepAlive;
+            }
+        };
+        httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .build();
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "https-client-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connManager.closeExpiredConnections();
+                connManager.closeIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+            }
+        }, EVICT_INTERVAL, EVICT_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    public static HttpsClient getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the shared client, responses must be closed and the client must not be
+     */
     public static CloseableHttpClient getHttpClient() {
+        return INSTANCE.httpClient;
+    }
+
+    private static Registry<ConnectionSocketFactory> buildRegistry() {
         RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.create();
         ConnectionSocketFactory plainSF = new PlainConnectionSocketFactory();
         registryBuilder.register("http", plainSF);
@@ -45,8 +137,145 @@ public class HttpsClient {
         } catch (KeyStoreException | KeyManagementException | NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
-        Registry<ConnectionSocketFactory> registry = registryBuilder.build();
-        PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager(registry);
-        return HttpClientBuilder.create().setConnectionManager(connManager).build();
+        return registryBuilder.build();
+    }
+
+    /**
+     * execute the request with the shared client and count it for its host, the latency is the time
+     * until the response head is read. The response must be closed.
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        HttpHost host = URIUtils.extractHost(request.getURI());
+        String hostKey = host == null ? "unknown" : host.toHostString();
+        HostStats stats = hostStats.get(hostKey);
+        if (stats == null) {
+            HostStats created = new HostStats(hostKey);
+            stats = hostStats.putIfAbsent(hostKey, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        long start = System.currentTimeMillis();
+        try {
+            CloseableHttpResponse response = httpClient.execute(request);
+            stats.record(System.currentTimeMillis() - start, response.getStatusLine().getStatusCode(), false);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            stats.record(System.currentTimeMillis() - start, 0, true);
+            throw e;
+        }
+    }
+
+    public void close() {
+        evictor.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.debug("close http client error, message is " + e.getMessage());
+        }
+    }
+
+    public ClientStats stats() {
+        PoolStats poolStats = connManager.getTotalStats();
+        List<HostStats> hosts = new ArrayList<>(hostStats.values());
+        return new ClientStats(poolStats.getMax(), connManager.getDefaultMaxPerRoute(), poolStats.getLeased(),
+                poolStats.getAvailable(), poolStats.getPending(), hosts);
+    }
+
+    public static class ClientStats {
+        private int maxTotal;
+        private int maxPerRoute;
+        private int leasedConnections;
+        private int idleConnections;
+        private int pendingRequests;
+        private List<HostStats> hosts;
+
+        public ClientStats(int maxTotal, int maxPerRoute, int leasedConnections, int idleConnections,
+                           int pendingRequests, List<HostStats> hosts) {
+            this.maxTotal = maxTotal;
+            this.maxPerRoute = maxPerRoute;
+            this.leasedConnections = leasedConnections;
+            this.idleConnections = idleConnections;
+            this.pendingRequests = pendingRequests;
+            this.hosts = hosts;
+        }
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public int getMaxPerRoute() {
+            return maxPerRoute;
+        }
+
+        public int getLeasedConnections() {
+            return leasedConnections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        public int getPendingRequests() {
+            return pendingRequests;
+        }
+
+        public List<HostStats> getHosts() {
+            return hosts;
+        }
+    }
+
+    public static class HostStats {
+        private final String host;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong serverErrors = new AtomicLong();
+        private final AtomicLong latencyTotal = new AtomicLong();
+        private volatile long maxLatency = 0;
+
+        public HostStats(String host) {
+            this.host = host;
+        }
+
+        void record(long latency, int statusCode, boolean failed) {
+            requests.incrementAndGet();
+            latencyTotal.addAndGet(latency);
+            if (latency > maxLatency) {
+                maxLatency = latency;
+            }
+            if (failed) {
+                failures.incrementAndGet();
+            } else if (statusCode >= 500) {
+                serverErrors.incrementAndGet();
+            }
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * @return requests that got no response
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getServerErrors() {
+            return serverErrors.get();
+        }
+
+        public long getAvgLatencyMillis() {
+            long count = requests.get();
+            return count == 0 ? 0 : latencyTotal.get() / count;
+        }
+
+        public long getMaxLatencyMillis() {
+            return maxLatency;
+        }
     }
 }
@@ -0,0 +1,495 @@
+package org.domeos.util;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection pool on top of MysqlDriverManagerDataSource, it keeps the MYSQL_* env override
+ * of url, username and password. Connections handed out are proxies, close() gives the
+ * physical connection back to the pool instead of closing it.
+ * The pool is filled lazily on the first getConnection(), so nothing is opened while
+ * MultipleDataSource routes to H2.
+ */
+public class MysqlPooledDataSource extends MysqlDriverManagerDataSource implements DisposableBean {
+
+    private int minIdle = 2;
+    private int maxIdle = 8;
+    private int maxActive = 32;
+    private long maxWait = 10 * 1000;
+    private boolean testOnBorrow = true;
+    private String validationQuery;
+    private int validationTimeout = 3;
+    private long idleTimeout = 10 * 60 * 1000;
+    private long leakDetectionThreshold = 5 * 60 * 1000;
+    // the stack of every borrow is an exception per statement, only for hunting a reported leak
+    private boolean leakStackTrace = false;
+    private long maintenanceInterval = 30 * 1000;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> active = Collections.newSetFromMap(
+            new ConcurrentHashMap<PooledConnection, Boolean>());
+    private volatile Semaphore permits;
+    private ScheduledExecutorService maintainer;
+    private volatile boolean closed = false;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong waitTimeTotal = new AtomicLong();
+    private final AtomicLong waitTimeMax = new AtomicLong();
+    private final AtomicLong waitTimeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    public MysqlPooledDataSource() {
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return borrow();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // the pool only holds connections of the configured account
+        return getConnectionFromDriver(username, password);
+    }
+
+    private Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        start();
+        long begin = System.currentTimeMillis();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long wait = System.currentTimeMillis() - begin;
+        waitTimeTotal.addAndGet(wait);
+        updateMax(waitTimeMax, wait);
+        if (!acquired) {
+            waitTimeouts.incrementAndGet();
+            throw new SQLException("Timeout waiting for a connection after " + wait + "ms, active=" + active.size()
+                    + ", maxActive=" + maxActive);
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (!testOnBorrow || isValid(pooled.physical)) {
+                    break;
+                }
+                validationFailures.incrementAndGet();
+                destroy(pooled);
+            }
+            if (pooled == null) {
+                pooled = create();
+            }
+            pooled.borrowTime = System.currentTimeMillis();
+            pooled.borrower = Thread.currentThread();
+            pooled.borrowStack = leakDetectionThreshold > 0 && leakStackTrace
+                    ? new Exception("connection borrowed here") : null;
+            pooled.leakReported = false;
+            active.add(pooled);
+            borrowed.incrementAndGet();
+            return pooled.newProxy();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        if (!active.remove(pooled)) {
+            return;
+        }
+        try {
+            boolean reusable = !closed && !pooled.physical.isClosed() && idle.size() < maxIdle;
+            if (reusable) {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                if (pooled.physical.isReadOnly()) {
+                    pooled.physical.setReadOnly(false);
+                }
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            } else {
+                destroy(pooled);
+            }
+        } catch (SQLException e) {
+            logger.warn("reset returned connection failed, discard it: " + e.getMessage());
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = getConnectionFromDriver(getUsername(), getPassword());
+        created.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        destroyed.incrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.debug("close physical connection failed: " + e.getMessage());
+        }
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            if (validationQuery == null || validationQuery.isEmpty()) {
+                return connection.isValid(validationTimeout);
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(validationTimeout);
+                statement.execute(validationQuery);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void start() {
+        if (permits == null) {
+            synchronized (this) {
+                if (permits == null) {
+                    startMaintainer();
+                    permits = new Semaphore(maxActive, true);
+                }
+            }
+        }
+    }
+
+    private void startMaintainer() {
+        maintainer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "mysql-pool-maintainer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        maintainer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    maintain();
+                } catch (Exception e) {
+                    logger.warn("mysql pool maintenance failed: " + e.getMessage());
+                }
+            }
+        }, 0, maintenanceInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Evict idle connections beyond minIdle that were not used for idleTimeout, refill the pool
+     * up to minIdle and report connections held longer than leakDetectionThreshold.
+     */
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && idle.size() > minIdle) {
+            PooledConnection pooled = iterator.next();
+            if (now - pooled.lastUsed > idleTimeout && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+        while (!closed && idle.size() < minIdle && active.size() + idle.size() < maxActive) {
+            try {
+                PooledConnection pooled = create();
+                pooled.lastUsed = now;
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                logger.warn("fill mysql pool failed: " + e.getMessage());
+                break;
+            }
+        }
+        if (leakDetectionThreshold > 0) {
+            for (PooledConnection pooled : active) {
+                if (!pooled.leakReported && now - pooled.borrowTime > leakDetectionThreshold) {
+                    pooled.leakReported = true;
+                    leaks.incrementAndGet();
+                    String message = "connection is held for " + (now - pooled.borrowTime) + "ms by thread "
+                            + pooled.borrower.getName() + ", possible leak";
+                    if (pooled.borrowStack != null) {
+                        logger.warn(message, pooled.borrowStack);
+                    } else {
+                        logger.warn(message + ", set leakStackTrace to log where it was borrowed");
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        closed = true;
+        if (maintainer != null) {
+            maintainer.shutdownNow();
+        }
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    public PoolStats getStats() {
+        long borrowCount = borrowed.get();
+        return new PoolStats(active.size(), idle.size(), maxActive, created.get(), destroyed.get(), borrowCount,
+                borrowCount == 0 ? 0 : waitTimeTotal.get() / borrowCount, waitTimeMax.get(), waitTimeouts.get(),
+                validationFailures.get(), leaks.get());
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private class PooledConnection implements InvocationHandler {
+        private final Connection physical;
+        private volatile long borrowTime;
+        private volatile long lastUsed;
+        private volatile Thread borrower;
+        private volatile Exception borrowStack;
+        private volatile boolean leakReported;
+        private Connection proxy;
+        private boolean logicallyClosed;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        synchronized Connection newProxy() {
+            logicallyClosed = false;
+            proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class[]{Connection.class}, this);
+            return proxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            synchronized (this) {
+                boolean current = proxy == this.proxy && !logicallyClosed;
+                switch (name) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled" + physical.toString();
+                    case "isClosed":
+                        return !current || physical.isClosed();
+                    case "close":
+                        if (current) {
+                            logicallyClosed = true;
+                            giveBack(this);
+                        }
+                        return null;
+                    default:
+                        if (!current) {
+                            throw new SQLException("Connection is closed");
+                        }
+                }
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    public static class PoolStats {
+        private int active;
+        private int idle;
+        private int maxActive;
+        private long created;
+        private long destroyed;
+        private long borrowed;
+        private long waitTimeAvg;
+        private long waitTimeMax;
+        private long waitTimeouts;
+        private long validationFailures;
+        private long leaks;
+
+        public PoolStats(int active, int idle, int maxActive, long created, long destroyed, long borrowed,
+                         long waitTimeAvg, long waitTimeMax, long waitTimeouts, long validationFailures, long leaks) {
+            this.active = active;
+            this.idle = idle;
+            this.maxActive = maxActive;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.borrowed = borrowed;
+            this.waitTimeAvg = waitTimeAvg;
+            this.waitTimeMax = waitTimeMax;
+            this.waitTimeouts = waitTimeouts;
+            this.validationFailures = validationFailures;
+            this.leaks = leaks;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getMaxActive() {
+            return maxActive;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getDestroyed() {
+            return destroyed;
+        }
+
+        public long getBorrowed() {
+            return borrowed;
+        }
+
+        public long getWaitTimeAvg() {
+            return waitTimeAvg;
+        }
+
+        public long getWaitTimeMax() {
+            return waitTimeMax;
+        }
+
+        public long getWaitTimeouts() {
+            return waitTimeouts;
+        }
+
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        public long getLeaks() {
+            return leaks;
+        }
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public boolean isTestOnBorrow() {
+        return testOnBorrow;
+    }
+
+    public void setTestOnBorrow(boolean testOnBorrow) {
+        this.testOnBorrow = testOnBorrow;
+    }
+
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(int validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
+    public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+        this.leakDetectionThreshold = leakDetectionThreshold;
+    }
+
+    public boolean isLeakStackTrace() {
+        return leakStackTrace;
+    }
+
+    public void setLeakStackTrace(boolean leakStackTrace) {
+        this.leakStackTrace = leakStackTrace;
+    }
+
+    public long getMaintenanceInterval() {
+        return maintenanceInterval;
+    }
+
+    public void setMaintenanceInterval(long maintenanceInterval) {
+        this.maintenanceInterval = maintenanceInterval;
+    }
+}
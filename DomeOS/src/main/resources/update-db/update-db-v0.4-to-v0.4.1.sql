@@ -0,0 +1,39 @@
+USE domeos;
+
+-- build logs are stored as compressed segments, build_history.log is kept for logs uploaded before
+CREATE TABLE IF NOT EXISTS `build_log_segment` (
+  `buildId` INT(11) NOT NULL,
+  `seq` INT(11) NOT NULL,
+  `rawOffset` BIGINT(20) NOT NULL COMMENT 'offset of the segment in the log',
+  `rawLength` INT(11) NOT NULL COMMENT 'length of the segment before compression',
+  `data` MEDIUMBLOB NOT NULL COMMENT 'deflated segment',
+  PRIMARY KEY (`buildId`, `seq`)
+)ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- gitlab projects visible to a gitlab token, served as the code source list
+CREATE TABLE IF NOT EXISTS `gitlab_project_index` (
+  `gitlabId` INT(11) NOT NULL COMMENT 'id in gitlab_user',
+  `projectId` INT(11) NOT NULL COMMENT 'project id in gitlab',
+  `nameWithNamespace` VARCHAR(1024) NULL DEFAULT NULL,
+  `sshUrl` VARCHAR(1024) NULL DEFAULT NULL,
+  `httpUrl` VARCHAR(1024) NULL DEFAULT NULL,
+  `description` TEXT NULL,
+  `accessLevel` VARCHAR(64) NULL DEFAULT NULL COMMENT 'null when the token can not use the project',
+  `createTime` BIGINT(20) NOT NULL DEFAULT '0',
+  `lastActivityAt` BIGINT(20) NOT NULL DEFAULT '0',
+  PRIMARY KEY (`gitlabId`, `projectId`)
+)ENGINE=InnoDB DEFAULT CHARSET=utf8;
+CREATE INDEX `gitlab_project_index_projectId` ON gitlab_project_index(`projectId`);
+
+CREATE TABLE IF NOT EXISTS `gitlab_project_index_state` (
+  `gitlabId` INT(11) NOT NULL COMMENT 'id in gitlab_user',
+  `refreshTime` BIGINT(20) NOT NULL DEFAULT '0',
+  `fullRefreshTime` BIGINT(20) NOT NULL DEFAULT '0' COMMENT 'last refresh fetching the access of every project',
+  PRIMARY KEY (`gitlabId`)
+)ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE IF NOT EXISTS `global_version` (
+  `id` INT(11) NOT NULL,
+  `version` BIGINT(20) NOT NULL DEFAULT '0' COMMENT 'increased on every change of global',
+  PRIMARY KEY (`id`)
+)ENGINE=InnoDB DEFAULT CHARSET=utf8;
@@ -0,0 +1,73 @@
+package org.domeos.framework.api.biz.global.impl;
+
+import org.domeos.base.BaseTestCase;
+import org.domeos.framework.api.mapper.global.GlobalMapper;
+import org.domeos.framework.api.model.global.ClusterMonitor;
+import org.domeos.framework.api.model.global.GlobalType;
+import org.domeos.framework.api.model.global.WebSsh;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class GlobalBizImplTest extends BaseTestCase {
+
+    @Autowired
+    GlobalMapper globalMapper;
+
+    // a biz of its own per simulated replica, sharing the database
+    private GlobalBizImpl replica(long pollInterval) {
+        GlobalBizImpl globalBiz = new GlobalBizImpl();
+        globalBiz.globalMapper = globalMapper;
+        globalBiz.pollInterval = pollInterval;
+        return globalBiz;
+    }
+
+    @Test
+    public void testWriteReplacesSnapshot() {
+        GlobalBizImpl globalBiz = replica(60000);
+        assertNull(globalBiz.getWebSsh());
+
+        WebSsh webSsh = new WebSsh();
+        webSsh.setUrl("http://webssh-1:8888");
+        globalBiz.setWebSsh(webSsh);
+        assertEquals("http://webssh-1:8888", globalBiz.getWebSsh().getUrl());
+
+        webSsh.setUrl("http://webssh-2:8888");
+        globalBiz.updateWebSsh(webSsh);
+        assertEquals("http://webssh-2:8888", globalBiz.getWebSsh().getUrl());
+        assertEquals("http://webssh-2:8888", globalBiz.getGlobalInfoById(webSsh.getId()).getValue());
+
+        globalBiz.deleteWebSsh();
+        assertNull(globalBiz.getWebSsh());
+    }
+
+    @Test
+    public void testOtherReplicaSeenAfterVersionPoll() {
+        GlobalBizImpl writer = replica(60000);
+        GlobalBizImpl polling = replica(0);
+        GlobalBizImpl notPolling = replica(60000);
+        assertNull(polling.getMonitor().getQuery());
+        assertNull(notPolling.getMonitor().getQuery());
+
+        ClusterMonitor monitor = new ClusterMonitor();
+        monitor.setQuery("falcon-query:9966");
+        monitor.setTransfer("falcon-transfer:8433");
+        writer.addMonitor(monitor);
+
+        assertEquals("falcon-query:9966", polling.getMonitor().getQuery());
+        assertEquals("falcon-transfer:8433", polling.getMonitor().getTransfer());
+        // served from its snapshot until its next poll
+        assertNull(notPolling.getMonitor().getQuery());
+
+        writer.deleteMonitor();
+        assertNull(writer.getMonitor().getQuery());
+    }
+
+    @Test
+    public void testReturnedInfoIsACopy() {
+        GlobalBizImpl globalBiz = replica(60000);
+        String server = globalBiz.getGlobalInfoByType(GlobalType.SERVER).getValue();
+        globalBiz.getGlobalInfoByType(GlobalType.SERVER).setValue("changed");
+        assertEquals(server, globalBiz.getGlobalInfoByType(GlobalType.SERVER).getValue());
+        assertEquals(server, globalBiz.getServer().getUrl());
+    }
+}
@@ -5,6 +5,12 @@ import org.domeos.framework.api.model.ci.BuildHistory;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
 /**
  * Created by feiliu206363 on 2016/4/7.
  */
@@ -21,4 +27,83 @@ public class ProjectBizTest extends BaseTestCase {
         projectBiz.addBuildHistory(history);
     }
 
-}
\ No newline at end of file
+    private static byte[] buildLog(int length) {
+        byte[] log = new byte[length];
+        for (int i = 0; i < length; i++) {
+            log[i] = (byte) ('a' + (i * 31 + i / 7) % 26);
+        }
+        return log;
+    }
+
+    private byte[] readLog(int buildId, long offset, long length) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        projectBiz.writeBuildLogById(buildId, offset, length, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void testBuildLogSegments() throws Exception {
+        BuildHistory history = new BuildHistory();
+        history.setName("log");
+        history.setSecret("aaa");
+        history.setProjectId(1);
+        projectBiz.addBuildHistory(history);
+
+        byte[] log = buildLog(2 * 1024 * 1024 + 12345);
+        assertEquals(log.length, projectBiz.insertBuildLogById(history.getId(), new ByteArrayInputStream(log)));
+        assertEquals(log.length, projectBiz.getBuildLogLengthById(history.getId()));
+        assertTrue(Arrays.equals(log, readLog(history.getId(), 0, log.length)));
+
+        // across the first and second segment
+        long offset = 1024 * 1024 - 100;
+        assertTrue(Arrays.equals(Arrays.copyOfRange(log, (int) offset, (int) offset + 300),
+                readLog(history.getId(), offset, 300)));
+        // tail in the last segment
+        assertTrue(Arrays.equals(Arrays.copyOfRange(log, log.length - 10, log.length),
+                readLog(history.getId(), log.length - 10, 10)));
+
+        // upload again replaces the old log
+        byte[] shorter = buildLog(10);
+        projectBiz.insertBuildLogById(history.getId(), new ByteArrayInputStream(shorter));
+        assertEquals(10, projectBiz.getBuildLogLengthById(history.getId()));
+        assertEquals(new String(shorter, "UTF-8"), projectBiz.getBuildLogById(history.getId()));
+    }
+
+    @Test
+    public void testFailedUploadKeepsOldLog() throws Exception {
+        BuildHistory history = new BuildHistory();
+        history.setName("failed-log");
+        history.setSecret("aaa");
+        history.setProjectId(1);
+        projectBiz.addBuildHistory(history);
+
+        byte[] log = buildLog(1024 * 1024 + 100);
+        projectBiz.insertBuildLogById(history.getId(), new ByteArrayInputStream(log));
+
+        // fails after the first segment of the new log was stored
+        final byte[] newer = buildLog(3 * 1024 * 1024);
+        InputStream failing = new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (position >= 1536 * 1024) {
+                    throw new IOException("connection reset");
+                }
+                return newer[position++] & 0xff;
+            }
+        };
+        try {
+            projectBiz.insertBuildLogById(history.getId(), failing);
+            fail("expect IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(log.length, projectBiz.getBuildLogLengthById(history.getId()));
+        assertTrue(Arrays.equals(log, readLog(history.getId(), 0, log.length)));
+
+        projectBiz.insertBuildLogById(history.getId(), new ByteArrayInputStream(newer));
+        assertEquals(newer.length, projectBiz.getBuildLogLengthById(history.getId()));
+        assertTrue(Arrays.equals(newer, readLog(history.getId(), 0, newer.length)));
+    }
+}
@@ -0,0 +1,140 @@
+package org.domeos.framework.api.service.alarm.impl;
+
+import junit.framework.TestCase;
+import org.domeos.framework.api.biz.alarm.AlarmBiz;
+import org.domeos.framework.api.biz.cluster.ClusterBiz;
+import org.domeos.framework.api.consolemodel.alarm.AlarmEventInfo;
+import org.domeos.framework.api.consolemodel.alarm.AlarmEventInfoDraft;
+import org.domeos.framework.api.model.alarm.HostInfo;
+import org.domeos.framework.api.model.cluster.Cluster;
+import org.domeos.framework.api.model.deployment.Deployment;
+import org.domeos.framework.api.model.deployment.related.Container;
+import org.domeos.framework.api.model.deployment.related.Instance;
+import org.domeos.framework.api.service.deployment.InstanceService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AlarmEventListAssemblerTest extends TestCase {
+
+    private static AlarmEventInfoDraft draft(String id, String metric, String counter, int templateId, long timestamp) {
+        AlarmEventInfoDraft draft = new AlarmEventInfoDraft();
+        draft.setId(id);
+        draft.setEndpoint("host-1");
+        draft.setMetric(metric);
+        draft.setCounter(counter);
+        draft.setTemplate_id(templateId);
+        draft.setTimestamp(timestamp);
+        draft.setLeft_value("90");
+        draft.setRight_value("80");
+        return draft;
+    }
+
+    private static AlarmEventInfoDraft containerDraft(String id, String containerId, int templateId, long timestamp) {
+        return draft(id, "container.cpu.usage.busy",
+                "host-1/container.cpu.usage.busy id=" + containerId, templateId, timestamp);
+    }
+
+    private static Instance instance(String name, String... containerIds) {
+        Instance instance = new Instance();
+        instance.setInstanceName(name);
+        instance.setHostIp("10.0.0.1");
+        List<Container> containers = new ArrayList<>();
+        for (String containerId : containerIds) {
+            Container container = new Container();
+            container.setContainerId(containerId);
+            containers.add(container);
+        }
+        instance.setContainers(containers);
+        return instance;
+    }
+
+    private AlarmEventListAssembler assembler() throws Exception {
+        Deployment deployment = new Deployment();
+        deployment.setId(7);
+        deployment.setName("web");
+        deployment.setClusterId(3);
+        Cluster cluster = new Cluster();
+        cluster.setId(3);
+        cluster.setName("online");
+
+        AlarmEventListAssembler assembler = new AlarmEventListAssembler();
+        assembler.alarmBiz = mock(AlarmBiz.class);
+        assembler.clusterBiz = mock(ClusterBiz.class);
+        assembler.instanceService = mock(InstanceService.class);
+        when(assembler.alarmBiz.getDeploymentByTemplateId(1)).thenReturn(deployment);
+        when(assembler.alarmBiz.getHostInfoByHostname("host-1")).thenReturn(new HostInfo());
+        when(assembler.clusterBiz.getListByIdList(anyString(), anyList(), eq(Cluster.class)))
+                .thenReturn(Collections.singletonList(cluster));
+        when(assembler.instanceService.getInstances(7)).thenReturn(Arrays.asList(
+                instance("web-a", "c1", "c2"), instance("web-b", "c3")));
+        return assembler;
+    }
+
+    @Test
+    public void testInstancesListedOncePerDeployment() throws Exception {
+        AlarmEventListAssembler assembler = assembler();
+        List<AlarmEventInfoDraft> drafts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            drafts.add(containerDraft("e" + i, "c" + (i % 4 + 1), 1, i));
+        }
+        drafts.add(draft("h", "cpu.busy", "host-1/cpu.busy ", 0, 100));
+
+        List<AlarmEventInfo> infos = assembler.assemble(drafts, 0, 0);
+        assertEquals(51, infos.size());
+        verify(assembler.instanceService, times(1)).getInstances(7);
+        verify(assembler.alarmBiz, times(1)).getDeploymentByTemplateId(1);
+        verify(assembler.alarmBiz, times(1)).getHostInfoByHostname("host-1");
+
+        assertEquals("h", infos.get(0).getId());
+        assertNotNull(infos.get(0).getHostInfo());
+        for (AlarmEventInfo info : infos.subList(1, infos.size())) {
+            assertEquals("online", info.getDeploymentAlarmInfo().getClusterName());
+            String containerId = info.getDeploymentAlarmInfo().getContainerId();
+            String expected = "c3".equals(containerId) ? "web-b" : "c4".equals(containerId) ? null : "web-a";
+            assertEquals(expected, info.getDeploymentAlarmInfo().getInstanceName());
+        }
+    }
+
+    @Test
+    public void testPageIsNewestFirstAndSkipsUnknownMetrics() throws Exception {
+        AlarmEventListAssembler assembler = assembler();
+        List<AlarmEventInfoDraft> drafts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            drafts.add(containerDraft("e" + i, "c1", 1, i));
+        }
+        drafts.add(draft("unknown", "foo.bar", "host-1/foo.bar ", 0, 100));
+
+        List<AlarmEventInfo> infos = assembler.assemble(drafts, 2, 3);
+        assertEquals(3, infos.size());
+        assertEquals("e7", infos.get(0).getId());
+        assertEquals("e5", infos.get(2).getId());
+        assertEquals(7000, infos.get(0).getTimeStamp());
+
+        assertEquals(2, assembler.assemble(drafts, 8, 5).size());
+        assertEquals(0, assembler.assemble(drafts, 20, 5).size());
+    }
+
+    @Test
+    public void testMissingDeploymentAndFailedInstanceList() throws Exception {
+        AlarmEventListAssembler assembler = assembler();
+        when(assembler.instanceService.getInstances(7)).thenThrow(new RuntimeException("k8s down"));
+        List<AlarmEventInfo> infos = assembler.assemble(Arrays.asList(
+                containerDraft("gone", "c1", 2, 2), containerDraft("down", "c1", 1, 1)), 0, 0);
+        assertEquals(2, infos.size());
+        assertEquals("non-existed deployment", infos.get(0).getDeploymentAlarmInfo().getDeploymentName());
+        assertEquals(7, infos.get(1).getDeploymentAlarmInfo().getId());
+        assertNull(infos.get(1).getDeploymentAlarmInfo().getInstanceName());
+    }
+}
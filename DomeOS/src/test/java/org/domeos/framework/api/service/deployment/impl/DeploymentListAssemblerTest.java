@@ -0,0 +1,148 @@
+package org.domeos.framework.api.service.deployment.impl;
+
+import org.domeos.base.BaseTestCase;
+import org.domeos.framework.api.biz.cluster.ClusterBiz;
+import org.domeos.framework.api.biz.deployment.DeploymentBiz;
+import org.domeos.framework.api.biz.deployment.DeploymentStatusBiz;
+import org.domeos.framework.api.biz.loadBalancer.LoadBalancerBiz;
+import org.domeos.framework.api.consolemodel.deployment.DeploymentInfo;
+import org.domeos.framework.api.model.LoadBalancer.LoadBalancer;
+import org.domeos.framework.api.model.cluster.Cluster;
+import org.domeos.framework.api.model.collection.CollectionResourceMap;
+import org.domeos.framework.api.model.collection.related.ResourceType;
+import org.domeos.framework.api.model.deployment.Deployment;
+import org.domeos.framework.api.model.deployment.related.DeploymentStatus;
+import org.domeos.framework.engine.model.RowMapperDao;
+import org.domeos.global.GlobalConstant;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The bulk deployment list against the queries it used to run for every deployment, on H2.
+ * DeploymentListBenchmark times both with the helpers here.
+ */
+public class DeploymentListAssemblerTest extends BaseTestCase {
+
+    private static final int DEPLOYMENTS = 1000;
+    static final int FIRST_ID = 100000;
+    private static final int CLUSTER_ID = 100000;
+    static final int COLLECTION_ID = 100000;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    DeploymentListAssembler assembler;
+
+    @Autowired
+    DeploymentBiz deploymentBiz;
+
+    @Autowired
+    DeploymentStatusBiz deploymentStatusBiz;
+
+    @Autowired
+    LoadBalancerBiz loadBalancerBiz;
+
+    @Autowired
+    ClusterBiz clusterBiz;
+
+    @Test
+    public void testBulkMatchesPerDeployment() {
+        List<CollectionResourceMap> resources = prepare(jdbcTemplate, DEPLOYMENTS);
+        Map<Integer, Boolean> deletableMap = new HashMap<>();
+        deletableMap.put(COLLECTION_ID, false);
+
+        List<DeploymentInfo> bulk = assembler.assemble(resources, deletableMap, 1);
+        Map<Integer, DeploymentInfo> single = perDeployment(deploymentBiz, deploymentStatusBiz, loadBalancerBiz,
+                clusterBiz, resources);
+
+        assertEquals(DEPLOYMENTS, bulk.size());
+        assertEquals(DEPLOYMENTS, single.size());
+        for (DeploymentInfo info : bulk) {
+            DeploymentInfo expected = single.get(info.getDeployId());
+            assertNotNull(expected);
+            assertEquals(expected.getDeploymentStatus(), info.getDeploymentStatus());
+            assertEquals(expected.getServiceDnsName(), info.getServiceDnsName());
+            assertEquals(expected.getClusterName(), info.getClusterName());
+            assertEquals(expected.getCreateTime(), info.getCreateTime());
+        }
+        for (int i = 1; i < bulk.size(); i++) {
+            assertTrue(bulk.get(i - 1).getCreateTime() >= bulk.get(i).getCreateTime());
+        }
+    }
+
+    // the queries the list used to run for every deployment
+    static Map<Integer, DeploymentInfo> perDeployment(DeploymentBiz deploymentBiz, DeploymentStatusBiz deploymentStatusBiz,
+                                                      LoadBalancerBiz loadBalancerBiz, ClusterBiz clusterBiz,
+                                                      List<CollectionResourceMap> resources) {
+        Map<Integer, DeploymentInfo> infos = new HashMap<>();
+        for (CollectionResourceMap resourceMap : resources) {
+            Deployment deployment = deploymentBiz.getDeployment(resourceMap.getResourceId());
+            DeploymentInfo info = new DeploymentInfo(deployment);
+            info.setDeploymentStatus(deploymentStatusBiz.getDeploymentStatus(deployment.getId()));
+            List<LoadBalancer> loadBalancers = loadBalancerBiz.getLBSByDeploy(deployment.getId());
+            Cluster cluster = clusterBiz.getById(GlobalConstant.CLUSTER_TABLE_NAME, deployment.getClusterId(), Cluster.class);
+            info.setClusterName(cluster.getName());
+            String serviceDnsName = "";
+            if (loadBalancers != null && loadBalancers.size() > 0) {
+                cluster = clusterBiz.getById(GlobalConstant.CLUSTER_TABLE_NAME, deployment.getClusterId(), Cluster.class);
+                serviceDnsName = DeploymentServiceImpl.buildServiceDnsName(deployment, cluster);
+            }
+            info.setServiceDnsName(serviceDnsName);
+            info.setCreateTime(deployment.getCreateTime());
+            infos.put(deployment.getId(), info);
+        }
+        return infos;
+    }
+
+    static List<CollectionResourceMap> prepare(JdbcTemplate jdbcTemplate, int deployments) {
+        Cluster cluster = new Cluster();
+        cluster.setId(CLUSTER_ID);
+        cluster.setName("benchmark");
+        cluster.setState("");
+        cluster.setDomain("cluster.local");
+        RowMapperDao clusterDao = new RowMapperDao(cluster);
+        jdbcTemplate.update("insert into " + GlobalConstant.CLUSTER_TABLE_NAME
+                        + " (id, name, state, createTime, data) values (?, ?, ?, ?, ?)",
+                CLUSTER_ID, clusterDao.getName(), clusterDao.getState(), clusterDao.getCreateTime(), clusterDao.getData());
+
+        List<Object[]> deployRows = new ArrayList<>(deployments);
+        List<Object[]> lbRows = new ArrayList<>();
+        List<Object[]> mapRows = new ArrayList<>();
+        List<CollectionResourceMap> resources = new ArrayList<>(deployments);
+        DeploymentStatus[] statuses = DeploymentStatus.values();
+        for (int i = 0; i < deployments; i++) {
+            int id = FIRST_ID + i;
+            Deployment deployment = new Deployment();
+            deployment.setName("bench-" + i);
+            deployment.setNamespace("default");
+            deployment.setClusterId(CLUSTER_ID);
+            deployment.setState(statuses[i % statuses.length].name());
+            deployment.setCreateTime(1000000L + (i * 7919L) % deployments);
+            RowMapperDao dao = new RowMapperDao(deployment);
+            deployRows.add(new Object[]{id, dao.getName(), dao.getState(), dao.getCreateTime(), dao.getData(), CLUSTER_ID});
+            if (i % 3 == 0) {
+                LoadBalancer loadBalancer = new LoadBalancer();
+                loadBalancer.setName("dmo-bench-" + i);
+                loadBalancer.setState("");
+                RowMapperDao lbDao = new RowMapperDao(loadBalancer);
+                lbRows.add(new Object[]{id, lbDao.getName(), lbDao.getData()});
+                mapRows.add(new Object[]{id, id});
+            }
+            resources.add(new CollectionResourceMap(id, 2, ResourceType.DEPLOY, COLLECTION_ID, 0));
+        }
+        jdbcTemplate.batchUpdate("insert into " + GlobalConstant.DEPLOY_TABLE_NAME
+                + " (id, name, state, createTime, data, clusterId) values (?, ?, ?, ?, ?, ?)", deployRows);
+        jdbcTemplate.batchUpdate("insert into " + GlobalConstant.LOADBALANCER_TABLE_NAME
+                + " (id, name, state, createTime, data) values (?, ?, '', 0, ?)", lbRows);
+        jdbcTemplate.batchUpdate("insert into " + GlobalConstant.LOADBALANCERDEPLOYMAP_TABLE_NAME
+                + " (name, state, createTime, deployId, loadBalancerId) values ('', '', 0, ?, ?)", mapRows);
+        return resources;
+    }
+}
@@ -0,0 +1,97 @@
+package org.domeos.framework.api.service.deployment.impl;
+
+import org.domeos.framework.api.biz.cluster.ClusterBiz;
+import org.domeos.framework.api.biz.deployment.DeploymentBiz;
+import org.domeos.framework.api.biz.deployment.DeploymentStatusBiz;
+import org.domeos.framework.api.biz.loadBalancer.LoadBalancerBiz;
+import org.domeos.framework.api.consolemodel.deployment.DeploymentInfo;
+import org.domeos.framework.api.model.collection.CollectionResourceMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deployment list of synthetic deployments on H2, the bulk queries against the queries per deployment.
+ * DeploymentListAssemblerTest checks both give the same list.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.domeos.framework.api.service.deployment.impl.DeploymentListBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeploymentListBenchmark {
+
+    @Param({"1000", "10000"})
+    public int deployments;
+
+    private GenericWebApplicationContext context;
+    private DeploymentListAssembler assembler;
+    private DeploymentBiz deploymentBiz;
+    private DeploymentStatusBiz deploymentStatusBiz;
+    private LoadBalancerBiz loadBalancerBiz;
+    private ClusterBiz clusterBiz;
+    private List<CollectionResourceMap> resources;
+    private Map<Integer, Boolean> deletableMap;
+
+    @Setup
+    public void setup() {
+        context = new GenericWebApplicationContext(new MockServletContext("src/main/webapp", new FileSystemResourceLoader()));
+        new XmlBeanDefinitionReader(context).loadBeanDefinitions("classpath:/META-INF/test-config.xml");
+        context.refresh();
+        assembler = context.getBean(DeploymentListAssembler.class);
+        deploymentBiz = context.getBean(DeploymentBiz.class);
+        deploymentStatusBiz = context.getBean(DeploymentStatusBiz.class);
+        loadBalancerBiz = context.getBean(LoadBalancerBiz.class);
+        clusterBiz = context.getBean(ClusterBiz.class);
+        resources = DeploymentListAssemblerTest.prepare(context.getBean(JdbcTemplate.class), deployments);
+        deletableMap = new HashMap<>();
+        deletableMap.put(DeploymentListAssemblerTest.COLLECTION_ID, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<DeploymentInfo> bulk() {
+        return assembler.assemble(resources, deletableMap, 1);
+    }
+
+    @Benchmark
+    public Map<Integer, DeploymentInfo> perDeployment() {
+        return DeploymentListAssemblerTest.perDeployment(deploymentBiz, deploymentStatusBiz, loadBalancerBiz,
+                clusterBiz, resources);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(DeploymentListBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,204 @@
+package org.domeos.framework.api.service.image.impl;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RegistryMetadataCacheTest extends TestCase {
+
+    private static final String URL = "https://registry/v2/app/manifests/v1";
+    private static final String BLOBS = "https://registry/v2/app/blobs/";
+
+    private static String manifest(String created, String... blobSums) {
+        StringBuilder builder = new StringBuilder("{\"history\":[{\"v1Compatibility\":\"{\\\"created\\\":\\\"2016-01-01T00:00:00.5Z\\\"}\"},");
+        builder.append("{\"v1Compatibility\":\"{\\\"created\\\":\\\"").append(created).append("\\\"}\"}],\"fsLayers\":[");
+        for (int i = 0; i < blobSums.length; i++) {
+            builder.append(i == 0 ? "" : ",").append("{\"blobSum\":\"").append(blobSums[i]).append("\"}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    private static class FakeFetcher implements RegistryMetadataCache.RegistryFetcher {
+        volatile String body;
+        volatile String digest;
+        volatile CountDownLatch manifestGate;
+        final AtomicInteger manifestGets = new AtomicInteger();
+        final AtomicInteger digestHeads = new AtomicInteger();
+        final AtomicInteger blobHeads = new AtomicInteger();
+        final Map<String, Long> blobSizes = new ConcurrentHashMap<>();
+
+        @Override
+        public RegistryMetadataCache.Manifest getManifest(String url, String token) {
+            manifestGets.incrementAndGet();
+            if (manifestGate != null) {
+                try {
+                    manifestGate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return body == null ? null : new RegistryMetadataCache.Manifest(body, digest);
+        }
+
+        @Override
+        public String getManifestDigest(String url, String token) {
+            digestHeads.incrementAndGet();
+            return digest;
+        }
+
+        @Override
+        public long getBlobSize(String url, String token) {
+            blobHeads.incrementAndGet();
+            Long size = blobSizes.get(url.substring(BLOBS.length()));
+            return size == null ? -1 : size;
+        }
+    }
+
+    @Test
+    public void testTagAndBlobsAreMemoized() {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.body = manifest("2016-05-01T10:00:00.123456Z", "sha256:a", "sha256:b", "sha256:a");
+        fetcher.digest = "sha256:m1";
+        fetcher.blobSizes.put("sha256:a", 1000L);
+        fetcher.blobSizes.put("sha256:b", 500L);
+        RegistryMetadataCache cache = new RegistryMetadataCache(fetcher, 60000, 100, 100);
+
+        RegistryMetadataCache.TagMetadata tag = cache.getTag(URL, "token");
+        assertEquals(1462096800123L, tag.getCreateTime());
+        assertEquals("2016-05-01T10:00:00.123456Z", tag.getLatestCreated());
+        assertEquals(2500, cache.getImageSize(tag, BLOBS, "token"));
+        // the same layer twice is fetched once
+        assertEquals(2, fetcher.blobHeads.get());
+
+        assertSame(tag, cache.getTag(URL, "token"));
+        assertEquals(2500, cache.getImageSize(cache.getTag(URL, "token"), BLOBS, "token"));
+        assertEquals(1, fetcher.manifestGets.get());
+        assertEquals(2, fetcher.blobHeads.get());
+        assertEquals(0, fetcher.digestHeads.get());
+    }
+
+    @Test
+    public void testFailedBlobIsNotCached() {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.body = manifest("2016-05-01T10:00:00Z", "sha256:a", "sha256:b");
+        fetcher.blobSizes.put("sha256:a", 1000L);
+        RegistryMetadataCache cache = new RegistryMetadataCache(fetcher, 60000, 100, 100);
+
+        RegistryMetadataCache.TagMetadata tag = cache.getTag(URL, "token");
+        assertEquals(1000, cache.getImageSize(tag, BLOBS, "token"));
+        fetcher.blobSizes.put("sha256:b", 24L);
+        assertEquals(1024, cache.getImageSize(tag, BLOBS, "token"));
+        assertEquals(3, fetcher.blobHeads.get());
+    }
+
+    @Test
+    public void testMissingManifestIsNotCached() {
+        FakeFetcher fetcher = new FakeFetcher();
+        RegistryMetadataCache cache = new RegistryMetadataCache(fetcher, 60000, 100, 100);
+        assertNull(cache.getTag(URL, "token"));
+        fetcher.body = manifest("2016-05-01T10:00:00Z");
+        assertNotNull(cache.getTag(URL, "token"));
+        assertEquals(2, fetcher.manifestGets.get());
+    }
+
+    @Test
+    public void testRefreshReloadsOnlyChangedDigest() throws InterruptedException {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.body = manifest("2016-05-01T10:00:00Z", "sha256:a");
+        fetcher.digest = "sha256:m1";
+        RegistryMetadataCache cache = new RegistryMetadataCache(fetcher, 50, 100, 100);
+        RegistryMetadataCache.TagMetadata first = cache.getTag(URL, "token");
+
+        Thread.sleep(100);
+        // stale entries are served while checked in background
+        assertEquals(first.getCreateTime(), cache.getTag(URL, "token").getCreateTime());
+        waitFor(fetcher.digestHeads, 1);
+        Thread.sleep(50);
+        assertEquals(1, fetcher.manifestGets.get());
+
+        fetcher.body = manifest("2016-06-01T10:00:00Z", "sha256:a");
+        fetcher.digest = "sha256:m2";
+        Thread.sleep(100);
+        cache.getTag(URL, "token");
+        waitFor(fetcher.manifestGets, 2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getTag(URL, "token").getCreateTime() == first.getCreateTime()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("sha256:m2", cache.getTag(URL, "token").getDigest());
+        assertEquals(1, cache.stats().getDigestChanges());
+    }
+
+    @Test
+    public void testConcurrentLoadsShareOneRequest() throws InterruptedException {
+        final FakeFetcher fetcher = new FakeFetcher();
+        fetcher.body = manifest("2016-05-01T10:00:00Z");
+        fetcher.manifestGate = new CountDownLatch(1);
+        final RegistryMetadataCache cache = new RegistryMetadataCache(fetcher, 60000, 100, 100);
+        final AtomicInteger loaded = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (cache.getTag(URL, "token") != null) {
+                        loaded.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        waitFor(fetcher.manifestGets, 1);
+        Thread.sleep(100);
+        fetcher.manifestGate.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(8, loaded.get());
+        assertEquals(1, fetcher.manifestGets.get());
+    }
+
+    @Test
+    public void testInvalidate() {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.body = manifest("2016-05-01T10:00:00Z");
+        RegistryMetadataCache cache = new RegistryMetadataCache(fetcher, 60000, 100, 100);
+        cache.getTag(URL, "token");
+        cache.invalidate(URL);
+        cache.getTag(URL, "token");
+        assertEquals(2, fetcher.manifestGets.get());
+    }
+
+    @Test
+    public void testTagsAreBounded() {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.body = manifest("2016-05-01T10:00:00Z");
+        RegistryMetadataCache cache = new RegistryMetadataCache(fetcher, 60000, 2, 100);
+        cache.getTag(URL + "-1", "token");
+        cache.getTag(URL + "-2", "token");
+        cache.getTag(URL + "-1", "token");
+        cache.getTag(URL + "-3", "token");
+        assertEquals(2, cache.stats().getTags());
+        assertEquals(1, cache.stats().getTagEvictions());
+        assertEquals(3, fetcher.manifestGets.get());
+
+        // the least recently read tag went first
+        cache.getTag(URL + "-1", "token");
+        assertEquals(3, fetcher.manifestGets.get());
+        cache.getTag(URL + "-2", "token");
+        assertEquals(4, fetcher.manifestGets.get());
+    }
+
+    private static void waitFor(AtomicInteger counter, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(counter.get() >= expected);
+    }
+}
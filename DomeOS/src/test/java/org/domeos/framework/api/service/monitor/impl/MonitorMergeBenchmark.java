@@ -0,0 +1,64 @@
+package org.domeos.framework.api.service.monitor.impl;
+
+import org.domeos.framework.api.consolemodel.monitor.CounterColumns;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A day of one minute samples per container series, the columnar merge against the former map per
+ * timestamp merge. MonitorSeriesMergerTest checks both give the same rows.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.domeos.framework.api.service.monitor.impl.MonitorMergeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitorMergeBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int seriesCount;
+
+    private Map<String, List<GraphHistoryResponse>> responses;
+
+    @Setup
+    public void setup() {
+        responses = MonitorSeriesMergerTest.daySeries(seriesCount);
+    }
+
+    @Benchmark
+    public Map<String, List<Map<String, Double>>> rowMerge() {
+        return MonitorSeriesMergerTest.rowMerge(responses);
+    }
+
+    @Benchmark
+    public Map<String, CounterColumns> columnarMerge() {
+        return MonitorSeriesMerger.merge(responses, "container", new HashMap<String, String>());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(MonitorMergeBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,189 @@
+package org.domeos.framework.api.service.monitor.impl;
+
+import junit.framework.TestCase;
+import org.domeos.framework.api.consolemodel.monitor.CounterColumns;
+import org.domeos.framework.api.model.monitor.falcon.CounterValue;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryResponse;
+import org.domeos.framework.engine.model.CustomObjectMapper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MonitorSeriesMergerTest extends TestCase {
+
+    static final int DAY_SAMPLES = 24 * 60;
+
+    static GraphHistoryResponse series(String endpoint, String counter, long firstSecond, Double... values) {
+        GraphHistoryResponse response = new GraphHistoryResponse();
+        response.setEndpoint(endpoint);
+        response.setCounter(counter);
+        response.setStep(10);
+        List<CounterValue> counterValues = new ArrayList<>();
+        for (int index = 0; index < values.length; index++) {
+            counterValues.add(new CounterValue(firstSecond + index * 10, values[index]));
+        }
+        response.setValues(counterValues);
+        return response;
+    }
+
+    private static Map<String, List<GraphHistoryResponse>> byCounter(String counter, GraphHistoryResponse... responses) {
+        Map<String, List<GraphHistoryResponse>> map = new LinkedHashMap<>();
+        map.put(counter, new ArrayList<>(Arrays.asList(responses)));
+        return map;
+    }
+
+    @Test
+    public void testNodeSeriesAlignedOnLongest() {
+        CounterColumns columns = MonitorSeriesMerger.merge(byCounter("cpu.busy",
+                series("node-1", "cpu.busy", 100, 1.0, 2.0, 3.0),
+                series("node-2", "cpu.busy", 110, 5.0, null)), "node", new HashMap<String, String>()).get("cpu.busy");
+
+        assertEquals(10, columns.getInterval());
+        assertTrue(Arrays.equals(new long[]{100000, 110000, 120000}, columns.getTimeStamps()));
+        assertTrue(Arrays.equals(new double[]{1.0, 2.0, 3.0}, columns.getValues().get("node-1")));
+        double[] second = columns.getValues().get("node-2");
+        assertTrue(Double.isNaN(second[0]));
+        assertEquals(5.0, second[1]);
+        assertTrue(Double.isNaN(second[2]));
+
+        List<Map<String, Double>> rows = MonitorSeriesMerger.toRows(columns);
+        assertEquals(3, rows.size());
+        assertEquals(110000.0, rows.get(1).get("timeStamp"));
+        assertEquals(5.0, rows.get(1).get("node-2"));
+        assertTrue(rows.get(0).containsKey("node-2"));
+        assertNull(rows.get(0).get("node-2"));
+    }
+
+    @Test
+    public void testPodSumsContainersAndDerivesMemoryPercent() {
+        Map<String, String> containerPodMap = new HashMap<>();
+        containerPodMap.put("c1", "pod-a");
+        containerPodMap.put("c2", "pod-a");
+        containerPodMap.put("c3", "pod-b");
+        Map<String, List<GraphHistoryResponse>> responses = new LinkedHashMap<>();
+        responses.put("container.mem.usage", new ArrayList<>(Arrays.asList(
+                series("h", "container.mem.usage/id=c1", 100, 10.0, 20.0),
+                series("h", "container.mem.usage/id=c2", 100, 30.0, null),
+                series("h", "container.mem.usage/id=c3", 100, 5.0, 5.0))));
+        responses.put("container.mem.limit", new ArrayList<>(Arrays.asList(
+                series("h", "container.mem.limit/id=c1", 100, 50.0, 50.0),
+                series("h", "container.mem.limit/id=c2", 100, 50.0, 50.0))));
+        responses.put("container.mem.usage.percent", new ArrayList<>(Arrays.asList(
+                series("h", "container.mem.usage.percent/id=c1", 100, 20.0, 40.0),
+                series("h", "container.mem.usage.percent/id=c2", 100, 60.0, null),
+                series("h", "container.mem.usage.percent/id=c3", 100, 1.0, 1.0))));
+
+        Map<String, CounterColumns> columns = MonitorSeriesMerger.merge(responses, "pod", containerPodMap);
+        assertTrue(Arrays.equals(new double[]{40.0, 20.0}, columns.get("container.mem.usage").getValues().get("pod-a")));
+        double[] percent = columns.get("container.mem.usage.percent").getValues().get("pod-a");
+        assertEquals(40.0, percent[0], 1e-9);
+        assertEquals(20.0, percent[1], 1e-9);
+        // no limit known for pod-b
+        assertTrue(Double.isNaN(columns.get("container.mem.usage.percent").getValues().get("pod-b")[0]));
+    }
+
+    @Test
+    public void testConsolidateKeepsDataSpec() {
+        CounterColumns columns = new CounterColumns(10, new long[]{1000, 2000, 3000, 4000, 5000});
+        columns.getValues().put("node-1", new double[]{1.0, 5.0, Double.NaN, 2.0, 4.0});
+
+        assertSame(columns, MonitorSeriesMerger.consolidate(columns, 5, "AVERAGE"));
+
+        CounterColumns average = MonitorSeriesMerger.consolidate(columns, 3, "AVERAGE");
+        assertEquals(20, average.getInterval());
+        assertTrue(Arrays.equals(new long[]{1000, 3000, 5000}, average.getTimeStamps()));
+        assertTrue(Arrays.equals(new double[]{3.0, 2.0, 4.0}, average.getValues().get("node-1")));
+        assertTrue(Arrays.equals(new double[]{5.0, 2.0, 4.0},
+                MonitorSeriesMerger.consolidate(columns, 3, "MAX").getValues().get("node-1")));
+        assertTrue(Arrays.equals(new double[]{1.0, 2.0, 4.0},
+                MonitorSeriesMerger.consolidate(columns, 3, "MIN").getValues().get("node-1")));
+
+        columns.getValues().put("node-2", new double[]{Double.NaN, Double.NaN, 1.0, 1.0, 1.0});
+        assertTrue(Double.isNaN(MonitorSeriesMerger.consolidate(columns, 3, "MAX").getValues().get("node-2")[0]));
+    }
+
+    @Test
+    public void testColumnsSerializeMissingValuesAsNull() throws Exception {
+        CounterColumns columns = new CounterColumns(10, new long[]{1000, 2000});
+        columns.getValues().put("node-1", new double[]{1.5, Double.NaN});
+        String json = new CustomObjectMapper().writeValueAsString(columns);
+        assertEquals("{\"interval\":10,\"timeStamps\":[1000,2000],\"values\":{\"node-1\":[1.5,null]}}", json);
+    }
+
+    @Test
+    public void testColumnarMatchesRowMerge() {
+        for (int seriesCount : new int[]{10, 100}) {
+            Map<String, List<GraphHistoryResponse>> responses = daySeries(seriesCount);
+            Map<String, List<Map<String, Double>>> actual = new HashMap<>();
+            for (Map.Entry<String, CounterColumns> entry
+                    : MonitorSeriesMerger.merge(responses, "container", new HashMap<String, String>()).entrySet()) {
+                actual.put(entry.getKey(), MonitorSeriesMerger.toRows(entry.getValue()));
+            }
+            assertEquals(rowMerge(responses), actual);
+        }
+    }
+
+    // one counter, series starting at different minutes as containers come up during the day
+    static Map<String, List<GraphHistoryResponse>> daySeries(int seriesCount) {
+        List<GraphHistoryResponse> series = new ArrayList<>();
+        for (int s = 0; s < seriesCount; s++) {
+            int skipped = s % 7;
+            List<CounterValue> values = new ArrayList<>();
+            for (int index = skipped; index < DAY_SAMPLES; index++) {
+                values.add(new CounterValue(1000000L + index * 60, index % 13 == 0 ? null : (double) (s + index)));
+            }
+            series.add(new GraphHistoryResponse("host-" + s % 20, "container.cpu.usage.busy/id=c" + s, "GAUGE", 60, values));
+        }
+        Map<String, List<GraphHistoryResponse>> responses = new LinkedHashMap<>();
+        responses.put("container.cpu.usage.busy", series);
+        return responses;
+    }
+
+    // the merge of MonitorServiceImpl.createMonitorResult before the columnar merge, for containers
+    static Map<String, List<Map<String, Double>>> rowMerge(Map<String, List<GraphHistoryResponse>> graphHistoryResponseMap) {
+        Map<String, List<Map<String, Double>>> counterResults = new HashMap<>();
+        for (String counter : graphHistoryResponseMap.keySet()) {
+            counterResults.put(counter, new ArrayList<Map<String, Double>>());
+            int timeStampCount = 0;
+            int maxCountIndex = 0;
+            for (GraphHistoryResponse graphHistoryResponse : graphHistoryResponseMap.get(counter)) {
+                if (graphHistoryResponse.getValues().size() > timeStampCount) {
+                    timeStampCount = graphHistoryResponse.getValues().size();
+                    maxCountIndex = graphHistoryResponseMap.get(counter).indexOf(graphHistoryResponse);
+                }
+            }
+            List<String> targetValueKeys = new ArrayList<>();
+            List<Integer> offsets = new ArrayList<>();
+            for (GraphHistoryResponse graphHistoryResponse : graphHistoryResponseMap.get(counter)) {
+                offsets.add(0);
+                targetValueKeys.add(graphHistoryResponse.getCounter().substring(graphHistoryResponse.getCounter().indexOf("/id=") + 4));
+            }
+            for (int index = 0; index < timeStampCount; index++) {
+                Map<String, Double> targetValueMap = new HashMap<>();
+                long currentTimeStamp = graphHistoryResponseMap.get(counter).get(maxCountIndex).getValues().get(index).getTimestamp();
+                targetValueMap.put("timeStamp", (double) currentTimeStamp * 1000.0);
+                for (GraphHistoryResponse graphHistoryResponse : graphHistoryResponseMap.get(counter)) {
+                    int indexGraphHistoryResponse = graphHistoryResponseMap.get(counter).indexOf(graphHistoryResponse);
+                    int indexActual = index - offsets.get(indexGraphHistoryResponse);
+                    Double insertValue = null;
+                    if (graphHistoryResponse.getValues().size() > indexActual) {
+                        long actualTimeStamp = graphHistoryResponse.getValues().get(indexActual).getTimestamp();
+                        if (actualTimeStamp > currentTimeStamp) {
+                            offsets.set(indexGraphHistoryResponse, offsets.get(indexGraphHistoryResponse) + 1);
+                        } else {
+                            insertValue = graphHistoryResponse.getValues().get(indexActual).getValue();
+                        }
+                    }
+                    targetValueMap.put(targetValueKeys.get(indexGraphHistoryResponse), insertValue);
+                }
+                counterResults.get(counter).add(targetValueMap);
+            }
+        }
+        return counterResults;
+    }
+}
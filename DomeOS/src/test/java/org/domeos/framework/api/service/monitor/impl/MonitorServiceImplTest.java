@@ -0,0 +1,21 @@
+package org.domeos.framework.api.service.monitor.impl;
+
+import junit.framework.TestCase;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryRequest;
+import org.junit.Test;
+
+public class MonitorServiceImplTest extends TestCase {
+
+    @Test
+    public void testWindowCoversRequestedRange() {
+        GraphHistoryRequest request = new GraphHistoryRequest();
+        MonitorServiceImpl.setWindow(request, 1000059000L, 1000119500L);
+        assertEquals(1000020, request.getStart());
+        // the last 59.5 seconds asked for are still in the window
+        assertEquals(1000140, request.getEnd());
+
+        MonitorServiceImpl.setWindow(request, 1000020000L, 1000080000L);
+        assertEquals(1000020, request.getStart());
+        assertEquals(1000080, request.getEnd());
+    }
+}
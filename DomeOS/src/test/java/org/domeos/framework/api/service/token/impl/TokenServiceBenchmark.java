@@ -0,0 +1,121 @@
+package org.domeos.framework.api.service.token.impl;
+
+import org.domeos.framework.api.biz.global.GlobalBiz;
+import org.domeos.framework.api.model.auth.User;
+import org.domeos.framework.api.model.global.Registry;
+import org.domeos.framework.api.model.token.Token;
+import org.domeos.framework.api.model.token.related.RegistryTokenInfo;
+import org.domeos.framework.api.service.auth.UserService;
+import org.domeos.framework.api.service.project.BuildService;
+import org.domeos.global.CurrentThreadInfo;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A node pool pulling images at scale-out: 32 threads asking tokens for 50 nodes and 20 images, with
+ * a login costing 5 ms as an ldap bind does. The cold case builds a new service per request, so every
+ * request logs in, parses the key and signs as before.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.domeos.framework.api.service.token.impl.TokenServiceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(32)
+@Fork(1)
+public class TokenServiceBenchmark {
+
+    private static final int NODES = 50;
+    private static final int IMAGES = 20;
+    private static final long LOGIN_MILLIS = 5;
+
+    private TokenServiceImpl shared;
+
+    @State(Scope.Thread)
+    public static class Request {
+        private int index;
+
+        String node() {
+            return "node-" + index % NODES;
+        }
+
+        String scope() {
+            return "repository:library/image-" + index++ % IMAGES;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        Registry registry = new Registry();
+        registry.setUrl("http://registry:5000");
+        registry.setTokenInfo(new RegistryTokenInfo("domeos", "registry", TokenServiceImplTest.pkcs1Pem()));
+        shared = service(registry);
+    }
+
+    @Benchmark
+    public Token cached(Request request) {
+        return getToken(shared, request);
+    }
+
+    @Benchmark
+    public Token cold(Request request) {
+        // same mocks, empty caches on every request
+        TokenServiceImpl cold = new TokenServiceImpl();
+        cold.globalBiz = shared.globalBiz;
+        cold.buildService = shared.buildService;
+        cold.userService = shared.userService;
+        return getToken(cold, request);
+    }
+
+    private static Token getToken(TokenServiceImpl tokenService, Request request) {
+        return tokenService.getToken(TokenServiceImplTest.basic(request.node(), "secret"), "registry", request.scope(),
+                null, null);
+    }
+
+    private static TokenServiceImpl service(Registry registry) {
+        TokenServiceImpl tokenService = new TokenServiceImpl();
+        tokenService.globalBiz = mock(GlobalBiz.class);
+        when(tokenService.globalBiz.getRegistry()).thenReturn(registry);
+        tokenService.buildService = mock(BuildService.class);
+        tokenService.userService = mock(UserService.class);
+        when(tokenService.userService.loginWithoutType(anyString(), anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(LOGIN_MILLIS);
+                User user = new User((String) invocation.getArguments()[0], "secret");
+                user.setId(1);
+                CurrentThreadInfo.setUser(user);
+                return true;
+            }
+        });
+        return tokenService;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(TokenServiceBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,254 @@
+package org.domeos.framework.engine;
+
+import org.domeos.base.BaseTestCase;
+import org.domeos.framework.api.biz.auth.AuthBiz;
+import org.domeos.framework.api.biz.collection.CollectionBiz;
+import org.domeos.framework.api.biz.project.ProjectCollectionBiz;
+import org.domeos.framework.api.controller.exception.PermitException;
+import org.domeos.framework.api.model.auth.related.Role;
+import org.domeos.framework.api.model.collection.CollectionAuthorityMap;
+import org.domeos.framework.api.model.collection.CollectionResourceMap;
+import org.domeos.framework.api.model.collection.related.ResourceType;
+import org.domeos.framework.api.model.operation.OperationType;
+import org.domeos.framework.api.model.project.ProjectCollection;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Checks AuthUtil, answering from the index, against the queries it used to run, while memberships and
+ * resources change between the rounds.
+ */
+public class AuthorizationIndexTest extends BaseTestCase {
+
+    private static final int[] USERS = {1, 2, 3, 900099};
+    private static final OperationType[] OPERATIONS = {OperationType.GET, OperationType.MODIFY, OperationType.DELETE};
+
+    private static final int PROJECT = 900001;
+    private static final int MOVED_PROJECT = 900002;
+    private static final int DEPLOY = 900003;
+    private static final int CLUSTER = 900004;
+    private static final int PRIVATE_PROJECT_COLLECTION = 900010;
+    private static final int DEPLOY_COLLECTION = 900020;
+    private static final int CLUSTER_COLLECTION = 900030;
+
+    @Autowired
+    AuthBiz authBiz;
+    @Autowired
+    CollectionBiz collectionBiz;
+    @Autowired
+    ProjectCollectionBiz projectCollectionBiz;
+
+    private int publicProjectCollection;
+
+    @Test
+    public void testConsistentWithDatabaseAcrossChanges() {
+        ProjectCollection projectCollection = new ProjectCollection();
+        projectCollection.setName("auth-index-public");
+        projectCollection.setState("active");
+        projectCollection.setCreateTime(System.currentTimeMillis());
+        projectCollection.setCreatorId(2);
+        projectCollection.setProjectCollectionState(ProjectCollection.ProjectCollectionState.PUBLIC);
+        projectCollectionBiz.addProjectCollection(projectCollection);
+        publicProjectCollection = projectCollection.getId();
+        long now = System.currentTimeMillis();
+        try {
+            collectionBiz.addResource(new CollectionResourceMap(PROJECT, 2, ResourceType.PROJECT, publicProjectCollection, now));
+            collectionBiz.addResource(new CollectionResourceMap(MOVED_PROJECT, 2, ResourceType.PROJECT, PRIVATE_PROJECT_COLLECTION, now));
+            collectionBiz.addResource(new CollectionResourceMap(DEPLOY, 1, ResourceType.DEPLOY, DEPLOY_COLLECTION, now));
+            collectionBiz.addResource(new CollectionResourceMap(CLUSTER, 1, ResourceType.CLUSTER, CLUSTER_COLLECTION, now));
+            collectionBiz.addAuthority(new CollectionAuthorityMap(publicProjectCollection, ResourceType.PROJECT_COLLECTION, 3, Role.REPORTER, now));
+            collectionBiz.addAuthority(new CollectionAuthorityMap(PRIVATE_PROJECT_COLLECTION, ResourceType.PROJECT_COLLECTION, 3, Role.DEVELOPER, now));
+            collectionBiz.addAuthority(new CollectionAuthorityMap(DEPLOY_COLLECTION, ResourceType.DEPLOY_COLLECTION, 2, Role.MASTER, now));
+            collectionBiz.addAuthority(new CollectionAuthorityMap(CLUSTER_COLLECTION, ResourceType.CLUSTER, 3, Role.GUEST, now));
+            assertConsistent();
+            long hits = AuthUtil.getIndexStats().getHits();
+            assertConsistent();
+            assertTrue(AuthUtil.getIndexStats().getHits() > hits);
+
+            collectionBiz.modifyCollectionAuthorityMap(new CollectionAuthorityMap(PRIVATE_PROJECT_COLLECTION, ResourceType.PROJECT_COLLECTION, 3, Role.MASTER, now));
+            collectionBiz.deleteAuthorityMap(new CollectionAuthorityMap(DEPLOY_COLLECTION, ResourceType.DEPLOY_COLLECTION, 2, Role.MASTER, now));
+            collectionBiz.addAuthority(new CollectionAuthorityMap(DEPLOY_COLLECTION, ResourceType.DEPLOY_COLLECTION, 3, Role.DEVELOPER, now));
+            collectionBiz.modifyCollectionResourceMap(new CollectionResourceMap(MOVED_PROJECT, 2, ResourceType.PROJECT, publicProjectCollection, now));
+            projectCollection.setProjectCollectionState(ProjectCollection.ProjectCollectionState.PRIVATE);
+            projectCollectionBiz.updateProjectCollection(projectCollection);
+            assertConsistent();
+
+            collectionBiz.deleteResourcesByCollectionIdAndResourceType(publicProjectCollection, ResourceType.PROJECT);
+            collectionBiz.deleteAuthoritiesByCollectionIdAndResourceType(CLUSTER_COLLECTION, ResourceType.CLUSTER);
+            collectionBiz.deleteResourceByResourceIdAndResourceType(DEPLOY, ResourceType.DEPLOY);
+            collectionBiz.addResource(new CollectionResourceMap(DEPLOY, 3, ResourceType.DEPLOY, DEPLOY_COLLECTION, now));
+            assertConsistent();
+        } finally {
+            collectionBiz.deleteResourcesByCollectionIdAndResourceType(publicProjectCollection, ResourceType.PROJECT);
+            collectionBiz.deleteResourcesByCollectionIdAndResourceType(PRIVATE_PROJECT_COLLECTION, ResourceType.PROJECT);
+            collectionBiz.deleteResourcesByCollectionIdAndResourceType(DEPLOY_COLLECTION, ResourceType.DEPLOY);
+            collectionBiz.deleteResourcesByCollectionIdAndResourceType(CLUSTER_COLLECTION, ResourceType.CLUSTER);
+            collectionBiz.deleteAuthoritiesByCollectionIdAndResourceType(publicProjectCollection, ResourceType.PROJECT_COLLECTION);
+            collectionBiz.deleteAuthoritiesByCollectionIdAndResourceType(PRIVATE_PROJECT_COLLECTION, ResourceType.PROJECT_COLLECTION);
+            collectionBiz.deleteAuthoritiesByCollectionIdAndResourceType(DEPLOY_COLLECTION, ResourceType.DEPLOY_COLLECTION);
+            collectionBiz.deleteAuthoritiesByCollectionIdAndResourceType(CLUSTER_COLLECTION, ResourceType.CLUSTER);
+            projectCollectionBiz.deleteProjectCollection(publicProjectCollection);
+        }
+    }
+
+    @Test
+    public void testExpiredEntriesAreSwept() throws InterruptedException {
+        AuthorizationIndex index = new AuthorizationIndex(authBiz, collectionBiz, projectCollectionBiz, 2000);
+        for (int i = 0; i < 20; i++) {
+            index.resource(900100 + i, ResourceType.DEPLOY);
+            index.isAdmin(900100 + i);
+            index.userId("auth-index-" + i);
+        }
+        assertEquals(20, index.stats().getResources());
+        assertEquals(20, index.stats().getUsers());
+
+        // none of them is asked again, the next load drops them all
+        Thread.sleep(2100);
+        index.resource(900200, ResourceType.DEPLOY);
+        assertEquals(1, index.stats().getResources());
+        assertEquals(0, index.stats().getUsers());
+    }
+
+    private void assertConsistent() {
+        for (int user : USERS) {
+            assertResource(user, ResourceType.PROJECT, PROJECT);
+            assertResource(user, ResourceType.PROJECT, MOVED_PROJECT);
+            assertResource(user, ResourceType.DEPLOY, DEPLOY);
+            assertResource(user, ResourceType.CLUSTER, CLUSTER);
+            assertResource(user, ResourceType.PROJECT_COLLECTION, publicProjectCollection);
+            assertResource(user, ResourceType.PROJECT_COLLECTION, PRIVATE_PROJECT_COLLECTION);
+            assertResource(user, ResourceType.DEPLOY_COLLECTION, DEPLOY_COLLECTION);
+            assertCollection(user, ResourceType.PROJECT_COLLECTION, publicProjectCollection);
+            assertCollection(user, ResourceType.PROJECT_COLLECTION, PRIVATE_PROJECT_COLLECTION);
+            assertCollection(user, ResourceType.DEPLOY_COLLECTION, DEPLOY_COLLECTION);
+            assertCollection(user, ResourceType.CLUSTER, CLUSTER_COLLECTION);
+            if (!authBiz.isAdmin(user)) {
+                for (ResourceType collectionType : new ResourceType[]{ResourceType.PROJECT_COLLECTION,
+                        ResourceType.DEPLOY_COLLECTION, ResourceType.CLUSTER}) {
+                    assertEquals(collectionIds(collectionBiz.getAuthoritiesByUserIdAndResourceType(user, collectionType)),
+                            collectionIds(AuthUtil.getCollectionList(user, collectionType)));
+                }
+            }
+        }
+    }
+
+    private void assertResource(int user, ResourceType type, int resourceId) {
+        Role expected = databaseRole(type, resourceId, user);
+        String message = "user " + user + " on " + type + " " + resourceId;
+        assertEquals(message, normalize(expected), AuthUtil.getUserRoleInResource(type, resourceId, user));
+        for (OperationType operation : OPERATIONS) {
+            boolean allowed;
+            switch (operation) {
+                case GET:
+                    allowed = expected.getAccessLevel() < Role.GUEST.getAccessLevel();
+                    break;
+                case MODIFY:
+                    allowed = expected.getAccessLevel() <= Role.DEVELOPER.getAccessLevel();
+                    break;
+                default:
+                    allowed = expected.getAccessLevel() <= Role.MASTER.getAccessLevel();
+            }
+            assertEquals(message + " " + operation, allowed, permitted(user, resourceId, type, operation, false));
+        }
+    }
+
+    private void assertCollection(int user, ResourceType collectionType, int collectionId) {
+        String message = "user " + user + " in " + collectionType + " " + collectionId;
+        CollectionAuthorityMap authorityMap = collectionBiz.getAuthorityByUserIdAndResourceTypeAndCollectionId(user, collectionType, collectionId);
+        for (OperationType operation : OPERATIONS) {
+            boolean allowed;
+            if (authBiz.isAdmin(user)) {
+                allowed = true;
+            } else if (authorityMap == null) {
+                allowed = false;
+            } else {
+                int level = authorityMap.getRole().getAccessLevel();
+                switch (operation) {
+                    case GET:
+                        allowed = level <= Role.REPORTER.getAccessLevel() || (collectionType == ResourceType.PROJECT_COLLECTION
+                                && projectCollectionBiz.isAuthorited(collectionId));
+                        break;
+                    case MODIFY:
+                        allowed = level <= Role.DEVELOPER.getAccessLevel();
+                        break;
+                    default:
+                        allowed = level <= Role.MASTER.getAccessLevel();
+                }
+            }
+            assertEquals(message + " " + operation, allowed, permitted(user, collectionId, collectionType, operation, true));
+        }
+    }
+
+    private static boolean permitted(int user, int id, ResourceType type, OperationType operation, boolean collection) {
+        try {
+            return collection ? AuthUtil.collectionVerify(user, id, type, operation, user) : AuthUtil.verify(user, id, type, operation);
+        } catch (PermitException e) {
+            return false;
+        }
+    }
+
+    private static Role normalize(Role role) {
+        if (role.getAccessLevel() <= Role.MASTER.getAccessLevel()) {
+            return Role.MASTER;
+        } else if (role.getAccessLevel() >= Role.GUEST.getAccessLevel()) {
+            return Role.GUEST;
+        }
+        return role;
+    }
+
+    // what AuthUtil resolved with one query per step before it had the index
+    private Role databaseRole(ResourceType type, int resourceId, int user) {
+        if (authBiz.isAdmin(user)) {
+            return Role.ADMINISTRATOR;
+        }
+        switch (type) {
+            case PROJECT:
+                return databaseRole(user, resourceId, type, ResourceType.PROJECT_COLLECTION);
+            case DEPLOY:
+                return databaseRole(user, resourceId, type, ResourceType.DEPLOY_COLLECTION);
+            case CLUSTER:
+                return databaseRole(user, resourceId, type, ResourceType.CLUSTER);
+            default:
+                CollectionAuthorityMap authorityMap = collectionBiz.getAuthorityByUserIdAndResourceTypeAndCollectionId(user, type, resourceId);
+                if (authorityMap != null) {
+                    return authorityMap.getRole();
+                }
+                if (type == ResourceType.PROJECT_COLLECTION && projectCollectionBiz.isAuthorited(resourceId)) {
+                    return Role.REPORTER;
+                }
+                return Role.NOTEXIST;
+        }
+    }
+
+    private Role databaseRole(int user, int resourceId, ResourceType type, ResourceType collectionType) {
+        CollectionResourceMap resourceMap = collectionBiz.getResourceByResourceIdAndResourceType(resourceId, type);
+        if (resourceMap == null) {
+            return Role.NOTEXIST;
+        }
+        if (resourceMap.getCreatorId() == user) {
+            return Role.OWNER;
+        }
+        CollectionAuthorityMap authorityMap = collectionBiz.getAuthorityByUserIdAndResourceTypeAndCollectionId(user,
+                collectionType, resourceMap.getCollectionId());
+        if (authorityMap != null) {
+            return authorityMap.getRole();
+        }
+        if (collectionType == ResourceType.PROJECT_COLLECTION && projectCollectionBiz.isAuthorited(resourceMap.getCollectionId())) {
+            return Role.REPORTER;
+        }
+        return Role.NOTEXIST;
+    }
+
+    private static Set<Integer> collectionIds(Iterable<CollectionAuthorityMap> authorityMaps) {
+        Set<Integer> ids = new TreeSet<>();
+        if (authorityMaps != null) {
+            for (CollectionAuthorityMap authorityMap : authorityMaps) {
+                ids.add(authorityMap.getCollectionId());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,232 @@
+package org.domeos.framework.engine.coderepo;
+
+import org.domeos.base.BaseTestCase;
+import org.domeos.framework.api.biz.project.ProjectBiz;
+import org.domeos.framework.api.consolemodel.project.CodeSourceInfo;
+import org.domeos.framework.api.model.project.GitlabUser;
+import org.gitlab.api.models.GitlabAccessLevel;
+import org.gitlab.api.models.GitlabProject;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GitlabProjectIndexTest extends BaseTestCase {
+
+    @Autowired
+    ProjectBiz projectBiz;
+
+    // projects of one token, counts access fetches per project
+    private static class FakeSource implements GitlabProjectIndex.ProjectSource {
+        final Map<Integer, GitlabProject> projects = new LinkedHashMap<>();
+        final Map<Integer, GitlabAccessLevel> access = new HashMap<>();
+        final Map<Integer, Integer> fetches = new HashMap<>();
+
+        void put(int projectId, String name, long lastActivity, GitlabAccessLevel accessLevel) {
+            GitlabProject project = new GitlabProject();
+            project.setId(projectId);
+            project.setNameWithNamespace(name);
+            project.setSshUrl("git@gitlab:" + name + ".git");
+            project.setWebUrl("http://gitlab/" + name);
+            project.setCreatedAt(new Date(1000));
+            project.setLastActivityAt(new Date(lastActivity));
+            projects.put(projectId, project);
+            access.put(projectId, accessLevel);
+        }
+
+        @Override
+        public List<GitlabProject> listProjects() throws IOException {
+            return new ArrayList<>(projects.values());
+        }
+
+        @Override
+        public synchronized GitlabAccessLevel getAccessLevel(int projectId) throws IOException {
+            Integer count = fetches.get(projectId);
+            fetches.put(projectId, count == null ? 1 : count + 1);
+            return access.get(projectId);
+        }
+
+        synchronized int fetched(int projectId) {
+            Integer count = fetches.get(projectId);
+            return count == null ? 0 : count;
+        }
+    }
+
+    private static List<Integer> projectIds(List<CodeSourceInfo.ProjectInfo> infos) {
+        List<Integer> ids = new ArrayList<>();
+        for (CodeSourceInfo.ProjectInfo info : infos) {
+            ids.add(info.getProjectId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @Test
+    public void testFirstBuildFiltersByAccess() {
+        GitlabProjectIndex.clearSnapshots();
+        FakeSource source = new FakeSource();
+        source.put(9101, "a/master", 1000, GitlabAccessLevel.Master);
+        source.put(9102, "a/developer", 1000, GitlabAccessLevel.Developer);
+        source.put(9103, "a/none", 1000, null);
+        source.put(9104, "a/owner", 1000, GitlabAccessLevel.Owner);
+
+        List<CodeSourceInfo.ProjectInfo> infos = GitlabProjectIndex.getProjectInfos(901, source, 1000);
+        assertEquals(Arrays.asList(9101, 9104), projectIds(infos));
+        assertEquals(1, source.fetched(9102));
+
+        // served from the index, also after the memory copy is gone
+        GitlabProjectIndex.clearSnapshots();
+        assertEquals(Arrays.asList(9101, 9104), projectIds(GitlabProjectIndex.getProjectInfos(901, source, 1000)));
+        assertEquals(1, source.fetched(9101));
+    }
+
+    @Test
+    public void testConcurrentFirstLoadsListOnce() throws Exception {
+        GitlabProjectIndex.clearSnapshots();
+        final AtomicInteger listings = new AtomicInteger();
+        final FakeSource source = new FakeSource() {
+            @Override
+            public List<GitlabProject> listProjects() throws IOException {
+                listings.incrementAndGet();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.listProjects();
+            }
+        };
+        source.put(9501, "e/one", 1000, GitlabAccessLevel.Master);
+        source.put(9502, "e/two", 1000, GitlabAccessLevel.Owner);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<CodeSourceInfo.ProjectInfo>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<List<CodeSourceInfo.ProjectInfo>>() {
+                    @Override
+                    public List<CodeSourceInfo.ProjectInfo> call() throws Exception {
+                        start.await();
+                        return GitlabProjectIndex.getProjectInfos(905, source, 1000);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<List<CodeSourceInfo.ProjectInfo>> result : results) {
+                assertEquals(Arrays.asList(9501, 9502), projectIds(result.get(5, TimeUnit.SECONDS)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, listings.get());
+        assertEquals(1, source.fetched(9501));
+    }
+
+    @Test
+    public void testRefreshFetchesOnlyChangedProjects() {
+        GitlabProjectIndex.clearSnapshots();
+        FakeSource source = new FakeSource();
+        source.put(9201, "b/one", 1000, GitlabAccessLevel.Master);
+        source.put(9202, "b/two", 1000, GitlabAccessLevel.Master);
+        source.put(9203, "b/three", 1000, GitlabAccessLevel.Reporter);
+        GitlabProjectIndex.refresh(902, source, 1000);
+
+        source.put(9202, "b/two", 2000, GitlabAccessLevel.Master);
+        source.put(9203, "b/three", 1000, GitlabAccessLevel.Master);
+        source.projects.get(9201).setNameWithNamespace("b/renamed");
+        source.put(9204, "b/four", 1000, GitlabAccessLevel.Owner);
+        GitlabProjectIndex.refresh(902, source, 2000);
+
+        assertEquals(1, source.fetched(9201));
+        assertEquals(2, source.fetched(9202));
+        // neither new nor active, its new access is seen by the next full refresh
+        assertEquals(1, source.fetched(9203));
+        assertEquals(1, source.fetched(9204));
+        List<CodeSourceInfo.ProjectInfo> infos = GitlabProjectIndex.getProjectInfos(902, source, 2000);
+        assertEquals(Arrays.asList(9201, 9202, 9204), projectIds(infos));
+        for (CodeSourceInfo.ProjectInfo info : infos) {
+            if (info.getProjectId() == 9201) {
+                assertEquals("b/renamed", info.getNameWithNamespace());
+            }
+        }
+
+        GitlabProjectIndex.refresh(902, source, 2000 + 24 * 60 * 60 * 1000L);
+        assertEquals(2, source.fetched(9203));
+        assertEquals(Arrays.asList(9201, 9202, 9203, 9204),
+                projectIds(GitlabProjectIndex.getProjectInfos(902, source, 2000 + 24 * 60 * 60 * 1000L)));
+    }
+
+    @Test
+    public void testRemovedProjectsDisappear() {
+        GitlabProjectIndex.clearSnapshots();
+        FakeSource source = new FakeSource();
+        source.put(9301, "c/one", 1000, GitlabAccessLevel.Master);
+        source.put(9302, "c/two", 1000, GitlabAccessLevel.Master);
+        GitlabProjectIndex.refresh(903, source, 1000);
+
+        source.projects.remove(9302);
+        GitlabProjectIndex.refresh(903, source, 2000);
+        assertEquals(Collections.singletonList(9301), projectIds(GitlabProjectIndex.getProjectInfos(903, source, 2000)));
+        GitlabProjectIndex.clearSnapshots();
+        assertEquals(Collections.singletonList(9301), projectIds(GitlabProjectIndex.getProjectInfos(903, source, 2000)));
+    }
+
+    @Test
+    public void testProjectChangedForcesFetch() {
+        GitlabProjectIndex.clearSnapshots();
+        FakeSource source = new FakeSource();
+        source.put(9401, "d/one", 1000, GitlabAccessLevel.Reporter);
+        source.put(9402, "d/two", 1000, GitlabAccessLevel.Master);
+        GitlabProjectIndex.refresh(904, source, 1000);
+
+        source.access.put(9401, GitlabAccessLevel.Master);
+        GitlabProjectIndex.projectChanged(9401);
+        GitlabProjectIndex.refresh(904, source, 2000);
+        assertEquals(2, source.fetched(9401));
+        assertEquals(1, source.fetched(9402));
+        assertEquals(Arrays.asList(9401, 9402), projectIds(GitlabProjectIndex.getProjectInfos(904, source, 2000)));
+    }
+
+    @Test
+    public void testDeletedTokenLeavesNoIndex() {
+        GitlabProjectIndex.clearSnapshots();
+        GitlabUser gitlab = new GitlabUser();
+        gitlab.setUserId(1);
+        gitlab.setName("index-delete");
+        gitlab.setToken("token");
+        gitlab.setCreateTime(1000);
+        projectBiz.addGitlabInfo(gitlab);
+        int gitlabId = gitlab.getId();
+
+        FakeSource source = new FakeSource();
+        source.put(9601, "f/one", 1000, GitlabAccessLevel.Master);
+        assertEquals(Collections.singletonList(9601), projectIds(GitlabProjectIndex.getProjectInfos(gitlabId, source, 1000)));
+        assertEquals(1, projectBiz.listGitlabProjectEntries(gitlabId).size());
+
+        GitlabInfo.deleteGitlab(gitlabId);
+        assertNull(projectBiz.getGitlabIserById(gitlabId));
+        assertTrue(projectBiz.listGitlabProjectEntries(gitlabId).isEmpty());
+        assertNull(projectBiz.getGitlabIndexState(gitlabId));
+        // nothing kept in memory either, the next list builds the index again
+        long misses = GitlabProjectIndex.getStats().getMisses();
+        GitlabProjectIndex.getProjectInfos(gitlabId, source, 1000);
+        assertEquals(misses + 1, GitlabProjectIndex.getStats().getMisses());
+        assertEquals(2, source.fetched(9601));
+    }
+}
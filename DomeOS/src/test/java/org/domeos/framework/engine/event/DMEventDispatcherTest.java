@@ -0,0 +1,220 @@
+package org.domeos.framework.engine.event;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DMEventDispatcherTest extends TestCase {
+
+    static class KeyedEvent extends DMEvent<Integer> {
+        private final int seq;
+
+        KeyedEvent(int key, int seq) {
+            super(key);
+            this.seq = seq;
+        }
+
+        @Override
+        public int partitionKey() {
+            return getSource();
+        }
+
+        @Override
+        public boolean droppable() {
+            return true;
+        }
+    }
+
+    static class KeptEvent extends KeyedEvent {
+        KeptEvent(int key, int seq) {
+            super(key, seq);
+        }
+
+        @Override
+        public boolean droppable() {
+            return false;
+        }
+    }
+
+    static class OtherEvent extends DMEvent<String> {
+        OtherEvent(String source) {
+            super(source);
+        }
+    }
+
+    static class RecordingListener extends SimpleEventListener<KeyedEvent> {
+        final List<int[]> received = Collections.synchronizedList(new ArrayList<int[]>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch latch;
+
+        RecordingListener(int expected) {
+            latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void register() {
+            // registered by the test on its own dispatcher
+        }
+
+        @Override
+        public void onEvent(KeyedEvent e) {
+            received.add(new int[]{e.getSource(), e.seq});
+            threads.add(Thread.currentThread().getName());
+            latch.countDown();
+        }
+    }
+
+    static class SyncListener extends RecordingListener {
+        SyncListener(int expected) {
+            super(expected);
+        }
+
+        @Override
+        public DeliveryMode deliveryMode() {
+            return DeliveryMode.SYNC;
+        }
+    }
+
+    @Test
+    public void testOrderPerPartition() throws Exception {
+        DMEventDispatcher dispatcher = new DMEventDispatcher(4, 1000);
+        RecordingListener listener = new RecordingListener(400);
+        dispatcher.register(listener);
+        for (int seq = 0; seq < 100; seq++) {
+            for (int key = 1; key <= 4; key++) {
+                dispatcher.publish(new KeyedEvent(key, seq));
+            }
+        }
+        dispatcher.publish(new OtherEvent("ignored"));
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+
+        int[] last = new int[]{-1, -1, -1, -1, -1};
+        for (int[] event : listener.received) {
+            assertEquals(last[event[0]] + 1, event[1]);
+            last[event[0]] = event[1];
+        }
+        assertEquals(400, dispatcher.stats().getListeners().get(0).getDelivered());
+    }
+
+    @Test
+    public void testSyncDelivery() {
+        DMEventDispatcher dispatcher = new DMEventDispatcher(2, 10);
+        SyncListener listener = new SyncListener(1);
+        dispatcher.register(listener);
+        dispatcher.publish(new KeyedEvent(1, 0));
+        assertEquals(1, listener.received.size());
+        assertEquals(Thread.currentThread().getName(), listener.threads.get(0));
+    }
+
+    @Test
+    public void testFullQueueDropsEvent() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger overflows = new AtomicInteger();
+        DMEventDispatcher dispatcher = new DMEventDispatcher(1, 1);
+        dispatcher.setOverflowHandler(new Runnable() {
+            @Override
+            public void run() {
+                overflows.incrementAndGet();
+            }
+        });
+        RecordingListener listener = new RecordingListener(3) {
+            @Override
+            public void onEvent(KeyedEvent e) {
+                if (e.seq == 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                super.onEvent(e);
+            }
+        };
+        dispatcher.register(listener);
+        dispatcher.publish(new KeyedEvent(1, 0));
+        Thread.sleep(100);
+        dispatcher.publish(new KeyedEvent(1, 1));
+        // worker is blocked and its queue is full, the publisher neither waits nor runs the listener
+        long start = System.currentTimeMillis();
+        dispatcher.publish(new KeyedEvent(1, 2));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(listener.received.isEmpty());
+        assertEquals(1, overflows.get());
+        release.countDown();
+        for (int i = 0; i < 50 && listener.received.size() < 2; i++) {
+            Thread.sleep(100);
+        }
+        dispatcher.publish(new KeyedEvent(1, 3));
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList(0, 1, 3), seqs(listener.received));
+        for (String thread : listener.threads) {
+            assertFalse(Thread.currentThread().getName().equals(thread));
+        }
+        assertEquals(1, dispatcher.stats().getListeners().get(0).getDropped());
+        assertEquals(0, dispatcher.stats().getListeners().get(0).getPending());
+    }
+
+    @Test
+    public void testFullQueueWaitsForKeptEvent() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final DMEventDispatcher dispatcher = new DMEventDispatcher(1, 1);
+        RecordingListener listener = new RecordingListener(3) {
+            @Override
+            public void onEvent(KeyedEvent e) {
+                if (e.seq == 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                super.onEvent(e);
+            }
+        };
+        dispatcher.register(listener);
+        dispatcher.publish(new KeyedEvent(1, 0));
+        Thread.sleep(100);
+        dispatcher.publish(new KeyedEvent(1, 1));
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.publish(new KeptEvent(1, 2));
+            }
+        });
+        publisher.start();
+        // the queue is full, the publisher waits instead of dropping
+        publisher.join(300);
+        assertTrue(publisher.isAlive());
+        release.countDown();
+        publisher.join(5000);
+        assertFalse(publisher.isAlive());
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList(0, 1, 2), seqs(listener.received));
+        assertEquals(0, dispatcher.stats().getListeners().get(0).getDropped());
+    }
+
+    private static List<Integer> seqs(List<int[]> received) {
+        List<Integer> seqs = new ArrayList<>();
+        synchronized (received) {
+            for (int[] event : received) {
+                seqs.add(event[1]);
+            }
+        }
+        return seqs;
+    }
+
+    @Test
+    public void testDuplicateListenerClassRegisteredOnce() {
+        DMEventDispatcher dispatcher = new DMEventDispatcher(1, 10);
+        dispatcher.register(new SyncListener(1));
+        dispatcher.register(new SyncListener(1));
+        assertEquals(1, dispatcher.stats().getListeners().size());
+    }
+}
@@ -0,0 +1,74 @@
+package org.domeos.framework.engine.event.k8sEvent;
+
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventBuilder;
+import junit.framework.TestCase;
+import org.domeos.framework.engine.event.DMEventDispatcher;
+import org.domeos.framework.engine.event.SimpleEventListener;
+import org.domeos.framework.engine.event.UpdateDeployStatusTask;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class K8sEventParseListenerTest extends TestCase {
+
+    static class CheckListener extends SimpleEventListener<K8sReplicationControllerEvent> {
+        final List<Integer> checked = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void register() {
+            // registered by the test on its own dispatcher
+        }
+
+        @Override
+        public void onEvent(K8sReplicationControllerEvent e) {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            int deployId = e.getSource().getDeployId();
+            checked.add(deployId);
+            UpdateDeployStatusTask.UPDATE_DEPLOY_TASK.remove(deployId);
+        }
+    }
+
+    private static K8SEventReceivedEvent rcEvent(int deployId) {
+        Event event = new EventBuilder()
+                .withReason("SuccessfulCreate")
+                .withNewInvolvedObject().withKind("ReplicationController").endInvolvedObject()
+                .build();
+        return new K8SEventReceivedEvent(new K8sEventDetail(event, deployId, 1));
+    }
+
+    @Test
+    public void testDroppedCheckDoesNotBlockDeployment() throws Exception {
+        DMEventDispatcher dispatcher = new DMEventDispatcher(1, 1);
+        CheckListener checks = new CheckListener();
+        dispatcher.register(checks);
+        K8sEventParseListener listener = new K8sEventParseListener(dispatcher);
+
+        // the first check blocks the only worker, the second fills its queue, the third is dropped
+        listener.onEvent(rcEvent(8101));
+        Thread.sleep(100);
+        listener.onEvent(rcEvent(8102));
+        listener.onEvent(rcEvent(8103));
+        assertEquals(1, dispatcher.stats().getListeners().get(0).getDropped());
+        assertFalse(UpdateDeployStatusTask.UPDATE_DEPLOY_TASK.contains(8103));
+
+        checks.release.countDown();
+        for (int i = 0; i < 50 && checks.checked.size() < 2; i++) {
+            Thread.sleep(100);
+        }
+        listener.onEvent(rcEvent(8103));
+        for (int i = 0; i < 50 && checks.checked.size() < 3; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(3, checks.checked.size());
+        assertEquals(Integer.valueOf(8103), checks.checked.get(2));
+        assertFalse(UpdateDeployStatusTask.UPDATE_DEPLOY_TASK.contains(8103));
+    }
+}
@@ -0,0 +1,92 @@
+package org.domeos.framework.engine.k8s;
+
+import io.fabric8.kubernetes.api.model.Node;
+import io.fabric8.kubernetes.api.model.NodeBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NodeInventoryTest extends TestCase {
+
+    static Node node(String name, String... labels) {
+        Map<String, String> labelMap = new HashMap<>();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            labelMap.put(labels[i], labels[i + 1]);
+        }
+        return new NodeBuilder().withNewMetadata().withName(name).withLabels(labelMap).endMetadata().build();
+    }
+
+    static Pod pod(String name, String nodeName, boolean ready) {
+        return new PodBuilder().withNewMetadata().withName(name).endMetadata()
+                .withNewSpec().withNodeName(nodeName).endSpec()
+                .withNewStatus().withPhase("Running")
+                .addNewCondition().withType("Ready").withStatus(ready ? "True" : "False").endCondition()
+                .addNewContainerStatus().withName("c").withReady(ready).endContainerStatus()
+                .endStatus().build();
+    }
+
+    private static NodeInventory inventory() {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(node("node1", "zone", "a", "disk", "ssd"));
+        nodes.add(node("node2", "zone", "a"));
+        nodes.add(node("node3"));
+        List<Pod> pods = new ArrayList<>();
+        pods.add(pod("p1", "node1", true));
+        pods.add(pod("p2", "node1", true));
+        pods.add(pod("p3", "node1", false));
+        pods.add(pod("p4", "node2", true));
+        // not scheduled yet
+        pods.add(pod("p5", null, false));
+        return new NodeInventory(nodes, pods);
+    }
+
+    @Test
+    public void testPodsGroupedByNode() {
+        NodeInventory inventory = inventory();
+        assertEquals(3, inventory.getPodsByNode("node1").size());
+        assertEquals(1, inventory.getPodsByNode("node2").size());
+        assertTrue(inventory.getPodsByNode("node3").isEmpty());
+        assertTrue(inventory.getPodsByNode("missing").isEmpty());
+        assertEquals(5, inventory.getPods().size());
+    }
+
+    @Test
+    public void testReadyPodCount() {
+        NodeInventory inventory = inventory();
+        assertEquals(2, inventory.getReadyPodCount("node1"));
+        assertEquals(1, inventory.getReadyPodCount("node2"));
+        assertEquals(0, inventory.getReadyPodCount("node3"));
+        assertEquals(3, inventory.getReadyPodCount());
+    }
+
+    @Test
+    public void testNodesByLabels() {
+        NodeInventory inventory = inventory();
+        assertEquals(2, inventory.getNodesByLabels(Collections.singletonMap("zone", "a")).size());
+        Map<String, String> labels = new HashMap<>();
+        labels.put("zone", "a");
+        labels.put("disk", "ssd");
+        List<Node> nodes = inventory.getNodesByLabels(labels);
+        assertEquals(1, nodes.size());
+        assertEquals("node1", nodes.get(0).getMetadata().getName());
+        assertTrue(inventory.getNodesByLabels(Collections.singletonMap("zone", "b")).isEmpty());
+        assertEquals(3, inventory.getNodesByLabels(new HashMap<String, String>()).size());
+    }
+
+    @Test
+    public void testGetNode() {
+        NodeInventory inventory = inventory();
+        assertEquals("node2", inventory.getNode("node2").getMetadata().getName());
+        assertNull(inventory.getNode("missing"));
+        NodeInventory empty = new NodeInventory(null, null);
+        assertTrue(empty.getNodes().isEmpty());
+        assertEquals(0, empty.getReadyPodCount());
+    }
+}
@@ -0,0 +1,60 @@
+package org.domeos.framework.engine.k8s;
+
+import io.fabric8.kubernetes.api.model.Node;
+import io.fabric8.kubernetes.api.model.NodeList;
+import io.fabric8.kubernetes.api.model.NodeStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import junit.framework.TestCase;
+import org.domeos.framework.engine.k8s.util.KubeUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NodeWrapperTest extends TestCase {
+
+    private static KubeUtils client() throws Exception {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(NodeInventoryTest.node("node1", "zone", "a"));
+        nodes.add(NodeInventoryTest.node("node2", "disk", "ssd"));
+        for (Node node : nodes) {
+            node.getMetadata().setCreationTimestamp("2016-05-01T10:00:00Z");
+            node.setStatus(new NodeStatus());
+        }
+        List<Pod> pods = new ArrayList<>();
+        pods.add(NodeInventoryTest.pod("p1", "node1", true));
+        pods.add(NodeInventoryTest.pod("p2", "node2", true));
+        KubeUtils client = mock(KubeUtils.class);
+        NodeList nodeList = new NodeList();
+        nodeList.setItems(nodes);
+        when(client.listNode()).thenReturn(nodeList);
+        PodList podList = new PodList();
+        podList.setItems(pods);
+        when(client.listAllPod()).thenReturn(podList);
+        return client;
+    }
+
+    @Test
+    public void testLabelsAndNodeCountListNoPods() throws Exception {
+        KubeUtils client = client();
+        NodeWrapper wrapper = new NodeWrapper(client);
+        assertEquals(2, wrapper.getNodeCount());
+        assertEquals(2, wrapper.getClusterLabels().size());
+        verify(client, times(1)).listNode();
+        verify(client, never()).listAllPod();
+
+        // pod counts list the pods once and reuse the listed nodes
+        assertEquals(2, wrapper.getPodCount());
+        assertEquals(1, wrapper.getNodeListByLabel(Collections.singletonMap("zone", "a")).get(0).getRunningPods());
+        verify(client, times(1)).listNode();
+        verify(client, times(1)).listAllPod();
+    }
+}
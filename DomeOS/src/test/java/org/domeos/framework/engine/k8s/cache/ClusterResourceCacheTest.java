@@ -0,0 +1,122 @@
+package org.domeos.framework.engine.k8s.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import junit.framework.TestCase;
+import okhttp3.TlsVersion;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ClusterResourceCacheTest extends TestCase {
+
+    private HttpServer server;
+    private KubernetesClient client;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.add(exchange.getRequestURI().toString());
+                String kind = path.endsWith("/pods") ? "PodList" : "ReplicationControllerList";
+                byte[] body = ("{\"kind\":\"" + kind + "\",\"apiVersion\":\"v1\",\"metadata\":{\"resourceVersion\":\"7\"},"
+                        + "\"items\":[]}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        // a client which picked up a namespace, as one running inside kubernetes would
+        client = new DefaultKubernetesClient(new ConfigBuilder()
+                .withMasterUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .withNamespace("domeos")
+                // cleartext is only allowed without tls versions, as KubeClientRegistry configures it
+                .removeFromTlsVersions(TlsVersion.TLS_1_0)
+                .removeFromTlsVersions(TlsVersion.TLS_1_1)
+                .removeFromTlsVersions(TlsVersion.TLS_1_2)
+                .build());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        client.close();
+        server.stop(0);
+    }
+
+    private static <T> Watcher<T> ignore() {
+        return new Watcher<T>() {
+            @Override
+            public void eventReceived(Action action, T resource) {
+            }
+
+            @Override
+            public void onClose(KubernetesClientException cause) {
+            }
+        };
+    }
+
+    private void watchQuietly(Runnable watch) {
+        try {
+            watch.run();
+        } catch (KubernetesClientException e) {
+            // the test server does not upgrade to a websocket, only the request matters
+        }
+    }
+
+    @Test
+    public void testInformerListsAndWatchesAllNamespaces() throws Exception {
+        ClusterResourceCache.listAllPods(client);
+        ClusterResourceCache.listAllReplicationControllers(client);
+        watchQuietly(new Runnable() {
+            @Override
+            public void run() {
+                Watch watch = ClusterResourceCache.watchAllPods(client, "7", ClusterResourceCacheTest.<Pod>ignore());
+                watch.close();
+            }
+        });
+        watchQuietly(new Runnable() {
+            @Override
+            public void run() {
+                Watch watch = ClusterResourceCache.watchAllReplicationControllers(client, "7",
+                        ClusterResourceCacheTest.<ReplicationController>ignore());
+                watch.close();
+            }
+        });
+        for (int i = 0; i < 50 && requests.size() < 4; i++) {
+            Thread.sleep(100);
+        }
+
+        assertTrue(requests.toString(), requests.contains("/api/v1/pods"));
+        assertTrue(requests.toString(), requests.contains("/api/v1/replicationcontrollers"));
+        boolean podWatch = false;
+        boolean rcWatch = false;
+        for (String request : requests) {
+            assertFalse(request, request.contains("/namespaces/"));
+            podWatch |= request.startsWith("/api/v1/pods?") && request.contains("watch=true");
+            rcWatch |= request.startsWith("/api/v1/replicationcontrollers?") && request.contains("watch=true");
+        }
+        assertTrue(requests.toString(), podWatch);
+        assertTrue(requests.toString(), rcWatch);
+    }
+}
@@ -0,0 +1,79 @@
+package org.domeos.framework.engine.k8s.cache;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import junit.framework.TestCase;
+import org.domeos.global.GlobalConstant;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ResourceStoreTest extends TestCase {
+
+    private static Pod pod(String namespace, String name, String deployId, String version, String resourceVersion) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put(GlobalConstant.DEPLOY_ID_STR, deployId);
+        labels.put(GlobalConstant.VERSION_STR, version);
+        return new PodBuilder().withNewMetadata()
+                .withNamespace(namespace)
+                .withName(name)
+                .withLabels(labels)
+                .withResourceVersion(resourceVersion)
+                .endMetadata().build();
+    }
+
+    private static Map<String, String> selector(String deployId, String version) {
+        Map<String, String> selector = new HashMap<>();
+        selector.put(GlobalConstant.DEPLOY_ID_STR, deployId);
+        if (version != null) {
+            selector.put(GlobalConstant.VERSION_STR, version);
+        }
+        return selector;
+    }
+
+    @Test
+    public void testIndexedList() {
+        ResourceStore<Pod> store = new ResourceStore<>(Pod.class);
+        store.replace(Arrays.asList(
+                pod("ns1", "a", "1", "1", "10"),
+                pod("ns1", "b", "1", "2", "11"),
+                pod("ns2", "c", "1", "2", "12"),
+                pod("ns1", "d", "2", "1", "13")));
+
+        assertEquals(4, store.list(null, null).size());
+        assertEquals(3, store.list(null, selector("1", null)).size());
+        assertEquals(2, store.list(null, selector("1", "2")).size());
+        assertEquals(1, store.list("ns1", selector("1", "2")).size());
+        assertEquals(0, store.list(null, selector("3", null)).size());
+        assertEquals(3, store.list("ns1", null).size());
+    }
+
+    @Test
+    public void testUpsertMovesIndexAndIgnoresOlder() {
+        ResourceStore<Pod> store = new ResourceStore<>(Pod.class);
+        store.upsert(pod("ns1", "a", "1", "1", "10"));
+        store.upsert(pod("ns1", "a", "1", "2", "12"));
+        assertEquals(0, store.list(null, selector("1", "1")).size());
+        assertEquals(1, store.list(null, selector("1", "2")).size());
+
+        store.upsert(pod("ns1", "a", "1", "1", "11"));
+        assertEquals(1, store.list(null, selector("1", "2")).size());
+
+        store.delete("ns1", "a");
+        assertEquals(0, store.size());
+        assertEquals(0, store.list(null, selector("1", null)).size());
+    }
+
+    @Test
+    public void testListReturnsCopies() {
+        ResourceStore<Pod> store = new ResourceStore<>(Pod.class);
+        store.upsert(pod("ns1", "a", "1", "1", "10"));
+        List<Pod> pods = store.list(null, null);
+        pods.get(0).getMetadata().getLabels().put(GlobalConstant.VERSION_STR, "9");
+        assertEquals(1, store.list(null, selector("1", "1")).size());
+        assertEquals("1", store.list(null, null).get(0).getMetadata().getLabels().get(GlobalConstant.VERSION_STR));
+    }
+}
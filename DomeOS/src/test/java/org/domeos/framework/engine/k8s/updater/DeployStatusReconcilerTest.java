@@ -0,0 +1,124 @@
+package org.domeos.framework.engine.k8s.updater;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DeployStatusReconcilerTest extends TestCase {
+
+    private static class RecordingHandler implements DeployStatusReconciler.Handler {
+        List<Integer> all = Arrays.asList(1, 2, 3, 4, 5);
+        List<List<Integer>> passes = new ArrayList<>();
+        boolean fail;
+
+        @Override
+        public List<Integer> listDeployIds() {
+            return all;
+        }
+
+        @Override
+        public void reconcile(List<Integer> deployIds) {
+            if (fail) {
+                throw new RuntimeException("database down");
+            }
+            passes.add(new ArrayList<>(deployIds));
+        }
+    }
+
+    @Test
+    public void testFirstPassIsFullSweep() {
+        RecordingHandler handler = new RecordingHandler();
+        DeployStatusReconciler reconciler = new DeployStatusReconciler(60000);
+        reconciler.setHandler(handler);
+        reconciler.markDirty(3);
+
+        reconciler.runOnce(1000);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), handler.passes.get(0));
+        // marks before the sweep are covered by it
+        reconciler.runOnce(2000);
+        assertEquals(1, handler.passes.size());
+        assertEquals(1, reconciler.stats().getFullSweeps());
+
+        reconciler.runOnce(61000);
+        assertEquals(5, handler.passes.get(1).size());
+        assertEquals(2, reconciler.stats().getFullSweeps());
+    }
+
+    @Test
+    public void testRequestedFullSweep() {
+        RecordingHandler handler = new RecordingHandler();
+        DeployStatusReconciler reconciler = new DeployStatusReconciler(60000);
+        reconciler.setHandler(handler);
+        reconciler.runOnce(1000);
+
+        reconciler.requestFullSweep();
+        reconciler.runOnce(2000);
+        assertEquals(5, handler.passes.get(1).size());
+        reconciler.runOnce(3000);
+        assertEquals(2, handler.passes.size());
+        assertEquals(2, reconciler.stats().getFullSweeps());
+    }
+
+    @Test
+    public void testOnlyDirtyDeploymentsAreChecked() {
+        RecordingHandler handler = new RecordingHandler();
+        DeployStatusReconciler reconciler = new DeployStatusReconciler(60000);
+        reconciler.setHandler(handler);
+        reconciler.runOnce(1000);
+
+        reconciler.markDirty(4);
+        reconciler.markDirty(2);
+        reconciler.markDirty(4);
+        reconciler.runOnce(2000);
+        assertEquals(Arrays.asList(2, 4), sorted(handler.passes.get(1)));
+        reconciler.runOnce(3000);
+        assertEquals(2, handler.passes.size());
+        assertEquals(2, reconciler.stats().getMarked());
+    }
+
+    @Test
+    public void testTimerKeepsEarliestAndFiresWhenDue() {
+        RecordingHandler handler = new RecordingHandler();
+        DeployStatusReconciler reconciler = new DeployStatusReconciler(60000);
+        reconciler.setHandler(handler);
+        reconciler.runOnce(1000);
+
+        reconciler.markAt(7, 5000);
+        reconciler.markAt(7, 3000);
+        reconciler.markAt(7, 9000);
+        reconciler.runOnce(2000);
+        assertEquals(1, handler.passes.size());
+        assertEquals(1, reconciler.stats().getTimers());
+        reconciler.runOnce(3000);
+        assertEquals(Arrays.asList(7), handler.passes.get(1));
+        assertEquals(0, reconciler.stats().getTimers());
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+        RecordingHandler handler = new RecordingHandler();
+        DeployStatusReconciler reconciler = new DeployStatusReconciler(60000);
+        reconciler.setHandler(handler);
+        reconciler.runOnce(1000);
+
+        handler.fail = true;
+        reconciler.markDirty(2);
+        reconciler.runOnce(2000);
+        assertEquals(1, reconciler.stats().getFailedPasses());
+        assertEquals(1, reconciler.stats().getDirty());
+
+        handler.fail = false;
+        reconciler.runOnce(3000);
+        assertEquals(Arrays.asList(2), handler.passes.get(1));
+    }
+
+    private static List<Integer> sorted(List<Integer> ids) {
+        List<Integer> copy = new ArrayList<>(ids);
+        Collections.sort(copy);
+        return copy;
+    }
+}
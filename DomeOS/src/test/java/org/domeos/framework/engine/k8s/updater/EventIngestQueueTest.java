@@ -0,0 +1,113 @@
+package org.domeos.framework.engine.k8s.updater;
+
+import io.fabric8.kubernetes.api.model.Event;
+import junit.framework.TestCase;
+import org.domeos.framework.engine.event.k8sEvent.K8sEventDetail;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EventIngestQueueTest extends TestCase {
+
+    private static K8sEventDetail detail(int deployId) {
+        return new K8sEventDetail(new Event(), deployId, 1);
+    }
+
+    @Test
+    public void testBatchBySizeKeepsOrder() throws Exception {
+        final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+        EventIngestQueue queue = new EventIngestQueue(1, new EventIngestQueue.BatchWriter() {
+            @Override
+            public void write(List<K8sEventDetail> batch) throws IOException {
+                List<Integer> ids = new ArrayList<>();
+                for (K8sEventDetail detail : batch) {
+                    ids.add(detail.getDeployId());
+                }
+                batches.add(ids);
+            }
+        }, 100, 10, 200);
+        for (int i = 0; i < 25; i++) {
+            queue.put(detail(i));
+        }
+        assertTrue(queue.awaitDrained(5000));
+        queue.close();
+
+        List<Integer> all = new ArrayList<>();
+        for (List<Integer> batch : batches) {
+            assertTrue(batch.size() <= 10);
+            all.addAll(batch);
+        }
+        assertEquals(25, all.size());
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, all.get(i).intValue());
+        }
+        assertEquals(25, queue.stats().getWritten());
+    }
+
+    @Test
+    public void testFlushByTime() throws Exception {
+        final CountDownLatch written = new CountDownLatch(1);
+        EventIngestQueue queue = new EventIngestQueue(1, new EventIngestQueue.BatchWriter() {
+            @Override
+            public void write(List<K8sEventDetail> batch) throws IOException {
+                written.countDown();
+            }
+        }, 100, 50, 50);
+        queue.put(detail(1));
+        assertTrue(written.await(2, TimeUnit.SECONDS));
+        queue.close();
+    }
+
+    @Test
+    public void testBackpressureAndFallback() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        EventIngestQueue queue = new EventIngestQueue(1, new EventIngestQueue.BatchWriter() {
+            @Override
+            public void write(List<K8sEventDetail> batch) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                if (batch.size() > 1) {
+                    throw new IOException("batch rejected");
+                }
+                if (batch.get(0).getDeployId() == 3) {
+                    throw new IOException("bad row");
+                }
+            }
+        }, 2, 4, 10);
+        // flusher takes the first event and blocks in write, two more fill the queue
+        queue.put(detail(1));
+        Thread.sleep(100);
+        queue.put(detail(2));
+        queue.put(detail(3));
+        final CountDownLatch putDone = new CountDownLatch(1);
+        final EventIngestQueue blocked = queue;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.put(detail(4));
+                    putDone.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        producer.start();
+        assertFalse(putDone.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.stats().getBlockedPuts());
+
+        release.countDown();
+        assertTrue(putDone.await(2, TimeUnit.SECONDS));
+        assertTrue(queue.awaitDrained(5000));
+        queue.close();
+        assertEquals(3, queue.stats().getWritten());
+        assertEquals(1, queue.stats().getFailed());
+    }
+}
@@ -0,0 +1,132 @@
+package org.domeos.framework.engine.k8s.updater;
+
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Pod;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RolloutSchedulerTest extends TestCase {
+
+    // waits an hour after each step unless woken up, finishes after the given steps
+    private static class CountingRollout implements RolloutScheduler.Rollout {
+        final AtomicInteger steps = new AtomicInteger();
+        final CountDownLatch[] latches;
+        final int clusterId;
+        final String deployId;
+
+        CountingRollout(int clusterId, String deployId, int totalSteps) {
+            this.clusterId = clusterId;
+            this.deployId = deployId;
+            this.latches = new CountDownLatch[totalSteps];
+            for (int i = 0; i < totalSteps; i++) {
+                latches[i] = new CountDownLatch(1);
+            }
+        }
+
+        @Override
+        public long step() {
+            int step = steps.incrementAndGet();
+            latches[step - 1].countDown();
+            return step >= latches.length ? RolloutScheduler.DONE : TimeUnit.HOURS.toMillis(1);
+        }
+
+        @Override
+        public boolean isInterested(int clusterId, Pod pod) {
+            return clusterId == this.clusterId && (pod == null || deployId.equals(pod.getMetadata().getLabels().get("deployId")));
+        }
+
+        boolean awaitStep(int step) throws InterruptedException {
+            return latches[step - 1].await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Pod pod(String deployId) {
+        ObjectMeta metadata = new ObjectMeta();
+        metadata.setLabels(Collections.singletonMap("deployId", deployId));
+        Pod pod = new Pod();
+        pod.setMetadata(metadata);
+        return pod;
+    }
+
+    @Test
+    public void testWakeRunsNextStepEarly() throws InterruptedException {
+        RolloutScheduler scheduler = new RolloutScheduler(1);
+        CountingRollout rollout = new CountingRollout(1, "7", 3);
+        RolloutScheduler.Handle handle = scheduler.submit(rollout);
+        assertTrue(rollout.awaitStep(1));
+
+        scheduler.podChanged(1, pod("7"));
+        assertTrue(rollout.awaitStep(2));
+        scheduler.podChanged(1, null);
+        assertTrue(rollout.awaitStep(3));
+
+        waitDone(handle);
+        assertEquals(3, rollout.steps.get());
+        assertEquals(0, scheduler.stats().getActive());
+        assertEquals(1, scheduler.stats().getFinished());
+    }
+
+    @Test
+    public void testOtherPodsDoNotWake() throws InterruptedException {
+        RolloutScheduler scheduler = new RolloutScheduler(1);
+        CountingRollout rollout = new CountingRollout(1, "7", 2);
+        RolloutScheduler.Handle handle = scheduler.submit(rollout);
+        assertTrue(rollout.awaitStep(1));
+
+        scheduler.podChanged(1, pod("8"));
+        scheduler.podChanged(2, pod("7"));
+        scheduler.podChanged(2, null);
+        assertFalse(rollout.latches[1].await(500, TimeUnit.MILLISECONDS));
+        assertEquals(0, scheduler.stats().getWakeups());
+        assertFalse(handle.isDone());
+        handle.cancel();
+    }
+
+    @Test
+    public void testCancelStopsRollout() throws InterruptedException {
+        RolloutScheduler scheduler = new RolloutScheduler(1);
+        CountingRollout rollout = new CountingRollout(1, "7", 2);
+        RolloutScheduler.Handle handle = scheduler.submit(rollout);
+        assertTrue(rollout.awaitStep(1));
+
+        // a step still running finishes first
+        handle.cancel();
+        waitDone(handle);
+        scheduler.podChanged(1, pod("7"));
+        assertFalse(rollout.latches[1].await(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, rollout.steps.get());
+        assertEquals(0, scheduler.stats().getActive());
+    }
+
+    @Test
+    public void testFailedStepFinishesRollout() throws InterruptedException {
+        RolloutScheduler scheduler = new RolloutScheduler(1);
+        RolloutScheduler.Handle handle = scheduler.submit(new RolloutScheduler.Rollout() {
+            @Override
+            public long step() {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public boolean isInterested(int clusterId, Pod pod) {
+                return true;
+            }
+        });
+        waitDone(handle);
+        assertEquals(1, scheduler.stats().getFailures());
+        assertEquals(0, scheduler.stats().getActive());
+    }
+
+    private static void waitDone(RolloutScheduler.Handle handle) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!handle.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(handle.isDone());
+    }
+}
@@ -0,0 +1,69 @@
+package org.domeos.framework.engine.k8s.util;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import junit.framework.TestCase;
+import org.domeos.framework.api.model.cluster.Cluster;
+import org.junit.Test;
+
+public class KubeClientRegistryTest extends TestCase {
+
+    private static Cluster cluster(int id, String token) {
+        Cluster cluster = new Cluster();
+        cluster.setId(id);
+        cluster.setName("cluster" + id);
+        cluster.setApi("http://127.0.0.1:1");
+        cluster.setOauthToken(token);
+        return cluster;
+    }
+
+    @Test
+    public void testNamespaceViewsShareHttpClient() throws Exception {
+        Cluster cluster = cluster(10001, "token");
+        KubernetesClient root = KubeClientRegistry.getClient(cluster, null);
+        assertSame(root, KubeClientRegistry.getClient(cluster, null));
+
+        KubernetesClient view = KubeClientRegistry.getClient(cluster, "ns1");
+        assertSame(view, KubeClientRegistry.getClient(cluster, "ns1"));
+        assertEquals("ns1", view.getNamespace());
+        assertNotSame(view, KubeClientRegistry.getClient(cluster, "ns2"));
+        assertSame(((DefaultKubernetesClient) root).getHttpClient(), ((DefaultKubernetesClient) view).getHttpClient());
+
+        // clusters are keyed by id alone, 10001 + "1" no longer shares a key with 100011
+        KubernetesClient other = KubeClientRegistry.getClient(cluster(100011, "token"), null);
+        assertNotSame(((DefaultKubernetesClient) root).getHttpClient(), ((DefaultKubernetesClient) other).getHttpClient());
+        KubeClientRegistry.remove(10001);
+        KubeClientRegistry.remove(100011);
+    }
+
+    @Test
+    public void testRebuildOnConfigChange() throws Exception {
+        KubernetesClient first = KubeClientRegistry.getClient(cluster(10002, "token1"), null);
+        KubernetesClient second = KubeClientRegistry.getClient(cluster(10002, "token2"), null);
+        assertNotSame(first, second);
+        assertEquals("token2", second.getConfiguration().getOauthToken());
+        assertSame(second, KubeClientRegistry.getClient(cluster(10002, "token2"), null));
+
+        KubeClientRegistry.remove(10002);
+        assertNotSame(second, KubeClientRegistry.getClient(cluster(10002, "token2"), null));
+        KubeClientRegistry.remove(10002);
+    }
+
+    @Test
+    public void testClusterClientNotScopedToOwnNamespace() throws Exception {
+        String old = System.getProperty(Config.KUBERNETES_NAMESPACE_SYSTEM_PROPERTY);
+        System.setProperty(Config.KUBERNETES_NAMESPACE_SYSTEM_PROPERTY, "domeos");
+        try {
+            assertNull(KubeClientRegistry.getClient(cluster(10003, "token"), null).getNamespace());
+            assertEquals("ns1", KubeClientRegistry.getClient(cluster(10003, "token"), "ns1").getNamespace());
+        } finally {
+            if (old == null) {
+                System.clearProperty(Config.KUBERNETES_NAMESPACE_SYSTEM_PROPERTY);
+            } else {
+                System.setProperty(Config.KUBERNETES_NAMESPACE_SYSTEM_PROPERTY, old);
+            }
+            KubeClientRegistry.remove(10003);
+        }
+    }
+}
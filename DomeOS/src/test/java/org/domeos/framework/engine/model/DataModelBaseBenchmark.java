@@ -0,0 +1,88 @@
+package org.domeos.framework.engine.model;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the legacy DataModelBase decoding (two regex passes, two readTree, Class.forName and
+ * newInstance per call, filtered writer rebuilt per call) with the current one.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.domeos.framework.engine.model.DataModelBaseBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataModelBaseBenchmark {
+
+    private Model1 model;
+    private String json;
+
+    @Setup
+    public void setup() {
+        model = new Model1();
+        model.setName("benchmark");
+        model.field2 = "line1\nline2\r\nline3";
+        model.field4 = new Model2();
+        for (int i = 0; i < 50; i++) {
+            model.field4.field2.add("image-" + i + ":latest");
+        }
+        json = model.toString();
+    }
+
+    @Benchmark
+    public Object decodeLegacy() throws Exception {
+        String str = json.replaceAll("\r\n", "\\\\r\\\\n").replaceAll("\n", "\\\\n");
+        String fqcn = DataModelBase.objectMapper.readTree(str).get("fqcn").asText();
+        int ver = DataModelBase.objectMapper.readTree(str).get("ver").asInt();
+        Class clazz = Class.forName(fqcn);
+        IJsonable tmp = (IJsonable) clazz.newInstance();
+        if (tmp.VERSION_NOW() == ver) {
+            return DataModelBase.objectMapper.readValue(str, clazz);
+        }
+        return tmp.fromString(str, ver);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return new Model1().fromString(json);
+    }
+
+    @Benchmark
+    public String encodeLegacy() throws Exception {
+        SimpleBeanPropertyFilter simpleBeanPropertyFilter = SimpleBeanPropertyFilter.serializeAllExcept(
+                model.excludeForJSON());
+        FilterProvider filterProvider = new SimpleFilterProvider().setFailOnUnknownId(false)
+                .addFilter("myFilter", simpleBeanPropertyFilter);
+        return DataModelBase.objectMapper.writer(filterProvider).writeValueAsString(model);
+    }
+
+    @Benchmark
+    public String encode() {
+        return model.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(DataModelBaseBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
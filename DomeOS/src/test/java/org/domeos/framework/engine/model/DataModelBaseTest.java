@@ -47,6 +47,14 @@ public class DataModelBaseTest extends TestCase {
 
     }
 
+    @Test
+    public void testRawLineBreak() throws Exception {
+        String raw = "{\"field2\":\"line1\r\nline2\nline3\",\"fqcn\":\"org.domeos.framework.engine.model.Model1\",\"ver\":1}";
+        Model1 out = new Model1().fromString(raw);
+        assertEquals(out.field2, "line1\r\nline2\nline3");
+        assertEquals(out.getFqcn(), "org.domeos.framework.engine.model.Model1");
+    }
+
     public void testSpeicalChar() throws Exception {
         Model1 model1 = new Model1();
         model1.setDescription("sdfsdf");
@@ -0,0 +1,88 @@
+package org.domeos.framework.engine.model;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class RowModelCacheTest extends TestCase {
+
+    private Model1 newModel(int id, String name) {
+        Model1 model = new Model1();
+        model.setId(id);
+        model.setName(name);
+        model.setState("RUNNING");
+        model.field1 = id * 10;
+        model.field4 = new Model2();
+        model.field4.field2 = new ArrayList<>();
+        model.field4.field2.add("List1");
+        return model;
+    }
+
+    @Test
+    public void testGetReturnsCopy() throws Exception {
+        RowModelCache cache = RowModelCache.enable("test_cache_copy");
+        cache.put(newModel(1, "model1"), cache.generation());
+
+        Model1 out = cache.get(1, Model1.class);
+        assertEquals(out.getName(), "model1");
+        assertEquals(out.getState(), "RUNNING");
+        assertEquals(out.field1, 10);
+        assertEquals(out.field4.field2.size(), 1);
+
+        out.field1 = 100;
+        out.field4.field2.add("List2");
+        Model1 again = cache.get(1, Model1.class);
+        assertEquals(again.field1, 10);
+        assertEquals(again.field4.field2.size(), 1);
+
+        assertEquals(cache.getByName("model1", Model1.class).getId(), 1);
+        assertNull(cache.getByName("model2", Model1.class));
+        assertEquals(cache.stats().getHits(), 3);
+        assertEquals(cache.stats().getMisses(), 1);
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        RowModelCache cache = RowModelCache.enable("test_cache_invalidate");
+        long generation = cache.generation();
+        cache.put(newModel(1, "model1"), generation);
+        cache.invalidate(1);
+        assertNull(cache.get(1, Model1.class));
+        assertNull(cache.getByName("model1", Model1.class));
+
+        // loaded before the invalidation, must not be cached
+        cache.put(newModel(1, "model1"), generation);
+        assertNull(cache.get(1, Model1.class));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        RowModelCache cache = RowModelCache.enable("test_cache_evict", 2, 60 * 1000);
+        cache.put(newModel(1, "model1"), cache.generation());
+        cache.put(newModel(2, "model2"), cache.generation());
+        cache.get(1, Model1.class);
+        cache.put(newModel(3, "model3"), cache.generation());
+        assertNotNull(cache.get(1, Model1.class));
+        assertNull(cache.get(2, Model1.class));
+        assertEquals(cache.stats().getEvictions(), 1);
+        assertNull(cache.getByName("model2", Model1.class));
+
+        RowModelCache expiring = RowModelCache.enable("test_cache_expire", 10, 0);
+        expiring.put(newModel(1, "model1"), expiring.generation());
+        Thread.sleep(5);
+        assertNull(expiring.get(1, Model1.class));
+    }
+
+    @Test
+    public void testEvictionDropsNames() throws Exception {
+        RowModelCache cache = RowModelCache.enable("test_cache_evict_names", 10, 60 * 1000);
+        for (int i = 1; i <= 100; i++) {
+            cache.put(newModel(i, "model" + i), cache.generation());
+        }
+        assertEquals(cache.stats().getSize(), 10);
+        assertEquals(cache.stats().getNames(), 10);
+        assertEquals(cache.getByName("model100", Model1.class).getId(), 100);
+        assertNull(cache.getByName("model1", Model1.class));
+    }
+}
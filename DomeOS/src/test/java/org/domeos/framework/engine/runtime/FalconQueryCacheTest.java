@@ -0,0 +1,149 @@
+package org.domeos.framework.engine.runtime;
+
+import junit.framework.TestCase;
+import org.domeos.framework.api.model.monitor.falcon.EndpointCounter;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryRequest;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryResponse;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FalconQueryCacheTest extends TestCase {
+
+    private static final String URL = "http://falcon/graph/history";
+
+    private static GraphHistoryRequest request(EndpointCounter... counters) {
+        return new GraphHistoryRequest(1000, 2000, "AVERAGE", new ArrayList<>(Arrays.asList(counters)));
+    }
+
+    private static class CountingLoader implements FalconQueryCache.Loader {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<GraphHistoryResponse> result = new ArrayList<>();
+
+        @Override
+        public List<GraphHistoryResponse> load(String url, GraphHistoryRequest request) throws IOException {
+            calls.incrementAndGet();
+            return result;
+        }
+    }
+
+    @Test
+    public void testConcurrentIdenticalQueriesShareOneLoad() throws Exception {
+        final FalconQueryCache cache = new FalconQueryCache(60000, 16);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final List<GraphHistoryResponse> result = new ArrayList<>();
+        final FalconQueryCache.Loader slowLoader = new FalconQueryCache.Loader() {
+            @Override
+            public List<GraphHistoryResponse> load(String url, GraphHistoryRequest request) throws IOException {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return result;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<GraphHistoryResponse>>> futures = new ArrayList<>();
+            for (int index = 0; index < 4; index++) {
+                futures.add(executor.submit(new Callable<List<GraphHistoryResponse>>() {
+                    @Override
+                    public List<GraphHistoryResponse> call() throws Exception {
+                        return cache.get(URL, request(new EndpointCounter("h", "cpu.busy")), slowLoader);
+                    }
+                }));
+                if (index == 0) {
+                    assertTrue(started.await(5, TimeUnit.SECONDS));
+                }
+            }
+            // let the others reach the running entry before the first load returns
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.stats().getJoins() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<List<GraphHistoryResponse>> future : futures) {
+                assertSame(result, future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.stats().getLoads());
+        assertEquals(3, cache.stats().getJoins());
+    }
+
+    @Test
+    public void testExpiredEntryIsLoadedAgain() throws Exception {
+        FalconQueryCache cache = new FalconQueryCache(50, 16);
+        CountingLoader loader = new CountingLoader();
+        cache.get(URL, request(new EndpointCounter("h", "cpu.busy")), loader);
+        cache.get(URL, request(new EndpointCounter("h", "cpu.busy")), loader);
+        assertEquals(1, loader.calls.get());
+        assertEquals(1, cache.stats().getHits());
+
+        Thread.sleep(80);
+        cache.get(URL, request(new EndpointCounter("h", "cpu.busy")), loader);
+        assertEquals(2, loader.calls.get());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws Exception {
+        FalconQueryCache cache = new FalconQueryCache(60000, 16);
+        FalconQueryCache.Loader failing = new FalconQueryCache.Loader() {
+            @Override
+            public List<GraphHistoryResponse> load(String url, GraphHistoryRequest request) throws IOException {
+                throw new IOException("falcon down");
+            }
+        };
+        try {
+            cache.get(URL, request(new EndpointCounter("h", "cpu.busy")), failing);
+            fail("expected the load failure to be rethrown");
+        } catch (IOException e) {
+            assertEquals("falcon down", e.getMessage());
+        }
+        assertEquals(1, cache.stats().getFailures());
+        assertEquals(0, cache.stats().getSize());
+
+        CountingLoader loader = new CountingLoader();
+        assertSame(loader.result, cache.get(URL, request(new EndpointCounter("h", "cpu.busy")), loader));
+        assertEquals(1, loader.calls.get());
+    }
+
+    @Test
+    public void testKeyIgnoresCounterOrder() {
+        EndpointCounter first = new EndpointCounter("h1", "cpu.busy");
+        EndpointCounter second = new EndpointCounter("h2", "mem.used");
+        assertEquals(FalconQueryCache.key(URL, request(first, second)), FalconQueryCache.key(URL, request(second, first)));
+
+        GraphHistoryRequest max = request(first, second);
+        max.setCf("MAX");
+        assertFalse(FalconQueryCache.key(URL, request(first, second)).equals(FalconQueryCache.key(URL, max)));
+    }
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+        FalconQueryCache cache = new FalconQueryCache(60000, 4);
+        CountingLoader loader = new CountingLoader();
+        for (int index = 0; index < 10; index++) {
+            cache.get(URL, request(new EndpointCounter("h" + index, "cpu.busy")), loader);
+        }
+        assertTrue(cache.stats().getSize() <= 4);
+    }
+}
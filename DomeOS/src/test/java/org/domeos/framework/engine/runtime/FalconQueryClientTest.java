@@ -0,0 +1,171 @@
+package org.domeos.framework.engine.runtime;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.domeos.framework.api.model.monitor.falcon.CounterValue;
+import org.domeos.framework.api.model.monitor.falcon.EndpointCounter;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryRequest;
+import org.domeos.framework.api.model.monitor.falcon.GraphHistoryResponse;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FalconQueryClientTest extends TestCase {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer server;
+    private String url;
+    private final AtomicInteger received = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/graph/history", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                received.incrementAndGet();
+                GraphHistoryRequest request = MAPPER.readValue(exchange.getRequestBody(), GraphHistoryRequest.class);
+                List<GraphHistoryResponse> responses = new ArrayList<>();
+                int code = 200;
+                for (EndpointCounter counter : request.getEndpoint_counters()) {
+                    if ("bad".equals(counter.getEndpoint())) {
+                        code = 500;
+                    }
+                    if ("slow".equals(counter.getEndpoint())) {
+                        try {
+                            Thread.sleep(2000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    responses.add(new GraphHistoryResponse(counter.getEndpoint(), counter.getCounter(), "GAUGE", 60,
+                            Collections.singletonList(new CounterValue(request.getStart(), 1.0))));
+                }
+                byte[] body = code == 200 ? MAPPER.writeValueAsBytes(responses) : new byte[0];
+                exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        // slow requests must not hold up the others
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/graph/history";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    private static List<EndpointCounter> counters(String endpoint, int count) {
+        List<EndpointCounter> counters = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            counters.add(new EndpointCounter(endpoint, "container.mem.usage/id=" + i));
+        }
+        return counters;
+    }
+
+    @Test
+    public void testQueryIsChunkedAndMerged() {
+        FalconQueryClient client = new FalconQueryClient(200, 4, 5000);
+        FalconQueryClient.BatchResult result = client.query(url, 0, 300, "AVERAGE", counters("node1", 450));
+
+        assertEquals(3, result.getChunks());
+        assertEquals(0, result.getFailedChunks());
+        assertEquals(3, received.get());
+        assertEquals(450, result.getResponses().size());
+        Set<String> merged = new HashSet<>();
+        for (GraphHistoryResponse response : result.getResponses()) {
+            merged.add(response.getCounter());
+        }
+        assertEquals(450, merged.size());
+        assertEquals(3, client.stats().getRequests());
+        assertEquals(0, client.stats().getErrors());
+    }
+
+    @Test
+    public void testFailedChunkKeepsOthers() {
+        FalconQueryClient client = new FalconQueryClient(10, 2, 5000);
+        List<EndpointCounter> counters = counters("node1", 20);
+        counters.addAll(counters("bad", 10));
+        FalconQueryClient.BatchResult result = client.query(url, 0, 300, "AVERAGE", counters);
+
+        assertEquals(3, result.getChunks());
+        assertEquals(1, result.getFailedChunks());
+        assertEquals(20, result.getResponses().size());
+        assertEquals(1, client.stats().getErrors());
+    }
+
+    @Test
+    public void testRequestTimeout() {
+        FalconQueryClient client = new FalconQueryClient(10, 2, 500);
+        List<EndpointCounter> counters = counters("node1", 10);
+        counters.addAll(counters("slow", 1));
+        FalconQueryClient.BatchResult result = client.query(url, 0, 300, "AVERAGE", counters);
+
+        assertEquals(2, result.getChunks());
+        assertEquals(1, result.getFailedChunks());
+        assertEquals(10, result.getResponses().size());
+    }
+
+    @Test
+    public void testPostFailsOnErrorCode() throws IOException {
+        FalconQueryClient client = new FalconQueryClient(10, 2, 5000);
+        assertEquals(2, client.post(url, new GraphHistoryRequest(0, 300, "AVERAGE", counters("node1", 2))).size());
+        try {
+            client.post(url, new GraphHistoryRequest(0, 300, "AVERAGE", counters("bad", 1)));
+            fail("expect IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        // the failed response was consumed and its connection released
+        assertEquals(0, client.stats().getLeasedConnections());
+    }
+
+    @Test
+    public void testInteractiveClientIsSeparate() {
+        FalconQueryClient batch = FalconQueryClient.getInstance();
+        FalconQueryClient interactive = FalconQueryClient.getInteractive();
+        assertNotSame(batch, interactive);
+        assertTrue(interactive.stats().getTimeoutMillis() < batch.stats().getTimeoutMillis());
+        assertTrue(interactive.stats().getThreads() < batch.stats().getThreads());
+    }
+
+    @Test
+    public void testPostNotBlockedBySlowBatch() throws Exception {
+        final FalconQueryClient batch = new FalconQueryClient(1, 1, 5000);
+        FalconQueryClient interactive = new FalconQueryClient(10, 1, 5000);
+        Thread query = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                batch.query(url, 0, 300, "AVERAGE", counters("slow", 2));
+            }
+        });
+        query.start();
+        for (int i = 0; i < 50 && batch.stats().getLeasedConnections() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, batch.stats().getLeasedConnections());
+
+        long start = System.currentTimeMillis();
+        assertEquals(2, interactive.post(url, new GraphHistoryRequest(0, 300, "AVERAGE", counters("node1", 2))).size());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(0, interactive.stats().getLeasedConnections());
+        query.join();
+    }
+}
@@ -0,0 +1,290 @@
+package org.domeos.framework.engine.websocket;
+
+import io.fabric8.kubernetes.client.dsl.LogWatch;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LogStreamHubTest extends TestCase {
+
+    private static class FakeSink implements LogSubscriber.LogSink {
+        private final boolean autoComplete;
+        private final List<String> frames = new ArrayList<>();
+        private SendHandler inFlight;
+        private volatile CloseReason closeReason;
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private volatile LogSubscriber owner;
+        private volatile LogStreamHub hub;
+        private volatile boolean calledUnderLock = false;
+
+        FakeSink(boolean autoComplete) {
+            this.autoComplete = autoComplete;
+        }
+
+        @Override
+        public void sendText(String text, SendHandler handler) {
+            checkLock();
+            synchronized (this) {
+                frames.add(text);
+                if (!autoComplete) {
+                    inFlight = handler;
+                    return;
+                }
+            }
+            handler.onResult(new SendResult());
+        }
+
+        void complete() {
+            SendHandler handler;
+            synchronized (this) {
+                handler = inFlight;
+                inFlight = null;
+            }
+            handler.onResult(new SendResult());
+        }
+
+        private void checkLock() {
+            LogSubscriber subscriber = owner;
+            if (subscriber != null && Thread.holdsLock(subscriber)) {
+                calledUnderLock = true;
+            }
+            final LogStreamHub streamHub = hub;
+            if (streamHub != null) {
+                // stats take the upstream and subscriber locks, as an unsubscribe from OnClose would
+                Thread other = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        streamHub.stats();
+                    }
+                });
+                other.start();
+                try {
+                    other.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (other.isAlive()) {
+                    calledUnderLock = true;
+                }
+            }
+        }
+
+        synchronized String text() {
+            StringBuilder builder = new StringBuilder();
+            for (String frame : frames) {
+                builder.append(frame);
+            }
+            return builder.toString();
+        }
+
+        synchronized int frameCount() {
+            return frames.size();
+        }
+
+        @Override
+        public void sendPing() {
+        }
+
+        @Override
+        public void close(CloseReason reason) {
+            checkLock();
+            closeReason = reason;
+            closed.countDown();
+        }
+    }
+
+    private static class PipeSource implements LogStreamHub.LogSource {
+        private final AtomicInteger opened = new AtomicInteger();
+        private final PipedOutputStream out = new PipedOutputStream();
+        private final PipedInputStream in;
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        PipeSource() throws IOException {
+            in = new PipedInputStream(out);
+        }
+
+        @Override
+        public LogWatch open() {
+            opened.incrementAndGet();
+            return new LogWatch() {
+                @Override
+                public InputStream getOutput() {
+                    return in;
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                    closed.countDown();
+                }
+            };
+        }
+
+        void write(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    private static void waitFor(FakeSink sink, String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!sink.text().equals(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, sink.text());
+    }
+
+    @Test
+    public void testSubscribersShareUpstream() throws Exception {
+        LogStreamHub hub = new LogStreamHub(4);
+        PipeSource source = new PipeSource();
+        FakeSink first = new FakeSink(true);
+        FakeSink second = new FakeSink(true);
+        LogSubscriber firstSubscriber = new LogSubscriber(first, LogSubscriber.OverflowPolicy.DROP, 1024);
+        LogSubscriber secondSubscriber = new LogSubscriber(second, LogSubscriber.OverflowPolicy.DROP, 1024);
+
+        hub.subscribe("pod", source, firstSubscriber);
+        source.write("line1\n");
+        waitFor(first, "line1\n");
+
+        // a late subscriber gets what was read before it came
+        hub.subscribe("pod", source, secondSubscriber);
+        source.write("line2\n");
+        waitFor(first, "line1\nline2\n");
+        waitFor(second, "line1\nline2\n");
+        assertEquals(1, source.opened.get());
+        assertEquals(1, hub.stats().getUpstreams());
+        assertEquals(2, hub.stats().getSubscribers());
+
+        hub.unsubscribe("pod", firstSubscriber);
+        assertEquals(1, source.closed.getCount());
+        hub.unsubscribe("pod", secondSubscriber);
+        assertTrue(source.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, hub.stats().getUpstreams());
+    }
+
+    @Test
+    public void testUpstreamEndClosesSubscribers() throws Exception {
+        LogStreamHub hub = new LogStreamHub(4);
+        PipeSource source = new PipeSource();
+        FakeSink sink = new FakeSink(true);
+        hub.subscribe("build", source, new LogSubscriber(sink, LogSubscriber.OverflowPolicy.CLOSE, 1024));
+        source.write("done\n");
+        source.out.close();
+        assertTrue(sink.closed.await(5, TimeUnit.SECONDS));
+        assertEquals("done\n", sink.text());
+        assertEquals(CloseReason.CloseCodes.NORMAL_CLOSURE, sink.closeReason.getCloseCode());
+    }
+
+    @Test
+    public void testTooManyUpstreams() throws Exception {
+        LogStreamHub hub = new LogStreamHub(1);
+        hub.subscribe("a", new PipeSource(), new LogSubscriber(new FakeSink(true), LogSubscriber.OverflowPolicy.DROP, 1024));
+        try {
+            hub.subscribe("b", new PipeSource(), new LogSubscriber(new FakeSink(true), LogSubscriber.OverflowPolicy.DROP, 1024));
+            fail("expect IOException");
+        } catch (IOException e) {
+            assertEquals(1, hub.stats().getRejected());
+        }
+    }
+
+    @Test
+    public void testFramesAreCoalesced() {
+        FakeSink sink = new FakeSink(false);
+        LogSubscriber subscriber = new LogSubscriber(sink, LogSubscriber.OverflowPolicy.DROP, 1024);
+        subscriber.offer("a");
+        subscriber.offer("b");
+        subscriber.offer("c");
+        assertEquals(1, sink.frameCount());
+        sink.complete();
+        assertEquals(2, sink.frameCount());
+        assertEquals("abc", sink.text());
+    }
+
+    @Test
+    public void testOverflowDrop() {
+        FakeSink sink = new FakeSink(false);
+        LogSubscriber subscriber = new LogSubscriber(sink, LogSubscriber.OverflowPolicy.DROP, 10);
+        subscriber.offer("first");
+        subscriber.offer("123456");
+        subscriber.offer("78901");
+        assertEquals(6, subscriber.getDroppedChars());
+        sink.complete();
+        assertEquals("first\n[6 chars dropped]\n78901", sink.text());
+        assertFalse(subscriber.isClosed());
+    }
+
+    @Test
+    public void testOverflowClose() {
+        FakeSink sink = new FakeSink(false);
+        LogSubscriber subscriber = new LogSubscriber(sink, LogSubscriber.OverflowPolicy.CLOSE, 10);
+        subscriber.offer("first");
+        subscriber.offer("123456");
+        subscriber.offer("78901");
+        assertTrue(subscriber.isClosed());
+        assertEquals(CloseReason.CloseCodes.TRY_AGAIN_LATER, sink.closeReason.getCloseCode());
+    }
+
+    @Test
+    public void testSinkIsCalledWithoutLock() {
+        FakeSink sink = new FakeSink(false);
+        LogSubscriber subscriber = new LogSubscriber(sink, LogSubscriber.OverflowPolicy.CLOSE, 10);
+        sink.owner = subscriber;
+        subscriber.offer("first");
+        subscriber.offer("second");
+        sink.complete();
+        subscriber.finish(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "log end"));
+        sink.complete();
+        assertEquals("firstsecond", sink.text());
+        assertEquals(CloseReason.CloseCodes.NORMAL_CLOSURE, sink.closeReason.getCloseCode());
+
+        FakeSink slowSink = new FakeSink(false);
+        LogSubscriber slow = new LogSubscriber(slowSink, LogSubscriber.OverflowPolicy.CLOSE, 10);
+        slowSink.owner = slow;
+        slow.offer("first");
+        slow.offer("12345678901");
+        assertTrue(slow.isClosed());
+
+        // a session closes through the OnClose of its endpoint, which takes the upstream lock
+        assertFalse(sink.calledUnderLock);
+        assertFalse(slowSink.calledUnderLock);
+    }
+
+    @Test
+    public void testHubCallsSinkWithoutLock() throws Exception {
+        LogStreamHub hub = new LogStreamHub(4);
+        PipeSource source = new PipeSource();
+        FakeSink first = new FakeSink(true);
+        FakeSink second = new FakeSink(true);
+        first.hub = hub;
+        second.hub = hub;
+        hub.subscribe("pod", source, new LogSubscriber(first, LogSubscriber.OverflowPolicy.CLOSE, 1024));
+        source.write("line1\n");
+        waitFor(first, "line1\n");
+        hub.subscribe("pod", source, new LogSubscriber(second, LogSubscriber.OverflowPolicy.CLOSE, 1024));
+        waitFor(second, "line1\n");
+        source.out.close();
+        assertTrue(first.closed.await(5, TimeUnit.SECONDS));
+        assertTrue(second.closed.await(5, TimeUnit.SECONDS));
+
+        assertFalse(first.calledUnderLock);
+        assertFalse(second.calledUnderLock);
+    }
+}
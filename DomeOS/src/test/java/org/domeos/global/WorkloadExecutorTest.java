@@ -0,0 +1,124 @@
+package org.domeos.global;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class WorkloadExecutorTest extends TestCase {
+
+    @Test
+    public void testNestedFanOutDoesNotDeadlock() throws Exception {
+        final WorkloadExecutor executor = new WorkloadExecutor("nested", 1, 100, WorkloadExecutor.RejectPolicy.CALLER_RUNS);
+        try {
+            // the only worker waits for tasks queued behind it, it runs them itself
+            Future<Integer> outer = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    List<Future<Integer>> futures = new ArrayList<>();
+                    for (int i = 0; i < 5; i++) {
+                        final int value = i;
+                        futures.add(executor.submit(new Callable<Integer>() {
+                            @Override
+                            public Integer call() {
+                                return value;
+                            }
+                        }));
+                    }
+                    int sum = 0;
+                    for (Future<Integer> future : futures) {
+                        sum += future.get();
+                    }
+                    return sum;
+                }
+            });
+            assertEquals(10, outer.get(5, TimeUnit.SECONDS).intValue());
+            WorkloadExecutor.ExecutorStats stats = executor.stats();
+            assertEquals(6, stats.getSubmitted());
+            assertEquals(6, stats.getCompleted());
+            assertEquals(5, stats.getHelped());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCallerRunsWhenFull() throws Exception {
+        WorkloadExecutor executor = new WorkloadExecutor("full", 1, 1, WorkloadExecutor.RejectPolicy.CALLER_RUNS);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    release.await();
+                    return null;
+                }
+            });
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    return null;
+                }
+            });
+            final Thread caller = Thread.currentThread();
+            Future<Boolean> third = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return Thread.currentThread() == caller;
+                }
+            });
+            assertTrue(third.isDone());
+            assertTrue(third.get());
+            assertEquals(1, executor.stats().getRejected());
+            assertEquals(1, executor.stats().getQueueDepth());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAbortWhenFull() throws Exception {
+        WorkloadExecutor executor = new WorkloadExecutor("abort", 1, 1, WorkloadExecutor.RejectPolicy.ABORT);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            executor.submit(blocked);
+            executor.submit(blocked);
+            try {
+                executor.submit(blocked);
+                fail("expect RejectedExecutionException");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            assertEquals(1, executor.stats().getRejected());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRegistryReturnsOneExecutorPerName() {
+        WorkloadExecutor executor = ExecutorRegistry.get(ExecutorRegistry.ALARM);
+        assertSame(executor, ExecutorRegistry.get(ExecutorRegistry.ALARM));
+        assertNotSame(executor, ExecutorRegistry.get(ExecutorRegistry.MONITOR));
+        assertEquals(ExecutorRegistry.DEFAULT_THREADS, executor.stats().getMaxThreads());
+        assertEquals(16, ExecutorRegistry.get(ExecutorRegistry.GITLAB).stats().getMaxThreads());
+    }
+}
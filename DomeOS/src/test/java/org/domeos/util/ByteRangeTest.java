@@ -0,0 +1,48 @@
+package org.domeos.util;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class ByteRangeTest extends TestCase {
+
+    @Test
+    public void testRangeHeader() {
+        ByteRange range = ByteRange.resolve("bytes=10-19", null, null, 100);
+        assertEquals(10, range.getStart());
+        assertEquals(10, range.getLength());
+        assertTrue(range.isPartial());
+        assertEquals("bytes 10-19/100", range.contentRange(100));
+
+        range = ByteRange.resolve("bytes=90-", null, null, 100);
+        assertEquals(90, range.getStart());
+        assertEquals(100, range.getEnd());
+
+        range = ByteRange.resolve("bytes=-5", null, null, 100);
+        assertEquals(95, range.getStart());
+        assertEquals(5, range.getLength());
+
+        range = ByteRange.resolve("bytes=50-500", null, null, 100);
+        assertEquals(100, range.getEnd());
+
+        assertNull(ByteRange.resolve("bytes=100-", null, null, 100));
+        assertNull(ByteRange.resolve("bytes=20-10", null, null, 100));
+    }
+
+    @Test
+    public void testIgnoredHeaderAndParameters() {
+        ByteRange range = ByteRange.resolve("bytes=0-1,5-6", null, null, 100);
+        assertFalse(range.isPartial());
+        assertEquals(100, range.getLength());
+        assertEquals(100, ByteRange.resolve("items=0-1", null, null, 100).getLength());
+
+        range = ByteRange.resolve(null, null, 30L, 100);
+        assertEquals(70, range.getStart());
+        assertFalse(range.isPartial());
+        assertEquals(0, ByteRange.resolve(null, null, 300L, 100).getStart());
+
+        range = ByteRange.resolve(null, 40L, null, 100);
+        assertEquals(40, range.getStart());
+        assertEquals(60, range.getLength());
+        assertNull(ByteRange.resolve(null, 101L, null, 100));
+    }
+}
@@ -0,0 +1,93 @@
+package org.domeos.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class HttpsClientTest extends TestCase {
+
+    private HttpServer server;
+    private String url;
+    private HttpsClient client;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Override
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                int code = exchange.getRequestURI().getPath().endsWith("/error") ? 500 : 200;
+                byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(code, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v2/";
+        client = new HttpsClient(10, 2, 5000, 5000, 30000);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        client.close();
+        server.stop(0);
+    }
+
+    private String get(String path) throws IOException {
+        try (CloseableHttpResponse response = client.execute(new HttpGet(url + path))) {
+            return EntityUtils.toString(response.getEntity());
+        }
+    }
+
+    @Test
+    public void testConnectionIsReused() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("{}", get("_catalog"));
+        }
+        assertEquals(1, clientPorts.size());
+        HttpsClient.ClientStats stats = client.stats();
+        assertEquals(0, stats.getLeasedConnections());
+        assertEquals(1, stats.getIdleConnections());
+    }
+
+    @Test
+    public void testHostStats() throws IOException {
+        get("_catalog");
+        get("error");
+        try {
+            client.execute(new HttpGet("http://127.0.0.1:1/v2/")).close();
+            fail("expect IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        HttpsClient.ClientStats stats = client.stats();
+        assertEquals(2, stats.getHosts().size());
+        for (HttpsClient.HostStats host : stats.getHosts()) {
+            if (host.getHost().equals("127.0.0.1:1")) {
+                assertEquals(1, host.getRequests());
+                assertEquals(1, host.getFailures());
+            } else {
+                assertEquals(2, host.getRequests());
+                assertEquals(0, host.getFailures());
+                assertEquals(1, host.getServerErrors());
+            }
+        }
+    }
+}
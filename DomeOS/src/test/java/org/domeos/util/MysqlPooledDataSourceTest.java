@@ -0,0 +1,112 @@
+package org.domeos.util;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class MysqlPooledDataSourceTest extends TestCase {
+
+    private MysqlPooledDataSource newDataSource(String db) {
+        MysqlPooledDataSource dataSource = new MysqlPooledDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:" + db + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMinIdle(0);
+        dataSource.setMaxIdle(2);
+        dataSource.setMaxActive(2);
+        dataSource.setMaxWait(100);
+        return dataSource;
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        MysqlPooledDataSource dataSource = newDataSource("pool_reuse");
+        Connection first = dataSource.getConnection();
+        try (Statement statement = first.createStatement()) {
+            statement.execute("SELECT 1");
+        }
+        first.close();
+        assertTrue(first.isClosed());
+        try {
+            first.createStatement();
+            fail("closed proxy must not be usable");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        Connection second = dataSource.getConnection();
+        assertFalse(second.isClosed());
+        second.close();
+        second.close();
+
+        MysqlPooledDataSource.PoolStats stats = dataSource.getStats();
+        assertEquals(1, stats.getCreated());
+        assertEquals(2, stats.getBorrowed());
+        assertEquals(0, stats.getActive());
+        assertEquals(1, stats.getIdle());
+        dataSource.destroy();
+    }
+
+    @Test
+    public void testMaxActive() throws Exception {
+        MysqlPooledDataSource dataSource = newDataSource("pool_max");
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        try {
+            dataSource.getConnection();
+            fail("pool is exhausted");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertEquals(1, dataSource.getStats().getWaitTimeouts());
+        assertEquals(2, dataSource.getStats().getActive());
+        first.close();
+        dataSource.getConnection().close();
+        second.close();
+        dataSource.destroy();
+        assertEquals(0, dataSource.getStats().getIdle());
+    }
+
+    @Test
+    public void testRollbackOnReturn() throws Exception {
+        MysqlPooledDataSource dataSource = newDataSource("pool_tx");
+        Connection connection = dataSource.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE t (id INT)");
+        }
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO t VALUES (1)");
+        }
+        connection.close();
+
+        connection = dataSource.getConnection();
+        assertTrue(connection.getAutoCommit());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT COUNT(*) FROM t");
+            statement.getResultSet().next();
+            assertEquals(0, statement.getResultSet().getInt(1));
+        }
+        connection.close();
+        dataSource.destroy();
+    }
+
+    @Test
+    public void testLeakReportedWithoutStackTrace() throws Exception {
+        MysqlPooledDataSource dataSource = newDataSource("pool_leak");
+        dataSource.setLeakDetectionThreshold(50);
+        dataSource.setMaintenanceInterval(20);
+        Connection connection = dataSource.getConnection();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dataSource.getStats().getLeaks() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, dataSource.getStats().getLeaks());
+        connection.close();
+        dataSource.destroy();
+    }
+}
@@ -39,6 +39,9 @@ public class GitlabAPI {
     private AuthMethod authMethod;
     private boolean ignoreCertificateErrors = false;
     private int requestTimeout = 0;
+    private int pageConcurrency = 1;
+    private double requestsPerSecond = 0;
+    private boolean conditionalRequests = false;
 
     private GitlabAPI(String hostUrl, String apiToken, TokenType tokenType, AuthMethod method) {
         this.hostUrl = hostUrl.endsWith("/") ? hostUrl.replaceAll("/$", "") : hostUrl;
@@ -80,6 +83,54 @@ public class GitlabAPI {
         return this;
     }
 
+    public int getPageConcurrency() {
+        return pageConcurrency;
+    }
+
+    /**
+     * Sets how many pages of a list are fetched at the same time, once the first page tells how many
+     * pages there are. 1, the default, fetches pages one after another.
+     *
+     * @param pageConcurrency pages fetched at the same time
+     * @return this
+     */
+    public GitlabAPI setPageConcurrency(int pageConcurrency) {
+        this.pageConcurrency = Math.max(1, pageConcurrency);
+        return this;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * Limits the page requests of lists fetched with a page concurrency above 1, the limit is shared with
+     * every GitlabAPI of the same host and rate. Other requests are not limited.
+     *
+     * @param requestsPerSecond the limit, 0 for none
+     * @return this
+     */
+    public GitlabAPI setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = Math.max(0, requestsPerSecond);
+        return this;
+    }
+
+    public boolean isConditionalRequests() {
+        return conditionalRequests;
+    }
+
+    /**
+     * Keeps the bodies of GET responses with their ETag and sends If-None-Match when requesting them
+     * again, an unchanged resource is then answered by Gitlab with an empty 304 response.
+     *
+     * @param conditionalRequests whether to send conditional requests
+     * @return this
+     */
+    public GitlabAPI setConditionalRequests(boolean conditionalRequests) {
+        this.conditionalRequests = conditionalRequests;
+        return this;
+    }
+
     public GitlabHTTPRequestor retrieve() {
         return new GitlabHTTPRequestor(this).authenticate(apiToken, tokenType, authMethod);
     }
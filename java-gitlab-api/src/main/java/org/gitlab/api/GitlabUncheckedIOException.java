@@ -0,0 +1,18 @@
+package org.gitlab.api;
+
+import java.io.IOException;
+
+/**
+ * Gitlab API error raised by iterators, which can not throw an IOException
+ */
+public class GitlabUncheckedIOException extends RuntimeException {
+
+    public GitlabUncheckedIOException(IOException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public IOException getCause() {
+        return (IOException) super.getCause();
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.commons.io.IOUtils;
 import org.gitlab.api.AuthMethod;
 import org.gitlab.api.GitlabAPI;
 import org.gitlab.api.GitlabAPIException;
+import org.gitlab.api.GitlabUncheckedIOException;
 import org.gitlab.api.TokenType;
 import org.gitlab.api.models.GitlabCommit;
 
@@ -12,9 +13,12 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Field;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -28,6 +32,14 @@ import java.util.zip.GZIPInputStream;
 public class GitlabHTTPRequestor {
 
     private static final Pattern PAGE_PATTERN = Pattern.compile("([&|?])page=(\\d+)");
+    private static final Pattern PER_PAGE_PATTERN = Pattern.compile("([&|?])per_page=(\\d+)");
+
+    // the largest page Gitlab serves
+    private static final int MAX_PER_PAGE = 100;
+    private static final String TOTAL_PAGES_HEADER = "X-Total-Pages";
+
+    // fetches the pages of lists with a page concurrency above 1, shared by every GitlabAPI
+    private static final ExecutorService PAGE_EXECUTOR = pageExecutor(Integer.getInteger("gitlab.pageThreads", 16));
 
     private final GitlabAPI root;
 
@@ -128,36 +140,138 @@ public class GitlabHTTPRequestor {
      * @throws java.io.IOException on gitlab api error
      */
     public <T> T to(String tailAPIUrl, Class<T> type, T instance) throws IOException {
-        HttpURLConnection connection = null;
+        URL url = root.getAPIUrl(tailAPIUrl);
+        if ("GET".equals(method) && byte[].class != type) {
+            return get(url, type, instance).body;
+        }
+
+        HttpURLConnection connection = setupConnection(url);
+
+        if (hasOutput()) {
+             submitData(connection);
+        } else if ("PUT".equals(method)) {
+            // PUT requires Content-Length: 0 even when there is no body (eg: API for protecting a branch)
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(0);
+        }
+
+        // the response is read to its end, which leaves the connection open for the next request
         try {
-            connection = setupConnection(root.getAPIUrl(tailAPIUrl));
-
-            if (hasOutput()) {
-                 submitData(connection);
-            } else if ("PUT".equals(method)) {
-                // PUT requires Content-Length: 0 even when there is no body (eg: API for protecting a branch)
-                connection.setDoOutput(true);
-                connection.setFixedLengthStreamingMode(0);
-            }
+            return parse(connection, type, instance);
+        } catch (IOException e) {
+            handleAPIError(e, connection);
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets every element of a paged list. With a page concurrency above 1 the first page tells how
+     * many pages there are and the rest are fetched at the same time.
+     *
+     * @param <T>     The element type
+     * @param tailUrl The url of the list (after the host and namespace)
+     * @param type    The type of a page
+     * @return The elements of every page, in order
+     * @throws java.io.IOException on gitlab api error
+     */
+    public <T> List<T> getAll(final String tailUrl, final Class<T[]> type) throws IOException {
+        if (root.getPageConcurrency() > 1 && !PAGE_PATTERN.matcher(tailUrl).find()) {
+            return getAllConcurrently(tailUrl, type);
+        }
+        List<T> results = new ArrayList<T>();
+        try {
+            addAll(results, asIterator(tailUrl, type));
+        } catch (GitlabUncheckedIOException e) {
+            throw e.getCause();
+        }
+        return results;
+    }
+
+    private <T> List<T> getAllConcurrently(final String tailUrl, final Class<T[]> type) throws IOException {
+        method("GET");
+        if (!data.isEmpty()) {
+            throw new IllegalStateException();
+        }
+
+        final URL firstUrl = withPerPage(root.getAPIUrl(tailUrl));
+        acquire(firstUrl);
+        Response<T[]> first = get(firstUrl, type, null);
+        List<T> results = new ArrayList<T>();
+        if (first.body == null || first.body.length == 0) {
+            return results;
+        }
+        results.addAll(Arrays.asList(first.body));
 
+        final int totalPages = first.totalPages;
+        if (totalPages < 0) {
+            // this Gitlab does not tell the page count, go on page by page
             try {
-                return parse(connection, type, instance);
-            } catch (IOException e) {
-                handleAPIError(e, connection);
+                addAll(results, new PageIterator<T[]>(nextPageUrl(firstUrl, type), type));
+            } catch (GitlabUncheckedIOException e) {
+                throw e.getCause();
             }
+            return results;
+        }
+        if (totalPages < 2) {
+            return results;
+        }
 
-            return null;
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
+        final Object[] pages = new Object[totalPages + 1];
+        final AtomicInteger nextPage = new AtomicInteger(2);
+        int workers = Math.min(root.getPageConcurrency(), totalPages - 1);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(PAGE_EXECUTOR.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    int page;
+                    while ((page = nextPage.getAndIncrement()) <= totalPages) {
+                        try {
+                            URL url = pageUrl(firstUrl, page);
+                            acquire(url);
+                            pages[page] = get(url, type, null).body;
+                        } catch (IOException | RuntimeException e) {
+                            // let the other workers stop
+                            nextPage.set(totalPages + 1);
+                            throw e;
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while fetching pages of " + firstUrl);
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("fetch pages of " + firstUrl + " failed", cause);
         }
-    }
 
-    public <T> List<T> getAll(final String tailUrl, final Class<T[]> type) {
-        List<T> results = new ArrayList<T>();
-        Iterator<T[]> iterator = asIterator(tailUrl, type);
+        for (int page = 2; page <= totalPages; page++) {
+            @SuppressWarnings("unchecked")
+            T[] body = (T[]) pages[page];
+            if (body != null) {
+                results.addAll(Arrays.asList(body));
+            }
+        }
+        return results;
+    }
 
+    private static <T> void addAll(List<T> results, Iterator<T[]> iterator) {
         while (iterator.hasNext()) {
             T[] requests = iterator.next();
 
@@ -165,9 +279,18 @@ public class GitlabHTTPRequestor {
                 results.addAll(Arrays.asList(requests));
             }
         }
-        return results;
     }
 
+    private static void cancelAll(List<Future<Void>> futures) {
+        for (Future<Void> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Iterates over the pages of a list one after another.
+     * An error of the Gitlab API is thrown as {@link GitlabUncheckedIOException}.
+     */
     public <T> Iterator<T> asIterator(final String tailApiUrl, final Class<T> type) {
         method("GET"); // Ensure we only use iterators for GET requests
 
@@ -176,98 +299,216 @@ public class GitlabHTTPRequestor {
             throw new IllegalStateException();
         }
 
-        return new Iterator<T>() {
-            T next;
-            URL url;
+        try {
+            return new PageIterator<T>(root.getAPIUrl(tailApiUrl), type);
+        } catch (IOException e) {
+            throw new GitlabUncheckedIOException(e);
+        }
+    }
 
-            {
-                try {
-                    url = root.getAPIUrl(tailApiUrl);
-                } catch (IOException e) {
-                    throw new Error(e);
-                }
+    private class PageIterator<T> implements Iterator<T> {
+        private final Class<T> type;
+        private T next;
+        private URL url;
+
+        PageIterator(URL url, Class<T> type) {
+            this.url = url;
+            this.type = type;
+        }
+
+        @Override
+        public boolean hasNext() {
+            fetch();
+            if (next != null && next.getClass().isArray()) {
+                Object[] arr = (Object[]) next;
+                return arr.length != 0;
+            } else {
+                return next != null;
             }
+        }
 
-            @Override
-            public boolean hasNext() {
-                fetch();
-                if (next != null && next.getClass().isArray()) {
-                    Object[] arr = (Object[]) next;
-                    return arr.length != 0;
-                } else {
-                    return next != null;
-                }
+        @Override
+        public T next() {
+            fetch();
+            T record = next;
+
+            if (record == null) {
+                throw new NoSuchElementException();
             }
 
-            @Override
-            public T next() {
-                fetch();
-                T record = next;
+            next = null;
+            return record;
+        }
 
-                if (record == null) {
-                    throw new NoSuchElementException();
-                }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
 
-                next = null;
-                return record;
+        private void fetch() {
+            if (next != null) {
+                return;
             }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException();
+            if (url == null) {
+                return;
             }
 
-            private void fetch() {
-                if (next != null) {
-                    return;
-                }
+            try {
+                next = get(url, type, null).body;
+                assert next != null;
+                url = nextPageUrl(url, type);
+            } catch (IOException e) {
+                throw new GitlabUncheckedIOException(e);
+            }
+        }
+    }
 
-                if (url == null) {
-                    return;
-                }
+    private static URL nextPageUrl(URL current, Class<?> type) throws MalformedURLException {
+        String url = current.toString();
 
-                try {
-                    HttpURLConnection connection = setupConnection(url);
-                    try {
-                        next = parse(connection, type, null);
-                        assert next != null;
-                        findNextUrl();
-                    } catch (IOException e) {
-                        handleAPIError(e, connection);
-                    }
-                } catch (IOException e) {
-                    throw new Error(e);
-                }
+        /* Increment the page number for the url if a "page" property exists,
+         * otherwise, add the page property and increment it.
+         * The Gitlab API is not a compliant hypermedia REST api, so we use
+         * a naive implementation.
+         */
+        Matcher matcher = PAGE_PATTERN.matcher(url);
+
+        if (matcher.find()) {
+            Integer page = Integer.parseInt(matcher.group(2)) + 1;
+            return new URL(matcher.replaceAll(matcher.group(1) + "page=" + page));
+        } else {
+            if (GitlabCommit[].class == type) {
+                // there is a bug in the Gitlab CE API
+                // (https://gitlab.com/gitlab-org/gitlab-ce/issues/759)
+                // that starts pagination with page=0 for commits
+                return new URL(url + (url.indexOf('?') > 0 ? '&' : '?') + "page=1");
+            } else {
+                // Since the page query was not present, its safe to assume that we just
+                // currently used the first page, so we can default to page 2
+                return new URL(url + (url.indexOf('?') > 0 ? '&' : '?') + "&page=2");
             }
+        }
+    }
 
-            private void findNextUrl() throws MalformedURLException {
-                String url = this.url.toString();
-
-                this.url = null;
-                /* Increment the page number for the url if a "page" property exists,
-                 * otherwise, add the page property and increment it.
-                 * The Gitlab API is not a compliant hypermedia REST api, so we use
-                 * a naive implementation.
-                 */
-                Matcher matcher = PAGE_PATTERN.matcher(url);
-
-                if (matcher.find()) {
-                    Integer page = Integer.parseInt(matcher.group(2)) + 1;
-                    this.url = new URL(matcher.replaceAll(matcher.group(1) + "page=" + page));
-                } else {
-                    if (GitlabCommit[].class == type) {
-                        // there is a bug in the Gitlab CE API
-                        // (https://gitlab.com/gitlab-org/gitlab-ce/issues/759)
-                        // that starts pagination with page=0 for commits
-                        this.url = new URL(url + (url.indexOf('?') > 0 ? '&' : '?') + "page=1");
-                    } else {
-                        // Since the page query was not present, its safe to assume that we just
-                        // currently used the first page, so we can default to page 2
-                        this.url = new URL(url + (url.indexOf('?') > 0 ? '&' : '?') + "&page=2");
+    private static URL pageUrl(URL first, int page) throws MalformedURLException {
+        String url = first.toString();
+        Matcher matcher = PAGE_PATTERN.matcher(url);
+        if (matcher.find()) {
+            return new URL(matcher.replaceAll(matcher.group(1) + "page=" + page));
+        }
+        return new URL(url + (url.indexOf('?') > 0 ? '&' : '?') + "page=" + page);
+    }
+
+    private static URL withPerPage(URL url) throws MalformedURLException {
+        String value = url.toString();
+        if (PER_PAGE_PATTERN.matcher(value).find()) {
+            return url;
+        }
+        return new URL(value + (value.indexOf('?') > 0 ? '&' : '?') + "per_page=" + MAX_PER_PAGE);
+    }
+
+    private static class Response<T> {
+        final T body;
+        // -1 when the response does not tell
+        final int totalPages;
+
+        Response(T body, int totalPages) {
+            this.body = body;
+            this.totalPages = totalPages;
+        }
+    }
+
+    /**
+     * GET request, sent with If-None-Match when conditional requests are on and the response is cached
+     */
+    private <T> Response<T> get(URL url, Class<T> type, T instance) throws IOException {
+        HttpURLConnection connection = setupConnection(url);
+        String cacheKey = null;
+        GitlabResponseCache.Entry cached = null;
+        if (root.isConditionalRequests()) {
+            cacheKey = cacheKey(url);
+            cached = GitlabResponseCache.getInstance().get(cacheKey);
+            if (cached != null) {
+                connection.setRequestProperty("If-None-Match", cached.etag);
+            }
+        }
+
+        try {
+            String body;
+            int totalPages = totalPages(connection);
+            if (cached != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                IOUtils.closeQuietly(connection.getInputStream());
+                GitlabResponseCache.getInstance().notModified();
+                body = cached.body;
+                if (totalPages < 0) {
+                    totalPages = cached.totalPages;
+                }
+            } else {
+                body = readBody(connection);
+                if (cacheKey != null) {
+                    String etag = connection.getHeaderField("ETag");
+                    if (etag != null) {
+                        GitlabResponseCache.getInstance().put(cacheKey, etag, body, totalPages);
+                    } else if (cached != null) {
+                        GitlabResponseCache.getInstance().remove(cacheKey);
                     }
                 }
             }
-        };
+            return new Response<T>(convert(body, type, instance), totalPages);
+        } catch (SSLHandshakeException e) {
+            throw new SSLHandshakeException("You can disable certificate checking by setting ignoreCertificateErrors on GitlabHTTPRequestor. SSL Error: " + e.getMessage());
+        } catch (IOException e) {
+            handleAPIError(e, connection);
+        }
+        return null;
+    }
+
+    private String cacheKey(URL url) {
+        // responses depend on the user
+        return url.toString() + " " + apiToken;
+    }
+
+    private static int totalPages(HttpURLConnection connection) {
+        String value = connection.getHeaderField(TOTAL_PAGES_HEADER);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // only the pages of a list fetched at the same time are limited, other requests are one at a time
+    private void acquire(URL url) throws IOException {
+        double requestsPerSecond = root.getRequestsPerSecond();
+        if (requestsPerSecond <= 0) {
+            return;
+        }
+        try {
+            HostRateLimiter.forHost(url.getAuthority(), requestsPerSecond).acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the rate limit of " + url.getAuthority());
+        }
+    }
+
+    private static ExecutorService pageExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "gitlab-page-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     private void submitData(HttpURLConnection connection) throws IOException {
@@ -319,27 +560,41 @@ public class GitlabHTTPRequestor {
     }
 
     private <T> T parse(HttpURLConnection connection, Class<T> type, T instance) throws IOException {
-        InputStreamReader reader = null;
         try {
             if (byte[].class == type) {
-                return type.cast(IOUtils.toByteArray(wrapStream(connection, connection.getInputStream())));
-            }
-            reader = new InputStreamReader(wrapStream(connection, connection.getInputStream()), "UTF-8");
-            String data = IOUtils.toString(reader);
-            if (type != null) {
-                return GitlabAPI.MAPPER.readValue(data, type);
-            } else if (instance != null) {
-                return GitlabAPI.MAPPER.readerForUpdating(instance).readValue(data);
-            } else {
-                return null;
+                InputStream in = wrapStream(connection, connection.getInputStream());
+                try {
+                    return type.cast(IOUtils.toByteArray(in));
+                } finally {
+                    IOUtils.closeQuietly(in);
+                }
             }
+            return convert(readBody(connection), type, instance);
         } catch (SSLHandshakeException e) {
             throw new SSLHandshakeException("You can disable certificate checking by setting ignoreCertificateErrors on GitlabHTTPRequestor. SSL Error: " + e.getMessage());
+        }
+    }
+
+    private String readBody(HttpURLConnection connection) throws IOException {
+        InputStreamReader reader = null;
+        try {
+            reader = new InputStreamReader(wrapStream(connection, connection.getInputStream()), "UTF-8");
+            return IOUtils.toString(reader);
         } finally {
             IOUtils.closeQuietly(reader);
         }
     }
 
+    private <T> T convert(String data, Class<T> type, T instance) throws IOException {
+        if (type != null) {
+            return GitlabAPI.MAPPER.readValue(data, type);
+        } else if (instance != null) {
+            return GitlabAPI.MAPPER.readerForUpdating(instance).readValue(data);
+        } else {
+            return null;
+        }
+    }
+
     private InputStream wrapStream(HttpURLConnection connection, InputStream inputStream) throws IOException {
         String encoding = connection.getContentEncoding();
 
@@ -0,0 +1,136 @@
+package org.gitlab.api.http;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bodies of GET responses with their ETag, so a repeated request can be sent with If-None-Match and
+ * answered from here when Gitlab replies 304 Not Modified. Entries are per url and token. The cache is
+ * shared by every client, so besides the entry count it is bounded by the characters of the kept
+ * bodies; the least recently used entries are dropped first.
+ */
+public class GitlabResponseCache {
+
+    private static final int MAX_ENTRIES = 2048;
+    // about 64M of heap for the bodies
+    private static final long MAX_CHARS = 32 * 1024 * 1024;
+    // larger bodies are not kept
+    private static final int MAX_BODY_LENGTH = 128 * 1024;
+
+    private static final GitlabResponseCache INSTANCE = new GitlabResponseCache(MAX_ENTRIES, MAX_CHARS, MAX_BODY_LENGTH);
+
+    private final int maxEntries;
+    private final long maxChars;
+    private final int maxBodyLength;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    // characters of the bodies in entries
+    private long chars = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+
+    GitlabResponseCache(int maxEntries, long maxChars, int maxBodyLength) {
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+        this.maxBodyLength = maxBodyLength;
+    }
+
+    public static GitlabResponseCache getInstance() {
+        return INSTANCE;
+    }
+
+    synchronized Entry get(String key) {
+        requests.incrementAndGet();
+        return entries.get(key);
+    }
+
+    void put(String key, String etag, String body, int totalPages) {
+        if (etag == null || body == null || body.length() > maxBodyLength) {
+            return;
+        }
+        synchronized (this) {
+            Entry old = entries.put(key, new Entry(etag, body, totalPages));
+            if (old != null) {
+                chars -= old.body.length();
+            }
+            chars += body.length();
+            for (Iterator<Entry> iterator = entries.values().iterator();
+                 iterator.hasNext() && (entries.size() > maxEntries || chars > maxChars); ) {
+                chars -= iterator.next().body.length();
+                iterator.remove();
+            }
+        }
+        stores.incrementAndGet();
+    }
+
+    synchronized void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            chars -= old.body.length();
+        }
+    }
+
+    void notModified() {
+        notModified.incrementAndGet();
+    }
+
+    public Stats stats() {
+        int size;
+        long cachedChars;
+        synchronized (this) {
+            size = entries.size();
+            cachedChars = chars;
+        }
+        return new Stats(size, cachedChars, requests.get(), notModified.get(), stores.get());
+    }
+
+    static class Entry {
+        final String etag;
+        final String body;
+        final int totalPages;
+
+        Entry(String etag, String body, int totalPages) {
+            this.etag = etag;
+            this.body = body;
+            this.totalPages = totalPages;
+        }
+    }
+
+    public static class Stats {
+        private int size;
+        private long chars;
+        private long requests;
+        private long notModified;
+        private long stores;
+
+        public Stats(int size, long chars, long requests, long notModified, long stores) {
+            this.size = size;
+            this.chars = chars;
+            this.requests = requests;
+            this.notModified = notModified;
+            this.stores = stores;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getChars() {
+            return chars;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getNotModified() {
+            return notModified;
+        }
+
+        public long getStores() {
+            return stores;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.gitlab.api.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out the requests to one Gitlab host, shared by every GitlabAPI talking to that host at the same rate
+ */
+public class HostRateLimiter {
+
+    private static final ConcurrentMap<String, HostRateLimiter> LIMITERS = new ConcurrentHashMap<String, HostRateLimiter>();
+
+    private final long intervalNanos;
+    private long nextFree = 0;
+
+    private HostRateLimiter(double requestsPerSecond) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    }
+
+    /**
+     * @param host              host of the Gitlab server
+     * @param requestsPerSecond the rate, callers with another rate get another limiter
+     * @return the limiter of the host and rate
+     */
+    public static HostRateLimiter forHost(String host, double requestsPerSecond) {
+        String key = host + " " + requestsPerSecond;
+        HostRateLimiter limiter = LIMITERS.get(key);
+        if (limiter == null) {
+            HostRateLimiter created = new HostRateLimiter(requestsPerSecond);
+            limiter = LIMITERS.putIfAbsent(key, created);
+            if (limiter == null) {
+                return created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Waits until the next request to the host is allowed
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextFree < now) {
+                nextFree = now;
+            }
+            waitNanos = nextFree - now;
+            nextFree += intervalNanos;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -1,13 +1,55 @@
 package org.gitlab.api.http;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.gitlab.api.GitlabAPI;
-import org.gitlab.api.TokenType;
+import org.gitlab.api.GitlabAPIException;
+import org.gitlab.api.GitlabUncheckedIOException;
+import org.gitlab.api.models.GitlabProject;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class GitlabHTTPRequestorTest {
 
+    private static final Pattern PAGE = Pattern.compile("[?&]page=(\\d+)");
+
+    private HttpServer server;
+    private PagedProjects projects;
+
+    @Before
+    public void setUp() throws IOException {
+        projects = new PagedProjects();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v3/projects", projects);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private GitlabAPI api() {
+        return GitlabAPI.connect("http://127.0.0.1:" + server.getAddress().getPort(), "token");
+    }
+
     @Test
     public void testSettingInvalidHTTPMethod() {
         GitlabHTTPRequestor http = new GitlabHTTPRequestor(GitlabAPI.connect("localhost", "api"));
@@ -18,4 +60,151 @@ public class GitlabHTTPRequestorTest {
         }
     }
 
+    @Test
+    public void testPagesFetchedConcurrentlyInOrder() throws IOException {
+        GitlabAPI api = api().setPageConcurrency(4);
+        List<GitlabProject> all = api.retrieve().getAll(GitlabProject.URL, GitlabProject[].class);
+
+        assertEquals(PagedProjects.PAGES * PagedProjects.PER_PAGE, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(Integer.valueOf(i), all.get(i).getId());
+        }
+        assertEquals(PagedProjects.PAGES, projects.requests.get());
+        assertTrue(projects.perPageRequested);
+    }
+
+    @Test
+    public void testSequentialWithoutPageCount() throws IOException {
+        projects.sendTotalPages = false;
+        GitlabAPI api = api().setPageConcurrency(4);
+        List<GitlabProject> all = api.retrieve().getAll(GitlabProject.URL, GitlabProject[].class);
+
+        assertEquals(PagedProjects.PAGES * PagedProjects.PER_PAGE, all.size());
+        assertEquals(Integer.valueOf(all.size() - 1), all.get(all.size() - 1).getId());
+        // the empty page after the last one ends the list
+        assertEquals(PagedProjects.PAGES + 1, projects.requests.get());
+    }
+
+    @Test
+    public void testNotModifiedServedFromCache() throws IOException {
+        GitlabAPI api = api().setPageConcurrency(4).setConditionalRequests(true);
+        List<GitlabProject> first = api.retrieve().getAll(GitlabProject.URL, GitlabProject[].class);
+        long notModified = GitlabResponseCache.getInstance().stats().getNotModified();
+        List<GitlabProject> second = api.retrieve().getAll(GitlabProject.URL, GitlabProject[].class);
+
+        assertEquals(first.size(), second.size());
+        assertEquals(first.get(first.size() - 1).getId(), second.get(second.size() - 1).getId());
+        assertEquals(PagedProjects.PAGES, projects.notModified.get());
+        assertEquals(notModified + PagedProjects.PAGES, GitlabResponseCache.getInstance().stats().getNotModified());
+    }
+
+    @Test
+    public void testRateLimitSpacesRequests() throws IOException {
+        GitlabAPI api = api().setPageConcurrency(4).setRequestsPerSecond(50);
+        long start = System.currentTimeMillis();
+        api.retrieve().getAll(GitlabProject.URL, GitlabProject[].class);
+        // 5 requests 20ms apart
+        assertTrue(System.currentTimeMillis() - start >= 70);
+    }
+
+    @Test
+    public void testRateLimitOnlyForPages() throws IOException {
+        GitlabAPI api = api().setPageConcurrency(4).setRequestsPerSecond(2);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            api.retrieve().to(GitlabProject.URL + "?page=1", GitlabProject[].class);
+        }
+        // single requests, like one per project, are not spaced 500ms apart
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testRateLimiterPerHostAndRate() {
+        assertSame(HostRateLimiter.forHost("gitlab:80", 10), HostRateLimiter.forHost("gitlab:80", 10));
+        assertNotSame(HostRateLimiter.forHost("gitlab:80", 10), HostRateLimiter.forHost("gitlab:80", 1000));
+    }
+
+    @Test
+    public void testFailedPageThrowsIOException() {
+        projects.failPage = 3;
+        try {
+            api().setPageConcurrency(4).retrieve().getAll(GitlabProject.URL, GitlabProject[].class);
+            fail("page 3 failed");
+        } catch (IOException e) {
+            assertEquals(500, ((GitlabAPIException) e).getResponseCode());
+        }
+        try {
+            api().retrieve().getAll(GitlabProject.URL, GitlabProject[].class);
+            fail("page 3 failed");
+        } catch (IOException e) {
+            assertEquals(500, ((GitlabAPIException) e).getResponseCode());
+        }
+
+        Iterator<GitlabProject[]> iterator = api().retrieve().asIterator(GitlabProject.URL, GitlabProject[].class);
+        iterator.next();
+        iterator.next();
+        try {
+            iterator.next();
+            fail("page 3 failed");
+        } catch (GitlabUncheckedIOException e) {
+            assertTrue(e.getCause() instanceof GitlabAPIException);
+        }
+    }
+
+    // PAGES pages of PER_PAGE projects with consecutive ids
+    private static class PagedProjects implements HttpHandler {
+        static final int PAGES = 5;
+        static final int PER_PAGE = 3;
+
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger notModified = new AtomicInteger();
+        volatile boolean sendTotalPages = true;
+        volatile boolean perPageRequested = false;
+        volatile int failPage = -1;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.contains("per_page=100")) {
+                perPageRequested = true;
+            }
+            Matcher matcher = PAGE.matcher("?" + (query == null ? "" : query));
+            int page = matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+            if (page == failPage) {
+                reply(exchange, 500, "{\"message\":\"failed\"}");
+                return;
+            }
+            String etag = "\"page-" + page + "\"";
+            if (sendTotalPages) {
+                exchange.getResponseHeaders().add("X-Total-Pages", String.valueOf(PAGES));
+            }
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            StringBuilder body = new StringBuilder("[");
+            if (page <= PAGES) {
+                for (int i = 0; i < PER_PAGE; i++) {
+                    if (i > 0) {
+                        body.append(',');
+                    }
+                    body.append("{\"id\":").append((page - 1) * PER_PAGE + i).append('}');
+                }
+            }
+            body.append(']');
+            reply(exchange, 200, body.toString());
+        }
+
+        private void reply(HttpExchange exchange, int code, String body) throws IOException {
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.sendResponseHeaders(code, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+    }
 }
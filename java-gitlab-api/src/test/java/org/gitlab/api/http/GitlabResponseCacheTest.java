@@ -0,0 +1,59 @@
+package org.gitlab.api.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class GitlabResponseCacheTest {
+
+    private static String body(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append('x');
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void testBoundedByCharacters() {
+        GitlabResponseCache cache = new GitlabResponseCache(100, 1000, 500);
+        cache.put("a", "etag-a", body(400), 1);
+        cache.put("b", "etag-b", body(400), 1);
+        // a is used, b becomes the least recently used
+        assertNotNull(cache.get("a"));
+        cache.put("c", "etag-c", body(400), 1);
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.stats().getSize());
+        assertEquals(800, cache.stats().getChars());
+    }
+
+    @Test
+    public void testReplaceAndRemoveKeepCount() {
+        GitlabResponseCache cache = new GitlabResponseCache(100, 1000, 500);
+        cache.put("a", "etag-1", body(300), 1);
+        cache.put("a", "etag-2", body(100), 1);
+        assertEquals(100, cache.stats().getChars());
+        assertEquals("etag-2", cache.get("a").etag);
+        cache.remove("a");
+        assertEquals(0, cache.stats().getChars());
+        assertEquals(0, cache.stats().getSize());
+    }
+
+    @Test
+    public void testBoundedByEntriesAndBodyLength() {
+        GitlabResponseCache cache = new GitlabResponseCache(2, 1000, 500);
+        cache.put("big", "etag", body(501), 1);
+        assertNull(cache.get("big"));
+        cache.put("a", "etag", body(10), 1);
+        cache.put("b", "etag", body(10), 1);
+        cache.put("c", "etag", body(10), 1);
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.stats().getSize());
+        assertEquals(20, cache.stats().getChars());
+    }
+}